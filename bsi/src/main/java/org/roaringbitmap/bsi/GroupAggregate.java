@@ -0,0 +1,79 @@
+package org.roaringbitmap.bsi;
+
+import java.io.Serializable;
+
+/**
+ * The sum, count, min and max of the values of a group of columnIds in a bsi. The columnIds of
+ * the group without a value are not counted, and the min and max of an empty group are 0.
+ */
+public final class GroupAggregate implements Serializable {
+  private static final long serialVersionUID = 6250916337240254123L;
+
+  private final long sum;
+  private final long count;
+  private final long min;
+  private final long max;
+
+  public GroupAggregate(long sum, long count, long min, long max) {
+    this.sum = sum;
+    this.count = count;
+    this.min = count == 0 ? 0 : min;
+    this.max = count == 0 ? 0 : max;
+  }
+
+  public long getSum() {
+    return sum;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getMin() {
+    return min;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * @param other the aggregate of other columnIds of the group
+   * @return the aggregate of the columnIds of both
+   */
+  public GroupAggregate merge(GroupAggregate other) {
+    if (other.count == 0) {
+      return this;
+    }
+    if (this.count == 0) {
+      return other;
+    }
+    return new GroupAggregate(
+        this.sum + other.sum,
+        this.count + other.count,
+        Math.min(this.min, other.min),
+        Math.max(this.max, other.max));
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof GroupAggregate)) {
+      return false;
+    }
+    GroupAggregate that = (GroupAggregate) other;
+    return sum == that.sum && count == that.count && min == that.min && max == that.max;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Long.hashCode(sum);
+    result = 31 * result + Long.hashCode(count);
+    result = 31 * result + Long.hashCode(min);
+    return 31 * result + Long.hashCode(max);
+  }
+
+  @Override
+  public String toString() {
+    return "{sum=" + sum + ", count=" + count + ", min=" + min + ", max=" + max + "}";
+  }
+}
@@ -0,0 +1,42 @@
+package org.roaringbitmap.bsi;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Splits the columnIds of a bsi into ranges of whole containers for the parallel methods, such as
+ * {@link RoaringBitmapSliceIndex#parallelSum}, which take a parallelism and an executor.
+ *
+ * <p>Each range holds about as many columnIds of the existence bitmap, and its bounds are multiples
+ * of 2^16, so that no container is shared between two ranges. A parallel call copies the slices
+ * with selectRange, range by range, so that each task works on bitmaps of its own: the containers
+ * of the whole index are copied once per call, which pays off for scans of most of the index
+ * rather than for a small found set.
+ */
+public final class KeyRanges {
+
+  private KeyRanges() {}
+
+  /**
+   * @param cardinality the cardinality of the existence bitmap
+   * @param parallelism the maximum number of ranges
+   * @param select the select function of the existence bitmap
+   * @return the bounds of at most parallelism ranges of whole containers, from 0 to 2^32
+   */
+  public static long[] of(long cardinality, int parallelism, IntUnaryOperator select) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    long[] bounds = new long[parallelism + 1];
+    int size = 1;
+    for (int i = 1; i < parallelism && cardinality > 0; i++) {
+      int columnId = select.applyAsInt((int) (cardinality * i / parallelism));
+      long bound = Integer.toUnsignedLong(columnId) & ~0xFFFFL;
+      if (bound > bounds[size - 1]) {
+        bounds[size++] = bound;
+      }
+    }
+    bounds[size++] = 1L << 32;
+    return Arrays.copyOf(bounds, size);
+  }
+}
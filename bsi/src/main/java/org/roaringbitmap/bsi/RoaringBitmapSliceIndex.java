@@ -1,14 +1,25 @@
 package org.roaringbitmap.bsi;
 
+import org.roaringbitmap.IntIterator;
 import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.RoaringBitmapWriter;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiFunction;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToLongFunction;
 import java.util.stream.IntStream;
 
 /**
@@ -362,6 +373,133 @@ public class RoaringBitmapSliceIndex implements BitmapSliceIndex {
     }
   }
 
+  /**
+   * Sets the values of many columnIds at once. The columnIds being sorted, each slice is written
+   * through a RoaringBitmapWriter a container at a time, rather than every slice being updated row
+   * by row. The values replace those of the columnIds already in this bsi.
+   *
+   * @param columnIds the columnIds, strictly increasing as unsigned integers
+   * @param values    the value of each columnId
+   */
+  public void setValues(int[] columnIds, int[] values) {
+    checkColumns(columnIds, values);
+    if (columnIds.length > 0) {
+      overwrite(load(columnIds, values, 0, columnIds.length));
+    }
+  }
+
+  /**
+   * Sets the values of many columnIds at once, as per setValues(int[], int[]), loading ranges of
+   * whole containers in parallel before merging them.
+   *
+   * @param columnIds   the columnIds, strictly increasing as unsigned integers
+   * @param values      the value of each columnId
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   */
+  public void setValues(int[] columnIds, int[] values, int parallelism, ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    checkColumns(columnIds, values);
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    List<CompletableFuture<RoaringBitmapSliceIndex>> futures = new ArrayList<>();
+    int from = 0;
+    for (int i = 1; i <= parallelism; i++) {
+      int to = Math.max(from, (int) ((long) columnIds.length * i / parallelism));
+      // a range ends with a container
+      while (to > 0
+          && to < columnIds.length
+          && columnIds[to] >>> 16 == columnIds[to - 1] >>> 16) {
+        to++;
+      }
+      if (to > from) {
+        int rangeStart = from;
+        int rangeEnd = to;
+        futures.add(
+            CompletableFuture.supplyAsync(
+                () -> load(columnIds, values, rangeStart, rangeEnd), pool));
+        from = to;
+      }
+    }
+    if (futures.isEmpty()) {
+      return;
+    }
+    RoaringBitmapSliceIndex loaded = futures.get(0).get();
+    for (int i = 1; i < futures.size(); i++) {
+      loaded.merge(futures.get(i).get());
+    }
+    overwrite(loaded);
+  }
+
+  private static void checkColumns(int[] columnIds, int[] values) {
+    if (columnIds.length != values.length) {
+      throw new IllegalArgumentException("columnIds and values should have the same length");
+    }
+    for (int i = 0; i < columnIds.length; i++) {
+      if (values[i] < 0) {
+        throw new IllegalArgumentException("Values should be non-negative");
+      }
+      if (i > 0 && Integer.compareUnsigned(columnIds[i - 1], columnIds[i]) >= 0) {
+        throw new IllegalArgumentException("columnIds should be strictly increasing");
+      }
+    }
+  }
+
+  private static RoaringBitmapSliceIndex load(int[] columnIds, int[] values, int from, int to) {
+    int minValue = Integer.MAX_VALUE;
+    int maxValue = 0;
+    for (int i = from; i < to; i++) {
+      minValue = Math.min(minValue, values[i]);
+      maxValue = Math.max(maxValue, values[i]);
+    }
+    RoaringBitmapWriter<RoaringBitmap> existence =
+        RoaringBitmapWriter.writer().constantMemory().get();
+    @SuppressWarnings("unchecked")
+    RoaringBitmapWriter<RoaringBitmap>[] slices =
+        new RoaringBitmapWriter[Integer.SIZE - Integer.numberOfLeadingZeros(maxValue)];
+    for (int i = 0; i < slices.length; i++) {
+      slices[i] = RoaringBitmapWriter.writer().constantMemory().get();
+    }
+    for (int i = from; i < to; i++) {
+      int columnId = columnIds[i];
+      existence.add(columnId);
+      for (int bits = values[i]; bits != 0; bits &= bits - 1) {
+        slices[Integer.numberOfTrailingZeros(bits)].add(columnId);
+      }
+    }
+    RoaringBitmapSliceIndex loaded = new RoaringBitmapSliceIndex();
+    loaded.minValue = minValue;
+    loaded.maxValue = maxValue;
+    loaded.ebM = existence.get();
+    loaded.bA = new RoaringBitmap[slices.length];
+    for (int i = 0; i < slices.length; i++) {
+      loaded.bA[i] = slices[i].get();
+    }
+    return loaded;
+  }
+
+  private void overwrite(RoaringBitmapSliceIndex loaded) {
+    if (this.ebM.isEmpty()) {
+      if (this.runOptimized) {
+        loaded.runOptimize();
+      }
+      this.minValue = loaded.minValue;
+      this.maxValue = loaded.maxValue;
+      this.bA = loaded.bA;
+      this.ebM = loaded.ebM;
+      return;
+    }
+    // the loaded values replace those of the same columnIds
+    if (RoaringBitmap.intersects(this.ebM, loaded.ebM)) {
+      for (RoaringBitmap slice : this.bA) {
+        slice.andNot(loaded.ebM);
+      }
+      this.ebM.andNot(loaded.ebM);
+    }
+    merge(loaded);
+  }
+
   /**
    * merge will merge 2 bsi into current
    * merge API was designed for distributed computing
@@ -592,4 +730,475 @@ public class RoaringBitmapSliceIndex implements BitmapSliceIndex {
 
     return Pair.newPair(sum, count);
   }
+
+  /**
+   * Finding the rows with the k largest values in a BSI, see Algorithm 4.1 of Bit-Sliced Index
+   * Arithmetic. Ties are broken in favour of the largest columnIds: the smallest tied columnIds
+   * are the ones left out.
+   *
+   * @param foundSet columnId set we want to search, the existence bitmap if null
+   * @param k        the number of rows to return
+   * @return the columnIds of the k largest values
+   */
+  public RoaringBitmap topK(RoaringBitmap foundSet, int k) {
+    RoaringBitmap fixedFoundSet = foundSet == null ? this.ebM : foundSet;
+    if (k > fixedFoundSet.getLongCardinality() || k < 0) {
+      throw new IllegalArgumentException(
+          "TopK param error,cardinality:" + fixedFoundSet.getLongCardinality() + " k:" + k);
+    }
+
+    if (k == 0) {
+      return new RoaringBitmap();
+    }
+
+    RoaringBitmap G = new RoaringBitmap();
+    RoaringBitmap E = fixedFoundSet;
+
+    for (int i = this.bitCount() - 1; i >= 0; i--) {
+      RoaringBitmap X = RoaringBitmap.or(G, RoaringBitmap.and(E, this.bA[i]));
+      long n = X.getLongCardinality();
+      if (n > k) {
+        E = RoaringBitmap.and(E, this.bA[i]);
+      } else if (n < k) {
+        G = X;
+        E = RoaringBitmap.andNot(E, this.bA[i]);
+      } else {
+        E = RoaringBitmap.and(E, this.bA[i]);
+        break;
+      }
+    }
+
+    RoaringBitmap F = RoaringBitmap.or(G, E);
+    removeTies(F, E, F.getLongCardinality() - k);
+    return F;
+  }
+
+  private static void removeTies(RoaringBitmap found, RoaringBitmap ties, long n) {
+    // turn off n bits from the ties in the found set
+    IntIterator iterator = ties.getIntIterator();
+    while (iterator.hasNext() && n > 0) {
+      found.remove(iterator.next());
+      n--;
+    }
+  }
+
+  // =====================================================================================
+  // parallel execution over ranges of container keys
+  // =====================================================================================
+
+  /**
+   * BSI Compare over ranges of columnIds in parallel: the slices of each range of whole
+   * containers are compared on their own, as per {@link #compare}, then the results are merged.
+   *
+   * @param operation    compare operation
+   * @param startOrValue the start or value of comparison, when the comparison operation is range,
+   *                     it's start, when others,it's value.
+   * @param end          the end value of comparison. when the comparison operation is not range,
+   *                     the end = 0
+   * @param foundSet     columnId set we want compare,using RoaringBitmap to express
+   * @param parallelism  the maximum number of ranges
+   * @param pool         threadPool to exec
+   * @return columnId set we found in this bsi with giving conditions
+   */
+  public RoaringBitmap parallelCompare(
+      BitmapSliceIndex.Operation operation,
+      int startOrValue,
+      int end,
+      RoaringBitmap foundSet,
+      int parallelism,
+      ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    List<RoaringBitmap> results =
+        byKeys(
+            foundSet,
+            parallelism,
+            pool,
+            (part, partFoundSet) -> part.compare(operation, startOrValue, end, partFoundSet));
+    RoaringBitmap result = new RoaringBitmap();
+    for (RoaringBitmap partResult : results) {
+      // the ranges follow each other, so that the containers are appended
+      result.or(partResult);
+    }
+    return result;
+  }
+
+  /**
+   * Sums the values of the foundSet over ranges of columnIds in parallel.
+   *
+   * @param foundSet    columnId set we want to sum
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   * @return the sum of the values and the number of columnIds summed
+   */
+  public Pair<Long, Long> parallelSum(
+      RoaringBitmap foundSet, int parallelism, ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    if (null == foundSet || foundSet.isEmpty()) {
+      return Pair.newPair(0L, 0L);
+    }
+    long sum = 0;
+    long count = 0;
+    List<Pair<Long, Long>> partSums =
+        byKeys(foundSet, parallelism, pool, (part, partFoundSet) -> part.sum(partFoundSet));
+    for (Pair<Long, Long> partSum : partSums) {
+      sum += partSum.getKey();
+      count += partSum.getValue();
+    }
+    return Pair.newPair(sum, count);
+  }
+
+  /**
+   * Finding the rows with the k largest values in a BSI, as per {@link #topK}, over ranges of
+   * columnIds in parallel: each slice is processed in parallel over the ranges, and the number of
+   * rows counted in every range decides how to go on with the next slice. As with topK, the
+   * smallest tied columnIds are left out.
+   *
+   * @param foundSet    columnId set we want to search, the existence bitmap if null
+   * @param k           the number of rows to return
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   * @return the columnIds of the k largest values
+   */
+  public RoaringBitmap parallelTopK(
+      RoaringBitmap foundSet, int k, int parallelism, ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    RoaringBitmap fixedFoundSet = foundSet == null ? this.ebM : foundSet;
+    if (k > fixedFoundSet.getLongCardinality() || k < 0) {
+      throw new IllegalArgumentException(
+          "TopK param error,cardinality:" + fixedFoundSet.getLongCardinality() + " k:" + k);
+    }
+
+    if (k == 0) {
+      return new RoaringBitmap();
+    }
+
+    List<TopKPart> parts = byKeys(fixedFoundSet, parallelism, pool, TopKPart::new);
+    for (int i = this.bitCount() - 1; i >= 0; i--) {
+      int slice = i;
+      long n = sumOverParts(parts, pool, part -> part.trial(slice));
+      if (n > k) {
+        parts.forEach(TopKPart::keepOnes);
+      } else if (n < k) {
+        parts.forEach(TopKPart::acceptOnes);
+      } else {
+        parts.forEach(TopKPart::keepOnes);
+        break;
+      }
+    }
+
+    RoaringBitmap F = new RoaringBitmap();
+    for (TopKPart part : parts) {
+      F.or(part.found());
+    }
+    long n = F.getLongCardinality() - k;
+    for (TopKPart part : parts) {
+      long ties = part.E.getLongCardinality();
+      removeTies(F, part.E, n);
+      n -= Math.min(n, ties);
+    }
+    return F;
+  }
+
+  /**
+   * Aggregates the values of each group of columnIds in one pass over the slices: each slice is
+   * intersected with every group before moving on to the next one, and the sum, min and max of a
+   * group follow from the cardinalities of these intersections.
+   *
+   * @param groups the columnIds of each group
+   * @return the aggregate of each group, in the order of the groups
+   */
+  public List<GroupAggregate> groupBy(RoaringBitmap[] groups) {
+    List<GroupState> states = new ArrayList<>(groups.length);
+    for (RoaringBitmap group : groups) {
+      states.add(new GroupState(RoaringBitmap.and(this.ebM, group)));
+    }
+    for (int i = this.bitCount() - 1; i >= 0; i--) {
+      for (GroupState state : states) {
+        state.accumulate(this.bA[i], i);
+      }
+    }
+    List<GroupAggregate> aggregates = new ArrayList<>(states.size());
+    for (GroupState state : states) {
+      aggregates.add(state.aggregate());
+    }
+    return aggregates;
+  }
+
+  /**
+   * Aggregates the values of the columnIds grouped by their value in the dimension, see
+   * {@link #groupBy(RoaringBitmap[])}. The groups are found by splitting the columnIds with the
+   * slices of the dimension, one distinct value at a time.
+   *
+   * @param dimension the bsi holding the group of each columnId
+   * @param foundSet  columnId set we want to aggregate, the existence bitmap if null
+   * @return the aggregate of each value of the dimension, in ascending order of values
+   */
+  public Map<Integer, GroupAggregate> groupBy(
+      RoaringBitmapSliceIndex dimension, RoaringBitmap foundSet) {
+    RoaringBitmap rows = RoaringBitmap.and(this.ebM, dimension.ebM);
+    if (foundSet != null) {
+      rows.and(foundSet);
+    }
+    List<RoaringBitmap> groups = new ArrayList<>();
+    List<Integer> keys = new ArrayList<>();
+    dimension.splitBySlices(
+        rows,
+        dimension.bitCount() - 1,
+        0,
+        (matches, value) -> {
+          groups.add(matches);
+          keys.add(value);
+        });
+    List<GroupAggregate> aggregates = groupBy(groups.toArray(new RoaringBitmap[0]));
+    Map<Integer, GroupAggregate> result = new TreeMap<>();
+    for (int g = 0; g < keys.size(); g++) {
+      result.put(keys.get(g), aggregates.get(g));
+    }
+    return result;
+  }
+
+  /**
+   * Splits the rows by value, slice by slice from the most significant one, as in a trie over
+   * the values: the rows of each distinct value are found with an AND and an ANDNOT per slice.
+   *
+   * @param rows the rows whose values are equal down to slice i excluded
+   * @param i the slice to split the rows with
+   * @param prefix the bits of the values of the rows above slice i
+   * @param consumer accepts the rows of each distinct value
+   */
+  private void splitBySlices(
+      RoaringBitmap rows, int i, int prefix, ObjIntConsumer<RoaringBitmap> consumer) {
+    if (rows.isEmpty()) {
+      return;
+    }
+    if (i < 0) {
+      consumer.accept(rows, prefix);
+      return;
+    }
+    RoaringBitmap ones = RoaringBitmap.and(rows, this.bA[i]);
+    // the ANDNOT is skipped when no row has bit i on, or all have
+    if (ones.isEmpty()) {
+      splitBySlices(rows, i - 1, prefix, consumer);
+    } else if (ones.getLongCardinality() == rows.getLongCardinality()) {
+      splitBySlices(ones, i - 1, prefix | (1 << i), consumer);
+    } else {
+      splitBySlices(RoaringBitmap.andNot(rows, this.bA[i]), i - 1, prefix, consumer);
+      splitBySlices(ones, i - 1, prefix | (1 << i), consumer);
+    }
+  }
+
+  /**
+   * see groupBy, over ranges of columnIds in parallel: the aggregates of each range are merged.
+   *
+   * @param groups      the columnIds of each group
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   * @return the aggregate of each group, in the order of the groups
+   */
+  public List<GroupAggregate> parallelGroupBy(
+      RoaringBitmap[] groups, int parallelism, ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    // the groups are restricted to the range by the existence bitmap of each part
+    List<List<GroupAggregate>> parts =
+        byKeys(null, parallelism, pool, (part, partFoundSet) -> part.groupBy(groups));
+    List<GroupAggregate> result = new ArrayList<>(parts.get(0));
+    for (List<GroupAggregate> part : parts.subList(1, parts.size())) {
+      for (int g = 0; g < result.size(); g++) {
+        result.set(g, result.get(g).merge(part.get(g)));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * see groupBy, over ranges of columnIds in parallel: the aggregates of each range are merged.
+   *
+   * @param dimension   the bsi holding the group of each columnId
+   * @param foundSet    columnId set we want to aggregate, the existence bitmap if null
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   * @return the aggregate of each value of the dimension, in ascending order of values
+   */
+  public Map<Integer, GroupAggregate> parallelGroupBy(
+      RoaringBitmapSliceIndex dimension,
+      RoaringBitmap foundSet,
+      int parallelism,
+      ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    List<Map<Integer, GroupAggregate>> parts =
+        byKeys(
+            foundSet,
+            parallelism,
+            pool,
+            (part, partFoundSet) -> part.groupBy(dimension, partFoundSet));
+    Map<Integer, GroupAggregate> result = new TreeMap<>();
+    for (Map<Integer, GroupAggregate> part : parts) {
+      part.forEach((key, aggregate) -> result.merge(key, aggregate, GroupAggregate::merge));
+    }
+    return result;
+  }
+
+  /**
+   * Applies the function to the slices and found set of each range of {@link KeyRanges}.
+   */
+  private <R> List<R> byKeys(
+      RoaringBitmap foundSet,
+      int parallelism,
+      ExecutorService pool,
+      BiFunction<RoaringBitmapSliceIndex, RoaringBitmap, R> func)
+      throws ExecutionException, InterruptedException {
+    long[] bounds = KeyRanges.of(this.ebM.getLongCardinality(), parallelism, this.ebM::select);
+    List<CompletableFuture<R>> futures = new ArrayList<>(bounds.length - 1);
+    for (int i = 0; i + 1 < bounds.length; i++) {
+      long rangeStart = bounds[i];
+      long rangeEnd = bounds[i + 1];
+      futures.add(
+          CompletableFuture.supplyAsync(
+              () ->
+                  func.apply(
+                      restrict(rangeStart, rangeEnd),
+                      foundSet == null ? null : foundSet.selectRange(rangeStart, rangeEnd)),
+              pool));
+    }
+    List<R> results = new ArrayList<>(futures.size());
+    for (CompletableFuture<R> future : futures) {
+      results.add(future.get());
+    }
+    return results;
+  }
+
+  private static <T> long sumOverParts(
+      List<T> parts, ExecutorService pool, ToLongFunction<T> func)
+      throws ExecutionException, InterruptedException {
+    List<CompletableFuture<Long>> futures = new ArrayList<>(parts.size());
+    for (T part : parts) {
+      futures.add(CompletableFuture.supplyAsync(() -> func.applyAsLong(part), pool));
+    }
+    long sum = 0;
+    for (CompletableFuture<Long> future : futures) {
+      sum += future.get();
+    }
+    return sum;
+  }
+
+  /**
+   * @return a bsi holding copies of the slices, restricted to the columnIds in the range
+   */
+  private RoaringBitmapSliceIndex restrict(long rangeStart, long rangeEnd) {
+    RoaringBitmapSliceIndex part = new RoaringBitmapSliceIndex();
+    // the bounds of the whole bsi still hold for the range
+    part.minValue = this.minValue;
+    part.maxValue = this.maxValue;
+    part.runOptimized = this.runOptimized;
+    part.ebM = this.ebM.selectRange(rangeStart, rangeEnd);
+    part.bA = new RoaringBitmap[this.bitCount()];
+    for (int i = 0; i < part.bA.length; i++) {
+      part.bA[i] = this.bA[i].selectRange(rangeStart, rangeEnd);
+    }
+    return part;
+  }
+
+  /**
+   * The state of Algorithm 4.1 over a range of columnIds: G holds the rows found so far and E the
+   * rows which may still be.
+   */
+  private static final class TopKPart {
+    private final RoaringBitmapSliceIndex index;
+    private RoaringBitmap G = new RoaringBitmap();
+    private RoaringBitmap E;
+    private RoaringBitmap ones;
+    private int slice;
+    // the slice whose ones are to be removed from E, or -1
+    private int excludedSlice = -1;
+
+    private TopKPart(RoaringBitmapSliceIndex index, RoaringBitmap foundSet) {
+      this.index = index;
+      this.E = foundSet;
+    }
+
+    /**
+     * @return the cardinality of G OR (E AND S^i)
+     */
+    private long trial(int i) {
+      settle();
+      slice = i;
+      ones = RoaringBitmap.and(E, index.bA[i]);
+      // G and E are disjoint
+      return G.getLongCardinality() + ones.getLongCardinality();
+    }
+
+    private void keepOnes() {
+      E = ones;
+    }
+
+    private void acceptOnes() {
+      G = RoaringBitmap.or(G, ones);
+      // E AND (NOT S^i) is left to the next trial, so that it runs in parallel
+      excludedSlice = slice;
+    }
+
+    private void settle() {
+      if (excludedSlice >= 0) {
+        E = RoaringBitmap.andNot(E, index.bA[excludedSlice]);
+        excludedSlice = -1;
+      }
+    }
+
+    private RoaringBitmap found() {
+      settle();
+      return RoaringBitmap.or(G, E);
+    }
+  }
+
+  /**
+   * The aggregate of a group under way, from the most significant slice down: the min and max
+   * are narrowed to the rows which may still hold them.
+   */
+  private static final class GroupState {
+    private final RoaringBitmap rows;
+    private final long count;
+    private long sum;
+    private RoaringBitmap minRows;
+    private long minCount;
+    private int min;
+    private RoaringBitmap maxRows;
+    private long maxCount;
+    private int max;
+
+    private GroupState(RoaringBitmap rows) {
+      this.rows = rows;
+      this.count = rows.getLongCardinality();
+      this.minRows = rows;
+      this.minCount = count;
+      this.maxRows = rows;
+      this.maxCount = count;
+    }
+
+    private void accumulate(RoaringBitmap slice, int i) {
+      if (count == 0) {
+        return;
+      }
+      long ones = RoaringBitmap.andCardinality(slice, rows);
+      sum += (long) (1 << i) * ones;
+      long minOnes = minRows == rows ? ones : RoaringBitmap.andCardinality(slice, minRows);
+      if (minOnes == minCount) {
+        min |= 1 << i;
+      } else if (minOnes > 0) {
+        minRows = RoaringBitmap.andNot(minRows, slice);
+        minCount -= minOnes;
+      }
+      long maxOnes = maxRows == rows ? ones : RoaringBitmap.andCardinality(slice, maxRows);
+      if (maxOnes > 0) {
+        max |= 1 << i;
+        if (maxOnes < maxCount) {
+          maxRows = RoaringBitmap.and(maxRows, slice);
+          maxCount = maxOnes;
+        }
+      }
+    }
+
+    private GroupAggregate aggregate() {
+      return new GroupAggregate(sum, count, min, max);
+    }
+  }
 }
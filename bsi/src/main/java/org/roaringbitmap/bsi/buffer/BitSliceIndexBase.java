@@ -5,6 +5,8 @@ import org.roaringbitmap.IntConsumer;
 import org.roaringbitmap.IntIterator;
 import org.roaringbitmap.bsi.BitmapSliceIndex;
 import org.roaringbitmap.bsi.BitmapSliceIndex.Operation;
+import org.roaringbitmap.bsi.GroupAggregate;
+import org.roaringbitmap.bsi.KeyRanges;
 import org.roaringbitmap.bsi.Pair;
 import org.roaringbitmap.buffer.BufferFastAggregation;
 import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
@@ -12,13 +14,18 @@ import org.roaringbitmap.buffer.MutableRoaringBitmap;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -330,17 +337,21 @@ public class BitSliceIndexBase {
     MutableRoaringBitmap F = ImmutableRoaringBitmap.or(G, E);
     long n = F.getLongCardinality() - k;
     if (n > 0) {
-      // turn off n bits from E in F
-      IntIterator iterator = E.getIntIterator();
-      while (iterator.hasNext() && n > 0) {
-        F.remove(iterator.next());
-        n--;
-      }
+      removeTies(F, E, n);
     }
     assert (F.getLongCardinality() == k);
     return F;
   }
 
+  private static void removeTies(MutableRoaringBitmap found, ImmutableRoaringBitmap ties, long n) {
+    // turn off n bits from the ties in the found set
+    IntIterator iterator = ties.getIntIterator();
+    while (iterator.hasNext() && n > 0) {
+      found.remove(iterator.next());
+      n--;
+    }
+  }
+
   /**
    * EQ: =
    *
@@ -572,21 +583,80 @@ public class BitSliceIndexBase {
   }
 
   protected MutableBitSliceIndex transposeWithCount(int[] batch) {
+    return transposeWithCount(MutableRoaringBitmap.bitmapOf(batch));
+  }
+
+  /**
+   * see parallelTransposeWithCount, runs on the current thread: the rows are split by value slice
+   * by slice, rather than the value of each row being looked up.
+   *
+   * @param foundSet columnId set to transpose, the existence bitmap if null
+   * @return a bsi holding the number of columnIds of each value
+   */
+  public MutableBitSliceIndex transposeWithCount(ImmutableRoaringBitmap foundSet) {
     MutableBitSliceIndex result = new MutableBitSliceIndex();
+    ImmutableRoaringBitmap rows =
+        foundSet == null ? this.ebM : ImmutableRoaringBitmap.and(this.ebM, foundSet);
+    splitBySlices(
+        rows,
+        this.bitCount() - 1,
+        0,
+        null,
+        0,
+        0,
+        (matches, value) -> result.setValue(value, matches.getCardinality()));
+    return result;
+  }
 
-    for (int columnId : batch) {
-      Pair<Integer, Boolean> value = this.getValue(columnId);
-      if (value.getValue()) {
-        Pair<Integer, Boolean> val = result.getValue(value.getKey());
-        if (!val.getValue()) {
-          result.setValue(value.getKey(), 1);
-        } else {
-          int count = val.getKey() + 1;
-          result.setValue(value.getKey(), count);
-        }
+  /**
+   * Splits the rows by value, slice by slice from the most significant one, as in a trie over
+   * the values: each split is an AND and an ANDNOT with the slice, so that the rows of each
+   * distinct value are found at the speed of bitmap operations.
+   *
+   * @param rows the rows whose values are equal down to slice i excluded
+   * @param i the slice to split the rows with
+   * @param prefix the bits of the values of the rows above slice i
+   * @param values the sorted values to look for, sharing the prefix, or null for any value
+   * @param from the first value to look for
+   * @param to the end of the values to look for
+   * @param consumer accepts the rows of each distinct value, in ascending order of values
+   */
+  private void splitBySlices(
+      ImmutableRoaringBitmap rows,
+      int i,
+      int prefix,
+      int[] values,
+      int from,
+      int to,
+      ObjIntConsumer<ImmutableRoaringBitmap> consumer) {
+    if (rows.isEmpty()) {
+      return;
+    }
+    if (i < 0) {
+      consumer.accept(rows, prefix);
+      return;
+    }
+    // the values are sorted and share their higher bits: those with bit i off come first
+    int split = to;
+    if (values != null) {
+      split = from;
+      while (split < to && (values[split] & (1 << i)) == 0) {
+        split++;
       }
     }
-    return result;
+    ImmutableRoaringBitmap ones =
+        values == null || split < to ? ImmutableRoaringBitmap.and(rows, this.bA[i]) : null;
+    if (values == null || split > from) {
+      // the ANDNOT is skipped when no row has bit i on
+      ImmutableRoaringBitmap zeros =
+          ones != null && ones.isEmpty()
+              ? rows
+              : ImmutableRoaringBitmap.andNot(rows, this.bA[i]);
+      splitBySlices(zeros, i - 1, prefix, values, from, split, consumer);
+    }
+    if (ones != null) {
+      splitBySlices(ones, i - 1, prefix | (1 << i), values, split, to, consumer);
+    }
   }
 
   /**
@@ -604,25 +674,24 @@ public class BitSliceIndexBase {
 
     ImmutableRoaringBitmap fixedFoundSet = foundSet == null ? this.ebM : foundSet;
 
-    Function<int[], MutableBitSliceIndex> func =
-        (int[] batch) -> {
-          return transposeWithCount(batch);
-        };
-    List<CompletableFuture<MutableBitSliceIndex>> futures =
-        parallelExec(func, parallelism, fixedFoundSet, pool);
-
-    allOf(futures);
+    List<MutableBitSliceIndex> parts =
+        byKeys(
+            fixedFoundSet,
+            parallelism,
+            pool,
+            (part, partFoundSet) -> part.transposeWithCount(partFoundSet));
 
     MutableBitSliceIndex result = new MutableBitSliceIndex();
-    for (CompletableFuture<MutableBitSliceIndex> bsiFuture : futures) {
-      result.add((MutableBitSliceIndex) bsiFuture.get());
+    for (MutableBitSliceIndex part : parts) {
+      result.add(part);
     }
     return result;
   }
 
   /**
    * parallelIn search the given Set values,
-   * we scan the bsi,if the value in values, we add it to result Bitmap
+   * the rows of each range of container keys are searched for the values in parallel, see
+   * {@link #in}.
    *
    * @param parallelism
    * @param foundSet
@@ -638,24 +707,457 @@ public class BitSliceIndexBase {
 
     ImmutableRoaringBitmap fixedFoundSet = foundSet == null ? this.ebM : foundSet;
 
-    Function<int[], ImmutableRoaringBitmap> func =
-        (int[] batch) -> {
-          return batchIn(batch, values);
-        };
+    List<ImmutableRoaringBitmap> results =
+        byKeys(
+            fixedFoundSet,
+            parallelism,
+            pool,
+            (part, partFoundSet) -> part.in(partFoundSet, values));
 
-    return parallelMR(parallelism, fixedFoundSet, func, pool);
+    MutableRoaringBitmap result = new MutableRoaringBitmap();
+    for (ImmutableRoaringBitmap partResult : results) {
+      // the ranges follow each other, so that the containers are appended
+      result.or(partResult);
+    }
+    return result;
+  }
+
+  /**
+   * IN: the columnIds whose value is one of the values. The rows are split slice by slice along
+   * the bits of the sorted values, as in a trie: values sharing their high bits share the bitmap
+   * operations on the high slices, and the split stops as soon as no row or no value is left.
+   *
+   * @param foundSet columnId set we want to search, the existence bitmap if null
+   * @param values the values to look for
+   * @return the columnIds with one of the values
+   */
+  public ImmutableRoaringBitmap in(ImmutableRoaringBitmap foundSet, Set<Integer> values) {
+    ImmutableRoaringBitmap rows =
+        foundSet == null ? this.ebM : ImmutableRoaringBitmap.and(this.ebM, foundSet);
+    long bound = 1L << this.bitCount();
+    // values out of the slices match no row
+    int[] sorted =
+        values.stream()
+            .filter(value -> value != null && value >= 0 && value < bound)
+            .mapToInt(Integer::intValue)
+            .sorted()
+            .distinct()
+            .toArray();
+    MutableRoaringBitmap result = new MutableRoaringBitmap();
+    splitBySlices(
+        rows,
+        this.bitCount() - 1,
+        0,
+        sorted,
+        0,
+        sorted.length,
+        (matches, value) -> result.or(matches));
+    return result;
   }
 
   protected ImmutableRoaringBitmap batchIn(int[] batch, Set<Integer> values) {
+    return in(MutableRoaringBitmap.bitmapOf(batch), values);
+  }
 
+  // =====================================================================================
+  // parallel execution over ranges of container keys
+  // ======================================================================================
+
+  /**
+   * BSI Compare over ranges of columnIds in parallel: the slices of each range of whole
+   * containers are compared on their own, as per {@link #compare}, then the results are merged.
+   *
+   * @param operation    compare operation
+   * @param startOrValue the start or value of comparison, when the comparison operation is range,
+   *                     it's start, when others,it's value.
+   * @param end          the end value of comparison. when the comparison operation is not range,
+   *                     the end = 0
+   * @param foundSet     columnId set we want compare
+   * @param parallelism  the maximum number of ranges
+   * @param pool         threadPool to exec
+   * @return columnId set we found in this bsi with giving conditions
+   */
+  public ImmutableRoaringBitmap parallelCompare(
+      BitmapSliceIndex.Operation operation,
+      int startOrValue,
+      int end,
+      ImmutableRoaringBitmap foundSet,
+      int parallelism,
+      ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    List<ImmutableRoaringBitmap> results =
+        byKeys(
+            foundSet,
+            parallelism,
+            pool,
+            (part, partFoundSet) -> part.compare(operation, startOrValue, end, partFoundSet));
     MutableRoaringBitmap result = new MutableRoaringBitmap();
+    for (ImmutableRoaringBitmap partResult : results) {
+      // the ranges follow each other, so that the containers are appended
+      result.or(partResult);
+    }
+    return result;
+  }
+
+  /**
+   * see parallelCompare, with the RANGE operation
+   */
+  public ImmutableRoaringBitmap parallelRange(
+      ImmutableRoaringBitmap foundSet, int start, int end, int parallelism, ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    return parallelCompare(
+        BitmapSliceIndex.Operation.RANGE, start, end, foundSet, parallelism, pool);
+  }
 
-    for (int cID : batch) {
-      Pair<Integer, Boolean> value = this.getValue(cID);
-      if (value.getValue() && values.contains(value.getKey())) {
-        result.add(cID);
+  /**
+   * Sums the values of the foundSet over ranges of columnIds in parallel.
+   *
+   * @param foundSet    columnId set we want to sum
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   * @return the sum of the values and the number of columnIds summed
+   */
+  public Pair<Long, Long> parallelSum(
+      ImmutableRoaringBitmap foundSet, int parallelism, ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    if (null == foundSet || foundSet.isEmpty()) {
+      return Pair.newPair(0L, 0L);
+    }
+    long sum = 0;
+    long count = 0;
+    List<Pair<Long, Long>> partSums =
+        byKeys(foundSet, parallelism, pool, (part, partFoundSet) -> part.sum(partFoundSet));
+    for (Pair<Long, Long> partSum : partSums) {
+      sum += partSum.getKey();
+      count += partSum.getValue();
+    }
+    return Pair.newPair(sum, count);
+  }
+
+  /**
+   * Finding the rows with the k largest values in a BSI, as per {@link #topK}, over ranges of
+   * columnIds in parallel: each slice is processed in parallel over the ranges, and the number of
+   * rows counted in every range decides how to go on with the next slice. As with topK, the
+   * smallest tied columnIds are left out.
+   *
+   * @param foundSet    columnId set we want to search, the existence bitmap if null
+   * @param k           the number of rows to return
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   * @return the columnIds of the k largest values
+   */
+  public MutableRoaringBitmap parallelTopK(
+      ImmutableRoaringBitmap foundSet, int k, int parallelism, ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    ImmutableRoaringBitmap fixedFoundSet = foundSet == null ? this.ebM : foundSet;
+    if (k > fixedFoundSet.getLongCardinality() || k < 0) {
+      throw new IllegalArgumentException(
+          "TopK param error,cardinality:" + fixedFoundSet.getLongCardinality() + " k:" + k);
+    }
+
+    if (k == 0) {
+      return new MutableRoaringBitmap();
+    }
+
+    List<TopKPart> parts = byKeys(fixedFoundSet, parallelism, pool, TopKPart::new);
+    for (int i = this.bitCount() - 1; i >= 0; i--) {
+      int slice = i;
+      long n = sumOverParts(parts, pool, part -> part.trial(slice));
+      if (n > k) {
+        parts.forEach(TopKPart::keepOnes);
+      } else if (n < k) {
+        parts.forEach(TopKPart::acceptOnes);
+      } else {
+        parts.forEach(TopKPart::keepOnes);
+        break;
       }
     }
+
+    MutableRoaringBitmap F = new MutableRoaringBitmap();
+    for (TopKPart part : parts) {
+      F.or(part.found());
+    }
+    long n = F.getLongCardinality() - k;
+    for (TopKPart part : parts) {
+      long ties = part.E.getLongCardinality();
+      removeTies(F, part.E, n);
+      n -= Math.min(n, ties);
+    }
+    return F;
+  }
+
+  /**
+   * Aggregates the values of each group of columnIds in one pass over the slices: each slice is
+   * intersected with every group before moving on to the next one, and the sum, min and max of a
+   * group follow from the cardinalities of these intersections.
+   *
+   * @param groups the columnIds of each group
+   * @return the aggregate of each group, in the order of the groups
+   */
+  public List<GroupAggregate> groupBy(ImmutableRoaringBitmap[] groups) {
+    List<GroupState> states = new ArrayList<>(groups.length);
+    for (ImmutableRoaringBitmap group : groups) {
+      states.add(new GroupState(ImmutableRoaringBitmap.and(this.ebM, group)));
+    }
+    for (int i = this.bitCount() - 1; i >= 0; i--) {
+      for (GroupState state : states) {
+        state.accumulate(this.bA[i], i);
+      }
+    }
+    List<GroupAggregate> aggregates = new ArrayList<>(states.size());
+    for (GroupState state : states) {
+      aggregates.add(state.aggregate());
+    }
+    return aggregates;
+  }
+
+  /**
+   * Aggregates the values of the columnIds grouped by their value in the dimension, see
+   * {@link #groupBy(ImmutableRoaringBitmap[])}. The groups are found by splitting the columnIds
+   * with the slices of the dimension, one distinct value at a time.
+   *
+   * @param dimension the bsi holding the group of each columnId
+   * @param foundSet  columnId set we want to aggregate, the existence bitmap if null
+   * @return the aggregate of each value of the dimension, in ascending order of values
+   */
+  public Map<Integer, GroupAggregate> groupBy(
+      BitSliceIndexBase dimension, ImmutableRoaringBitmap foundSet) {
+    MutableRoaringBitmap rows = ImmutableRoaringBitmap.and(this.ebM, dimension.ebM);
+    if (foundSet != null) {
+      rows.and(foundSet);
+    }
+    List<ImmutableRoaringBitmap> groups = new ArrayList<>();
+    List<Integer> keys = new ArrayList<>();
+    dimension.splitBySlices(
+        rows,
+        dimension.bitCount() - 1,
+        0,
+        null,
+        0,
+        0,
+        (matches, value) -> {
+          groups.add(matches);
+          keys.add(value);
+        });
+    List<GroupAggregate> aggregates = groupBy(groups.toArray(new ImmutableRoaringBitmap[0]));
+    Map<Integer, GroupAggregate> result = new TreeMap<>();
+    for (int g = 0; g < keys.size(); g++) {
+      result.put(keys.get(g), aggregates.get(g));
+    }
     return result;
   }
+
+  /**
+   * see groupBy, over ranges of columnIds in parallel: the aggregates of each range are merged.
+   *
+   * @param groups      the columnIds of each group
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   * @return the aggregate of each group, in the order of the groups
+   */
+  public List<GroupAggregate> parallelGroupBy(
+      ImmutableRoaringBitmap[] groups, int parallelism, ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    // the groups are restricted to the range by the existence bitmap of each part
+    List<List<GroupAggregate>> parts =
+        byKeys(null, parallelism, pool, (part, partFoundSet) -> part.groupBy(groups));
+    List<GroupAggregate> result = new ArrayList<>(parts.get(0));
+    for (List<GroupAggregate> part : parts.subList(1, parts.size())) {
+      for (int g = 0; g < result.size(); g++) {
+        result.set(g, result.get(g).merge(part.get(g)));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * see groupBy, over ranges of columnIds in parallel: the aggregates of each range are merged.
+   *
+   * @param dimension   the bsi holding the group of each columnId
+   * @param foundSet    columnId set we want to aggregate, the existence bitmap if null
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   * @return the aggregate of each value of the dimension, in ascending order of values
+   */
+  public Map<Integer, GroupAggregate> parallelGroupBy(
+      BitSliceIndexBase dimension,
+      ImmutableRoaringBitmap foundSet,
+      int parallelism,
+      ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    List<Map<Integer, GroupAggregate>> parts =
+        byKeys(
+            foundSet,
+            parallelism,
+            pool,
+            (part, partFoundSet) -> part.groupBy(dimension, partFoundSet));
+    Map<Integer, GroupAggregate> result = new TreeMap<>();
+    for (Map<Integer, GroupAggregate> part : parts) {
+      part.forEach((key, aggregate) -> result.merge(key, aggregate, GroupAggregate::merge));
+    }
+    return result;
+  }
+
+  /**
+   * Applies the function to the slices and found set of each range of {@link KeyRanges}.
+   */
+  private <R> List<R> byKeys(
+      ImmutableRoaringBitmap foundSet,
+      int parallelism,
+      ExecutorService pool,
+      BiFunction<BitSliceIndexBase, ImmutableRoaringBitmap, R> func)
+      throws ExecutionException, InterruptedException {
+    long[] bounds = KeyRanges.of(this.ebM.getLongCardinality(), parallelism, this.ebM::select);
+    List<CompletableFuture<R>> futures = new ArrayList<>(bounds.length - 1);
+    for (int i = 0; i + 1 < bounds.length; i++) {
+      long rangeStart = bounds[i];
+      long rangeEnd = bounds[i + 1];
+      futures.add(
+          invokeAsync(
+              () ->
+                  func.apply(
+                      restrict(rangeStart, rangeEnd),
+                      foundSet == null ? null : foundSet.selectRange(rangeStart, rangeEnd)),
+              null,
+              pool));
+    }
+    List<R> results = new ArrayList<>(futures.size());
+    for (CompletableFuture<R> future : futures) {
+      results.add(future.get());
+    }
+    return results;
+  }
+
+  private <T> long sumOverParts(List<T> parts, ExecutorService pool, ToLongFunction<T> func)
+      throws ExecutionException, InterruptedException {
+    List<CompletableFuture<Long>> futures = new ArrayList<>(parts.size());
+    for (T part : parts) {
+      futures.add(invokeAsync(() -> func.applyAsLong(part), null, pool));
+    }
+    long sum = 0;
+    for (CompletableFuture<Long> future : futures) {
+      sum += future.get();
+    }
+    return sum;
+  }
+
+  /**
+   * @return a bsi holding copies of the slices, restricted to the columnIds in the range
+   */
+  private BitSliceIndexBase restrict(long rangeStart, long rangeEnd) {
+    BitSliceIndexBase part = new BitSliceIndexBase();
+    // the bounds of the whole bsi still hold for the range
+    part.minValue = this.minValue;
+    part.maxValue = this.maxValue;
+    part.ebM = this.ebM.selectRange(rangeStart, rangeEnd);
+    part.bA = new ImmutableRoaringBitmap[this.bitCount()];
+    for (int i = 0; i < part.bA.length; i++) {
+      part.bA[i] = this.bA[i].selectRange(rangeStart, rangeEnd);
+    }
+    return part;
+  }
+
+  /**
+   * The state of Algorithm 4.1 over a range of columnIds: G holds the rows found so far and E the
+   * rows which may still be.
+   */
+  private static final class TopKPart {
+    private final BitSliceIndexBase index;
+    private ImmutableRoaringBitmap G = new MutableRoaringBitmap();
+    private ImmutableRoaringBitmap E;
+    private ImmutableRoaringBitmap ones;
+    private int slice;
+    // the slice whose ones are to be removed from E, or -1
+    private int excludedSlice = -1;
+
+    private TopKPart(BitSliceIndexBase index, ImmutableRoaringBitmap foundSet) {
+      this.index = index;
+      this.E = foundSet;
+    }
+
+    /**
+     * @return the cardinality of G OR (E AND S^i)
+     */
+    private long trial(int i) {
+      settle();
+      slice = i;
+      ones = ImmutableRoaringBitmap.and(E, index.bA[i]);
+      // G and E are disjoint
+      return G.getLongCardinality() + ones.getLongCardinality();
+    }
+
+    private void keepOnes() {
+      E = ones;
+    }
+
+    private void acceptOnes() {
+      G = ImmutableRoaringBitmap.or(G, ones);
+      // E AND (NOT S^i) is left to the next trial, so that it runs in parallel
+      excludedSlice = slice;
+    }
+
+    private void settle() {
+      if (excludedSlice >= 0) {
+        E = ImmutableRoaringBitmap.andNot(E, index.bA[excludedSlice]);
+        excludedSlice = -1;
+      }
+    }
+
+    private ImmutableRoaringBitmap found() {
+      settle();
+      return ImmutableRoaringBitmap.or(G, E);
+    }
+  }
+
+  /**
+   * The aggregate of a group under way, from the most significant slice down: the min and max
+   * are narrowed to the rows which may still hold them.
+   */
+  private static final class GroupState {
+    private final ImmutableRoaringBitmap rows;
+    private final long count;
+    private long sum;
+    private ImmutableRoaringBitmap minRows;
+    private long minCount;
+    private int min;
+    private ImmutableRoaringBitmap maxRows;
+    private long maxCount;
+    private int max;
+
+    private GroupState(ImmutableRoaringBitmap rows) {
+      this.rows = rows;
+      this.count = rows.getLongCardinality();
+      this.minRows = rows;
+      this.minCount = count;
+      this.maxRows = rows;
+      this.maxCount = count;
+    }
+
+    private void accumulate(ImmutableRoaringBitmap slice, int i) {
+      if (count == 0) {
+        return;
+      }
+      long ones = ImmutableRoaringBitmap.andCardinality(slice, rows);
+      sum += (long) (1 << i) * ones;
+      long minOnes = minRows == rows ? ones : ImmutableRoaringBitmap.andCardinality(slice, minRows);
+      if (minOnes == minCount) {
+        min |= 1 << i;
+      } else if (minOnes > 0) {
+        minRows = ImmutableRoaringBitmap.andNot(minRows, slice);
+        minCount -= minOnes;
+      }
+      long maxOnes = maxRows == rows ? ones : ImmutableRoaringBitmap.andCardinality(slice, maxRows);
+      if (maxOnes > 0) {
+        max |= 1 << i;
+        if (maxOnes < maxCount) {
+          maxRows = ImmutableRoaringBitmap.and(maxRows, slice);
+          maxCount = maxOnes;
+        }
+      }
+    }
+
+    private GroupAggregate aggregate() {
+      return new GroupAggregate(sum, count, min, max);
+    }
+  }
 }
@@ -1,5 +1,6 @@
 package org.roaringbitmap.bsi.buffer;
 
+import org.roaringbitmap.RoaringBitmapWriter;
 import org.roaringbitmap.bsi.BitmapSliceIndex;
 import org.roaringbitmap.bsi.Pair;
 import org.roaringbitmap.bsi.WritableUtils;
@@ -10,10 +11,14 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
 /**
  * MutableBSI
@@ -190,6 +195,128 @@ public class MutableBitSliceIndex extends BitSliceIndexBase implements BitmapSli
     }
   }
 
+  /**
+   * Sets the values of many columnIds at once. The columnIds being sorted, each slice is written
+   * through a RoaringBitmapWriter a container at a time, rather than every slice being updated row
+   * by row. The values replace those of the columnIds already in this bsi.
+   *
+   * @param columnIds the columnIds, strictly increasing as unsigned integers
+   * @param values    the value of each columnId
+   */
+  public void setValues(int[] columnIds, int[] values) {
+    checkColumns(columnIds, values);
+    if (columnIds.length > 0) {
+      overwrite(load(columnIds, values, 0, columnIds.length));
+    }
+  }
+
+  /**
+   * Sets the values of many columnIds at once, as per setValues(int[], int[]), loading ranges of
+   * whole containers in parallel before merging them.
+   *
+   * @param columnIds   the columnIds, strictly increasing as unsigned integers
+   * @param values      the value of each columnId
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   */
+  public void setValues(int[] columnIds, int[] values, int parallelism, ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    checkColumns(columnIds, values);
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    List<CompletableFuture<MutableBitSliceIndex>> futures = new ArrayList<>();
+    int from = 0;
+    for (int i = 1; i <= parallelism; i++) {
+      int to = Math.max(from, (int) ((long) columnIds.length * i / parallelism));
+      // a range ends with a container
+      while (to > 0
+          && to < columnIds.length
+          && columnIds[to] >>> 16 == columnIds[to - 1] >>> 16) {
+        to++;
+      }
+      if (to > from) {
+        int rangeStart = from;
+        int rangeEnd = to;
+        futures.add(
+            invokeAsync(() -> load(columnIds, values, rangeStart, rangeEnd), null, pool));
+        from = to;
+      }
+    }
+    if (futures.isEmpty()) {
+      return;
+    }
+    MutableBitSliceIndex loaded = futures.get(0).get();
+    for (int i = 1; i < futures.size(); i++) {
+      loaded.merge(futures.get(i).get());
+    }
+    overwrite(loaded);
+  }
+
+  private static void checkColumns(int[] columnIds, int[] values) {
+    if (columnIds.length != values.length) {
+      throw new IllegalArgumentException("columnIds and values should have the same length");
+    }
+    for (int i = 0; i < columnIds.length; i++) {
+      if (values[i] < 0) {
+        throw new IllegalArgumentException("Values should be non-negative");
+      }
+      if (i > 0 && Integer.compareUnsigned(columnIds[i - 1], columnIds[i]) >= 0) {
+        throw new IllegalArgumentException("columnIds should be strictly increasing");
+      }
+    }
+  }
+
+  private static MutableBitSliceIndex load(int[] columnIds, int[] values, int from, int to) {
+    int minValue = Integer.MAX_VALUE;
+    int maxValue = 0;
+    for (int i = from; i < to; i++) {
+      minValue = Math.min(minValue, values[i]);
+      maxValue = Math.max(maxValue, values[i]);
+    }
+    RoaringBitmapWriter<MutableRoaringBitmap> existence =
+        RoaringBitmapWriter.bufferWriter().constantMemory().get();
+    @SuppressWarnings("unchecked")
+    RoaringBitmapWriter<MutableRoaringBitmap>[] slices =
+        new RoaringBitmapWriter[Integer.SIZE - Integer.numberOfLeadingZeros(maxValue)];
+    for (int i = 0; i < slices.length; i++) {
+      slices[i] = RoaringBitmapWriter.bufferWriter().constantMemory().get();
+    }
+    for (int i = from; i < to; i++) {
+      int columnId = columnIds[i];
+      existence.add(columnId);
+      for (int bits = values[i]; bits != 0; bits &= bits - 1) {
+        slices[Integer.numberOfTrailingZeros(bits)].add(columnId);
+      }
+    }
+    MutableRoaringBitmap[] bA = new MutableRoaringBitmap[slices.length];
+    for (int i = 0; i < slices.length; i++) {
+      bA[i] = slices[i].get();
+    }
+    return new MutableBitSliceIndex(maxValue, minValue, bA, existence.get());
+  }
+
+  private void overwrite(MutableBitSliceIndex loaded) {
+    if (this.ebM.isEmpty()) {
+      if (this.runOptimized) {
+        loaded.runOptimize();
+      }
+      this.minValue = loaded.minValue;
+      this.maxValue = loaded.maxValue;
+      this.bA = loaded.bA;
+      this.ebM = loaded.ebM;
+      return;
+    }
+    // the loaded values replace those of the same columnIds
+    if (MutableRoaringBitmap.intersects(this.ebM, loaded.ebM)) {
+      for (int i = 0; i < this.bitCount(); i++) {
+        this.getMutableSlice(i).andNot(loaded.ebM);
+      }
+      this.getExistenceBitmap().andNot(loaded.ebM);
+    }
+    merge(loaded);
+  }
+
   /**
    * add tow bsi index
    *
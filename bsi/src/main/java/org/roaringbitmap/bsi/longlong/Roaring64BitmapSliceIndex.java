@@ -4,14 +4,22 @@ import org.roaringbitmap.bsi.BitmapSliceIndex;
 import org.roaringbitmap.bsi.Pair;
 import org.roaringbitmap.bsi.WritableUtils;
 import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.roaringbitmap.longlong.Roaring64BitmapWriter;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiFunction;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToLongFunction;
 import java.util.stream.IntStream;
 
 public class Roaring64BitmapSliceIndex {
@@ -341,6 +349,132 @@ public class Roaring64BitmapSliceIndex {
     }
   }
 
+  /**
+   * Sets the values of many columnIds at once. The columnIds being sorted, each slice is written
+   * through a Roaring64BitmapWriter a container at a time, rather than every slice being updated
+   * row by row. The values replace those of the columnIds already in this bsi.
+   *
+   * @param columnIds the columnIds, strictly increasing as unsigned longs
+   * @param values    the value of each columnId
+   */
+  public void setValues(long[] columnIds, long[] values) {
+    checkColumns(columnIds, values);
+    if (columnIds.length > 0) {
+      overwrite(load(columnIds, values, 0, columnIds.length));
+    }
+  }
+
+  /**
+   * Sets the values of many columnIds at once, as per setValues(long[], long[]), loading ranges
+   * of whole containers in parallel before merging them.
+   *
+   * @param columnIds   the columnIds, strictly increasing as unsigned longs
+   * @param values      the value of each columnId
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   */
+  public void setValues(long[] columnIds, long[] values, int parallelism, ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    checkColumns(columnIds, values);
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    List<CompletableFuture<Roaring64BitmapSliceIndex>> futures = new ArrayList<>();
+    int from = 0;
+    for (int i = 1; i <= parallelism; i++) {
+      int to = Math.max(from, (int) ((long) columnIds.length * i / parallelism));
+      // a range ends with a container
+      while (to > 0
+          && to < columnIds.length
+          && columnIds[to] >>> 16 == columnIds[to - 1] >>> 16) {
+        to++;
+      }
+      if (to > from) {
+        int rangeStart = from;
+        int rangeEnd = to;
+        futures.add(
+            CompletableFuture.supplyAsync(
+                () -> load(columnIds, values, rangeStart, rangeEnd), pool));
+        from = to;
+      }
+    }
+    if (futures.isEmpty()) {
+      return;
+    }
+    Roaring64BitmapSliceIndex loaded = futures.get(0).get();
+    for (int i = 1; i < futures.size(); i++) {
+      loaded.merge(futures.get(i).get());
+    }
+    overwrite(loaded);
+  }
+
+  private static void checkColumns(long[] columnIds, long[] values) {
+    if (columnIds.length != values.length) {
+      throw new IllegalArgumentException("columnIds and values should have the same length");
+    }
+    for (int i = 0; i < columnIds.length; i++) {
+      if (values[i] < 0) {
+        throw new IllegalArgumentException("Values should be non-negative");
+      }
+      if (i > 0 && Long.compareUnsigned(columnIds[i - 1], columnIds[i]) >= 0) {
+        throw new IllegalArgumentException("columnIds should be strictly increasing");
+      }
+    }
+  }
+
+  private static Roaring64BitmapSliceIndex load(
+      long[] columnIds, long[] values, int from, int to) {
+    long minValue = Long.MAX_VALUE;
+    long maxValue = 0;
+    for (int i = from; i < to; i++) {
+      minValue = Math.min(minValue, values[i]);
+      maxValue = Math.max(maxValue, values[i]);
+    }
+    Roaring64BitmapWriter existence = new Roaring64BitmapWriter(false);
+    Roaring64BitmapWriter[] slices =
+        new Roaring64BitmapWriter[Long.SIZE - Long.numberOfLeadingZeros(maxValue)];
+    for (int i = 0; i < slices.length; i++) {
+      slices[i] = new Roaring64BitmapWriter(false);
+    }
+    for (int i = from; i < to; i++) {
+      long columnId = columnIds[i];
+      existence.add(columnId);
+      for (long bits = values[i]; bits != 0; bits &= bits - 1) {
+        slices[Long.numberOfTrailingZeros(bits)].add(columnId);
+      }
+    }
+    Roaring64BitmapSliceIndex loaded = new Roaring64BitmapSliceIndex();
+    loaded.minValue = minValue;
+    loaded.maxValue = maxValue;
+    loaded.ebM = existence.get();
+    loaded.bA = new Roaring64Bitmap[slices.length];
+    for (int i = 0; i < slices.length; i++) {
+      loaded.bA[i] = slices[i].get();
+    }
+    return loaded;
+  }
+
+  private void overwrite(Roaring64BitmapSliceIndex loaded) {
+    if (this.ebM.isEmpty()) {
+      if (this.runOptimized) {
+        loaded.runOptimize();
+      }
+      this.minValue = loaded.minValue;
+      this.maxValue = loaded.maxValue;
+      this.bA = loaded.bA;
+      this.ebM = loaded.ebM;
+      return;
+    }
+    // the loaded values replace those of the same columnIds
+    if (Roaring64Bitmap.intersects(this.ebM, loaded.ebM)) {
+      for (Roaring64Bitmap slice : this.bA) {
+        slice.andNot(loaded.ebM);
+      }
+      this.ebM.andNot(loaded.ebM);
+    }
+    merge(loaded);
+  }
+
   /**
    * merge will merge 2 bsi into current
    * merge API was designed for distributed computing
@@ -602,7 +736,7 @@ public class Roaring64BitmapSliceIndex {
     Roaring64Bitmap re = new Roaring64Bitmap();
     Roaring64Bitmap fixedFoundSet =
         foundSet == null ? this.ebM : Roaring64Bitmap.and(foundSet, this.ebM);
-    fixedFoundSet.forEach((long x) -> re.add(this.getValue(x).getKey()));
+    splitBySlices(fixedFoundSet, this.bitCount() - 1, 0L, (rows, value) -> re.addLong(value));
     return re;
   }
 
@@ -610,15 +744,280 @@ public class Roaring64BitmapSliceIndex {
     Roaring64BitmapSliceIndex re = new Roaring64BitmapSliceIndex();
     Roaring64Bitmap fixedFoundSet =
         foundSet == null ? this.ebM : Roaring64Bitmap.and(foundSet, this.ebM);
-    fixedFoundSet.forEach(
-        (long x) -> {
-          long nk = this.getValue(x).getKey();
-          if (re.valueExist(nk)) {
-            re.setValue(nk, re.getValue(nk).getKey() + 1);
-          } else {
-            re.setValue(nk, 1);
-          }
-        });
+    splitBySlices(
+        fixedFoundSet,
+        this.bitCount() - 1,
+        0L,
+        (rows, value) -> re.setValue(value, rows.getLongCardinality()));
     return re;
   }
+
+  /**
+   * Splits the rows by value, slice by slice from the most significant one, as in a trie over
+   * the values: each split is an AND and an ANDNOT with the slice, so that the rows of each
+   * distinct value are found at the speed of bitmap operations rather than by a lookup per row.
+   *
+   * @param rows the rows whose values are equal down to slice i excluded
+   * @param i the slice to split the rows with
+   * @param prefix the bits of the values of the rows above slice i
+   * @param consumer accepts the rows of each distinct value, in ascending order of values
+   */
+  private void splitBySlices(
+      Roaring64Bitmap rows, int i, long prefix, ObjLongConsumer<Roaring64Bitmap> consumer) {
+    if (rows.isEmpty()) {
+      return;
+    }
+    if (i < 0) {
+      consumer.accept(rows, prefix);
+      return;
+    }
+    Roaring64Bitmap ones = Roaring64Bitmap.and(rows, this.bA[i]);
+    // the ANDNOT is skipped when no row has bit i on
+    Roaring64Bitmap zeros = ones.isEmpty() ? rows : Roaring64Bitmap.andNot(rows, this.bA[i]);
+    splitBySlices(zeros, i - 1, prefix, consumer);
+    splitBySlices(ones, i - 1, prefix | (1L << i), consumer);
+  }
+
+  // =====================================================================================
+  // parallel execution over ranges of container keys
+  // =====================================================================================
+
+  /**
+   * BSI Compare over ranges of columnIds in parallel: the slices of each range of whole
+   * containers are compared on their own, as per {@link #compare}, then the results are merged.
+   *
+   * @param operation    compare operation
+   * @param startOrValue the start or value of comparison, when the comparison operation is range,
+   *                     it's start, when others,it's value.
+   * @param end          the end value of comparison. when the comparison operation is not range,
+   *                     the end = 0
+   * @param foundSet     columnId set we want compare
+   * @param parallelism  the maximum number of ranges
+   * @param pool         threadPool to exec
+   * @return columnId set we found in this bsi with giving conditions
+   */
+  public Roaring64Bitmap parallelCompare(
+      BitmapSliceIndex.Operation operation,
+      long startOrValue,
+      long end,
+      Roaring64Bitmap foundSet,
+      int parallelism,
+      ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    List<Roaring64Bitmap> results =
+        byKeys(
+            foundSet,
+            parallelism,
+            pool,
+            (part, partFoundSet) -> part.compare(operation, startOrValue, end, partFoundSet));
+    Roaring64Bitmap result = new Roaring64Bitmap();
+    for (Roaring64Bitmap partResult : results) {
+      result.or(partResult);
+    }
+    return result;
+  }
+
+  /**
+   * Sums the values of the foundSet over ranges of columnIds in parallel.
+   *
+   * @param foundSet    columnId set we want to sum
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   * @return the sum of the values and the number of columnIds summed
+   */
+  public Pair<Long, Long> parallelSum(
+      Roaring64Bitmap foundSet, int parallelism, ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    if (null == foundSet || foundSet.isEmpty()) {
+      return Pair.newPair(0L, 0L);
+    }
+    long sum = 0;
+    long count = 0;
+    List<Pair<Long, Long>> partSums =
+        byKeys(foundSet, parallelism, pool, (part, partFoundSet) -> part.sum(partFoundSet));
+    for (Pair<Long, Long> partSum : partSums) {
+      sum += partSum.getKey();
+      count += partSum.getValue();
+    }
+    return Pair.newPair(sum, count);
+  }
+
+  /**
+   * The rows with the k largest values, as per {@link #topK}, over ranges of columnIds in
+   * parallel: each slice is processed in parallel over the ranges, and the number of rows counted
+   * in every range decides how to go on with the next slice.
+   *
+   * @param foundSet    columnId set we want to search
+   * @param k           the number of rows to return
+   * @param parallelism the maximum number of ranges
+   * @param pool        threadPool to exec
+   * @return the columnIds of the k largest values
+   */
+  public Roaring64Bitmap parallelTopK(
+      Roaring64Bitmap foundSet, long k, int parallelism, ExecutorService pool)
+      throws ExecutionException, InterruptedException {
+    if (null == foundSet || foundSet.isEmpty()) {
+      return new Roaring64Bitmap();
+    }
+    long candidates = foundSet.getLongCardinality();
+    if (k >= candidates) {
+      return foundSet;
+    }
+    List<TopKPart> parts = byKeys(foundSet, parallelism, pool, TopKPart::new);
+
+    for (int x = this.bitCount() - 1; x >= 0 && candidates > 0 && k > 0; x--) {
+      int slice = x;
+      long cardinality = sumOverParts(parts, pool, part -> part.trial(slice));
+
+      if (cardinality > k) {
+        parts.forEach(TopKPart::keepOnes);
+        candidates = cardinality;
+      } else {
+        parts.forEach(TopKPart::acceptOnes);
+        candidates -= cardinality;
+        k -= cardinality;
+      }
+    }
+    Roaring64Bitmap re = new Roaring64Bitmap();
+    for (TopKPart part : parts) {
+      re.or(part.re);
+    }
+    return re;
+  }
+
+  /**
+   * Splits the columnIds into ranges of whole containers, holding about as many columnIds of the
+   * existence bitmap, and applies the function to the slices and found set of each range.
+   */
+  private <R> List<R> byKeys(
+      Roaring64Bitmap foundSet,
+      int parallelism,
+      ExecutorService pool,
+      BiFunction<Roaring64BitmapSliceIndex, Roaring64Bitmap, R> func)
+      throws ExecutionException, InterruptedException {
+    long[] bounds = keyRanges(parallelism);
+    List<CompletableFuture<R>> futures = new ArrayList<>(bounds.length);
+    for (int i = 0; i < bounds.length; i++) {
+      long rangeStart = bounds[i];
+      // the last range ends with the largest unsigned columnId
+      long rangeEnd = i + 1 < bounds.length ? bounds[i + 1] : 0L;
+      futures.add(
+          CompletableFuture.supplyAsync(
+              () ->
+                  func.apply(
+                      restrict(rangeStart, rangeEnd),
+                      foundSet == null ? null : restrict(foundSet, rangeStart, rangeEnd)),
+              pool));
+    }
+    List<R> results = new ArrayList<>(futures.size());
+    for (CompletableFuture<R> future : futures) {
+      results.add(future.get());
+    }
+    return results;
+  }
+
+  private static <T> long sumOverParts(
+      List<T> parts, ExecutorService pool, ToLongFunction<T> func)
+      throws ExecutionException, InterruptedException {
+    List<CompletableFuture<Long>> futures = new ArrayList<>(parts.size());
+    for (T part : parts) {
+      futures.add(CompletableFuture.supplyAsync(() -> func.applyAsLong(part), pool));
+    }
+    long sum = 0;
+    for (CompletableFuture<Long> future : futures) {
+      sum += future.get();
+    }
+    return sum;
+  }
+
+  /**
+   * Splits the unsigned columnIds as {@link org.roaringbitmap.bsi.KeyRanges} splits 32 bit ones.
+   *
+   * @return the unsigned starts of ranges of whole containers, the first one being 0, each
+   *     holding about as many columnIds of the existence bitmap
+   */
+  private long[] keyRanges(int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    long cardinality = this.ebM.getLongCardinality();
+    long[] starts = new long[parallelism];
+    int size = 1;
+    for (int i = 1; i < parallelism && cardinality > 0; i++) {
+      long start = this.ebM.select(cardinality / parallelism * i) & ~0xFFFFL;
+      if (Long.compareUnsigned(start, starts[size - 1]) > 0) {
+        starts[size++] = start;
+      }
+    }
+    return Arrays.copyOf(starts, size);
+  }
+
+  /**
+   * @return a bsi holding copies of the slices, restricted to the columnIds in the range
+   */
+  private Roaring64BitmapSliceIndex restrict(long rangeStart, long rangeEnd) {
+    Roaring64BitmapSliceIndex part = new Roaring64BitmapSliceIndex();
+    // the bounds of the whole bsi still hold for the range
+    part.minValue = this.minValue;
+    part.maxValue = this.maxValue;
+    part.runOptimized = this.runOptimized;
+    part.ebM = restrict(this.ebM, rangeStart, rangeEnd);
+    part.bA = new Roaring64Bitmap[this.bitCount()];
+    for (int i = 0; i < part.bA.length; i++) {
+      part.bA[i] = restrict(this.bA[i], rangeStart, rangeEnd);
+    }
+    return part;
+  }
+
+  /**
+   * @param rangeEnd the exclusive end of the range, 0 for a range up to the largest columnId
+   */
+  private static Roaring64Bitmap restrict(Roaring64Bitmap bitmap, long rangeStart, long rangeEnd) {
+    if (rangeEnd != 0L) {
+      return bitmap.selectRange(rangeStart, rangeEnd);
+    }
+    Roaring64Bitmap restricted = bitmap.selectRange(rangeStart, -1L);
+    if (bitmap.contains(-1L)) {
+      restricted.addLong(-1L);
+    }
+    return restricted;
+  }
+
+  /**
+   * The state of {@link #topK} over a range of columnIds.
+   */
+  private static final class TopKPart {
+    private final Roaring64BitmapSliceIndex index;
+    private final Roaring64Bitmap re = new Roaring64Bitmap();
+    private Roaring64Bitmap candidates;
+    private Roaring64Bitmap ones;
+    private int slice;
+    // the slice whose ones are to be removed from the candidates, or -1
+    private int excludedSlice = -1;
+
+    private TopKPart(Roaring64BitmapSliceIndex index, Roaring64Bitmap foundSet) {
+      this.index = index;
+      this.candidates = foundSet;
+    }
+
+    private long trial(int x) {
+      if (excludedSlice >= 0) {
+        candidates.andNot(index.bA[excludedSlice]);
+        excludedSlice = -1;
+      }
+      slice = x;
+      ones = Roaring64Bitmap.and(candidates, index.bA[x]);
+      return ones.getLongCardinality();
+    }
+
+    private void keepOnes() {
+      candidates = ones;
+    }
+
+    private void acceptOnes() {
+      re.or(ones);
+      // the candidates with the slice on are removed by the next trial, so that it runs in parallel
+      excludedSlice = slice;
+    }
+  }
 }
@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.ObjLongConsumer;
 import java.util.stream.IntStream;
 
 /**
@@ -699,7 +700,7 @@ public class Roaring64NavigableMapSliceIndex {
     Roaring64NavigableMap re = new Roaring64NavigableMap();
     Roaring64NavigableMap fixedFoundSet =
         foundSet == null ? this.ebM : Roaring64NavigableMap.and(foundSet, this.ebM);
-    fixedFoundSet.forEach((long x) -> re.add(this.getValue(x).getKey()));
+    splitBySlices(fixedFoundSet, this.bitCount() - 1, 0L, (rows, value) -> re.addLong(value));
     return re;
   }
 
@@ -713,15 +714,41 @@ public class Roaring64NavigableMapSliceIndex {
     Roaring64NavigableMapSliceIndex re = new Roaring64NavigableMapSliceIndex();
     Roaring64NavigableMap fixedFoundSet =
         foundSet == null ? this.ebM : Roaring64NavigableMap.and(foundSet, this.ebM);
-    fixedFoundSet.forEach(
-        (long x) -> {
-          long nk = this.getValue(x).getKey();
-          if (re.valueExist(nk)) {
-            re.setValue(nk, re.getValue(nk).getKey() + 1);
-          } else {
-            re.setValue(nk, 1);
-          }
-        });
+    splitBySlices(
+        fixedFoundSet,
+        this.bitCount() - 1,
+        0L,
+        (rows, value) -> re.setValue(value, rows.getLongCardinality()));
     return re;
   }
+
+  /**
+   * Splits the rows by value, slice by slice from the most significant one, as in a trie over
+   * the values: each split is an AND and an ANDNOT with the slice, so that the rows of each
+   * distinct value are found at the speed of bitmap operations rather than by a lookup per row.
+   *
+   * @param rows the rows whose values are equal down to slice i excluded
+   * @param i the slice to split the rows with
+   * @param prefix the bits of the values of the rows above slice i
+   * @param consumer accepts the rows of each distinct value, in ascending order of values
+   */
+  private void splitBySlices(
+      Roaring64NavigableMap rows,
+      int i,
+      long prefix,
+      ObjLongConsumer<Roaring64NavigableMap> consumer) {
+    if (rows.isEmpty()) {
+      return;
+    }
+    if (i < 0) {
+      consumer.accept(rows, prefix);
+      return;
+    }
+    Roaring64NavigableMap ones = Roaring64NavigableMap.and(rows, this.bA[i]);
+    // the ANDNOT is skipped when no row has bit i on
+    Roaring64NavigableMap zeros =
+        ones.isEmpty() ? rows : Roaring64NavigableMap.andNot(rows, this.bA[i]);
+    splitBySlices(zeros, i - 1, prefix, consumer);
+    splitBySlices(ones, i - 1, prefix | (1L << i), consumer);
+  }
 }
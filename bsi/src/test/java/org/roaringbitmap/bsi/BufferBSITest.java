@@ -15,11 +15,14 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -454,4 +457,208 @@ public class BufferBSITest {
     Assertions.assertEquals(bsi.topK(null, 4), MutableRoaringBitmap.bitmapOf(5, 6, 8, 9));
     Assertions.assertEquals(bsi.topK(null, 0), MutableRoaringBitmap.bitmapOf());
   }
+
+  @Test
+  public void testParallelMatchesSingleThread() throws ExecutionException, InterruptedException {
+    Random random = new Random(0);
+    MutableBitSliceIndex bsi = new MutableBitSliceIndex();
+    MutableRoaringBitmap foundSet = new MutableRoaringBitmap();
+    // columnIds spread over many containers
+    for (int columnId = 0; columnId < 3_000_000; columnId += 1 + random.nextInt(20)) {
+      bsi.setValue(columnId, random.nextInt(1000));
+      if (random.nextBoolean()) {
+        foundSet.add(columnId);
+      }
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      for (int parallelism : new int[] {1, 3, 8}) {
+        for (BitmapSliceIndex.Operation operation : BitmapSliceIndex.Operation.values()) {
+          int value = random.nextInt(1000);
+          int end = value + random.nextInt(200);
+          Assertions.assertEquals(
+              bsi.compare(operation, value, end, null),
+              bsi.parallelCompare(operation, value, end, null, parallelism, pool));
+          Assertions.assertEquals(
+              bsi.compare(operation, value, end, foundSet),
+              bsi.parallelCompare(operation, value, end, foundSet, parallelism, pool));
+        }
+        Assertions.assertEquals(bsi.sum(foundSet), bsi.parallelSum(foundSet, parallelism, pool));
+        Assertions.assertEquals(
+            bsi.range(foundSet, 100, 500),
+            bsi.parallelRange(foundSet, 100, 500, parallelism, pool));
+        for (int k : new int[] {0, 1, 1000, 50_000}) {
+          Assertions.assertEquals(bsi.topK(null, k), bsi.parallelTopK(null, k, parallelism, pool));
+          Assertions.assertEquals(
+              bsi.topK(foundSet, k), bsi.parallelTopK(foundSet, k, parallelism, pool));
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testSliceWiseInAndTranspose() throws ExecutionException, InterruptedException {
+    Random random = new Random(0);
+    MutableBitSliceIndex bsi = new MutableBitSliceIndex();
+    Map<Integer, Integer> counts = new HashMap<>();
+    Map<Integer, Integer> values = new HashMap<>();
+    for (int columnId = 0; columnId < 500_000; columnId += 1 + random.nextInt(5)) {
+      int value = random.nextInt(5000);
+      bsi.setValue(columnId, value);
+      values.put(columnId, value);
+      counts.merge(value, 1, Integer::sum);
+    }
+    Set<Integer> searched = new HashSet<>();
+    for (int i = 0; i < 300; i++) {
+      searched.add(random.nextInt(6000) - 100);
+    }
+    MutableRoaringBitmap expected = new MutableRoaringBitmap();
+    values.forEach(
+        (columnId, value) -> {
+          if (searched.contains(value)) {
+            expected.add(columnId);
+          }
+        });
+    Assertions.assertEquals(expected, bsi.in(null, searched));
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      Assertions.assertEquals(expected, bsi.parallelIn(3, null, searched, pool));
+      MutableBitSliceIndex transposed = bsi.transposeWithCount((ImmutableRoaringBitmap) null);
+      MutableBitSliceIndex parallelTransposed = bsi.parallelTransposeWithCount(null, 3, pool);
+      Assertions.assertEquals(counts.size(), transposed.getLongCardinality());
+      Assertions.assertEquals(counts.size(), parallelTransposed.getLongCardinality());
+      counts.forEach(
+          (value, count) -> {
+            Assertions.assertEquals(Pair.newPair(count, true), transposed.getValue(value));
+            Assertions.assertEquals(Pair.newPair(count, true), parallelTransposed.getValue(value));
+          });
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testBulkSetValues() throws ExecutionException, InterruptedException {
+    Random random = new Random(0);
+    int[] columnIds = new int[200_000];
+    int[] values = new int[columnIds.length];
+    int columnId = 0;
+    for (int i = 0; i < columnIds.length; i++) {
+      columnId += 1 + random.nextInt(10);
+      columnIds[i] = columnId;
+      values[i] = random.nextInt(100_000);
+    }
+    MutableBitSliceIndex expected = new MutableBitSliceIndex();
+    expected.setValue(columnIds[10], 3);
+    expected.setValue(columnIds[columnIds.length - 1] + 1, 3);
+    for (int i = 0; i < columnIds.length; i++) {
+      expected.setValue(columnIds[i], values[i]);
+    }
+    MutableBitSliceIndex bulk = new MutableBitSliceIndex();
+    bulk.setValue(columnIds[10], 3);
+    bulk.setValue(columnIds[columnIds.length - 1] + 1, 3);
+    bulk.setValues(columnIds, values);
+    MutableBitSliceIndex parallelBulk = new MutableBitSliceIndex();
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      parallelBulk.setValues(columnIds, values, 4, pool);
+    } finally {
+      pool.shutdown();
+    }
+    parallelBulk.setValue(columnIds[columnIds.length - 1] + 1, 3);
+    Assertions.assertEquals(expected.getExistenceBitmap(), bulk.getExistenceBitmap());
+    Assertions.assertEquals(expected.getExistenceBitmap(), parallelBulk.getExistenceBitmap());
+    for (int i = 0; i < expected.bitCount(); i++) {
+      Assertions.assertEquals(expected.getMutableSlice(i), bulk.getMutableSlice(i));
+      Assertions.assertEquals(expected.getMutableSlice(i), parallelBulk.getMutableSlice(i));
+    }
+  }
+
+  @Test
+  public void testGroupBy() throws ExecutionException, InterruptedException {
+    Random random = new Random(0);
+    MutableBitSliceIndex metric = new MutableBitSliceIndex();
+    MutableBitSliceIndex dimension = new MutableBitSliceIndex();
+    Map<Integer, Integer> values = new HashMap<>();
+    Map<Integer, Integer> keys = new HashMap<>();
+    for (int i = 0; i < 100_000; i++) {
+      int columnId = random.nextInt(1 << 20);
+      int value = random.nextInt(100_000);
+      metric.setValue(columnId, value);
+      values.put(columnId, value);
+      // some columnIds have no group
+      if (random.nextInt(10) > 0) {
+        int key = random.nextInt(20);
+        dimension.setValue(columnId, key);
+        keys.put(columnId, key);
+      }
+    }
+    ImmutableRoaringBitmap[] groups = new ImmutableRoaringBitmap[5];
+    for (int g = 0; g < groups.length; g++) {
+      MutableRoaringBitmap group = new MutableRoaringBitmap();
+      // the last group is empty
+      for (int i = 0; g + 1 < groups.length && i < 20_000; i++) {
+        group.add(random.nextInt(1 << 20));
+      }
+      groups[g] = group;
+    }
+    List<GroupAggregate> expectedGroups = new ArrayList<>();
+    for (ImmutableRoaringBitmap group : groups) {
+      GroupAggregate expected = new GroupAggregate(0, 0, 0, 0);
+      for (int columnId : group) {
+        Integer value = values.get(columnId);
+        if (value != null) {
+          expected = expected.merge(new GroupAggregate(value, 1, value, value));
+        }
+      }
+      expectedGroups.add(expected);
+    }
+    ImmutableRoaringBitmap foundSet = groups[0];
+    Map<Integer, GroupAggregate> expectedByKey = new TreeMap<>();
+    for (int columnId : foundSet) {
+      Integer value = values.get(columnId);
+      Integer key = keys.get(columnId);
+      if (value != null && key != null) {
+        expectedByKey.merge(
+            key, new GroupAggregate(value, 1, value, value), GroupAggregate::merge);
+      }
+    }
+
+    Assertions.assertEquals(expectedGroups, metric.groupBy(groups));
+    Assertions.assertEquals(expectedByKey, metric.groupBy(dimension, foundSet));
+    Map<Integer, GroupAggregate> byKey = metric.groupBy(dimension, null);
+    Assertions.assertEquals(20, byKey.size());
+    Assertions.assertEquals(
+        metric.sum(dimension.getExistenceBitmap()).getKey(),
+        byKey.values().stream().mapToLong(GroupAggregate::getSum).sum());
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      Assertions.assertEquals(expectedGroups, metric.parallelGroupBy(groups, 4, pool));
+      Assertions.assertEquals(
+          expectedByKey, metric.parallelGroupBy(dimension, foundSet, 4, pool));
+      Assertions.assertEquals(byKey, metric.parallelGroupBy(dimension, null, 4, pool));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testTopKKeepsLargestTiedColumnIds() throws ExecutionException, InterruptedException {
+    MutableBitSliceIndex bsi = new MutableBitSliceIndex();
+    for (int columnId = 0; columnId < 5; columnId++) {
+      bsi.setValue(columnId, 7);
+    }
+    bsi.setValue(1 << 20, 7);
+    bsi.setValue(5, 3);
+    Assertions.assertEquals(MutableRoaringBitmap.bitmapOf(4, 1 << 20), bsi.topK(null, 2));
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      Assertions.assertEquals(
+          MutableRoaringBitmap.bitmapOf(3, 4, 1 << 20), bsi.parallelTopK(null, 3, 4, pool));
+    } finally {
+      pool.shutdown();
+    }
+  }
 }
@@ -16,6 +16,10 @@ import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.LongStream;
@@ -449,4 +453,99 @@ public class R64BSITest {
     Assertions.assertEquals(
         bsi.getValue(2L).getKey(), (long) Integer.MAX_VALUE + 23456); // {-2147460193,true}
   }
+
+  @Test
+  public void testParallelMatchesSingleThread() throws ExecutionException, InterruptedException {
+    Random random = new Random(0);
+    Roaring64BitmapSliceIndex bsi = new Roaring64BitmapSliceIndex();
+    Roaring64Bitmap foundSet = new Roaring64Bitmap();
+    // columnIds spread over many containers, on both sides of 2^32
+    long first = (1L << 32) - 1_000_000;
+    for (long columnId = first; columnId < first + 3_000_000; columnId += 1 + random.nextInt(20)) {
+      bsi.setValue(columnId, random.nextInt(1000));
+      if (random.nextBoolean()) {
+        foundSet.addLong(columnId);
+      }
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      for (int parallelism : new int[] {1, 3, 8}) {
+        for (BitmapSliceIndex.Operation operation : BitmapSliceIndex.Operation.values()) {
+          long value = random.nextInt(1000);
+          long end = value + random.nextInt(200);
+          Assertions.assertEquals(
+              bsi.compare(operation, value, end, null),
+              bsi.parallelCompare(operation, value, end, null, parallelism, pool));
+          Assertions.assertEquals(
+              bsi.compare(operation, value, end, foundSet),
+              bsi.parallelCompare(operation, value, end, foundSet, parallelism, pool));
+        }
+        Assertions.assertEquals(bsi.sum(foundSet), bsi.parallelSum(foundSet, parallelism, pool));
+        for (long k : new long[] {0, 1, 1000, 50_000}) {
+          Assertions.assertEquals(
+              bsi.topK(foundSet, k), bsi.parallelTopK(foundSet, k, parallelism, pool));
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testSliceWiseTranspose() {
+    Random random = new Random(0);
+    Roaring64BitmapSliceIndex bsi = new Roaring64BitmapSliceIndex();
+    Map<Long, Long> counts = new HashMap<>();
+    for (long columnId = 0; columnId < 200_000; columnId += 1 + random.nextInt(5)) {
+      // values spread over more than 32 bits
+      long value = random.nextInt(3000) * 0x1_0000_0001L;
+      bsi.setValue(columnId, value);
+      counts.merge(value, 1L, Long::sum);
+    }
+    Roaring64Bitmap transposed = bsi.transpose(null);
+    Roaring64BitmapSliceIndex transposedWithCount = bsi.transposeWithCount(null);
+    Assertions.assertEquals(counts.size(), transposed.getLongCardinality());
+    Assertions.assertEquals(counts.size(), transposedWithCount.getLongCardinality());
+    counts.forEach(
+        (value, count) -> {
+          Assertions.assertTrue(transposed.contains(value));
+          Assertions.assertEquals(Pair.newPair(count, true), transposedWithCount.getValue(value));
+        });
+  }
+
+  @Test
+  public void testBulkSetValues() throws ExecutionException, InterruptedException {
+    Random random = new Random(0);
+    long[] columnIds = new long[200_000];
+    long[] values = new long[columnIds.length];
+    // columnIds on both sides of 2^32
+    long columnId = (1L << 32) - 1_000_000;
+    for (int i = 0; i < columnIds.length; i++) {
+      columnId += 1 + random.nextInt(10);
+      columnIds[i] = columnId;
+      values[i] = random.nextInt(100_000) * 0x1_0000_0001L;
+    }
+    Roaring64BitmapSliceIndex expected = new Roaring64BitmapSliceIndex();
+    expected.setValue(columnIds[10], 3);
+    for (int i = 0; i < columnIds.length; i++) {
+      expected.setValue(columnIds[i], values[i]);
+    }
+    Roaring64BitmapSliceIndex bulk = new Roaring64BitmapSliceIndex();
+    bulk.setValue(columnIds[10], 3);
+    bulk.setValues(columnIds, values);
+    Roaring64BitmapSliceIndex parallelBulk = new Roaring64BitmapSliceIndex();
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      parallelBulk.setValues(columnIds, values, 4, pool);
+    } finally {
+      pool.shutdown();
+    }
+    Assertions.assertEquals(expected.getExistenceBitmap(), bulk.getExistenceBitmap());
+    Assertions.assertEquals(expected.getExistenceBitmap(), parallelBulk.getExistenceBitmap());
+    for (int i = 0; i < 1000; i++) {
+      long column = columnIds[random.nextInt(columnIds.length)];
+      Assertions.assertEquals(expected.getValue(column), bulk.getValue(column));
+      Assertions.assertEquals(expected.getValue(column), parallelBulk.getValue(column));
+    }
+  }
 }
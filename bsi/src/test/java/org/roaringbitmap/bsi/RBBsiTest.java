@@ -12,9 +12,15 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -425,4 +431,189 @@ public class RBBsiTest {
     Assertions.assertEquals(
         bsi.compare(BitmapSliceIndex.Operation.RANGE, 129, 2000, null).getCardinality(), 0);
   }
+
+  @Test
+  public void testParallelMatchesSingleThread() throws ExecutionException, InterruptedException {
+    Random random = new Random(0);
+    RoaringBitmapSliceIndex bsi = new RoaringBitmapSliceIndex();
+    RoaringBitmap foundSet = new RoaringBitmap();
+    // columnIds spread over many containers
+    for (int columnId = 0; columnId < 3_000_000; columnId += 1 + random.nextInt(20)) {
+      bsi.setValue(columnId, random.nextInt(1000));
+      if (random.nextBoolean()) {
+        foundSet.add(columnId);
+      }
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      for (int parallelism : new int[] {1, 3, 8}) {
+        for (BitmapSliceIndex.Operation operation : BitmapSliceIndex.Operation.values()) {
+          int value = random.nextInt(1000);
+          int end = value + random.nextInt(200);
+          Assertions.assertEquals(
+              bsi.compare(operation, value, end, null),
+              bsi.parallelCompare(operation, value, end, null, parallelism, pool));
+          Assertions.assertEquals(
+              bsi.compare(operation, value, end, foundSet),
+              bsi.parallelCompare(operation, value, end, foundSet, parallelism, pool));
+        }
+        Assertions.assertEquals(bsi.sum(foundSet), bsi.parallelSum(foundSet, parallelism, pool));
+        for (int k : new int[] {0, 1, 1000, 50_000}) {
+          Assertions.assertEquals(bsi.topK(null, k), bsi.parallelTopK(null, k, parallelism, pool));
+          Assertions.assertEquals(
+              bsi.topK(foundSet, k), bsi.parallelTopK(foundSet, k, parallelism, pool));
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testBulkSetValues() throws ExecutionException, InterruptedException {
+    Random random = new Random(0);
+    int[] columnIds = new int[200_000];
+    int[] values = new int[columnIds.length];
+    int columnId = -100_000;
+    for (int i = 0; i < columnIds.length; i++) {
+      columnId += 1 + random.nextInt(10);
+      columnIds[i] = columnId;
+      values[i] = random.nextInt(100_000);
+    }
+    // columnIds are unsigned: the negative ones come last
+    int negatives = 0;
+    while (columnIds[negatives] < 0) {
+      negatives++;
+    }
+    int[] sortedColumnIds = new int[columnIds.length];
+    int[] sortedValues = new int[columnIds.length];
+    int positives = columnIds.length - negatives;
+    for (int i = 0; i < columnIds.length; i++) {
+      int from = i < positives ? negatives + i : i - positives;
+      sortedColumnIds[i] = columnIds[from];
+      sortedValues[i] = values[from];
+    }
+
+    RoaringBitmapSliceIndex expected = new RoaringBitmapSliceIndex();
+    expected.setValue(5, 7);
+    expected.setValue(sortedColumnIds[10], 3);
+    for (int i = 0; i < sortedColumnIds.length; i++) {
+      expected.setValue(sortedColumnIds[i], sortedValues[i]);
+    }
+
+    RoaringBitmapSliceIndex bulk = new RoaringBitmapSliceIndex();
+    bulk.setValue(5, 7);
+    bulk.setValue(sortedColumnIds[10], 3);
+    bulk.setValues(sortedColumnIds, sortedValues);
+    RoaringBitmapSliceIndex parallelBulk = new RoaringBitmapSliceIndex();
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      parallelBulk.setValues(sortedColumnIds, sortedValues, 4, pool);
+    } finally {
+      pool.shutdown();
+    }
+    parallelBulk.setValue(5, 7);
+    Assertions.assertEquals(expected.getExistenceBitmap(), bulk.getExistenceBitmap());
+    Assertions.assertEquals(expected.getExistenceBitmap(), parallelBulk.getExistenceBitmap());
+    for (int i = 0; i < 1000; i++) {
+      int column = sortedColumnIds[random.nextInt(sortedColumnIds.length)];
+      Assertions.assertEquals(expected.getValue(column), bulk.getValue(column));
+      Assertions.assertEquals(expected.getValue(column), parallelBulk.getValue(column));
+    }
+    Assertions.assertEquals(expected.getValue(5), bulk.getValue(5));
+    Assertions.assertEquals(expected.getValue(5), parallelBulk.getValue(5));
+    Assertions.assertEquals(
+        expected.compare(BitmapSliceIndex.Operation.GE, 50_000, 0, null),
+        bulk.compare(BitmapSliceIndex.Operation.GE, 50_000, 0, null));
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> bulk.setValues(new int[] {2, 1}, new int[] {1, 1}));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> bulk.setValues(new int[] {1}, new int[] {-1}));
+  }
+
+  @Test
+  public void testGroupBy() throws ExecutionException, InterruptedException {
+    Random random = new Random(0);
+    RoaringBitmapSliceIndex metric = new RoaringBitmapSliceIndex();
+    RoaringBitmapSliceIndex dimension = new RoaringBitmapSliceIndex();
+    Map<Integer, Integer> values = new HashMap<>();
+    Map<Integer, Integer> keys = new HashMap<>();
+    for (int i = 0; i < 100_000; i++) {
+      int columnId = random.nextInt(1 << 20);
+      int value = random.nextInt(100_000);
+      metric.setValue(columnId, value);
+      values.put(columnId, value);
+      // some columnIds have no group
+      if (random.nextInt(10) > 0) {
+        int key = random.nextInt(20);
+        dimension.setValue(columnId, key);
+        keys.put(columnId, key);
+      }
+    }
+    RoaringBitmap[] groups = new RoaringBitmap[5];
+    for (int g = 0; g < groups.length; g++) {
+      groups[g] = new RoaringBitmap();
+      // the last group is empty
+      for (int i = 0; g + 1 < groups.length && i < 20_000; i++) {
+        groups[g].add(random.nextInt(1 << 20));
+      }
+    }
+    List<GroupAggregate> expectedGroups = new ArrayList<>();
+    for (RoaringBitmap group : groups) {
+      GroupAggregate expected = new GroupAggregate(0, 0, 0, 0);
+      for (int columnId : group) {
+        Integer value = values.get(columnId);
+        if (value != null) {
+          expected = expected.merge(new GroupAggregate(value, 1, value, value));
+        }
+      }
+      expectedGroups.add(expected);
+    }
+    RoaringBitmap foundSet = groups[0];
+    Map<Integer, GroupAggregate> expectedByKey = new TreeMap<>();
+    for (int columnId : foundSet) {
+      Integer value = values.get(columnId);
+      Integer key = keys.get(columnId);
+      if (value != null && key != null) {
+        expectedByKey.merge(
+            key, new GroupAggregate(value, 1, value, value), GroupAggregate::merge);
+      }
+    }
+
+    Assertions.assertEquals(expectedGroups, metric.groupBy(groups));
+    Assertions.assertEquals(expectedByKey, metric.groupBy(dimension, foundSet));
+    Map<Integer, GroupAggregate> byKey = metric.groupBy(dimension, null);
+    Assertions.assertEquals(20, byKey.size());
+    Assertions.assertEquals(
+        metric.sum(dimension.getExistenceBitmap()).getKey(),
+        byKey.values().stream().mapToLong(GroupAggregate::getSum).sum());
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      Assertions.assertEquals(expectedGroups, metric.parallelGroupBy(groups, 4, pool));
+      Assertions.assertEquals(
+          expectedByKey, metric.parallelGroupBy(dimension, foundSet, 4, pool));
+      Assertions.assertEquals(byKey, metric.parallelGroupBy(dimension, null, 4, pool));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testTopKKeepsLargestTiedColumnIds() throws ExecutionException, InterruptedException {
+    RoaringBitmapSliceIndex bsi = new RoaringBitmapSliceIndex();
+    for (int columnId = 0; columnId < 5; columnId++) {
+      bsi.setValue(columnId, 7);
+    }
+    bsi.setValue(1 << 20, 7);
+    bsi.setValue(5, 3);
+    Assertions.assertEquals(RoaringBitmap.bitmapOf(4, 1 << 20), bsi.topK(null, 2));
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      Assertions.assertEquals(
+          RoaringBitmap.bitmapOf(3, 4, 1 << 20), bsi.parallelTopK(null, 3, 4, pool));
+    } finally {
+      pool.shutdown();
+    }
+  }
 }
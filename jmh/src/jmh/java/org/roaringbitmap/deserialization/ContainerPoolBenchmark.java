@@ -0,0 +1,102 @@
+package org.roaringbitmap.deserialization;
+
+import org.roaringbitmap.ContainerPool;
+import org.roaringbitmap.RoaringBitmap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deserialize, combine and discard bitmaps, with and without a {@link ContainerPool}. Run with
+ * {@code -prof gc} and compare gc.alloc.rate.norm.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, timeUnit = TimeUnit.MILLISECONDS, time = 1000)
+@Measurement(iterations = 10, timeUnit = TimeUnit.MILLISECONDS, time = 1000)
+@BenchmarkMode(Mode.AverageTime)
+public class ContainerPoolBenchmark {
+
+  @Param({"true", "false"})
+  boolean pooled;
+
+  @Param({"0.01", "0.2"})
+  double density;
+
+  private ByteBuffer left;
+  private ByteBuffer right;
+
+  @Setup
+  public void prepare() {
+    Random random = new Random(0);
+    left = serialize(randomBitmap(random));
+    right = serialize(randomBitmap(random));
+    if (pooled) {
+      ContainerPool.enable();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    ContainerPool.disable();
+  }
+
+  @Benchmark
+  public int deserializeAndRecycle() throws IOException {
+    RoaringBitmap bitmap = deserialize(left);
+    int cardinality = bitmap.getCardinality();
+    bitmap.recycle();
+    return cardinality;
+  }
+
+  @Benchmark
+  public int deserializeOperateAndRecycle() throws IOException {
+    RoaringBitmap l = deserialize(left);
+    RoaringBitmap r = deserialize(right);
+    RoaringBitmap and = RoaringBitmap.and(l, r);
+    RoaringBitmap or = RoaringBitmap.or(l, r);
+    int cardinality = and.getCardinality() + or.getCardinality();
+    l.recycle();
+    r.recycle();
+    and.recycle();
+    or.recycle();
+    return cardinality;
+  }
+
+  private RoaringBitmap randomBitmap(Random random) {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    for (int i = 0; i < 1 << 22; ++i) {
+      if (random.nextDouble() < density) {
+        bitmap.add(i);
+      }
+    }
+    return bitmap;
+  }
+
+  private static ByteBuffer serialize(RoaringBitmap bitmap) {
+    ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+    bitmap.serialize(buffer);
+    return buffer;
+  }
+
+  private static RoaringBitmap deserialize(ByteBuffer buffer) throws IOException {
+    buffer.rewind();
+    RoaringBitmap bitmap = new RoaringBitmap();
+    bitmap.deserialize(buffer);
+    return bitmap;
+  }
+}
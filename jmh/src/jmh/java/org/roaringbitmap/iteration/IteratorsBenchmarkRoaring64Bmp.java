@@ -1,5 +1,6 @@
 package org.roaringbitmap.iteration;
 
+import org.roaringbitmap.longlong.LongBatchIterator;
 import org.roaringbitmap.longlong.LongIterator;
 import org.roaringbitmap.longlong.Roaring64Bitmap;
 
@@ -116,6 +117,90 @@ public class IteratorsBenchmarkRoaring64Bmp {
     return result;
   }
 
+  @Benchmark
+  public long testBatch_a(BenchmarkState benchmarkState) {
+    LongBatchIterator it = benchmarkState.bitmap_a.getBatchIterator();
+    long[] buffer = benchmarkState.buffer;
+    long result = 0;
+    while (it.hasNext()) {
+      int count = it.nextBatch(buffer);
+      for (int i = 0; i < count; i++) {
+        result = buffer[i];
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public long testBatch_b(BenchmarkState benchmarkState) {
+    LongBatchIterator it = benchmarkState.bitmap_b.getBatchIterator();
+    long[] buffer = benchmarkState.buffer;
+    long result = 0;
+    while (it.hasNext()) {
+      int count = it.nextBatch(buffer);
+      for (int i = 0; i < count; i++) {
+        result = buffer[i];
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public long testBatch_c(BenchmarkState benchmarkState) {
+    LongBatchIterator it = benchmarkState.bitmap_c.getBatchIterator();
+    long[] buffer = benchmarkState.buffer;
+    long result = 0;
+    while (it.hasNext()) {
+      int count = it.nextBatch(buffer);
+      for (int i = 0; i < count; i++) {
+        result = buffer[i];
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public long testReverseBatch_a(BenchmarkState benchmarkState) {
+    LongBatchIterator it = benchmarkState.bitmap_a.getReverseBatchIterator();
+    long[] buffer = benchmarkState.buffer;
+    long result = 0;
+    while (it.hasNext()) {
+      int count = it.nextBatch(buffer);
+      for (int i = 0; i < count; i++) {
+        result = buffer[i];
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public long testReverseBatch_b(BenchmarkState benchmarkState) {
+    LongBatchIterator it = benchmarkState.bitmap_b.getReverseBatchIterator();
+    long[] buffer = benchmarkState.buffer;
+    long result = 0;
+    while (it.hasNext()) {
+      int count = it.nextBatch(buffer);
+      for (int i = 0; i < count; i++) {
+        result = buffer[i];
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public long testReverseBatch_c(BenchmarkState benchmarkState) {
+    LongBatchIterator it = benchmarkState.bitmap_c.getReverseBatchIterator();
+    long[] buffer = benchmarkState.buffer;
+    long result = 0;
+    while (it.hasNext()) {
+      int count = it.nextBatch(buffer);
+      for (int i = 0; i < count; i++) {
+        result = buffer[i];
+      }
+    }
+    return result;
+  }
+
   @State(Scope.Benchmark)
   public static class BenchmarkState {
 
@@ -125,6 +210,8 @@ public class IteratorsBenchmarkRoaring64Bmp {
 
     final Roaring64Bitmap bitmap_c;
 
+    final long[] buffer = new long[256];
+
     public BenchmarkState() {
 
       final long[] data = takeSortedAndDistinct(new Random(0xcb000a2b9b5bdfb6l), 100000);
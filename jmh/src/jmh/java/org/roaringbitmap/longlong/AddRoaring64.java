@@ -43,6 +43,53 @@ public class AddRoaring64 {
       return values;
     }
   }
+  @State(Scope.Benchmark)
+  public static class SequentialState {
+
+    @Param({"10000", "100000", "1000000"})
+    public int addedSize = 0;
+
+    @Param({"1", "16", "1024"})
+    public int maxGap = 1;
+
+    long[] addedIndexes;
+
+    @Setup()
+    public void setup() {
+      // monotonically increasing ids, which mostly share their high 48 bits with the previous id
+      Random r = new Random(0L);
+      addedIndexes = new long[addedSize];
+      long value = 1L << 45;
+      for (int i = 0; i < addedSize; i++) {
+        value += 1 + r.nextInt(maxGap);
+        addedIndexes[i] = value;
+      }
+    }
+  }
+
+  @Benchmark()
+  public Roaring64Bitmap addEachSequential(SequentialState state) {
+    Roaring64Bitmap bitmap = new Roaring64Bitmap();
+    for (long index : state.addedIndexes) {
+      bitmap.addLong(index);
+    }
+    return bitmap;
+  }
+
+  @Benchmark()
+  public Roaring64Bitmap writeEachSequential(SequentialState state) {
+    Roaring64BitmapWriter writer = new Roaring64BitmapWriter();
+    for (long index : state.addedIndexes) {
+      writer.add(index);
+    }
+    return writer.get();
+  }
+
+  @Benchmark()
+  public Roaring64Bitmap addAllSequential(SequentialState state) {
+    return Roaring64Bitmap.bitmapOf(state.addedIndexes);
+  }
+
   @State(Scope.Benchmark)
   public static class AddExistingState extends BenchmarkState {
     @Setup()
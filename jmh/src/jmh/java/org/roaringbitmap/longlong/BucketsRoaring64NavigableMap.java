@@ -0,0 +1,99 @@
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.RoaringBitmapSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing the TreeMap and the sorted arrays holding the buckets of a
+ * Roaring64NavigableMap, with few values in many buckets.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 3, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Benchmark)
+public class BucketsRoaring64NavigableMap {
+
+  private static final int LOOKUP_COUNT = 1000;
+
+  @Param({"1000", "100000"})
+  private int buckets;
+
+  @Param({"false", "true"})
+  private boolean sortedArrayBuckets;
+
+  private long[] values;
+  private long[] lookupValues;
+  private Roaring64NavigableMap bitmap;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(12345L);
+    values = new long[buckets * 4];
+    long high = 0;
+    for (int i = 0; i < buckets; i++) {
+      high += 1 + random.nextInt(1 << 10);
+      for (int j = 0; j < 4; j++) {
+        values[i * 4 + j] = (high << 32) | random.nextInt(1 << 20);
+      }
+    }
+    bitmap = newBitmap();
+    for (long value : values) {
+      bitmap.addLong(value);
+    }
+    lookupValues = new long[LOOKUP_COUNT];
+    for (int i = 0; i < LOOKUP_COUNT; i++) {
+      lookupValues[i] = values[random.nextInt(values.length)];
+    }
+  }
+
+  private Roaring64NavigableMap newBitmap() {
+    return new Roaring64NavigableMap(false, true, new RoaringBitmapSupplier(), sortedArrayBuckets);
+  }
+
+  @Benchmark
+  public void contains(Blackhole bh) {
+    for (long value : lookupValues) {
+      bh.consume(bitmap.contains(value));
+    }
+  }
+
+  @Benchmark
+  public void forEach(Blackhole bh) {
+    bitmap.forEach(bh::consume);
+  }
+
+  @Benchmark
+  public Roaring64NavigableMap addInOrder() {
+    Roaring64NavigableMap fresh = newBitmap();
+    for (long value : values) {
+      fresh.addLong(value);
+    }
+    return fresh;
+  }
+
+  @Benchmark
+  public void rankAfterAdd(Blackhole bh) {
+    // dismisses the cumulated cardinalities from the bucket of the value onwards
+    bitmap.addLong(lookupValues[0]);
+    for (long value : lookupValues) {
+      bh.consume(bitmap.rankLong(value));
+    }
+  }
+}
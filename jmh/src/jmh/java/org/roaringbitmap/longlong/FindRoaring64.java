@@ -61,6 +61,40 @@ public class FindRoaring64 {
 
     }
   }
+  @State(Scope.Benchmark)
+  public static class SequentialState {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size = 0;
+
+    @Param({"1", "16", "1024"})
+    public int maxGap = 1;
+
+    long[] indexes;
+    Roaring64Bitmap bitmap;
+
+    @Setup()
+    public void setup() {
+      // monotonically increasing ids, which mostly share their high 48 bits with the previous id
+      Random r = new Random(0L);
+      indexes = new long[size];
+      long value = 1L << 45;
+      for (int i = 0; i < size; i++) {
+        value += 1 + r.nextInt(maxGap);
+        indexes[i] = value;
+      }
+      bitmap = Roaring64Bitmap.bitmapOf(indexes);
+    }
+  }
+
+  @Benchmark()
+  public void findSequential(SequentialState state, Blackhole blackhole) {
+    Roaring64Bitmap bitmap = state.bitmap;
+    for (long index : state.indexes) {
+      blackhole.consume(bitmap.contains(index));
+    }
+  }
+
   @Benchmark()
   public void findPresent(BenchmarkState state, Blackhole blackhole) {
     Roaring64Bitmap bitmap = state.bitmap;
@@ -0,0 +1,94 @@
+package org.roaringbitmap.longlong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the sequential operations of Roaring64NavigableMap with their variants spreading the
+ * buckets over a pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class ParallelRoaring64NavigableMap {
+
+  @Param({"16", "256"})
+  public int buckets;
+
+  @Param({"1", "4"})
+  public int parallelism;
+
+  private ForkJoinPool pool;
+  private Roaring64NavigableMap[] bitmaps;
+  private ByteBuffer buffer;
+
+  @Setup
+  public void setup() {
+    pool = new ForkJoinPool(parallelism);
+    Random random = new Random(0L);
+    bitmaps = new Roaring64NavigableMap[4];
+    for (int i = 0; i < bitmaps.length; i++) {
+      bitmaps[i] = new Roaring64NavigableMap();
+      for (int j = 0; j < 1 << 20; j++) {
+        bitmaps[i].addLong((long) random.nextInt(buckets) << 32 | random.nextInt(1 << 24));
+      }
+    }
+    buffer = ByteBuffer.allocate((int) bitmaps[0].serializedSizeInBytes());
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public Roaring64NavigableMap orSequential() {
+    Roaring64NavigableMap result = bitmaps[0].clone();
+    result.or(bitmaps[1]);
+    return result;
+  }
+
+  @Benchmark
+  public Roaring64NavigableMap orParallel() {
+    Roaring64NavigableMap result = bitmaps[0].clone();
+    result.or(bitmaps[1], pool);
+    return result;
+  }
+
+  @Benchmark
+  public Roaring64NavigableMap orManyParallel() {
+    return Roaring64NavigableMap.or(pool, bitmaps);
+  }
+
+  @Benchmark
+  public long cardinalityParallel() {
+    // forces the computation of every bucket cardinality
+    bitmaps[0].addLong(0L);
+    return bitmaps[0].getLongCardinality(pool);
+  }
+
+  @Benchmark
+  public ByteBuffer serializeParallel() {
+    buffer.clear();
+    bitmaps[0].serialize(buffer, pool);
+    return buffer;
+  }
+}
@@ -0,0 +1,102 @@
+package org.roaringbitmap.longlong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing rank and select performance between Roaring64Bitmap and
+ * FastRankRoaring64Bitmap.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 3, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Benchmark)
+public class RankRoaring64 {
+
+  private static final int LOOKUP_COUNT = 1000;
+
+  @Param({"1000", "100000", "1000000"})
+  private int containers;
+
+  @Param({"1", "100"})
+  private int valuesPerContainer;
+
+  private Roaring64Bitmap bitmap;
+  private FastRankRoaring64Bitmap fastRankBitmap;
+  private long[] lookupValues;
+  private long[] ranks;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(12345L);
+    long[] values = new long[containers * valuesPerContainer];
+    long high = 0;
+    for (int i = 0; i < containers; i++) {
+      high += 1 + random.nextInt(1 << 20);
+      for (int j = 0; j < valuesPerContainer; j++) {
+        values[i * valuesPerContainer + j] = (high << 16) | (j * 7);
+      }
+    }
+    bitmap = Roaring64Bitmap.bitmapOf(values);
+    fastRankBitmap = new FastRankRoaring64Bitmap();
+    fastRankBitmap.add(values);
+    lookupValues = new long[LOOKUP_COUNT];
+    ranks = new long[LOOKUP_COUNT];
+    for (int i = 0; i < LOOKUP_COUNT; i++) {
+      ranks[i] = random.nextInt(values.length);
+      lookupValues[i] = values[(int) ranks[i]];
+    }
+  }
+
+  @Benchmark
+  public void rankLong(Blackhole bh) {
+    for (long value : lookupValues) {
+      bh.consume(bitmap.rankLong(value));
+    }
+  }
+
+  @Benchmark
+  public void fastRankLong(Blackhole bh) {
+    for (long value : lookupValues) {
+      bh.consume(fastRankBitmap.rankLong(value));
+    }
+  }
+
+  @Benchmark
+  public void select(Blackhole bh) {
+    for (long rank : ranks) {
+      bh.consume(bitmap.select(rank));
+    }
+  }
+
+  @Benchmark
+  public void fastSelect(Blackhole bh) {
+    for (long rank : ranks) {
+      bh.consume(fastRankBitmap.select(rank));
+    }
+  }
+
+  @Benchmark
+  public void fastSelectAfterAdd(Blackhole bh) {
+    // dismisses the cumulated cardinalities from the container of the value onwards
+    fastRankBitmap.addLong(lookupValues[0]);
+    for (long rank : ranks) {
+      bh.consume(fastRankBitmap.select(rank));
+    }
+  }
+}
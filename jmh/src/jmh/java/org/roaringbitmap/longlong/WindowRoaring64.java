@@ -0,0 +1,102 @@
+package org.roaringbitmap.longlong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares bitmaps whose values fall in one or two windows of 2^32 values: a single window keeps
+ * the keys of Roaring64Bitmap in a plain array, however many containers it holds, while a second
+ * window brings its art in. Run with "-prof gc" to compare the memory of each layout through the
+ * normalized allocation of build.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class WindowRoaring64 {
+
+  private static final int LOOKUP_COUNT = 1000;
+
+  @Param({"Roaring64Bitmap", "Roaring64NavigableMap"})
+  public String implementation;
+
+  @Param({"1", "2"})
+  public int windows;
+
+  @Param({"16", "65536"})
+  public int containers;
+
+  @Param({"100000", "1000000"})
+  public int size;
+
+  private long[] values;
+  private long[] lookups;
+  private LongBitmapDataProvider bitmap;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0L);
+    values = new long[size];
+    for (int i = 0; i < size; i++) {
+      // the ids of each window spread over its first containers
+      long window = (long) (i % windows) << 32;
+      values[i] = window | (long) random.nextInt(containers) << 16 | random.nextInt(1 << 16);
+    }
+    bitmap = build();
+    lookups = new long[LOOKUP_COUNT];
+    for (int i = 0; i < LOOKUP_COUNT; i++) {
+      lookups[i] = values[random.nextInt(size)] ^ random.nextInt(2);
+    }
+  }
+
+  private LongBitmapDataProvider newBitmap() {
+    return "Roaring64Bitmap".equals(implementation)
+        ? new Roaring64Bitmap()
+        : new Roaring64NavigableMap();
+  }
+
+  @Benchmark
+  public LongBitmapDataProvider build() {
+    LongBitmapDataProvider fresh = newBitmap();
+    for (long value : values) {
+      fresh.addLong(value);
+    }
+    return fresh;
+  }
+
+  @Benchmark
+  public void contains(Blackhole bh) {
+    for (long lookup : lookups) {
+      bh.consume(bitmap.contains(lookup));
+    }
+  }
+
+  @Benchmark
+  public void forEach(Blackhole bh) {
+    bitmap.forEach(bh::consume);
+  }
+
+  @Benchmark
+  public long rankLong() {
+    long sum = 0;
+    for (int i = 0; i < 100; i++) {
+      sum += bitmap.rankLong(lookups[i]);
+    }
+    return sum;
+  }
+}
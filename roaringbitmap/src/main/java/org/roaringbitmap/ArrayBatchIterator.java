@@ -21,6 +21,16 @@ public final class ArrayBatchIterator implements ContainerBatchIterator {
     return consumed;
   }
 
+  @Override
+  public int next(long key, long[] buffer, int offset) {
+    int consumed = 0;
+    char[] data = array.content;
+    while ((offset + consumed) < buffer.length && index < array.getCardinality()) {
+      buffer[offset + consumed++] = key | (data[index++]);
+    }
+    return consumed;
+  }
+
   @Override
   public boolean hasNext() {
     return index < array.getCardinality();
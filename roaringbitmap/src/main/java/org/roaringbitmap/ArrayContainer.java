@@ -55,7 +55,7 @@ public final class ArrayContainer extends Container implements Cloneable {
    * @param capacity The capacity of the container
    */
   public ArrayContainer(final int capacity) {
-    content = new char[capacity];
+    content = ContainerPool.chars(capacity);
   }
 
   /**
@@ -100,6 +100,19 @@ public final class ArrayContainer extends Container implements Cloneable {
     this.content = newContent;
   }
 
+  /**
+   * Create a new container, no copy is made.
+   *
+   * @param content values, sorted, possibly followed by unused space
+   * @param cardinality how many values are used
+   * @return a container backed by the array
+   */
+  static ArrayContainer wrap(char[] content, int cardinality) {
+    ArrayContainer container = new ArrayContainer(content);
+    container.cardinality = cardinality;
+    return container;
+  }
+
   @Override
   public Container add(int begin, int end) {
     if (end == begin) {
@@ -635,7 +648,7 @@ public final class ArrayContainer extends Container implements Cloneable {
         && !allowIllegalSize) {
       newCapacity = ArrayContainer.DEFAULT_MAX_SIZE;
     }
-    this.content = Arrays.copyOf(this.content, newCapacity);
+    this.content = ContainerPool.grow(this.content, this.cardinality, newCapacity);
   }
 
   private int computeCapacity(int oldCapacity) {
@@ -29,6 +29,23 @@ public final class BitmapBatchIterator implements ContainerBatchIterator {
     return consumed;
   }
 
+  @Override
+  public int next(long key, long[] buffer, int offset) {
+    int consumed = 0;
+    while ((consumed + offset) < buffer.length) {
+      while (word == 0) {
+        ++wordIndex;
+        if (wordIndex == 1024) {
+          return consumed;
+        }
+        word = bitmap.bitmap[wordIndex];
+      }
+      buffer[offset + consumed++] = key | ((64 * wordIndex) + numberOfTrailingZeros(word));
+      word &= (word - 1);
+    }
+    return consumed;
+  }
+
   @Override
   public boolean hasNext() {
     if (wordIndex > 1023) {
@@ -83,7 +83,7 @@ public final class BitmapContainer extends Container implements Cloneable {
    */
   public BitmapContainer() {
     this.cardinality = 0;
-    this.bitmap = new long[MAX_CAPACITY_LONG];
+    this.bitmap = ContainerPool.words(true);
   }
 
   /**
@@ -95,13 +95,14 @@ public final class BitmapContainer extends Container implements Cloneable {
    */
   public BitmapContainer(final int firstOfRun, final int lastOfRun) {
     this.cardinality = lastOfRun - firstOfRun;
-    this.bitmap = new long[MAX_CAPACITY / 64];
+    this.bitmap = ContainerPool.words(true);
     Util.setBitmapRange(bitmap, firstOfRun, lastOfRun);
   }
 
   private BitmapContainer(int newCardinality, long[] newBitmap) {
     this.cardinality = newCardinality;
-    this.bitmap = Arrays.copyOf(newBitmap, newBitmap.length);
+    this.bitmap = ContainerPool.words(false);
+    System.arraycopy(newBitmap, 0, this.bitmap, 0, this.bitmap.length);
   }
 
   /**
@@ -688,6 +689,35 @@ public final class BitmapContainer extends Container implements Cloneable {
     return this;
   }
 
+  Container ilazyxor(ArrayContainer value2) {
+    this.cardinality = -1; // invalid
+    int c = value2.cardinality;
+    for (int k = 0; k < c; ++k) {
+      char v = value2.content[k];
+      final int i = (v) >>> 6;
+      this.bitmap[i] ^= (1L << v);
+    }
+    return this;
+  }
+
+  Container ilazyxor(BitmapContainer x) {
+    this.cardinality = -1; // invalid
+    for (int k = 0; k < this.bitmap.length; k++) {
+      this.bitmap[k] ^= x.bitmap[k];
+    }
+    return this;
+  }
+
+  Container ilazyxor(RunContainer x) {
+    cardinality = -1; // invalid
+    for (int rlepos = 0; rlepos < x.nbrruns; ++rlepos) {
+      int start = (x.getValue(rlepos));
+      int end = start + (x.getLength(rlepos)) + 1;
+      Util.flipBitmapRange(this.bitmap, start, end);
+    }
+    return this;
+  }
+
   @Override
   public Container inot(final int firstOfRange, final int lastOfRange) {
     int prevOnes = cardinalityInRange(firstOfRange, lastOfRange);
@@ -937,7 +967,7 @@ public final class BitmapContainer extends Container implements Cloneable {
       }
       return ac;
     }
-    long[] newBitmap = new long[MAX_CAPACITY / 64];
+    long[] newBitmap = ContainerPool.words(true);
     BitmapContainer bc = new BitmapContainer(newBitmap, maxcardinality);
     int s = (select(maxcardinality));
     int usedwords = (s + 63) / 64;
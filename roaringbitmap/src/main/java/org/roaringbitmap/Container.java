@@ -718,6 +718,25 @@ public abstract class Container
     }
   }
 
+  /**
+   * Computes the in-place bitwise XOR of this container with another (symmetric difference). The
+   * current container is generally modified, whereas the provided container (x) is unaffected. The
+   * result is a bitmap container which does not track its cardinality, and may even be empty: this
+   * can be fixed by calling repairAfterLazy on it.
+   *
+   * @param x other container
+   * @return aggregated container
+   */
+  public Container lazyIXOR(Container x) {
+    BitmapContainer answer = toBitmapContainer();
+    if (x instanceof ArrayContainer) {
+      return answer.ilazyxor((ArrayContainer) x);
+    } else if (x instanceof BitmapContainer) {
+      return answer.ilazyxor((BitmapContainer) x);
+    }
+    return answer.ilazyxor((RunContainer) x);
+  }
+
   /**
    * Computes the bitwise OR of this container with another (union). This container as well as the
    * provided container are left unaffected. The resulting container may not track its cardinality
@@ -23,6 +23,23 @@ public interface ContainerBatchIterator extends Cloneable {
     return next(key, buffer, 0);
   }
 
+  /**
+   * Fills the buffer with values prefixed by the high 48 bits of a 64 bit key,
+   * and returns how much of the buffer was used.
+   * @param key the prefix of the values, whose low 16 bits are zero
+   * @param buffer the buffer to write values onto
+   * @param offset the offset into the buffer to write values onto
+   * @return how many values were written.
+   */
+  default int next(long key, long[] buffer, int offset) {
+    int[] lows = new int[buffer.length - offset];
+    int consumed = next(0, lows, 0);
+    for (int i = 0; i < consumed; ++i) {
+      buffer[offset + i] = key | lows[i];
+    }
+    return consumed;
+  }
+
   /**
    * Whether the underlying container is exhausted or not
    * @return true if there is data remaining
@@ -0,0 +1,202 @@
+package org.roaringbitmap;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An opt-in, per-thread pool of the arrays backing containers. Workloads which deserialize,
+ * combine and discard many short-lived bitmaps can enable the pool on their worker threads and
+ * hand bitmaps back with {@link RoaringBitmap#recycle()} once they are done with them; the
+ * backing arrays are then reused by subsequent deserializations and operation results on the same
+ * thread instead of being allocated afresh.
+ *
+ * <pre>
+ * {@code
+ *      ContainerPool.enable();
+ *      try {
+ *        for (...) {
+ *          RoaringBitmap bitmap = new RoaringBitmap();
+ *          bitmap.deserialize(buffer);
+ *          RoaringBitmap result = RoaringBitmap.and(bitmap, filter);
+ *          // ... consume result
+ *          bitmap.recycle();
+ *          result.recycle();
+ *        }
+ *      } finally {
+ *        ContainerPool.disable();
+ *      }
+ * }
+ * </pre>
+ *
+ * Arrays are pooled by size class: the 1024 words of bitmap containers, and power of two
+ * capacities up to 4096 for array and run containers. Only arrays explicitly recycled are pooled,
+ * and at most a bounded number of arrays are retained per size class.
+ */
+public final class ContainerPool {
+
+  private static final int DEFAULT_MAX_ARRAYS_PER_CLASS = 256;
+  private static final int BITMAP_WORDS = BitmapContainer.MAX_CAPACITY / 64;
+  private static final int MIN_CHAR_CLASS = 2;
+  private static final int MAX_CHAR_CLASS = 12;
+
+  private static final ThreadLocal<ContainerPool> POOL = new ThreadLocal<>();
+  // avoids the thread local lookup entirely when no thread uses a pool
+  private static final AtomicInteger ENABLED_THREADS = new AtomicInteger();
+
+  /**
+   * Enables pooling on the current thread, retaining at most 256 arrays per size class.
+   */
+  public static void enable() {
+    enable(DEFAULT_MAX_ARRAYS_PER_CLASS);
+  }
+
+  /**
+   * Enables pooling on the current thread.
+   *
+   * @param maxArraysPerClass the maximum number of arrays retained per size class
+   */
+  public static void enable(int maxArraysPerClass) {
+    if (maxArraysPerClass <= 0) {
+      throw new IllegalArgumentException("maxArraysPerClass must be positive");
+    }
+    if (POOL.get() == null) {
+      ENABLED_THREADS.incrementAndGet();
+    }
+    POOL.set(new ContainerPool(maxArraysPerClass));
+  }
+
+  /**
+   * Disables pooling on the current thread, releasing all the retained arrays.
+   */
+  public static void disable() {
+    if (POOL.get() != null) {
+      POOL.remove();
+      ENABLED_THREADS.decrementAndGet();
+    }
+  }
+
+  /**
+   * @return whether pooling is enabled on the current thread
+   */
+  public static boolean isEnabled() {
+    return current() != null;
+  }
+
+  private static ContainerPool current() {
+    return ENABLED_THREADS.get() == 0 ? null : POOL.get();
+  }
+
+  /**
+   * Provides the words of a bitmap container.
+   *
+   * @param clean whether the words must be zeroed, callers overwriting all the words need not
+   * @return an array of 1024 words
+   */
+  static long[] words(boolean clean) {
+    ContainerPool pool = current();
+    if (pool != null && pool.wordCount > 0) {
+      long[] words = pool.words[--pool.wordCount];
+      pool.words[pool.wordCount] = null;
+      if (clean) {
+        Arrays.fill(words, 0L);
+      }
+      return words;
+    }
+    return new long[BITMAP_WORDS];
+  }
+
+  /**
+   * Provides an array of chars, the contents of which are undefined.
+   *
+   * @param minCapacity the minimum length of the array
+   * @return an array at least as long as required
+   */
+  static char[] chars(int minCapacity) {
+    ContainerPool pool = current();
+    if (pool != null) {
+      int sizeClass =
+          Math.max(MIN_CHAR_CLASS, 32 - Integer.numberOfLeadingZeros(minCapacity - 1));
+      if (sizeClass <= MAX_CHAR_CLASS) {
+        int index = sizeClass - MIN_CHAR_CLASS;
+        int count = pool.charCounts[index];
+        if (count > 0) {
+          char[][] free = pool.chars[index];
+          char[] chars = free[--count];
+          free[count] = null;
+          pool.charCounts[index] = count;
+          return chars;
+        }
+        return new char[1 << sizeClass];
+      }
+    }
+    return new char[minCapacity];
+  }
+
+  /**
+   * Copies the first values of the array into a larger one.
+   *
+   * @param array the array to copy
+   * @param length how many values to keep
+   * @param newCapacity the minimum length of the new array
+   * @return a new array starting with the values of the old one
+   */
+  static char[] grow(char[] array, int length, int newCapacity) {
+    if (current() == null) {
+      return Arrays.copyOf(array, newCapacity);
+    }
+    char[] grown = chars(newCapacity);
+    System.arraycopy(array, 0, grown, 0, length);
+    return grown;
+  }
+
+  /**
+   * Returns the arrays backing the container to the current thread's pool, if any. The container
+   * must not be used afterwards.
+   *
+   * @param container a container which is not referenced elsewhere
+   */
+  static void recycle(Container container) {
+    ContainerPool pool = current();
+    if (pool == null) {
+      return;
+    }
+    if (container instanceof BitmapContainer) {
+      pool.recycleWords(((BitmapContainer) container).bitmap);
+    } else if (container instanceof ArrayContainer) {
+      pool.recycleChars(((ArrayContainer) container).content);
+    } else if (container instanceof RunContainer) {
+      pool.recycleChars(((RunContainer) container).valueslength);
+    }
+  }
+
+  private final int maxArraysPerClass;
+  private final long[][] words;
+  private int wordCount;
+  private final char[][][] chars;
+  private final int[] charCounts;
+
+  private ContainerPool(int maxArraysPerClass) {
+    this.maxArraysPerClass = maxArraysPerClass;
+    this.words = new long[maxArraysPerClass][];
+    this.chars = new char[MAX_CHAR_CLASS - MIN_CHAR_CLASS + 1][maxArraysPerClass][];
+    this.charCounts = new int[MAX_CHAR_CLASS - MIN_CHAR_CLASS + 1];
+  }
+
+  private void recycleWords(long[] array) {
+    if (array.length == BITMAP_WORDS && wordCount < maxArraysPerClass) {
+      words[wordCount++] = array;
+    }
+  }
+
+  private void recycleChars(char[] array) {
+    if (array.length < 1 << MIN_CHAR_CLASS) {
+      return;
+    }
+    // an array belongs to the largest class it can serve
+    int sizeClass = Math.min(MAX_CHAR_CLASS, 31 - Integer.numberOfLeadingZeros(array.length));
+    int index = sizeClass - MIN_CHAR_CLASS;
+    if (charCounts[index] < maxArraysPerClass) {
+      chars[index][charCounts[index]++] = array;
+    }
+  }
+}
@@ -13,9 +13,17 @@ import org.roaringbitmap.buffer.MappeableRunContainer;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.LongBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.IntFunction;
+import java.util.function.LongConsumer;
+import java.util.function.ToLongFunction;
 
 /**
  * A 2D bitmap which associates values with a row index and can perform range queries.
@@ -27,6 +35,10 @@ public final class RangeBitmap {
   private static final int RUN = 1;
   private static final int ARRAY = 2;
   private static final int BITMAP_SIZE = 8192;
+  // the number of container keys evaluated by each task of a concurrent query
+  private static final int KEYS_PER_PART = 16;
+  // the number of ranges of an IN list evaluated in each pass, each needing two bitsets
+  private static final int RANGES_PER_PASS = 32;
 
   /**
    * Append values to the RangeBitmap before sealing it.
@@ -109,6 +121,13 @@ public final class RangeBitmap {
     this.bytesPerMask = bytesPerMask;
   }
 
+  /**
+   * @return the number of rows appended to the bitmap.
+   */
+  public long getRowCount() {
+    return max;
+  }
+
   /**
    * Returns a RoaringBitmap of rows which have a value in between the thresholds.
    *
@@ -229,6 +248,75 @@ public final class RangeBitmap {
     return new SingleEvaluation().countRange(threshold, true, context);
   }
 
+  /**
+   * Returns the number of rows which have a value less than or equal to each threshold. All the
+   * thresholds are evaluated in a single pass over the slices, which reads each container once
+   * rather than once per threshold.
+   *
+   * @param thresholds the inclusive maximum values, in any order.
+   * @return the number of matching rows for each threshold.
+   */
+  public long[] lteCardinalities(long[] thresholds) {
+    return new MultiEvaluation(thresholds).count(null);
+  }
+
+  /**
+   * Returns the number of rows which have a value less than or equal to each threshold,
+   * and intersect with the context bitmap, which will not be modified. All the thresholds are
+   * evaluated in a single pass over the slices.
+   *
+   * @param thresholds the inclusive maximum values, in any order.
+   * @param context   to be intersected with.
+   * @return the number of matching rows for each threshold.
+   */
+  public long[] lteCardinalities(long[] thresholds, RoaringBitmap context) {
+    if (context.isEmpty()) {
+      return new long[thresholds.length];
+    }
+    return new MultiEvaluation(thresholds).count(context);
+  }
+
+  /**
+   * Returns the number of rows whose value falls in each bucket, bucket i holding the values
+   * from boundaries[i] inclusive to boundaries[i + 1] exclusive. All the boundaries are
+   * evaluated in a single pass over the slices.
+   *
+   * @param boundaries the bucket boundaries, in increasing order.
+   * @return the number of matching rows for each of the boundaries.length - 1 buckets.
+   */
+  public long[] histogram(long[] boundaries) {
+    return histogram(boundaries, null);
+  }
+
+  /**
+   * Returns the number of rows whose value falls in each bucket, and intersect with the context
+   * bitmap, which will not be modified. Bucket i holds the values from boundaries[i] inclusive to
+   * boundaries[i + 1] exclusive.
+   *
+   * @param boundaries the bucket boundaries, in increasing order.
+   * @param context   to be intersected with.
+   * @return the number of matching rows for each of the boundaries.length - 1 buckets.
+   */
+  public long[] histogram(long[] boundaries, RoaringBitmap context) {
+    long[] thresholds = new long[boundaries.length];
+    for (int i = 0; i < boundaries.length; i++) {
+      if (i > 0 && Long.compareUnsigned(boundaries[i - 1], boundaries[i]) > 0) {
+        throw new IllegalArgumentException("boundaries must be increasing");
+      }
+      // values strictly less than the boundary, none below 0
+      thresholds[i] = boundaries[i] - 1;
+    }
+    long[] cumulated =
+        context == null ? lteCardinalities(thresholds) : lteCardinalities(thresholds, context);
+    long[] buckets = new long[Math.max(0, boundaries.length - 1)];
+    for (int i = 0; i < buckets.length; i++) {
+      long lower = boundaries[i] == 0 ? 0L : cumulated[i];
+      long upper = boundaries[i + 1] == 0 ? 0L : cumulated[i + 1];
+      buckets[i] = upper - lower;
+    }
+    return buckets;
+  }
+
   /**
    * Returns a RoaringBitmap of rows which have a value less than the threshold.
    *
@@ -447,6 +535,495 @@ public final class RangeBitmap {
     return new SingleEvaluation().countPoint(value, true, context);
   }
 
+  /**
+   * Returns a RoaringBitmap of rows which have a value equal to any of the values. Runs of
+   * consecutive values are evaluated as ranges, and all of them in a single pass over the slices.
+   *
+   * @param values the values to filter by, in any order.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap in(long[] values) {
+    return in(values, null);
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value equal to any of the values,
+   * and intersect with the context bitmap, which will not be modified.
+   *
+   * @param values the values to filter by, in any order.
+   * @param context to be intersected with.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap in(long[] values, RoaringBitmap context) {
+    RoaringBitmap result = new RoaringBitmap();
+    if (context != null && context.isEmpty()) {
+      return result;
+    }
+    long[][] runs = runsOf(values);
+    for (int from = 0; from < runs[0].length; from += RANGES_PER_PASS) {
+      int to = Math.min(runs[0].length, from + RANGES_PER_PASS);
+      RoaringArray output = new RoaringArray();
+      new MultiEvaluation(rangeThresholds(runs, from, to))
+          .computeRanges(to - from, context, output);
+      result.or(new RoaringBitmap(output));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of rows which have a value equal to any of the values.
+   *
+   * @param values the values to filter by, in any order.
+   * @return the number of matching rows.
+   */
+  public long inCardinality(long[] values) {
+    return inCardinality(values, null);
+  }
+
+  /**
+   * Returns the number of rows which have a value equal to any of the values,
+   * and intersect with the context bitmap, which will not be modified.
+   *
+   * @param values the values to filter by, in any order.
+   * @param context to be intersected with.
+   * @return the number of matching rows.
+   */
+  public long inCardinality(long[] values, RoaringBitmap context) {
+    if (context != null && context.isEmpty()) {
+      return 0L;
+    }
+    long[][] runs = runsOf(values);
+    long count = 0;
+    for (int from = 0; from < runs[0].length; from += RANGES_PER_PASS) {
+      int to = Math.min(runs[0].length, from + RANGES_PER_PASS);
+      // the runs are disjoint
+      count += new MultiEvaluation(rangeThresholds(runs, from, to)).countRanges(to - from, context);
+    }
+    return count;
+  }
+
+  /**
+   * Returns the sum of the values of all rows, wrapping around on overflow.
+   *
+   * @return the sum of the values.
+   */
+  public long sum() {
+    return new Aggregation().sum(null);
+  }
+
+  /**
+   * Returns the sum of the values of the rows in the context bitmap, which will not be
+   * modified, wrapping around on overflow. Each slice contributes its weight times the number
+   * of context rows with a one bit in this slice.
+   *
+   * @param context the rows to aggregate.
+   * @return the sum of the values.
+   */
+  public long sum(RoaringBitmap context) {
+    return new Aggregation().sum(context);
+  }
+
+  /**
+   * Returns the smallest value, as an unsigned value.
+   *
+   * @return the smallest value, or empty if there are no rows.
+   */
+  public OptionalLong min() {
+    return new Aggregation().extreme(null, false);
+  }
+
+  /**
+   * Returns the smallest value of the rows in the context bitmap, which will not be modified, as
+   * an unsigned value. The slices are walked down from the most significant one, narrowing the
+   * candidate rows to those with a zero bit whenever there are some.
+   *
+   * @param context the rows to aggregate.
+   * @return the smallest value, or empty if no row of the context is in this bitmap.
+   */
+  public OptionalLong min(RoaringBitmap context) {
+    return new Aggregation().extreme(context, false);
+  }
+
+  /**
+   * Returns the largest value, as an unsigned value.
+   *
+   * @return the largest value, or empty if there are no rows.
+   */
+  public OptionalLong max() {
+    return new Aggregation().extreme(null, true);
+  }
+
+  /**
+   * Returns the largest value of the rows in the context bitmap, which will not be modified, as
+   * an unsigned value. The slices are walked down from the most significant one, narrowing the
+   * candidate rows to those with a one bit whenever there are some.
+   *
+   * @param context the rows to aggregate.
+   * @return the largest value, or empty if no row of the context is in this bitmap.
+   */
+  public OptionalLong max(RoaringBitmap context) {
+    return new Aggregation().extreme(context, true);
+  }
+
+  /**
+   * Sorts the values which may be present, and merges them into runs of consecutive values.
+   *
+   * @return the first and the last value of each run.
+   */
+  private long[][] runsOf(long[] values) {
+    long[] sorted = new long[values.length];
+    int size = 0;
+    for (long value : values) {
+      if ((value & ~mask) == 0) {
+        // flip the sign bit to sort unsigned values
+        sorted[size++] = value ^ Long.MIN_VALUE;
+      }
+    }
+    Arrays.sort(sorted, 0, size);
+    long[] firsts = new long[size];
+    long[] lasts = new long[size];
+    int runs = 0;
+    for (int i = 0; i < size; i++) {
+      long value = sorted[i] ^ Long.MIN_VALUE;
+      if (runs > 0 && (value == lasts[runs - 1] || value == lasts[runs - 1] + 1)) {
+        lasts[runs - 1] = value;
+      } else {
+        firsts[runs] = value;
+        lasts[runs] = value;
+        runs++;
+      }
+    }
+    return new long[][] {Arrays.copyOf(firsts, runs), Arrays.copyOf(lasts, runs)};
+  }
+
+  /**
+   * The thresholds of MultiEvaluation.computeRanges: the last value of each run, then the value
+   * before the first of each run. A run starting at 0 has nothing below it, so it comes last and
+   * its lower threshold is left out.
+   */
+  private static long[] rangeThresholds(long[][] runs, int from, int to) {
+    int ranges = to - from;
+    boolean fromZero = runs[0][from] == 0;
+    long[] thresholds = new long[fromZero ? 2 * ranges - 1 : 2 * ranges];
+    for (int r = 0; r < ranges; r++) {
+      // the runs are sorted, only the first one may start at 0
+      int run = fromZero ? from + (r + 1) % ranges : from + r;
+      thresholds[r] = runs[1][run];
+      if (r + ranges < thresholds.length) {
+        thresholds[r + ranges] = runs[0][run] - 1;
+      }
+    }
+    return thresholds;
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value in between the thresholds,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param min the inclusive minimum value.
+   * @param max the inclusive maximum value.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap between(long min, long max, Executor executor) {
+    return computeByKeys(executor, bitmap -> bitmap.between(min, max));
+  }
+
+  /**
+   * Returns the number of rows which have a value in between the thresholds,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param min the inclusive minimum value.
+   * @param max the inclusive maximum value.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return the number of matching rows.
+   */
+  public long betweenCardinality(long min, long max, Executor executor) {
+    return countByKeys(executor, bitmap -> bitmap.betweenCardinality(min, max));
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value less than or equal to the threshold,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param threshold the inclusive maximum value.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap lte(long threshold, Executor executor) {
+    return computeByKeys(executor, bitmap -> bitmap.lte(threshold));
+  }
+
+  /**
+   * Returns the number of rows which have a value less than or equal to the threshold,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param threshold the inclusive maximum value.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return the number of matching rows.
+   */
+  public long lteCardinality(long threshold, Executor executor) {
+    return countByKeys(executor, bitmap -> bitmap.lteCardinality(threshold));
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value less than the threshold,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param threshold the exclusive maximum value.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap lt(long threshold, Executor executor) {
+    return computeByKeys(executor, bitmap -> bitmap.lt(threshold));
+  }
+
+  /**
+   * Returns the number of rows which have a value less than the threshold,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param threshold the exclusive maximum value.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return the number of matching rows.
+   */
+  public long ltCardinality(long threshold, Executor executor) {
+    return countByKeys(executor, bitmap -> bitmap.ltCardinality(threshold));
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value greater than the threshold,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param threshold the exclusive minimum value.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap gt(long threshold, Executor executor) {
+    return computeByKeys(executor, bitmap -> bitmap.gt(threshold));
+  }
+
+  /**
+   * Returns the number of rows which have a value greater than the threshold,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param threshold the exclusive minimum value.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return the number of matching rows.
+   */
+  public long gtCardinality(long threshold, Executor executor) {
+    return countByKeys(executor, bitmap -> bitmap.gtCardinality(threshold));
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value greater than or equal to the threshold,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param threshold the inclusive minimum value.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap gte(long threshold, Executor executor) {
+    return computeByKeys(executor, bitmap -> bitmap.gte(threshold));
+  }
+
+  /**
+   * Returns the number of rows which have a value greater than or equal to the threshold,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param threshold the inclusive minimum value.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return the number of matching rows.
+   */
+  public long gteCardinality(long threshold, Executor executor) {
+    return countByKeys(executor, bitmap -> bitmap.gteCardinality(threshold));
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value equal to the value,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param value the value to filter by.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap eq(long value, Executor executor) {
+    return computeByKeys(executor, bitmap -> bitmap.eq(value));
+  }
+
+  /**
+   * Returns the number of rows which have a value equal to the value,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param value the value to filter by.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return the number of matching rows.
+   */
+  public long eqCardinality(long value, Executor executor) {
+    return countByKeys(executor, bitmap -> bitmap.eqCardinality(value));
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value not equal to the value,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param value the value to filter by.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap neq(long value, Executor executor) {
+    return computeByKeys(executor, bitmap -> bitmap.neq(value));
+  }
+
+  /**
+   * Returns the number of rows which have a value not equal to the value,
+   * evaluating the container keys concurrently over the executor.
+   *
+   * @param value the value to filter by.
+   * @param executor runs the evaluation of ranges of container keys.
+   * @return the number of matching rows.
+   */
+  public long neqCardinality(long value, Executor executor) {
+    return countByKeys(executor, bitmap -> bitmap.neqCardinality(value));
+  }
+
+  private RoaringBitmap computeByKeys(
+      Executor executor, Function<RangeBitmap, RoaringBitmap> query) {
+    RangeBitmap[] parts = splitByKeys();
+    List<CompletableFuture<RoaringBitmap>> results = new ArrayList<>(parts.length);
+    for (RangeBitmap part : parts) {
+      results.add(CompletableFuture.supplyAsync(() -> query.apply(part), executor));
+    }
+    // the parts follow each other: their containers are appended in order
+    RoaringArray output = new RoaringArray();
+    for (int i = 0; i < parts.length; i++) {
+      RoaringArray partOutput = results.get(i).join().highLowContainer;
+      int firstKey = i * KEYS_PER_PART;
+      for (int j = 0; j < partOutput.size; j++) {
+        output.append((char) (firstKey + partOutput.keys[j]), partOutput.values[j]);
+      }
+    }
+    return new RoaringBitmap(output);
+  }
+
+  private long countByKeys(Executor executor, ToLongFunction<RangeBitmap> query) {
+    RangeBitmap[] parts = splitByKeys();
+    List<CompletableFuture<Long>> results = new ArrayList<>(parts.length);
+    for (RangeBitmap part : parts) {
+      results.add(CompletableFuture.supplyAsync(() -> query.applyAsLong(part), executor));
+    }
+    long count = 0;
+    for (CompletableFuture<Long> result : results) {
+      count += result.join();
+    }
+    return count;
+  }
+
+  /**
+   * Splits this bitmap into bitmaps over consecutive ranges of KEYS_PER_PART container keys,
+   * sharing the same buffer. Each part numbers its rows from 0.
+   */
+  private RangeBitmap[] splitByKeys() {
+    int keyCount = (int) ((max + 0xFFFF) >>> 16);
+    RangeBitmap[] parts = new RangeBitmap[(keyCount + KEYS_PER_PART - 1) / KEYS_PER_PART];
+    ByteBuffer source = buffer.slice().order(LITTLE_ENDIAN);
+    int position = containersOffset;
+    for (int key = 0; key < keyCount; key++) {
+      int mPos = masksOffset + key * bytesPerMask;
+      if (key % KEYS_PER_PART == 0) {
+        long firstRow = (long) key << 16;
+        long rows = Math.min(max - firstRow, (long) KEYS_PER_PART << 16);
+        parts[key / KEYS_PER_PART] =
+            new RangeBitmap(mask, rows, buffer, mPos, position, bytesPerMask);
+      }
+      long containerMask = getContainerMask(source, mPos, mask, bytesPerMask);
+      for (int i = 0; i < Long.bitCount(containerMask); i++) {
+        position = skipContainer(source, position);
+      }
+    }
+    return parts;
+  }
+
+  /**
+   * Decodes the value of each row, in row order. Rows absent from the container of a slice have
+   * the bit of this slice set.
+   *
+   * @param consumer receives the value of each row.
+   */
+  void forEachValue(LongConsumer consumer) {
+    ByteBuffer source = buffer.slice().order(LITTLE_ENDIAN);
+    long[] bits = new long[1024];
+    long[] values = new long[0x10000];
+    int position = containersOffset;
+    long remaining = max;
+    int mPos = masksOffset;
+    while (remaining > 0) {
+      long containerMask = getContainerMask(source, mPos, mask, bytesPerMask);
+      int limit = Math.min((int) remaining, 0x10000);
+      Arrays.fill(values, 0, limit, mask);
+      for (int slice = 0; slice < Long.bitCount(mask); ++slice) {
+        if ((containerMask >>> slice & 1) == 1) {
+          // the rows of the container have a zero bit in this slice
+          Arrays.fill(bits, 0L);
+          position = orContainerInto(source, position, bits);
+          long clear = ~(1L << slice);
+          for (int word = 0; word < bits.length; word++) {
+            long w = bits[word];
+            while (w != 0) {
+              values[(word << 6) + Long.numberOfTrailingZeros(w)] &= clear;
+              w &= w - 1;
+            }
+          }
+        }
+      }
+      for (int row = 0; row < limit; row++) {
+        consumer.accept(values[row]);
+      }
+      remaining -= 0x10000;
+      mPos += bytesPerMask;
+    }
+  }
+
+  private static int skipContainer(ByteBuffer buffer, int position) {
+    int type = buffer.get(position);
+    int size = buffer.getChar(position + 1) & 0xFFFF;
+    if (type == BITMAP) {
+      return position + 3 + BITMAP_SIZE;
+    }
+    return position + 3 + (size << (type == RUN ? 2 : 1));
+  }
+
+  private static int orContainerInto(ByteBuffer buffer, int position, long[] bits) {
+    int type = buffer.get(position);
+    int size = buffer.getChar(position + 1) & 0xFFFF;
+    int start = position + 3;
+    switch (type) {
+      case ARRAY:
+        {
+          CharBuffer cb =
+              (CharBuffer) ((ByteBuffer) buffer.position(start)).asCharBuffer().limit(size);
+          new MappeableArrayContainer(cb, size).orInto(bits);
+          return start + (size << 1);
+        }
+      case BITMAP:
+        {
+          LongBuffer lb =
+              (LongBuffer) ((ByteBuffer) buffer.position(start)).asLongBuffer().limit(1024);
+          new MappeableBitmapContainer(lb, size).orInto(bits);
+          return start + BITMAP_SIZE;
+        }
+      case RUN:
+        {
+          CharBuffer cb =
+              (CharBuffer) ((ByteBuffer) buffer.position(start)).asCharBuffer().limit(size << 1);
+          new MappeableRunContainer(cb, size).orInto(bits);
+          return start + (size << 2);
+        }
+      default:
+        throw new IllegalStateException(
+            "Unknown type " + type + " (this is a bug, please report it.)");
+    }
+  }
+
   private final class SingleEvaluation {
 
     private final long[] bits = new long[1024];
@@ -952,6 +1529,312 @@ public final class RangeBitmap {
     }
   }
 
+  private final class MultiEvaluation {
+
+    private final ByteBuffer buffer = RangeBitmap.this.buffer.slice().order(LITTLE_ENDIAN);
+    private final long[] thresholds;
+    // whether a threshold exceeds every value, so that all rows match
+    private final boolean[] above;
+    private final long[][] bits;
+    private final boolean[] empty;
+    private final long[] slice = new long[1024];
+
+    private int position = containersOffset;
+
+    MultiEvaluation(long[] thresholds) {
+      this.thresholds = thresholds;
+      this.above = new boolean[thresholds.length];
+      this.bits = new long[thresholds.length][];
+      this.empty = new boolean[thresholds.length];
+      for (int i = 0; i < thresholds.length; i++) {
+        above[i] = Long.numberOfLeadingZeros(thresholds[i]) < Long.numberOfLeadingZeros(mask);
+        if (!above[i]) {
+          bits[i] = new long[1024];
+        }
+      }
+    }
+
+    public long[] count(RoaringBitmap context) {
+      long[] counts = new long[thresholds.length];
+      evaluateKeys(
+          context,
+          (prefix, limit, contextContainer) -> {
+            for (int t = 0; t < thresholds.length; t++) {
+              if (!above[t] && !empty[t]) {
+                counts[t] += count(bits[t], limit, contextContainer);
+              }
+            }
+          });
+      for (int t = 0; t < thresholds.length; t++) {
+        if (above[t]) {
+          counts[t] = context == null ? max : context.getLongCardinality();
+        }
+      }
+      return counts;
+    }
+
+    /**
+     * Matches the rows within any of the ranges, the lower bound of range i being the threshold
+     * at i + ranges, if any, and its upper bound the threshold at i.
+     */
+    public void computeRanges(int ranges, RoaringBitmap context, RoaringArray output) {
+      long[] union = new long[1024];
+      evaluateKeys(
+          context,
+          (prefix, limit, contextContainer) -> {
+            if (unionOfRanges(ranges, union)) {
+              Container matches = new BitmapContainer(union, -1);
+              if (contextContainer != null) {
+                matches = matches.iand(contextContainer);
+              }
+              matches = matches.repairAfterLazy().runOptimize();
+              if (!matches.isEmpty()) {
+                output.append(
+                    (char) prefix, matches instanceof BitmapContainer ? matches.clone() : matches);
+              }
+            }
+          });
+    }
+
+    /**
+     * Counts the rows within any of the ranges, see computeRanges.
+     */
+    public long countRanges(int ranges, RoaringBitmap context) {
+      long[] union = new long[1024];
+      long[] total = new long[1];
+      evaluateKeys(
+          context,
+          (prefix, limit, contextContainer) -> {
+            if (unionOfRanges(ranges, union)) {
+              total[0] += count(union, limit, contextContainer);
+            }
+          });
+      return total[0];
+    }
+
+    private boolean unionOfRanges(int ranges, long[] union) {
+      Arrays.fill(union, 0L);
+      boolean nonEmpty = false;
+      for (int r = 0; r < ranges; r++) {
+        if (empty[r]) {
+          continue;
+        }
+        long[] upper = bits[r];
+        int lower = r + ranges;
+        if (lower < thresholds.length && !empty[lower]) {
+          long[] excluded = bits[lower];
+          for (int i = 0; i < union.length; i++) {
+            union[i] |= upper[i] & ~excluded[i];
+          }
+        } else {
+          for (int i = 0; i < union.length; i++) {
+            union[i] |= upper[i];
+          }
+        }
+        nonEmpty = true;
+      }
+      return nonEmpty;
+    }
+
+    private long count(long[] rows, int limit, Container contextContainer) {
+      return contextContainer == null
+          ? cardinalityInBitmapRange(rows, 0, limit)
+          : contextContainer.andCardinality(new BitmapContainer(rows, -1));
+    }
+
+    private void evaluateKeys(RoaringBitmap context, KeyConsumer consumer) {
+      RoaringArray contextArray = context == null ? null : context.highLowContainer;
+      int contextPos = 0;
+      long remaining = max;
+      int mPos = masksOffset;
+      for (int prefix = 0; remaining > 0; prefix++) {
+        if (contextArray != null && contextPos == contextArray.size) {
+          break;
+        }
+        long containerMask = getContainerMask(buffer, mPos, mask, bytesPerMask);
+        int limit = Math.min((int) remaining, 0x10000);
+        if (contextArray != null && prefix < contextArray.keys[contextPos]) {
+          for (int i = 0; i < Long.bitCount(containerMask); i++) {
+            position = skipContainer(buffer, position);
+          }
+        } else {
+          evaluateHorizontalSlice(containerMask, limit);
+          consumer.accept(
+              prefix, limit, contextArray == null ? null : contextArray.values[contextPos++]);
+        }
+        remaining -= 0x10000;
+        mPos += bytesPerMask;
+      }
+    }
+
+    private void evaluateHorizontalSlice(long containerMask, int limit) {
+      for (int t = 0; t < thresholds.length; t++) {
+        if (!above[t]) {
+          // every row is less than or equal until a slice tells otherwise
+          setBitmapRange(bits[t], 0, limit);
+          if (limit < 0x10000) {
+            resetBitmapRange(bits[t], limit, 0x10000);
+          }
+          empty[t] = false;
+        }
+      }
+      for (int s = 0; s < Long.bitCount(mask); ++s) {
+        if ((containerMask >>> s & 1) == 1) {
+          // the rows whose value has a zero bit in this slice, read once for every threshold
+          Arrays.fill(slice, 0L);
+          position = orContainerInto(buffer, position, slice);
+          for (int t = 0; t < thresholds.length; t++) {
+            if (above[t] || ((thresholds[t] >>> s & 1) == 0 && empty[t])) {
+              continue;
+            }
+            long[] b = bits[t];
+            if ((thresholds[t] >>> s & 1) == 1) {
+              for (int i = 0; i < b.length; i++) {
+                b[i] |= slice[i];
+              }
+              empty[t] = false;
+            } else {
+              for (int i = 0; i < b.length; i++) {
+                b[i] &= slice[i];
+              }
+            }
+          }
+        } else {
+          // no row has a zero bit in this slice: they all exceed thresholds with a zero bit
+          for (int t = 0; t < thresholds.length; t++) {
+            if (!above[t] && (thresholds[t] >>> s & 1) == 0 && !empty[t]) {
+              Arrays.fill(bits[t], 0L);
+              empty[t] = true;
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private final class Aggregation {
+
+    private final ByteBuffer buffer = RangeBitmap.this.buffer.slice().order(LITTLE_ENDIAN);
+    private final int sliceCount = Long.bitCount(mask);
+    // the position of the container of each slice of the current key, or -1
+    private final int[] slicePositions = new int[sliceCount];
+    private final long[] rows = new long[1024];
+    private final long[] slice = new long[1024];
+    private final long[] narrowed = new long[1024];
+
+    private int position = containersOffset;
+
+    public long sum(RoaringBitmap context) {
+      long[] sum = new long[1];
+      forEachKey(
+          context,
+          (prefix, limit, contextContainer) -> {
+            long rowCount = cardinalityInBitmapRange(rows, 0, limit);
+            for (int s = 0; s < sliceCount; ++s) {
+              long ones = rowCount;
+              if (slicePositions[s] >= 0) {
+                // the rows of the container have a zero bit in this slice
+                Arrays.fill(slice, 0L);
+                orContainerInto(buffer, slicePositions[s], slice);
+                for (int i = 0; i < slice.length; i++) {
+                  ones -= Long.bitCount(slice[i] & rows[i]);
+                }
+              }
+              sum[0] += ones << s;
+            }
+          });
+      return sum[0];
+    }
+
+    public OptionalLong extreme(RoaringBitmap context, boolean largest) {
+      long[] extreme = new long[1];
+      boolean[] found = new boolean[1];
+      forEachKey(
+          context,
+          (prefix, limit, contextContainer) -> {
+            long value = 0;
+            for (int s = sliceCount - 1; s >= 0; --s) {
+              if (slicePositions[s] < 0) {
+                // every row has a one bit in this slice
+                value |= 1L << s;
+                continue;
+              }
+              Arrays.fill(slice, 0L);
+              orContainerInto(buffer, slicePositions[s], slice);
+              // the smallest values have a zero bit, the largest a one bit
+              boolean any = false;
+              for (int i = 0; i < rows.length; i++) {
+                narrowed[i] = rows[i] & (largest ? ~slice[i] : slice[i]);
+                any |= narrowed[i] != 0;
+              }
+              if (any) {
+                System.arraycopy(narrowed, 0, rows, 0, rows.length);
+              }
+              if (any == largest) {
+                value |= 1L << s;
+              }
+            }
+            int comparison = Long.compareUnsigned(value, extreme[0]);
+            if (!found[0] || (largest ? comparison > 0 : comparison < 0)) {
+              extreme[0] = value;
+              found[0] = true;
+            }
+          });
+      return found[0] ? OptionalLong.of(extreme[0]) : OptionalLong.empty();
+    }
+
+    /**
+     * Visits each key with rows left, after setting the rows of the key which are in the context
+     * and locating the container of each slice.
+     */
+    private void forEachKey(RoaringBitmap context, KeyConsumer consumer) {
+      RoaringArray contextArray = context == null ? null : context.highLowContainer;
+      int contextPos = 0;
+      long remaining = max;
+      int mPos = masksOffset;
+      for (int prefix = 0; remaining > 0; prefix++) {
+        if (contextArray != null && contextPos == contextArray.size) {
+          break;
+        }
+        long containerMask = getContainerMask(buffer, mPos, mask, bytesPerMask);
+        int limit = Math.min((int) remaining, 0x10000);
+        boolean visited = contextArray == null || prefix == contextArray.keys[contextPos];
+        for (int s = 0; s < sliceCount; ++s) {
+          if ((containerMask >>> s & 1) == 1) {
+            slicePositions[s] = position;
+            position = skipContainer(buffer, position);
+          } else {
+            slicePositions[s] = -1;
+          }
+        }
+        if (visited) {
+          Container contextContainer = null;
+          if (contextArray == null) {
+            Arrays.fill(rows, 0L);
+            setBitmapRange(rows, 0, limit);
+          } else {
+            contextContainer = contextArray.values[contextPos++];
+            System.arraycopy(contextContainer.toBitmapContainer().bitmap, 0, rows, 0, rows.length);
+            if (limit < 0x10000) {
+              // the context may go beyond the last row
+              resetBitmapRange(rows, limit, 0x10000);
+            }
+          }
+          if (cardinalityInBitmapRange(rows, 0, limit) > 0) {
+            consumer.accept(prefix, limit, contextContainer);
+          }
+        }
+        remaining -= 0x10000;
+        mPos += bytesPerMask;
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface KeyConsumer {
+    void accept(int prefix, int limit, Container contextContainer);
+  }
+
   private final class DoubleEvaluation {
 
     private final ByteBuffer buffer = RangeBitmap.this.buffer.slice().order(LITTLE_ENDIAN);
@@ -15,6 +15,7 @@ import java.io.ObjectOutput;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.LongBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
 
@@ -26,6 +27,8 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
   private static final char SERIAL_COOKIE_NO_RUNCONTAINER = 12346;
   private static final char SERIAL_COOKIE = 12347;
   private static final int NO_OFFSET_THRESHOLD = 4;
+  // room for eight bitmap containers when writing to a channel
+  private static final int CHANNEL_STAGING_BYTES = 1 << 16;
 
   // bumped serialVersionUID with runcontainers, so default serialization
   // will not work...
@@ -315,7 +318,7 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
     for (int k = 0; k < this.size; ++k) {
       Container val;
       if (isBitmap[k]) {
-        final long[] bitmapArray = new long[BitmapContainer.MAX_CAPACITY / 64];
+        final long[] bitmapArray = ContainerPool.words(false);
         // little endian
         for (int l = 0; l < bitmapArray.length; ++l) {
           bitmapArray[l] = Long.reverseBytes(in.readLong());
@@ -325,18 +328,20 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
           && ((bitmapOfRunContainers[k / 8] & (1 << (k % 8))) != 0)) {
         // cf RunContainer.writeArray()
         int nbrruns = (Character.reverseBytes(in.readChar()));
-        final char[] lengthsAndValues = new char[2 * nbrruns];
+        final int valuesLength = 2 * nbrruns;
+        final char[] lengthsAndValues = ContainerPool.chars(valuesLength);
 
         for (int j = 0; j < 2 * nbrruns; ++j) {
           lengthsAndValues[j] = Character.reverseBytes(in.readChar());
         }
         val = new RunContainer(lengthsAndValues, nbrruns);
       } else {
-        final char[] charArray = new char[cardinalities[k]];
-        for (int l = 0; l < charArray.length; ++l) {
+        final int cardinality = cardinalities[k];
+        final char[] charArray = ContainerPool.chars(cardinality);
+        for (int l = 0; l < cardinality; ++l) {
           charArray[l] = Character.reverseBytes(in.readChar());
         }
-        val = new ArrayContainer(charArray);
+        val = ArrayContainer.wrap(charArray, cardinality);
       }
       this.keys[k] = keys[k];
       this.values[k] = val;
@@ -412,7 +417,7 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
     for (int k = 0; k < this.size; ++k) {
       Container val;
       if (isBitmap[k]) {
-        final long[] bitmapArray = new long[BitmapContainer.MAX_CAPACITY / 64];
+        final long[] bitmapArray = ContainerPool.words(false);
 
         if (buffer == null) {
           // a buffer to load a Container in a single .readFully
@@ -455,9 +460,10 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
           && ((bitmapOfRunContainers[k / 8] & (1 << (k % 8))) != 0)) {
         // cf RunContainer.writeArray()
         int nbrruns = (Character.reverseBytes(in.readChar()));
-        final char[] lengthsAndValues = new char[2 * nbrruns];
+        final int valuesLength = 2 * nbrruns;
+        final char[] lengthsAndValues = ContainerPool.chars(valuesLength);
 
-        if (buffer == null && lengthsAndValues.length > (BitmapContainer.MAX_CAPACITY / 64) * 8) {
+        if (buffer == null && valuesLength > (BitmapContainer.MAX_CAPACITY / 64) * 8) {
           // a buffer to load a Container in a single .readFully
           // We initialize it with the length of a BitmapContainer
           buffer = new byte[(BitmapContainer.MAX_CAPACITY / 64) * 8];
@@ -465,13 +471,13 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
 
         if (buffer == null) {
           // The RunContainer is small: skip the buffer allocation
-          for (int j = 0; j < lengthsAndValues.length; ++j) {
+          for (int j = 0; j < valuesLength; ++j) {
             lengthsAndValues[j] = Character.reverseBytes(in.readChar());
           }
         } else {
-          for (int iBlock = 0; iBlock <= 2 * lengthsAndValues.length / buffer.length; iBlock++) {
+          for (int iBlock = 0; iBlock <= 2 * valuesLength / buffer.length; iBlock++) {
             int start = buffer.length * iBlock;
-            int end = Math.min(buffer.length * (iBlock + 1), 2 * lengthsAndValues.length);
+            int end = Math.min(buffer.length * (iBlock + 1), 2 * valuesLength);
 
             in.readFully(buffer, 0, end - start);
 
@@ -487,9 +493,10 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
 
         val = new RunContainer(lengthsAndValues, nbrruns);
       } else {
-        final char[] charArray = new char[cardinalities[k]];
+        final int cardinality = cardinalities[k];
+        final char[] charArray = ContainerPool.chars(cardinality);
 
-        if (buffer == null && charArray.length > (BitmapContainer.MAX_CAPACITY / 64) * 8) {
+        if (buffer == null && cardinality > (BitmapContainer.MAX_CAPACITY / 64) * 8) {
           // a buffer to load a Container in a single .readFully
           // We initialize it with the length of a BitmapContainer
           buffer = new byte[(BitmapContainer.MAX_CAPACITY / 64) * 8];
@@ -497,13 +504,13 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
 
         if (buffer == null) {
           // The ArrayContainer is small: skip the buffer allocation
-          for (int j = 0; j < charArray.length; ++j) {
+          for (int j = 0; j < cardinality; ++j) {
             charArray[j] = Character.reverseBytes(in.readChar());
           }
         } else {
-          for (int iBlock = 0; iBlock <= 2 * charArray.length / buffer.length; iBlock++) {
+          for (int iBlock = 0; iBlock <= 2 * cardinality / buffer.length; iBlock++) {
             int start = buffer.length * iBlock;
-            int end = Math.min(buffer.length * (iBlock + 1), 2 * charArray.length);
+            int end = Math.min(buffer.length * (iBlock + 1), 2 * cardinality);
 
             in.readFully(buffer, 0, end - start);
 
@@ -517,7 +524,7 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
           }
         }
 
-        val = new ArrayContainer(charArray);
+        val = ArrayContainer.wrap(charArray, cardinality);
       }
       this.keys[k] = keys[k];
       this.values[k] = val;
@@ -594,7 +601,7 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
     for (int k = 0; k < this.size; ++k) {
       Container val;
       if (isBitmap[k]) {
-        final long[] bitmapArray = new long[BitmapContainer.MAX_CAPACITY / 64];
+        final long[] bitmapArray = ContainerPool.words(false);
 
         buffer.asLongBuffer().get(bitmapArray);
         buffer.position(buffer.position() + bitmapArray.length * 8);
@@ -604,19 +611,21 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
           && ((bitmapOfRunContainers[k / 8] & (1 << (k % 8))) != 0)) {
         // cf RunContainer.writeArray()
         int nbrruns = (buffer.getChar());
-        final char[] lengthsAndValues = new char[2 * nbrruns];
+        final int valuesLength = 2 * nbrruns;
+        final char[] lengthsAndValues = ContainerPool.chars(valuesLength);
 
-        buffer.asCharBuffer().get(lengthsAndValues);
-        buffer.position(buffer.position() + lengthsAndValues.length * 2);
+        buffer.asCharBuffer().get(lengthsAndValues, 0, valuesLength);
+        buffer.position(buffer.position() + valuesLength * 2);
 
         val = new RunContainer(lengthsAndValues, nbrruns);
       } else {
-        final char[] charArray = new char[cardinalities[k]];
+        final int cardinality = cardinalities[k];
+        final char[] charArray = ContainerPool.chars(cardinality);
 
-        buffer.asCharBuffer().get(charArray);
-        buffer.position(buffer.position() + charArray.length * 2);
+        buffer.asCharBuffer().get(charArray, 0, cardinality);
+        buffer.position(buffer.position() + cardinality * 2);
 
-        val = new ArrayContainer(charArray);
+        val = ArrayContainer.wrap(charArray, cardinality);
       }
       this.keys[k] = keys[k];
       this.values[k] = val;
@@ -825,11 +834,12 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
   static final int MERGE_OR = 0;
   static final int MERGE_XOR = 1;
   static final int MERGE_LAZY_OR = 2;
+  static final int MERGE_LAZY_XOR = 3;
 
   /**
-   * Finishes an in-place union/xor/lazy-union ({@code op}) once the receiver's structure must
-   * change, merging both suffixes into fresh arrays in one pass. Avoids the per-key insert/remove
-   * shift, which is quadratic when keys are interleaved.
+   * Finishes an in-place union/xor/lazy-union/lazy-xor ({@code op}) once the receiver's structure
+   * must change, merging both suffixes into fresh arrays in one pass. Avoids the per-key
+   * insert/remove shift, which is quadratic when keys are interleaved.
    *
    * <p>{@code [0, dst)} is already final and copied over. {@code left}/{@code right} are the
    * receiver/source scan positions. For a union {@code dst == left}; xor may pass
@@ -884,6 +894,9 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
           c = this.values[left].ixor(other.values[right]);
         } else if (op == MERGE_LAZY_OR) {
           c = this.values[left].toBitmapContainer().lazyIOR(other.values[right]);
+        } else if (op == MERGE_LAZY_XOR) {
+          // may be empty, which repairAfterLazy takes care of
+          c = this.values[left].lazyIXOR(other.values[right]);
         } else {
           c = this.values[left].ior(other.values[right]);
         }
@@ -994,6 +1007,64 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
    */
   public void serialize(ByteBuffer buffer) {
     ByteBuffer buf = buffer.order() == LITTLE_ENDIAN ? buffer : buffer.slice().order(LITTLE_ENDIAN);
+    writeHeader(buf);
+    for (int k = 0; k < size; ++k) {
+      values[k].writeArray(buf);
+    }
+    if (buf != buffer) {
+      buffer.position(buffer.position() + buf.position());
+    }
+  }
+
+  /**
+   * Serialize to a channel. The header is written from a small buffer, and the containers are
+   * staged through a heap buffer of at most 64 KB, so that no buffer the size of the whole bitmap
+   * is ever allocated, and small bitmaps only allocate what they need.
+   *
+   * The current bitmap is not modified.
+   *
+   * @param channel the channel to write to
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serialize(GatheringByteChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(headerSize()).order(LITTLE_ENDIAN);
+    writeHeader(header);
+    header.flip();
+    int stagingBytes = Math.min(serializedSizeInBytes() - header.limit(), CHANNEL_STAGING_BYTES);
+    ByteBuffer staging = ByteBuffer.allocate(stagingBytes).order(LITTLE_ENDIAN);
+    ByteBuffer[] pending = {header, staging};
+    for (int k = 0; k < size; ++k) {
+      Container container = values[k];
+      int bytes = container.getArraySizeInBytes();
+      if (bytes > staging.remaining()) {
+        staging.flip();
+        writeFully(channel, pending);
+        staging.clear();
+        if (bytes > staging.capacity()) {
+          // only run containers with very many runs can outgrow the staging buffer
+          ByteBuffer large = ByteBuffer.allocate(bytes).order(LITTLE_ENDIAN);
+          container.writeArray(large);
+          large.flip();
+          writeFully(channel, new ByteBuffer[] {large});
+          continue;
+        }
+      }
+      container.writeArray(staging);
+    }
+    staging.flip();
+    writeFully(channel, pending);
+  }
+
+  private static void writeFully(GatheringByteChannel channel, ByteBuffer[] buffers)
+      throws IOException {
+    for (ByteBuffer buffer : buffers) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffers);
+      }
+    }
+  }
+
+  private void writeHeader(ByteBuffer buf) {
     int startOffset;
     boolean hasrun = hasRunContainer();
     if (hasrun) {
@@ -1030,12 +1101,6 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
         startOffset = startOffset + this.values[k].getArraySizeInBytes();
       }
     }
-    for (int k = 0; k < size; ++k) {
-      values[k].writeArray(buf);
-    }
-    if (buf != buffer) {
-      buffer.position(buffer.position() + buf.position());
-    }
   }
 
   /**
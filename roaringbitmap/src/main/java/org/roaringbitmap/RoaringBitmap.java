@@ -20,6 +20,7 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.util.Iterator;
 
 /**
@@ -1735,6 +1736,24 @@ public class RoaringBitmap
     highLowContainer = new RoaringArray(); // lose references
   }
 
+  /**
+   * Empties this bitmap, handing the arrays backing its containers to the current thread's
+   * {@link ContainerPool} when it is enabled, so they can be reused by subsequent deserializations
+   * and operations. When pooling is disabled on the current thread, this is equivalent to
+   * {@link #clear()}.
+   *
+   * The caller must ensure that no other bitmap shares containers with this one (for instance as
+   * the result of a lazy operation).
+   */
+  public void recycle() {
+    if (ContainerPool.isEnabled()) {
+      for (int i = 0; i < highLowContainer.size(); ++i) {
+        ContainerPool.recycle(highLowContainer.getContainerAtIndex(i));
+      }
+    }
+    clear();
+  }
+
   @Override
   public RoaringBitmap clone() {
     try {
@@ -1776,14 +1795,15 @@ public class RoaringBitmap
       return false;
     }
     char firstKey = Util.highbits(minimum);
-    char lastKey = Util.highbits(supremum);
+    // the supremum may be 1 << 32, past the last key
+    int lastKey = (int) (supremum >>> 16);
     int span = lastKey - firstKey;
     int len = highLowContainer.size;
     if (len < span) {
       return false;
     }
     int begin = highLowContainer.getIndex(firstKey);
-    int end = highLowContainer.getIndex(lastKey);
+    int end = lastKey > 0xFFFF ? len : highLowContainer.getIndex((char) lastKey);
     end = end < 0 ? -end - 1 : end;
     if (begin < 0 || end - begin != span) {
       return false;
@@ -2506,6 +2526,53 @@ public class RoaringBitmap
     }
   }
 
+  // don't forget to call repairAfterLazy() afterward
+  // important: x2 should not have been computed lazily
+  // like naivelazyor, the common containers are converted to bitsets, which may end up empty
+  protected void naivelazyxor(RoaringBitmap x2) {
+    if (this == x2) {
+      clear();
+      return;
+    }
+    int pos1 = 0, pos2 = 0;
+    int length1 = highLowContainer.size();
+    final int length2 = x2.highLowContainer.size();
+    main:
+    if (pos1 < length1 && pos2 < length2) {
+      char s1 = highLowContainer.getKeyAtIndex(pos1);
+      char s2 = x2.highLowContainer.getKeyAtIndex(pos2);
+
+      while (true) {
+        if (s1 == s2) {
+          Container c1 = highLowContainer.getContainerAtIndex(pos1);
+          this.highLowContainer.setContainerAtIndex(
+              pos1, c1.lazyIXOR(x2.highLowContainer.getContainerAtIndex(pos2)));
+          pos1++;
+          pos2++;
+          if ((pos1 == length1) || (pos2 == length2)) {
+            break main;
+          }
+          s1 = highLowContainer.getKeyAtIndex(pos1);
+          s2 = x2.highLowContainer.getKeyAtIndex(pos2);
+        } else if (s1 < s2) {
+          pos1++;
+          if (pos1 == length1) {
+            break main;
+          }
+          s1 = highLowContainer.getKeyAtIndex(pos1);
+        } else {
+          // source-only insert: bulk-merge the rest (insert per key would be quadratic)
+          highLowContainer.mergeBulk(
+              x2.highLowContainer, pos1, pos1, pos2, RoaringArray.MERGE_LAZY_XOR);
+          return;
+        }
+      }
+    }
+    if (pos1 == length1) {
+      highLowContainer.appendCopy(x2.highLowContainer, pos2, length2);
+    }
+  }
+
   /**
    * Create a new Roaring bitmap containing at most maxcardinality integers.
    *
@@ -2805,12 +2872,17 @@ public class RoaringBitmap
     return answer;
   }
 
-  // to be used with lazyor
+  // to be used with lazyor and naivelazyxor, the latter possibly leaving empty containers
   protected void repairAfterLazy() {
+    int length = 0;
     for (int k = 0; k < highLowContainer.size(); ++k) {
-      Container c = highLowContainer.getContainerAtIndex(k);
-      highLowContainer.setContainerAtIndex(k, c.repairAfterLazy());
+      Container c = highLowContainer.getContainerAtIndex(k).repairAfterLazy();
+      if (!c.isEmpty()) {
+        char key = highLowContainer.getKeyAtIndex(k);
+        highLowContainer.replaceKeyAndContainerAtIndex(length++, key, c);
+      }
     }
+    highLowContainer.resize(length);
   }
 
   /**
@@ -2961,7 +3033,7 @@ public class RoaringBitmap
       return Util.toUnsignedLong(fromValue);
     }
     char containerKey = highLowContainer.getKeyAtIndex(containerIndex);
-    if (fromValue < containerKey << 16) {
+    if (key < containerKey) {
       return Util.toUnsignedLong(fromValue);
     }
     Container container = highLowContainer.getContainerAtIndex(containerIndex);
@@ -2991,7 +3063,7 @@ public class RoaringBitmap
     long prevAbsentBit = computePreviousAbsentValue(fromValue);
     assert prevAbsentBit <= 0xFFFFFFFFL;
     assert prevAbsentBit <= Util.toUnsignedLong(fromValue);
-    assert !contains((int) prevAbsentBit);
+    assert prevAbsentBit == -1L || !contains((int) prevAbsentBit);
     return prevAbsentBit;
   }
 
@@ -3003,7 +3075,7 @@ public class RoaringBitmap
       return Util.toUnsignedLong(fromValue);
     }
     char containerKey = highLowContainer.getKeyAtIndex(containerIndex);
-    if (fromValue < containerKey << 16) {
+    if (key < containerKey) {
       return Util.toUnsignedLong(fromValue);
     }
     Container container = highLowContainer.getContainerAtIndex(containerIndex);
@@ -3079,6 +3151,22 @@ public class RoaringBitmap
     highLowContainer.serialize(buffer);
   }
 
+  /**
+   * Serialize this bitmap to a channel, using the same format as {@link #serialize(ByteBuffer)}.
+   *
+   * Unlike {@link #serialize(ByteBuffer)}, this does not require a buffer large enough to hold the
+   * whole bitmap: the header is written first, then the containers are written in bounded chunks.
+   * This is preferable when writing large bitmaps to files or sockets.
+   *
+   * The current bitmap is not modified.
+   *
+   * @param channel the channel to write to
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serialize(GatheringByteChannel channel) throws IOException {
+    highLowContainer.serialize(channel);
+  }
+
   /**
    * Assume that one wants to store "cardinality" integers in [0, universe_size), this function
    * returns an upper bound on the serialized size in bytes.
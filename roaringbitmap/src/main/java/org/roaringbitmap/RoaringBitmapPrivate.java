@@ -12,6 +12,10 @@ public class RoaringBitmapPrivate {
     x1.naivelazyor(x2);
   }
 
+  public static void naivelazyxor(RoaringBitmap x1, RoaringBitmap x2) {
+    x1.naivelazyxor(x2);
+  }
+
   public static void repairAfterLazy(RoaringBitmap r) {
     r.repairAfterLazy();
   }
@@ -34,6 +34,30 @@ public final class RunBatchIterator implements ContainerBatchIterator {
     return consumed;
   }
 
+  @Override
+  public int next(long key, long[] buffer, int offset) {
+    int consumed = 0;
+    do {
+      int runStart = (runs.getValue(run));
+      int runLength = (runs.getLength(run));
+      int chunkStart = runStart + cursor;
+      int usableBufferLength = buffer.length - offset - consumed;
+      int chunkEnd = chunkStart + Math.min(runLength - cursor, usableBufferLength - 1);
+      int chunk = chunkEnd - chunkStart + 1;
+      for (int i = 0; i < chunk; ++i) {
+        buffer[offset + consumed + i] = key | (chunkStart + i);
+      }
+      consumed += chunk;
+      if (runStart + runLength == chunkEnd) {
+        ++run;
+        cursor = 0;
+      } else {
+        cursor += chunk;
+      }
+    } while ((offset + consumed) < buffer.length && run != runs.numberOfRuns());
+    return consumed;
+  }
+
   @Override
   public boolean hasNext() {
     return run < runs.numberOfRuns();
@@ -91,7 +91,7 @@ public final class RunContainer extends Container implements Cloneable {
     }
   }
 
-  private char[] valueslength; // we interleave values and lengths, so
+  char[] valueslength; // we interleave values and lengths, so
   // that if you have the values 11,12,13,14,15, you store that as 11,4 where 4 means that beyond 11
   // itself, there are
   // 4 contiguous values that follows.
@@ -202,7 +202,7 @@ public final class RunContainer extends Container implements Cloneable {
    * @param capacity The capacity of the container
    */
   public RunContainer(final int capacity) {
-    valueslength = new char[2 * capacity];
+    valueslength = ContainerPool.chars(2 * capacity);
   }
 
   private RunContainer(int nbrruns, char[] valueslength) {
@@ -0,0 +1,322 @@
+package org.roaringbitmap;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * An appendable range index: rows are appended to an active {@link RangeBitmap.Appender}, which
+ * is sealed into an immutable {@link RangeBitmap} segment every so many rows, or on demand. Each
+ * segment covers the consecutive row indexes following those of the previous segment, so that
+ * queries evaluate each segment and shift its matching rows by the first row of the segment.
+ * <p>
+ * Queries see the rows of the sealed segments only: call {@link #seal()} to make the rows
+ * appended since the last seal visible. Rows must be appended from a single thread, while queries
+ * and {@link #merge(long)} may run concurrently from other threads: merging small segments into
+ * larger ones can thus happen in the background, off the query path.
+ */
+public final class SegmentedRangeBitmap {
+
+  private final long maxValue;
+  private final long rowsPerSegment;
+  private final RangeBitmap.Appender appender;
+  private final Object mergeLock = new Object();
+  private long activeRows;
+
+  // replaced as a whole, never modified, so that queries need no lock
+  private volatile Segment[] segments = new Segment[0];
+
+  /**
+   * @param maxValue the maximum value to be appended, values larger than this value will be
+   *                 rejected.
+   * @param rowsPerSegment the number of rows after which the active segment is sealed.
+   */
+  public SegmentedRangeBitmap(long maxValue, long rowsPerSegment) {
+    if (rowsPerSegment <= 0) {
+      throw new IllegalArgumentException("rowsPerSegment must be positive: " + rowsPerSegment);
+    }
+    this.maxValue = maxValue;
+    this.rowsPerSegment = rowsPerSegment;
+    this.appender = RangeBitmap.appender(maxValue);
+  }
+
+  /**
+   * Adds the value and associates it with the next row index.
+   *
+   * @param value the value, will be rejected if greater than max value.
+   */
+  public void add(long value) {
+    appender.add(value);
+    if (++activeRows == rowsPerSegment) {
+      seal();
+    }
+  }
+
+  /**
+   * Seals the rows appended since the last seal into a new segment, making them visible to
+   * queries.
+   */
+  public void seal() {
+    if (activeRows == 0) {
+      return;
+    }
+    RangeBitmap bitmap = appender.build();
+    // the sealed bitmap owns a copy of the appended rows
+    appender.clear();
+    synchronized (this) {
+      Segment[] current = segments;
+      Segment[] sealed = Arrays.copyOf(current, current.length + 1);
+      sealed[current.length] = new Segment(rowCount(current), activeRows, bitmap);
+      segments = sealed;
+    }
+    activeRows = 0;
+  }
+
+  /**
+   * Merges runs of consecutive segments into segments of at most the given number of rows. This
+   * may be called from a background thread while rows are appended and queries run: the merged
+   * segments replace the original ones at once.
+   *
+   * @param maxRowsPerSegment the maximum number of rows of a merged segment.
+   * @return whether any segments were merged.
+   */
+  public boolean merge(long maxRowsPerSegment) {
+    synchronized (mergeLock) {
+      Segment[] snapshot = segments;
+      Segment[] merged = new Segment[snapshot.length];
+      int size = 0;
+      for (int from = 0; from < snapshot.length; ) {
+        int to = from + 1;
+        long rows = snapshot[from].rows;
+        while (to < snapshot.length && rows + snapshot[to].rows <= maxRowsPerSegment) {
+          rows += snapshot[to].rows;
+          to++;
+        }
+        merged[size++] = to - from == 1 ? snapshot[from] : merge(snapshot, from, to, rows);
+        from = to;
+      }
+      if (size == snapshot.length) {
+        return false;
+      }
+      synchronized (this) {
+        // segments may only have been sealed since the snapshot, after the merged ones
+        Segment[] current = segments;
+        Segment[] replaced = Arrays.copyOf(merged, size + current.length - snapshot.length);
+        System.arraycopy(
+            current, snapshot.length, replaced, size, current.length - snapshot.length);
+        segments = replaced;
+      }
+      return true;
+    }
+  }
+
+  private Segment merge(Segment[] snapshot, int from, int to, long rows) {
+    RangeBitmap.Appender merging = RangeBitmap.appender(maxValue);
+    for (int i = from; i < to; i++) {
+      snapshot[i].bitmap.forEachValue(merging::add);
+    }
+    return new Segment(snapshot[from].offset, rows, merging.build());
+  }
+
+  /**
+   * @return the number of segments, not counting the active one.
+   */
+  public int getSegmentCount() {
+    return segments.length;
+  }
+
+  /**
+   * @return the number of rows visible to queries.
+   */
+  public long getSealedRowCount() {
+    return rowCount(segments);
+  }
+
+  /**
+   * @return the number of rows appended, including those not sealed yet.
+   */
+  public long getRowCount() {
+    return getSealedRowCount() + activeRows;
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value in between the thresholds.
+   *
+   * @param min the inclusive minimum value.
+   * @param max the inclusive maximum value.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap between(long min, long max) {
+    return stitch(segments, bitmap -> bitmap.between(min, max));
+  }
+
+  /**
+   * Returns the number of rows which have a value in between the thresholds.
+   *
+   * @param min the inclusive minimum value.
+   * @param max the inclusive maximum value.
+   * @return the number of matching rows.
+   */
+  public long betweenCardinality(long min, long max) {
+    return count(segments, bitmap -> bitmap.betweenCardinality(min, max));
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value less than or equal to the threshold.
+   *
+   * @param threshold the inclusive maximum value.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap lte(long threshold) {
+    return stitch(segments, bitmap -> bitmap.lte(threshold));
+  }
+
+  /**
+   * Returns the number of rows which have a value less than or equal to the threshold.
+   *
+   * @param threshold the inclusive maximum value.
+   * @return the number of matching rows.
+   */
+  public long lteCardinality(long threshold) {
+    return count(segments, bitmap -> bitmap.lteCardinality(threshold));
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value less than the threshold.
+   *
+   * @param threshold the exclusive maximum value.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap lt(long threshold) {
+    return stitch(segments, bitmap -> bitmap.lt(threshold));
+  }
+
+  /**
+   * Returns the number of rows which have a value less than the threshold.
+   *
+   * @param threshold the exclusive maximum value.
+   * @return the number of matching rows.
+   */
+  public long ltCardinality(long threshold) {
+    return count(segments, bitmap -> bitmap.ltCardinality(threshold));
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value greater than the threshold.
+   *
+   * @param threshold the exclusive minimum value.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap gt(long threshold) {
+    return stitch(segments, bitmap -> bitmap.gt(threshold));
+  }
+
+  /**
+   * Returns the number of rows which have a value greater than the threshold.
+   *
+   * @param threshold the exclusive minimum value.
+   * @return the number of matching rows.
+   */
+  public long gtCardinality(long threshold) {
+    return count(segments, bitmap -> bitmap.gtCardinality(threshold));
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value greater than or equal to the threshold.
+   *
+   * @param threshold the inclusive minimum value.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap gte(long threshold) {
+    return stitch(segments, bitmap -> bitmap.gte(threshold));
+  }
+
+  /**
+   * Returns the number of rows which have a value greater than or equal to the threshold.
+   *
+   * @param threshold the inclusive minimum value.
+   * @return the number of matching rows.
+   */
+  public long gteCardinality(long threshold) {
+    return count(segments, bitmap -> bitmap.gteCardinality(threshold));
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value equal to the value.
+   *
+   * @param value the value to filter by.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap eq(long value) {
+    return stitch(segments, bitmap -> bitmap.eq(value));
+  }
+
+  /**
+   * Returns the number of rows which have a value equal to the value.
+   *
+   * @param value the value to filter by.
+   * @return the number of matching rows.
+   */
+  public long eqCardinality(long value) {
+    return count(segments, bitmap -> bitmap.eqCardinality(value));
+  }
+
+  /**
+   * Returns a RoaringBitmap of rows which have a value not equal to the value.
+   *
+   * @param value the value to filter by.
+   * @return a bitmap of matching rows.
+   */
+  public RoaringBitmap neq(long value) {
+    return stitch(segments, bitmap -> bitmap.neq(value));
+  }
+
+  /**
+   * Returns the number of rows which have a value not equal to the value.
+   *
+   * @param value the value to filter by.
+   * @return the number of matching rows.
+   */
+  public long neqCardinality(long value) {
+    return count(segments, bitmap -> bitmap.neqCardinality(value));
+  }
+
+  private static RoaringBitmap stitch(
+      Segment[] segments, Function<RangeBitmap, RoaringBitmap> query) {
+    RoaringBitmap result = new RoaringBitmap();
+    for (Segment segment : segments) {
+      RoaringBitmap matches = query.apply(segment.bitmap);
+      // the segments follow each other: the shifted rows come after those already matched
+      result.or(segment.offset == 0 ? matches : RoaringBitmap.addOffset(matches, segment.offset));
+    }
+    return result;
+  }
+
+  private static long count(Segment[] segments, ToLongFunction<RangeBitmap> query) {
+    long count = 0;
+    for (Segment segment : segments) {
+      count += query.applyAsLong(segment.bitmap);
+    }
+    return count;
+  }
+
+  private static long rowCount(Segment[] segments) {
+    if (segments.length == 0) {
+      return 0L;
+    }
+    Segment last = segments[segments.length - 1];
+    return last.offset + last.rows;
+  }
+
+  private static final class Segment {
+    private final long offset;
+    private final long rows;
+    private final RangeBitmap bitmap;
+
+    private Segment(long offset, long rows, RangeBitmap bitmap) {
+      this.offset = offset;
+      this.rows = rows;
+      this.bitmap = bitmap;
+    }
+  }
+}
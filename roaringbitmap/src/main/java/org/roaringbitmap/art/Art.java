@@ -38,6 +38,71 @@ public class Art {
     return root == null;
   }
 
+  /**
+   * Builds an art from keys in ascending order in a single pass, creating each node at its final
+   * size rather than growing it insertion by insertion.
+   *
+   * @param keys the high 48 bit keys, as returned by {@link LeafNode#getKey()}, strictly
+   *     increasing in unsigned order
+   * @param containerIdxs the container index corresponding to each key
+   * @param size the number of keys to use
+   * @return an art holding the keys
+   */
+  public static Art ofSortedKeys(long[] keys, long[] containerIdxs, int size) {
+    Art art = new Art();
+    for (int i = 1; i < size; i++) {
+      if (Long.compareUnsigned(keys[i - 1], keys[i]) >= 0) {
+        throw new IllegalArgumentException("keys must be strictly increasing");
+      }
+    }
+    if (size > 0) {
+      art.root = build(keys, containerIdxs, 0, size, 0);
+    }
+    art.keySize = size;
+    return art;
+  }
+
+  private static Node build(long[] keys, long[] containerIdxs, int from, int to, int depth) {
+    if (to - from == 1) {
+      return new LeafNode(keys[from] << 16, containerIdxs[from]);
+    }
+    // the keys are sorted, so the first and the last key share the prefix of the whole range
+    long first = keys[from] << 16;
+    int mismatch = Long.numberOfLeadingZeros(first ^ (keys[to - 1] << 16)) >>> 3;
+    int prefixLength = mismatch - depth;
+    int childCount = 1;
+    for (int i = from + 1; i < to; i++) {
+      if (LongUtils.getByte(keys[i] << 16, mismatch)
+          != LongUtils.getByte(keys[i - 1] << 16, mismatch)) {
+        childCount++;
+      }
+    }
+    BranchNode branchNode;
+    if (childCount <= 4) {
+      branchNode = new Node4(prefixLength);
+    } else if (childCount <= 16) {
+      branchNode = new Node16(prefixLength);
+    } else if (childCount <= 48) {
+      branchNode = new Node48(prefixLength);
+    } else {
+      branchNode = new Node256(prefixLength);
+    }
+    for (int i = 0; i < prefixLength; i++) {
+      branchNode.prefix[i] = LongUtils.getByte(first, depth + i);
+    }
+    int start = from;
+    while (start < to) {
+      byte childKey = LongUtils.getByte(keys[start] << 16, mismatch);
+      int end = start + 1;
+      while (end < to && LongUtils.getByte(keys[end] << 16, mismatch) == childKey) {
+        end++;
+      }
+      branchNode.insert(build(keys, containerIdxs, start, end, mismatch + 1), childKey);
+      start = end;
+    }
+    return branchNode;
+  }
+
   /**
    * insert the 48 bit key and the corresponding containerIdx
    *
@@ -77,6 +142,14 @@ public class Art {
     return BranchNode.ILLEGAL_IDX;
   }
 
+  /**
+   * @param key the high 48 bit of the long data
+   * @return the key's leaf node, or null when the key is absent
+   */
+  public LeafNode findLeafByKey(long key) {
+    return findByKey(root, key);
+  }
+
   private Node findByKey(Node node, byte[] key, int depth) {
     while (node != null) {
       if (node instanceof LeafNode) {
@@ -29,6 +29,8 @@ public class Containers {
   private static final byte NOT_NULL_MARK = 1;
   private static final byte TRIMMED_MARK = -1;
   private static final byte NOT_TRIMMED_MARK = -2;
+  // removed containers leave their slot empty, compacting pays off once empty slots dominate
+  private static final int MIN_DEAD_SLOTS_TO_COMPACT = 64;
 
   /**
    * Constructor
@@ -151,6 +153,79 @@ public class Containers {
     return containerSize;
   }
 
+  /**
+   * the number of slots left empty by removed containers, which are only reclaimed by a
+   * compaction
+   *
+   * @return the number of dead slots
+   */
+  public long getDeadSlotSize() {
+    long slotSize =
+        firstLevelIdx == -1 ? 0L : (long) firstLevelIdx * MAX_JVM_ARRAY_OFFSET + secondLevelIdx + 1;
+    return slotSize - containerSize;
+  }
+
+  /**
+   * whether the dead slots outnumber the holding containers, so that a compaction is worthwhile
+   *
+   * @return true if a compaction would reclaim most of the slots
+   */
+  public boolean isSparse() {
+    long deadSlotSize = getDeadSlotSize();
+    return deadSlotSize >= MIN_DEAD_SLOTS_TO_COMPACT && deadSlotSize > containerSize;
+  }
+
+  /**
+   * Move the holding containers into fresh arrays without dead slots, in the key order of the
+   * given art, and renumber the container index of each of its leaves in a single pass.
+   *
+   * @param art the art whose leaves refer to these containers
+   */
+  public void compact(Art art) {
+    List<Container[]> previousArrays = containerArrays;
+    long previousSize = containerSize;
+    containerArrays = new ArrayList<>(1);
+    reset();
+    if (art.isEmpty()) {
+      return;
+    }
+    // size the first array exactly, so that addContainer does not grow it
+    containerArrays.add(new Container[(int) Math.min(previousSize, MAX_JVM_ARRAY_OFFSET)]);
+    firstLevelIdx = 0;
+    secondLevelIdx = -1;
+    LeafNodeIterator leafNodeIterator = art.leafNodeIterator(false, this);
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      long containerIdx = leafNode.containerIdx;
+      Container container = previousArrays.get((int) (containerIdx >>> 32))[(int) containerIdx];
+      leafNode.containerIdx = addContainer(container);
+    }
+  }
+
+  /**
+   * Move the holding containers into fresh arrays without dead slots, in the order of the given
+   * container indexes, which are renumbered in place.
+   *
+   * @param containerIdxs the indexes of all the holding containers
+   * @param size the number of indexes to use
+   */
+  public void compact(long[] containerIdxs, int size) {
+    List<Container[]> previousArrays = containerArrays;
+    containerArrays = new ArrayList<>(1);
+    reset();
+    if (size == 0) {
+      return;
+    }
+    containerArrays.add(new Container[Math.min(size, MAX_JVM_ARRAY_OFFSET)]);
+    firstLevelIdx = 0;
+    secondLevelIdx = -1;
+    for (int i = 0; i < size; i++) {
+      long containerIdx = containerIdxs[i];
+      Container container = previousArrays.get((int) (containerIdx >>> 32))[(int) containerIdx];
+      containerIdxs[i] = addContainer(container);
+    }
+  }
+
   List<Container[]> getContainerArrays() {
     return containerArrays;
   }
@@ -8,7 +8,11 @@ public class KeyIterator implements Iterator<byte[]> {
   private LeafNodeIterator leafNodeIterator;
 
   public KeyIterator(Art art, Containers containers) {
-    leafNodeIterator = new LeafNodeIterator(art, containers);
+    this(new LeafNodeIterator(art, containers));
+  }
+
+  public KeyIterator(LeafNodeIterator leafNodeIterator) {
+    this.leafNodeIterator = leafNodeIterator;
     current = null;
   }
 
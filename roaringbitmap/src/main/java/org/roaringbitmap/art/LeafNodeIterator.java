@@ -61,6 +61,15 @@ public class LeafNodeIterator implements Iterator<LeafNode> {
     calledHasNext = false;
   }
 
+  /**
+   * constructor
+   * @param shuttle an initialized shuttle, visiting leaves which may not belong to an ART
+   */
+  public LeafNodeIterator(Shuttle shuttle) {
+    this.shuttle = shuttle;
+    calledHasNext = false;
+  }
+
   private boolean advance() {
     boolean hasLeafNode = shuttle.moveToNextLeaf();
     if (hasLeafNode) {
@@ -0,0 +1,289 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+import org.roaringbitmap.InvalidRoaringFormat;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Serialization with checksums, so that corrupted bitmaps are reported as
+ * {@link InvalidRoaringFormat} when they are loaded, rather than deep inside a query or not at
+ * all.
+ *
+ * The checksummed format is the usual format (see
+ * https://github.com/RoaringBitmap/RoaringFormatSpec) followed by a trailer holding one CRC32
+ * per container, a CRC32 of the header and of the container checksums, and a cookie. Since the
+ * trailer comes last, a checksummed bitmap can still be read by anything which reads the usual
+ * format, and trailing bytes are ignored.
+ *
+ * <pre>
+ * {@code
+ *      ByteBuffer buffer = ByteBuffer.allocate(ChecksummedSerialization.serializedSizeInBytes(rb));
+ *      ChecksummedSerialization.serialize(rb, buffer);
+ *      buffer.flip();
+ *      // verifies the header now, and each container the first time it is accessed
+ *      ImmutableRoaringBitmap mapped = ChecksummedSerialization.map(buffer, true);
+ * }
+ * </pre>
+ */
+public final class ChecksummedSerialization {
+
+  private static final int COOKIE = 0x43524F52;
+  private static final int TRAILER_FIXED_BYTES = 8;
+
+  private ChecksummedSerialization() {}
+
+  /**
+   * @param bitmap a bitmap
+   * @return the number of bytes required to serialize the bitmap with checksums
+   */
+  public static int serializedSizeInBytes(RoaringBitmap bitmap) {
+    return bitmap.serializedSizeInBytes() + 4 * bitmap.getContainerCount() + TRAILER_FIXED_BYTES;
+  }
+
+  /**
+   * @param bitmap a bitmap
+   * @return the number of bytes required to serialize the bitmap with checksums
+   */
+  public static int serializedSizeInBytes(ImmutableRoaringBitmap bitmap) {
+    return bitmap.serializedSizeInBytes() + 4 * bitmap.getContainerCount() + TRAILER_FIXED_BYTES;
+  }
+
+  /**
+   * Serializes the bitmap followed by its checksums. The buffer's position is advanced by
+   * {@link #serializedSizeInBytes(RoaringBitmap)}.
+   *
+   * @param bitmap the bitmap to serialize
+   * @param buffer the buffer to write to
+   */
+  public static void serialize(RoaringBitmap bitmap, ByteBuffer buffer) {
+    int start = buffer.position();
+    bitmap.serialize(buffer);
+    writeTrailer(buffer, start);
+  }
+
+  /**
+   * Serializes the bitmap followed by its checksums. The buffer's position is advanced by
+   * {@link #serializedSizeInBytes(ImmutableRoaringBitmap)}.
+   *
+   * @param bitmap the bitmap to serialize
+   * @param buffer the buffer to write to
+   */
+  public static void serialize(ImmutableRoaringBitmap bitmap, ByteBuffer buffer) {
+    int start = buffer.position();
+    bitmap.serialize(buffer);
+    writeTrailer(buffer, start);
+  }
+
+  /**
+   * Verifies all the checksums, then deserializes into the bitmap. The buffer's position is
+   * advanced past the checksums.
+   *
+   * @param bitmap the bitmap to deserialize into
+   * @param buffer a buffer positioned at a checksummed bitmap
+   * @throws IOException if deserialization fails
+   * @throws InvalidRoaringFormat if the bitmap is corrupted
+   */
+  public static void deserialize(RoaringBitmap bitmap, ByteBuffer buffer) throws IOException {
+    Layout layout = Layout.of(buffer);
+    for (int i = 0; i < layout.size(); ++i) {
+      layout.verifyContainer(i);
+    }
+    bitmap.deserialize(buffer.duplicate());
+    buffer.position(buffer.position() + layout.totalSizeInBytes());
+  }
+
+  /**
+   * Maps a checksummed bitmap after verifying all its checksums. The buffer's position is left
+   * unchanged.
+   *
+   * @param buffer a buffer positioned at a checksummed bitmap
+   * @return a bitmap backed by the buffer
+   * @throws InvalidRoaringFormat if the bitmap is corrupted
+   */
+  public static ImmutableRoaringBitmap map(ByteBuffer buffer) {
+    return map(buffer, false);
+  }
+
+  /**
+   * Maps a checksummed bitmap. The header is always verified immediately. Containers are either
+   * verified immediately, or when lazy, the first time each of them is accessed, so that queries
+   * touching few containers of a large bitmap only pay for what they read. The buffer's position
+   * is left unchanged.
+   *
+   * @param buffer a buffer positioned at a checksummed bitmap
+   * @param lazy whether to defer the verification of each container to its first access
+   * @return a bitmap backed by the buffer
+   * @throws InvalidRoaringFormat if the bitmap is corrupted, for lazy verification possibly when
+   *     a container is first accessed
+   */
+  public static ImmutableRoaringBitmap map(ByteBuffer buffer, boolean lazy) {
+    Layout layout = Layout.of(buffer);
+    if (lazy) {
+      layout.array.verifier = new LazyVerifier(layout);
+    } else {
+      for (int i = 0; i < layout.size(); ++i) {
+        layout.verifyContainer(i);
+      }
+    }
+    return layout.bitmap;
+  }
+
+  /**
+   * @param buffer a buffer positioned at a checksummed bitmap
+   * @return the size of the checksummed bitmap, checksums included
+   * @throws InvalidRoaringFormat if the header of the bitmap is corrupted
+   */
+  public static int serializedSizeInBytes(ByteBuffer buffer) {
+    return Layout.of(buffer).totalSizeInBytes();
+  }
+
+  private static void writeTrailer(ByteBuffer buffer, int start) {
+    ByteBuffer written = buffer.duplicate();
+    written.limit(buffer.position()).position(start);
+    ImmutableRoaringArray array = new ImmutableRoaringArray(written);
+    int[] bounds = containerBounds(array);
+    ByteBuffer trailer = buffer.slice().order(LITTLE_ENDIAN);
+    CRC32 crc = new CRC32();
+    for (int i = 0; i < array.size(); ++i) {
+      trailer.putInt(checksum(crc, array.buffer, bounds[i], bounds[i + 1]));
+    }
+    trailer.putInt(headerChecksum(crc, array, bounds[0], trailer, 0));
+    trailer.putInt(COOKIE);
+    buffer.position(buffer.position() + trailer.position());
+  }
+
+  private static int[] containerBounds(ImmutableRoaringArray array) {
+    int[] bounds = new int[array.size() + 1];
+    bounds[0] = array.headerSize(array.hasRunCompression());
+    MappeableContainerPointer pointer = array.getContainerPointer();
+    for (int i = 0; i < array.size(); ++i) {
+      bounds[i + 1] = bounds[i] + pointer.getSizeInBytes();
+      pointer.advance();
+    }
+    return bounds;
+  }
+
+  private static int checksum(CRC32 crc, ByteBuffer buffer, int from, int to) {
+    ByteBuffer range = buffer.duplicate();
+    range.limit(to).position(from);
+    crc.reset();
+    crc.update(range);
+    return (int) crc.getValue();
+  }
+
+  private static int headerChecksum(
+      CRC32 crc, ImmutableRoaringArray array, int headerSize, ByteBuffer trailer, int from) {
+    ByteBuffer header = array.buffer.duplicate();
+    header.limit(headerSize).position(0);
+    ByteBuffer checksums = trailer.duplicate();
+    checksums.limit(from + 4 * array.size()).position(from);
+    crc.reset();
+    crc.update(header);
+    crc.update(checksums);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Locates the containers and checksums of a checksummed bitmap, and verifies its header.
+   */
+  private static final class Layout {
+    final ImmutableRoaringBitmap bitmap;
+    final ImmutableRoaringArray array;
+    final int[] bounds;
+    final ByteBuffer checksums;
+    private final CRC32 crc = new CRC32();
+
+    static Layout of(ByteBuffer buffer) {
+      ImmutableRoaringBitmap bitmap;
+      ImmutableRoaringArray array;
+      int[] bounds;
+      try {
+        bitmap = new ImmutableRoaringBitmap(buffer);
+        array = (ImmutableRoaringArray) bitmap.highLowContainer;
+        bounds = containerBounds(array);
+      } catch (InvalidRoaringFormat e) {
+        throw e;
+      } catch (RuntimeException e) {
+        throw new InvalidRoaringFormat("Corrupted bitmap header: " + e);
+      }
+      int payloadSize = array.serializedSizeInBytes();
+      int trailerSize = 4 * array.size() + TRAILER_FIXED_BYTES;
+      if (bounds[array.size()] != payloadSize
+          || buffer.remaining() < payloadSize + trailerSize) {
+        throw new InvalidRoaringFormat("Corrupted bitmap header, or missing checksums");
+      }
+      ByteBuffer checksums = buffer.duplicate().order(LITTLE_ENDIAN);
+      checksums.position(buffer.position() + payloadSize);
+      checksums = checksums.slice().order(LITTLE_ENDIAN);
+      checksums.limit(trailerSize);
+      int cookie = checksums.getInt(trailerSize - 4);
+      if (cookie != COOKIE) {
+        throw new InvalidRoaringFormat(
+            "invalid cookie for checksums (expected " + COOKIE + " but got " + cookie + ")");
+      }
+      Layout layout = new Layout(bitmap, bounds, checksums);
+      int expected = checksums.getInt(4 * array.size());
+      if (headerChecksum(layout.crc, array, bounds[0], checksums, 0) != expected) {
+        throw new InvalidRoaringFormat("Checksum mismatch in bitmap header");
+      }
+      return layout;
+    }
+
+    private Layout(ImmutableRoaringBitmap bitmap, int[] bounds, ByteBuffer checksums) {
+      this.bitmap = bitmap;
+      this.array = (ImmutableRoaringArray) bitmap.highLowContainer;
+      this.bounds = bounds;
+      this.checksums = checksums;
+    }
+
+    int size() {
+      return array.size();
+    }
+
+    int totalSizeInBytes() {
+      return checksums.limit() + array.serializedSizeInBytes();
+    }
+
+    void verifyContainer(int i) {
+      if (checksum(crc, array.buffer, bounds[i], bounds[i + 1]) != checksums.getInt(4 * i)) {
+        throw new InvalidRoaringFormat("Checksum mismatch in container " + i);
+      }
+    }
+  }
+
+  /**
+   * Verifies each container of a mapped bitmap when it is first accessed.
+   */
+  static final class LazyVerifier {
+    private final int[] bounds;
+    private final ByteBuffer source;
+    private final ByteBuffer checksums;
+    // racy by design: a lost update only leads to verifying a container again
+    private final long[] verified;
+
+    private LazyVerifier(Layout layout) {
+      this.bounds = layout.bounds;
+      this.source = layout.array.buffer;
+      this.checksums = layout.checksums;
+      this.verified = new long[(layout.size() + 63) >>> 6];
+    }
+
+    void verify(int i) {
+      if ((verified[i >>> 6] & (1L << i)) == 0) {
+        if (checksum(new CRC32(), source, bounds[i], bounds[i + 1]) != checksums.getInt(4 * i)) {
+          throw new InvalidRoaringFormat("Checksum mismatch in container " + i);
+        }
+        verified[i >>> 6] |= 1L << i;
+      }
+    }
+  }
+}
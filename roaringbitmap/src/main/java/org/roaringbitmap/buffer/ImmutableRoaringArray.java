@@ -31,6 +31,8 @@ public final class ImmutableRoaringArray implements PointableRoaringArray {
 
   ByteBuffer buffer;
   int size;
+  // set when the containers are checksummed, to verify each of them on first access
+  ChecksummedSerialization.LazyVerifier verifier;
 
   /**
    * Create an array based on a previously serialized ByteBuffer. The input ByteBuffer is
@@ -158,6 +160,9 @@ public final class ImmutableRoaringArray implements PointableRoaringArray {
 
   @Override
   public MappeableContainer getContainerAtIndex(int i) {
+    if (verifier != null) {
+      verifier.verify(i);
+    }
     boolean hasrun = hasRunCompression();
     ByteBuffer tmp = buffer.duplicate(); // sad but ByteBuffer is not thread-safe so it is either a
     // duplicate or a lock
@@ -187,6 +192,9 @@ public final class ImmutableRoaringArray implements PointableRoaringArray {
 
   @Override
   public boolean containsForContainerAtIndex(int i, char x) {
+    if (verifier != null) {
+      verifier.verify(i);
+    }
     boolean hasrun = hasRunCompression();
     int containerpos = getOffsetContainer(i, hasrun);
     if (isRunContainer(i, hasrun)) {
@@ -1262,14 +1262,15 @@ public class ImmutableRoaringBitmap
       return false;
     }
     char firstKey = highbits(minimum);
-    char lastKey = highbits(supremum);
+    // the supremum may be 1 << 32, past the last key
+    int lastKey = (int) (supremum >>> 16);
     int span = (lastKey) - (firstKey);
     int len = highLowContainer.size();
     if (len < span) {
       return false;
     }
     int begin = highLowContainer.getIndex(firstKey);
-    int end = highLowContainer.getIndex(lastKey);
+    int end = lastKey > 0xFFFF ? len : highLowContainer.getIndex((char) lastKey);
     end = end < 0 ? -end - 1 : end;
     if (begin < 0 || end - begin != span) {
       return false;
@@ -1921,7 +1922,7 @@ public class ImmutableRoaringBitmap
       return Util.toUnsignedLong(fromValue);
     }
     char containerKey = highLowContainer.getKeyAtIndex(containerIndex);
-    if (fromValue < containerKey << 16) {
+    if (key < containerKey) {
       return Util.toUnsignedLong(fromValue);
     }
     MappeableContainer container = highLowContainer.getContainerAtIndex(containerIndex);
@@ -1951,7 +1952,7 @@ public class ImmutableRoaringBitmap
     long prevAbsentBit = computePreviousAbsentValue(fromValue);
     assert prevAbsentBit <= 0xFFFFFFFFL;
     assert prevAbsentBit <= Util.toUnsignedLong(fromValue);
-    assert !contains((int) prevAbsentBit);
+    assert prevAbsentBit == -1L || !contains((int) prevAbsentBit);
     return prevAbsentBit;
   }
 
@@ -1963,7 +1964,7 @@ public class ImmutableRoaringBitmap
       return Util.toUnsignedLong(fromValue);
     }
     char containerKey = highLowContainer.getKeyAtIndex(containerIndex);
-    if (fromValue < containerKey << 16) {
+    if (key < containerKey) {
       return Util.toUnsignedLong(fromValue);
     }
     MappeableContainer container = highLowContainer.getContainerAtIndex(containerIndex);
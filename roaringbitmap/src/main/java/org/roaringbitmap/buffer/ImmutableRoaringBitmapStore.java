@@ -0,0 +1,494 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+import org.roaringbitmap.InvalidRoaringFormat;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only collection of bitmaps, each associated with a distinct long key, stored in a single
+ * file or buffer. Bitmaps are returned as {@link ImmutableRoaringBitmap} views over the underlying
+ * (typically memory-mapped) storage, so lookups do not copy or deserialize anything.
+ *
+ * <p>A store is built with a {@link Writer}, which appends serialized bitmaps to a channel in
+ * ascending key order and finally writes a sorted index of keys and offsets:
+ *
+ * <pre>
+ * {@code
+ *      try (FileChannel channel = FileChannel.open(path, CREATE, WRITE)) {
+ *        ImmutableRoaringBitmapStore.Writer writer = ImmutableRoaringBitmapStore.writer(channel);
+ *        writer.add(termId1, bitmap1);
+ *        writer.add(termId2, bitmap2);
+ *        writer.finish();
+ *      }
+ *      //...
+ *      try (FileChannel channel = FileChannel.open(path, READ)) {
+ *        ImmutableRoaringBitmapStore store = ImmutableRoaringBitmapStore.map(channel);
+ *        MutableRoaringBitmap union = BufferFastAggregation.or(store.iterator(termIds));
+ *      }
+ * }
+ * </pre>
+ *
+ * Files larger than 2GB are mapped in several chunks, each holding whole bitmaps.
+ * The storage must not be modified while the store or any bitmap obtained from it is in use.
+ */
+public final class ImmutableRoaringBitmapStore implements Iterable<ImmutableRoaringBitmap> {
+
+  private static final int COOKIE = 0x5354524D;
+  private static final int FOOTER_BYTES = 16;
+  private static final long MAX_CHUNK_BYTES = Integer.MAX_VALUE;
+
+  /**
+   * Creates a writer appending to the channel. Offsets are recorded relative to the position of
+   * the channel when the writer is created, so to use {@link #map(FileChannel)} the channel
+   * should be positioned at the start of an empty file.
+   *
+   * @param channel where the store is written, e.g. a FileChannel.
+   * @return a writer
+   */
+  public static Writer writer(GatheringByteChannel channel) {
+    return new Writer(channel);
+  }
+
+  /**
+   * Maps the store from a buffer containing everything written by a {@link Writer}, from its
+   * position to its limit. The buffer must not be reused while the store is live.
+   *
+   * @param buffer a buffer containing a serialized store
+   * @return a store backed by the buffer
+   */
+  public static ImmutableRoaringBitmapStore map(ByteBuffer buffer) {
+    ByteBuffer source = buffer.slice().order(LITTLE_ENDIAN);
+    int length = source.limit();
+    if (length < FOOTER_BYTES) {
+      throw new InvalidRoaringFormat("Buffer too small to hold a bitmap store");
+    }
+    long indexOffset = source.getLong(length - FOOTER_BYTES);
+    int size = source.getInt(length - 8);
+    checkFooter(source.getInt(length - 4), indexOffset, size, length);
+    ByteBuffer index = ((ByteBuffer) source.duplicate().position((int) indexOffset)).slice();
+    return new ImmutableRoaringBitmapStore(
+        index.order(LITTLE_ENDIAN), size, new ByteBuffer[] {source}, new long[] {0});
+  }
+
+  /**
+   * Memory-maps the whole file read-only. The channel may be closed once the store is created.
+   *
+   * @param channel a channel on a file written by a {@link Writer}
+   * @return a store backed by the mapped file
+   * @throws IOException if the file cannot be read or mapped
+   */
+  public static ImmutableRoaringBitmapStore map(FileChannel channel) throws IOException {
+    return map(channel, MAX_CHUNK_BYTES);
+  }
+
+  static ImmutableRoaringBitmapStore map(FileChannel channel, long maxChunkBytes)
+      throws IOException {
+    long length = channel.size();
+    if (length < FOOTER_BYTES) {
+      throw new InvalidRoaringFormat("File too small to hold a bitmap store");
+    }
+    ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES).order(LITTLE_ENDIAN);
+    while (footer.hasRemaining()) {
+      if (channel.read(footer, length - FOOTER_BYTES + footer.position()) < 0) {
+        throw new InvalidRoaringFormat("Unexpected end of bitmap store");
+      }
+    }
+    long indexOffset = footer.getLong(0);
+    int size = footer.getInt(8);
+    checkFooter(footer.getInt(12), indexOffset, size, length);
+    if (length - indexOffset > Integer.MAX_VALUE) {
+      throw new InvalidRoaringFormat("Index of bitmap store too large to be mapped");
+    }
+    ByteBuffer index =
+        channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, length - indexOffset)
+            .order(LITTLE_ENDIAN);
+    LongBuffer offsets = offsets(index, size);
+    // greedily pack whole bitmaps into as few mappings as possible
+    int chunkCount = 0;
+    ByteBuffer[] chunks = new ByteBuffer[1];
+    long[] chunkStarts = new long[1];
+    int first = 0;
+    while (first < size || chunkCount == 0) {
+      long chunkStart = offsets.get(first);
+      int last = lastFitting(offsets, first, size, chunkStart + maxChunkBytes);
+      if (last == first && first < size) {
+        throw new InvalidRoaringFormat("Bitmap too large to be mapped at index " + first);
+      }
+      long chunkEnd = offsets.get(last);
+      if (chunkCount == chunks.length) {
+        chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        chunkStarts = Arrays.copyOf(chunkStarts, chunkCount * 2);
+      }
+      chunks[chunkCount] =
+          channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart);
+      chunkStarts[chunkCount] = chunkStart;
+      ++chunkCount;
+      first = last;
+    }
+    return new ImmutableRoaringBitmapStore(
+        index,
+        size,
+        Arrays.copyOf(chunks, chunkCount),
+        Arrays.copyOf(chunkStarts, chunkCount));
+  }
+
+  private static void checkFooter(int cookie, long indexOffset, int size, long length) {
+    if (cookie != COOKIE) {
+      throw new InvalidRoaringFormat(
+          "invalid cookie for bitmap store (expected " + COOKIE + " but got " + cookie + ")");
+    }
+    if (size < 0
+        || indexOffset < 0
+        || indexOffset + 8L * size + 8L * (size + 1) + FOOTER_BYTES != length) {
+      throw new InvalidRoaringFormat("Corrupted bitmap store index");
+    }
+  }
+
+  private static LongBuffer offsets(ByteBuffer index, int size) {
+    return ((ByteBuffer) index.duplicate().position(8 * size)).slice().order(LITTLE_ENDIAN)
+        .asLongBuffer();
+  }
+
+  /**
+   * Finds the largest index, at or after {@code first}, such that all bitmaps from {@code first}
+   * up to (excluding) the index end at or before {@code limit}.
+   */
+  private static int lastFitting(LongBuffer offsets, int first, int size, long limit) {
+    int low = first;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (offsets.get(mid) <= limit) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  private final LongBuffer keys;
+  private final LongBuffer offsets;
+  private final int size;
+  private final ByteBuffer[] chunks;
+  private final long[] chunkStarts;
+
+  private ImmutableRoaringBitmapStore(
+      ByteBuffer index, int size, ByteBuffer[] chunks, long[] chunkStarts) {
+    this.keys = ((ByteBuffer) index.duplicate().limit(8 * size)).slice().order(LITTLE_ENDIAN)
+        .asLongBuffer();
+    this.offsets = offsets(index, size);
+    this.size = size;
+    this.chunks = chunks;
+    this.chunkStarts = chunkStarts;
+  }
+
+  /**
+   * @return the number of bitmaps in the store
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param index the position of the bitmap in key order, in [0, size())
+   * @return the key of the bitmap at the index
+   */
+  public long keyAt(int index) {
+    return keys.get(index);
+  }
+
+  /**
+   * Searches for the key in the store.
+   *
+   * @param key the key to look up
+   * @return the position of the key in key order if found, (-(insertion point) - 1) otherwise.
+   */
+  public int indexOf(long key) {
+    return indexOf(key, 0);
+  }
+
+  private int indexOf(long key, int from) {
+    int low = from;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midKey = keys.get(mid);
+      if (midKey < key) {
+        low = mid + 1;
+      } else if (midKey > key) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * @param key the key to look up
+   * @return whether a bitmap is stored for the key
+   */
+  public boolean containsKey(long key) {
+    return indexOf(key) >= 0;
+  }
+
+  /**
+   * @param key the key to look up
+   * @return a view of the bitmap stored for the key, or null if there is none
+   */
+  public ImmutableRoaringBitmap get(long key) {
+    int index = indexOf(key);
+    return index < 0 ? null : getAt(index);
+  }
+
+  /**
+   * Looks up several keys at once. When the keys are sorted, each search resumes where the
+   * previous one ended.
+   *
+   * @param keys the keys to look up
+   * @return for each key, a view of the bitmap stored for it, or null if there is none
+   */
+  public ImmutableRoaringBitmap[] get(long... keys) {
+    ImmutableRoaringBitmap[] result = new ImmutableRoaringBitmap[keys.length];
+    int from = 0;
+    for (int i = 0; i < keys.length; ++i) {
+      if (i > 0 && keys[i] < keys[i - 1]) {
+        from = 0;
+      }
+      int index = indexOf(keys[i], from);
+      if (index >= 0) {
+        result[i] = getAt(index);
+        // a repeated key finds the same entry again
+        from = index;
+      } else {
+        from = -index - 1;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param index the position of the bitmap in key order, in [0, size())
+   * @return a view of the bitmap at the index
+   */
+  public ImmutableRoaringBitmap getAt(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("index " + index + " not in [0, " + size + ")");
+    }
+    long start = offsets.get(index);
+    int chunk = chunks.length == 1 ? 0 : chunkOf(start);
+    ByteBuffer view = chunks[chunk].duplicate();
+    view.position((int) (start - chunkStarts[chunk]));
+    return new ImmutableRoaringBitmap(view);
+  }
+
+  private int chunkOf(long offset) {
+    int chunk = Arrays.binarySearch(chunkStarts, offset);
+    return chunk >= 0 ? chunk : -chunk - 2;
+  }
+
+  /**
+   * Iterates over all the bitmaps in key order.
+   *
+   * @return an iterator over views of the stored bitmaps
+   */
+  @Override
+  public Iterator<ImmutableRoaringBitmap> iterator() {
+    return new Iterator<ImmutableRoaringBitmap>() {
+      private int index = 0;
+
+      @Override
+      public boolean hasNext() {
+        return index < size;
+      }
+
+      @Override
+      public ImmutableRoaringBitmap next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return getAt(index++);
+      }
+    };
+  }
+
+  /**
+   * Iterates over the bitmaps stored for the keys, skipping keys without a bitmap. This can be
+   * passed directly to {@link BufferFastAggregation} or {@link ImmutableRoaringBitmap#or}.
+   *
+   * @param keys the keys to look up, preferably sorted
+   * @return an iterator over views of the bitmaps stored for the keys
+   */
+  public Iterator<ImmutableRoaringBitmap> iterator(long... keys) {
+    return new Iterator<ImmutableRoaringBitmap>() {
+      private int position = 0;
+      private int from = 0;
+      private ImmutableRoaringBitmap next = advance();
+
+      private ImmutableRoaringBitmap advance() {
+        while (position < keys.length) {
+          if (position > 0 && keys[position] < keys[position - 1]) {
+            from = 0;
+          }
+          int index = indexOf(keys[position++], from);
+          if (index >= 0) {
+            from = index;
+            return getAt(index);
+          }
+          from = -index - 1;
+        }
+        return null;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public ImmutableRoaringBitmap next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        ImmutableRoaringBitmap current = next;
+        next = advance();
+        return current;
+      }
+    };
+  }
+
+  /**
+   * Appends bitmaps to a channel and, once finished, the index needed to map them back.
+   */
+  public static final class Writer {
+
+    private final GatheringByteChannel channel;
+    private ByteBuffer scratch = ByteBuffer.allocate(0);
+    private long[] keys = new long[16];
+    private long[] offsets = new long[17];
+    private int size;
+    private long position;
+    private boolean finished;
+
+    Writer(GatheringByteChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Appends the bitmap. Keys must be added in strictly ascending order.
+     *
+     * @param key the key of the bitmap
+     * @param bitmap the bitmap to store
+     * @throws IOException if the channel cannot be written
+     */
+    public void add(long key, ImmutableRoaringBitmap bitmap) throws IOException {
+      int bytes = bitmap.serializedSizeInBytes();
+      ByteBuffer buffer = scratch(bytes);
+      bitmap.serialize(buffer);
+      buffer.flip();
+      append(key, bytes);
+      writeFully(buffer);
+    }
+
+    /**
+     * Appends the bitmap. Keys must be added in strictly ascending order.
+     *
+     * @param key the key of the bitmap
+     * @param bitmap the bitmap to store
+     * @throws IOException if the channel cannot be written
+     */
+    public void add(long key, RoaringBitmap bitmap) throws IOException {
+      int bytes = bitmap.serializedSizeInBytes();
+      ByteBuffer buffer = scratch(bytes);
+      bitmap.serialize(buffer);
+      buffer.flip();
+      append(key, bytes);
+      writeFully(buffer);
+    }
+
+    /**
+     * @return the number of bitmaps added so far
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Writes the index. The writer cannot be used afterwards, and the channel is left open.
+     *
+     * @return the total number of bytes written to the channel
+     * @throws IOException if the channel cannot be written
+     */
+    public long finish() throws IOException {
+      checkNotFinished();
+      finished = true;
+      int padding = (int) (-position & 7);
+      long indexOffset = position + padding;
+      ByteBuffer index =
+          ByteBuffer.allocate(padding + 8 * size + 8 * (size + 1) + FOOTER_BYTES)
+              .order(LITTLE_ENDIAN);
+      index.position(padding);
+      index.asLongBuffer().put(keys, 0, size).put(offsets, 0, size + 1);
+      index.position(padding + 8 * size + 8 * (size + 1));
+      index.putLong(indexOffset);
+      index.putInt(size);
+      index.putInt(COOKIE);
+      index.flip();
+      writeFully(index);
+      position += index.limit();
+      return position;
+    }
+
+    private void append(long key, int bytes) {
+      checkNotFinished();
+      if (size > 0 && key <= keys[size - 1]) {
+        throw new IllegalArgumentException(
+            "Keys must be strictly increasing: " + key + " after " + keys[size - 1]);
+      }
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size + (size >>> 1));
+        offsets = Arrays.copyOf(offsets, keys.length + 1);
+      }
+      keys[size] = key;
+      offsets[size] = position;
+      position += bytes;
+      offsets[++size] = position;
+    }
+
+    private ByteBuffer scratch(int bytes) {
+      if (scratch.capacity() < bytes) {
+        scratch = ByteBuffer.allocate(Math.max(bytes, scratch.capacity() * 2));
+      }
+      scratch.clear();
+      scratch.limit(bytes);
+      return scratch;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+
+    private void checkNotFinished() {
+      if (finished) {
+        throw new IllegalStateException("Writer already finished");
+      }
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+/**
+ * Wraps a batch iterator for use as a LongIterator
+ */
+public class BatchLongIterator implements LongIterator {
+  private int i;
+  private int mark;
+  private long[] buffer;
+  private LongBatchIterator delegate;
+
+  private BatchLongIterator(LongBatchIterator delegate, int i, int mark, long[] buffer) {
+    this.delegate = delegate;
+    this.i = i;
+    this.mark = mark;
+    this.buffer = buffer;
+  }
+
+  /**
+   * Wraps the batch iterator.
+   * @param delegate the batch iterator to do the actual iteration
+   * @param buffer the buffer
+   */
+  BatchLongIterator(LongBatchIterator delegate, long[] buffer) {
+    this(delegate, 0, -1, buffer);
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (i < mark) {
+      return true;
+    }
+    while (delegate.hasNext()) {
+      mark = delegate.nextBatch(buffer);
+      if (mark > 0) {
+        i = 0;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public long next() {
+    return buffer[i++];
+  }
+
+  @Override
+  public LongIterator clone() {
+    try {
+      BatchLongIterator it = (BatchLongIterator) super.clone();
+      it.delegate = delegate.clone();
+      it.buffer = buffer.clone();
+      return it;
+    } catch (CloneNotSupportedException e) {
+      // won't happen
+      throw new IllegalStateException();
+    }
+  }
+}
@@ -0,0 +1,329 @@
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.Container;
+import org.roaringbitmap.art.LeafNode;
+import org.roaringbitmap.art.LeafNodeIterator;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+
+/**
+ * This extends {@link Roaring64Bitmap} to provide better performance for .rankLong and .select
+ * operations, at the cost of maintaining an index of cumulated cardinalities.
+ *
+ * {@link Roaring64Bitmap} walks its containers in key order to cumulate their cardinalities, so
+ * each .rankLong or .select is linear in the number of containers. This implementation keeps the
+ * high keys of the containers in a sorted array along with their cumulated cardinalities, so that
+ * both operations are a binary search over the index followed by a lookup in a single container.
+ *
+ * The index is computed on the first .rankLong or .select, and is maintained incrementally: adding
+ * or removing a value only dismisses the cumulated cardinalities from its container onwards, and
+ * they are recomputed no further than needed by the next query. Operations creating or removing
+ * containers, as well as bulk operations and compactions, dismiss the whole index.
+ */
+public class FastRankRoaring64Bitmap extends Roaring64Bitmap {
+  private boolean indexIsValid = false;
+  // the high 48 bits of the containers, in ascending order, with their containers
+  private long[] highKeys = new long[0];
+  private long[] containerIdxs = new long[0];
+  // the number of values under highKeys[0], ..., highKeys[i]
+  private long[] cumulatedCardinalities = new long[0];
+  private int size;
+  // how many leading cumulated cardinalities are up to date
+  private int validCardinalities;
+
+  public FastRankRoaring64Bitmap() {
+    super();
+  }
+
+  private void resetCache() {
+    indexIsValid = false;
+  }
+
+  // VisibleForTesting
+  boolean isCacheDismissed() {
+    return !indexIsValid;
+  }
+
+  // VisibleForTesting
+  int validCardinalities() {
+    return indexIsValid ? validCardinalities : 0;
+  }
+
+  private void valueAdded(long x) {
+    if (indexIsValid) {
+      int index = Arrays.binarySearch(highKeys, 0, size, LongUtils.rightShiftHighPart(x));
+      if (index < 0) {
+        // a container was created
+        resetCache();
+      } else {
+        validCardinalities = Math.min(validCardinalities, index);
+      }
+    }
+  }
+
+  private void valueRemoved(long x) {
+    if (indexIsValid) {
+      int index = Arrays.binarySearch(highKeys, 0, size, LongUtils.rightShiftHighPart(x));
+      if (index >= 0) {
+        if (highLowContainer.getContainer(containerIdxs[index]) == null) {
+          // the container was removed
+          resetCache();
+        } else {
+          validCardinalities = Math.min(validCardinalities, index);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void addLong(long x) {
+    super.addLong(x);
+    valueAdded(x);
+  }
+
+  @Override
+  public void addN(long[] dat, int offset, int n) {
+    resetCache();
+    super.addN(dat, offset, n);
+  }
+
+  @Override
+  public void add(LongBuffer values) {
+    resetCache();
+    super.add(values);
+  }
+
+  @Override
+  public void add(PrimitiveIterator.OfLong values) {
+    resetCache();
+    super.add(values);
+  }
+
+  @Override
+  public void addRange(long rangeStart, long rangeEnd) {
+    resetCache();
+    super.addRange(rangeStart, rangeEnd);
+  }
+
+  @Override
+  public void removeRange(long rangeStart, long rangeEnd) {
+    resetCache();
+    super.removeRange(rangeStart, rangeEnd);
+  }
+
+  @Override
+  public void remove(long x) {
+    super.remove(x);
+    valueRemoved(x);
+  }
+
+  @Override
+  public void removeLong(long x) {
+    super.removeLong(x);
+    valueRemoved(x);
+  }
+
+  @Override
+  public void flip(long x) {
+    super.flip(x);
+    valueAdded(x);
+  }
+
+  @Override
+  public void flip(long rangeStart, long rangeEnd) {
+    resetCache();
+    super.flip(rangeStart, rangeEnd);
+  }
+
+  @Override
+  public void or(Roaring64Bitmap x2) {
+    resetCache();
+    super.or(x2);
+  }
+
+  @Override
+  public void xor(Roaring64Bitmap x2) {
+    resetCache();
+    super.xor(x2);
+  }
+
+  @Override
+  public void naivelazyor(Roaring64Bitmap x2) {
+    resetCache();
+    super.naivelazyor(x2);
+  }
+
+  @Override
+  public void naivelazyxor(Roaring64Bitmap x2) {
+    resetCache();
+    super.naivelazyxor(x2);
+  }
+
+  @Override
+  public void repairAfterLazy() {
+    resetCache();
+    super.repairAfterLazy();
+  }
+
+  @Override
+  public void and(Roaring64Bitmap x2) {
+    resetCache();
+    super.and(x2);
+  }
+
+  @Override
+  public void andNot(Roaring64Bitmap x2) {
+    resetCache();
+    super.andNot(x2);
+  }
+
+  @Override
+  public void clear() {
+    resetCache();
+    super.clear();
+  }
+
+  @Override
+  public void trim() {
+    resetCache();
+    super.trim();
+  }
+
+  @Override
+  public void compact() {
+    // the container indexes of the index are renumbered
+    resetCache();
+    super.compact();
+  }
+
+  @Override
+  public void deserialize(DataInput in) throws IOException {
+    resetCache();
+    super.deserialize(in);
+  }
+
+  @Override
+  public void deserialize(ByteBuffer in) throws IOException {
+    resetCache();
+    super.deserialize(in);
+  }
+
+  @Override
+  public void deserializePortable(DataInput in) throws IOException {
+    resetCache();
+    super.deserializePortable(in);
+  }
+
+  @Override
+  public void deserializePortable(ByteBuffer byteBuffer) throws IOException {
+    resetCache();
+    super.deserializePortable(byteBuffer);
+  }
+
+  /**
+   * Lists the high keys and containers in ascending order, the cumulated cardinalities being
+   * computed lazily.
+   */
+  private void preComputeHighKeys() {
+    if (!indexIsValid) {
+      int count = 0;
+      LeafNodeIterator leafNodeIterator = highLowContainer.highKeyLeafNodeIterator(false);
+      while (leafNodeIterator.hasNext()) {
+        LeafNode leafNode = leafNodeIterator.next();
+        if (count == highKeys.length) {
+          int capacity = Math.max(16, 2 * count);
+          highKeys = Arrays.copyOf(highKeys, capacity);
+          containerIdxs = Arrays.copyOf(containerIdxs, capacity);
+        }
+        highKeys[count] = leafNode.getKey();
+        containerIdxs[count] = leafNode.getContainerIdx();
+        count++;
+      }
+      if (cumulatedCardinalities.length < highKeys.length) {
+        cumulatedCardinalities = new long[highKeys.length];
+      }
+      size = count;
+      validCardinalities = 0;
+      indexIsValid = true;
+    }
+  }
+
+  private long cumulatedCardinality(int index) {
+    if (index >= validCardinalities) {
+      long cardinality = cumulatedCardinalityBefore(validCardinalities);
+      for (int i = validCardinalities; i <= index; i++) {
+        cardinality += highLowContainer.getContainer(containerIdxs[i]).getCardinality();
+        cumulatedCardinalities[i] = cardinality;
+      }
+      validCardinalities = index + 1;
+    }
+    return cumulatedCardinalities[index];
+  }
+
+  private long cumulatedCardinalityBefore(int index) {
+    return index == 0 ? 0 : cumulatedCardinality(index - 1);
+  }
+
+  @Override
+  public long getLongCardinality() {
+    preComputeHighKeys();
+    return size == 0 ? 0 : cumulatedCardinality(size - 1);
+  }
+
+  @Override
+  public long rankLong(long id) {
+    preComputeHighKeys();
+    int index = Arrays.binarySearch(highKeys, 0, size, LongUtils.rightShiftHighPart(id));
+    if (index < 0) {
+      return cumulatedCardinalityBefore(-1 - index);
+    }
+    Container container = highLowContainer.getContainer(containerIdxs[index]);
+    return cumulatedCardinalityBefore(index) + container.rank(LongUtils.lowPart(id));
+  }
+
+  @Override
+  public long select(final long j) throws IllegalArgumentException {
+    preComputeHighKeys();
+    // extend the up to date cumulated cardinalities until they reach j
+    while (validCardinalities < size
+        && (validCardinalities == 0 || cumulatedCardinalities[validCardinalities - 1] <= j)) {
+      cumulatedCardinality(validCardinalities);
+    }
+    if (j < 0 || validCardinalities == 0 || cumulatedCardinalities[validCardinalities - 1] <= j) {
+      throw new IllegalArgumentException(
+          "select " + j + " when the cardinality is " + getLongCardinality());
+    }
+    // the first container whose cumulated cardinality exceeds j
+    int low = 0;
+    int high = validCardinalities - 1;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (cumulatedCardinalities[middle] > j) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    Container container = highLowContainer.getContainer(containerIdxs[low]);
+    char lowBits = container.select((int) (j - cumulatedCardinalityBefore(low)));
+    return (highKeys[low] << 16) | lowBits;
+  }
+
+  @Override
+  public long getLongSizeInBytes() {
+    return super.getLongSizeInBytes()
+        + 8L * (highKeys.length + containerIdxs.length + cumulatedCardinalities.length);
+  }
+
+  @Override
+  public FastRankRoaring64Bitmap clone() {
+    FastRankRoaring64Bitmap result = new FastRankRoaring64Bitmap();
+    result.highLowContainer = highLowContainer.clone();
+    return result;
+  }
+}
@@ -19,23 +19,80 @@ import java.util.NoSuchElementException;
 
 public class HighLowContainer {
 
+  // while the keys share their high 32 bits, they are kept in a window and the art is null: the
+  // art is only built once a key of another window comes in
+  private KeyWindow window;
   private Art art;
   private Containers containers;
+  // the last leaf found, so that runs of accesses to the same 48 bit key skip walking the art
+  private LeafNode cursor;
   private static final byte EMPTY_TAG = 0;
   private static final byte NOT_EMPTY_TAG = 1;
 
   public HighLowContainer() {
-    art = new Art();
+    window = new KeyWindow();
     containers = new Containers();
   }
   @Override
   public HighLowContainer clone() {
     HighLowContainer cloned = new HighLowContainer();
-    cloned.art = this.art.clone();
+    if (window == null) {
+      cloned.window = null;
+      cloned.art = this.art.clone();
+    } else {
+      cloned.window = this.window.clone();
+    }
     cloned.containers = this.containers.clone();
     return cloned;
   }
 
+  // VisibleForTesting
+  boolean isSingleWindow() {
+    return window != null;
+  }
+
+  private void leaveWindow() {
+    art = window.toArt();
+    window = null;
+  }
+
+  /**
+   * get back to a window once the keys fit in one, as after removing all the keys of the other
+   * windows
+   */
+  private void windowIfNarrow() {
+    if (window != null) {
+      return;
+    }
+    if (art.isEmpty()) {
+      window = new KeyWindow();
+      art = null;
+      cursor = null;
+      return;
+    }
+    if (!KeyWindow.fits(art.first().getKey(), art.last().getKey())) {
+      return;
+    }
+    int size = (int) art.getKeySize();
+    long[] keys = new long[size];
+    long[] containerIdxs = new long[size];
+    int i = 0;
+    LeafNodeIterator leafNodeIterator = art.leafNodeIterator(false, containers);
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      keys[i] = leafNode.getKey();
+      containerIdxs[i++] = leafNode.getContainerIdx();
+    }
+    window = KeyWindow.ofSortedKeys(keys, containerIdxs, i);
+    art = null;
+    cursor = null;
+  }
+
+  // the art to serialize, built on the fly from the window
+  private Art serializedArt() {
+    return window == null ? art : window.toArt();
+  }
+
   public Container getContainer(long containerIdx) {
     return containers.getContainer(containerIdx);
   }
@@ -46,13 +103,7 @@ public class HighLowContainer {
    * @return the container with the container index
    */
   public ContainerWithIndex searchContainer(byte[] highPart) {
-    long containerIdx = art.findByKey(highPart);
-    if (containerIdx < 0) {
-      return null;
-    } else {
-      Container container = containers.getContainer(containerIdx);
-      return new ContainerWithIndex(container, containerIdx);
-    }
+    return searchContainer(LongUtils.fromKey(highPart));
   }
   /**
    * search the container by the given 48 bit high part key
@@ -60,13 +111,30 @@ public class HighLowContainer {
    * @return the container with the container index
    */
   public ContainerWithIndex searchContainer(long highPart) {
-    long containerIdx = art.findByKey(highPart);
-    if (containerIdx < 0) {
-      return null;
-    } else {
+    if (window != null) {
+      long containerIdx = window.findContainerIdx(LongUtils.rightShiftHighPart(highPart));
+      if (containerIdx < 0) {
+        return null;
+      }
+      return new ContainerWithIndex(containers.getContainer(containerIdx), containerIdx);
+    }
+    LeafNode leafNode = cursor;
+    if (leafNode != null && leafNode.getKey() == LongUtils.rightShiftHighPart(highPart)) {
+      long containerIdx = leafNode.getContainerIdx();
       Container container = containers.getContainer(containerIdx);
-      return new ContainerWithIndex(container, containerIdx);
+      // container indexes are only reused by a compaction, which dismisses the cursor: until
+      // then the slot of a removed leaf stays empty
+      if (container != null) {
+        return new ContainerWithIndex(container, containerIdx);
+      }
     }
+    leafNode = art.findLeafByKey(highPart);
+    if (leafNode == null) {
+      return null;
+    }
+    cursor = leafNode;
+    long containerIdx = leafNode.getContainerIdx();
+    return new ContainerWithIndex(containers.getContainer(containerIdx), containerIdx);
   }
 
   /**
@@ -76,20 +144,99 @@ public class HighLowContainer {
    */
   public void put(byte[] highPart, Container container) {
     long containerIdx = containers.addContainer(container);
+    if (window != null) {
+      long key = LongUtils.rightShiftHighPart(LongUtils.fromKey(highPart));
+      if (window.accepts(key)) {
+        window.put(key, containerIdx);
+        return;
+      }
+      leaveWindow();
+    }
     art.insert(highPart, containerIdx);
   }
 
+  /**
+   * replace the content with the given keys and containers, building the art in a single pass
+   * unless they all fit in a window
+   * @param highKeys the 48 bit keys, strictly increasing in unsigned order
+   * @param containers the container of each key
+   * @param size the number of keys to use
+   */
+  public void putAllSorted(long[] highKeys, Container[] containers, int size) {
+    Containers freshContainers = new Containers();
+    long[] containerIdxs = new long[size];
+    for (int i = 0; i < size; i++) {
+      containerIdxs[i] = freshContainers.addContainer(containers[i]);
+    }
+    if (size == 0 || KeyWindow.fits(highKeys[0], highKeys[size - 1])) {
+      this.window = KeyWindow.ofSortedKeys(highKeys, containerIdxs, size);
+      this.art = null;
+    } else {
+      this.window = null;
+      this.art = Art.ofSortedKeys(highKeys, containerIdxs, size);
+    }
+    this.containers = freshContainers;
+    this.cursor = null;
+  }
+
   /**
    * Attempt to remove the container that corresponds to the 48 bit key.
    * @param highPart the 48 bit key
    */
   public void remove(byte[] highPart) {
+    if (window != null) {
+      long key = LongUtils.rightShiftHighPart(LongUtils.fromKey(highPart));
+      int index = window.indexOf(key);
+      if (index >= 0) {
+        containers.remove(window.containerIdx(index));
+        window.removeAt(index);
+      }
+      return;
+    }
     long containerIdx = art.remove(highPart);
     if (containerIdx != BranchNode.ILLEGAL_IDX) {
       containers.remove(containerIdx);
     }
   }
 
+  /**
+   * the number of holding containers
+   * @return the number of live containers
+   */
+  public long getContainerSize() {
+    return containers.getContainerSize();
+  }
+
+  /**
+   * the number of slots left empty by removed containers since the last compaction
+   * @return the number of dead slots
+   */
+  public long getDeadSlotSize() {
+    return containers.getDeadSlotSize();
+  }
+
+  /**
+   * whether the dead slots outnumber the live containers
+   * @return true if a compaction is worthwhile
+   */
+  public boolean isSparse() {
+    return containers.isSparse();
+  }
+
+  /**
+   * reclaim the slots of the removed containers, renumbering the container indexes: the ones
+   * obtained before are invalidated. Keys left in a single window get back to it.
+   */
+  public void compact() {
+    if (window != null) {
+      window.compact(containers);
+    } else {
+      containers.compact(art);
+      cursor = null;
+      windowIfNarrow();
+    }
+  }
+
   /**
    * get a container iterator
    * @return a container iterator
@@ -103,6 +250,9 @@ public class HighLowContainer {
    * @return a key iterator
    */
   public KeyIterator highKeyIterator() {
+    if (window != null) {
+      return new KeyIterator(window.leafNodeIterator(false, containers));
+    }
     return art.iterator(containers);
   }
 
@@ -111,10 +261,16 @@ public class HighLowContainer {
    * @return the leaf node iterator
    */
   public LeafNodeIterator highKeyLeafNodeIterator(boolean reverse) {
+    if (window != null) {
+      return window.leafNodeIterator(reverse, containers);
+    }
     return art.leafNodeIterator(reverse, containers);
   }
 
   public LeafNodeIterator highKeyLeafNodeIteratorFrom(long bound, boolean reverse) {
+    if (window != null) {
+      return window.leafNodeIteratorFrom(bound, reverse, containers);
+    }
     return art.leafNodeIteratorFrom(bound, reverse, containers);
   }
 
@@ -132,7 +288,11 @@ public class HighLowContainer {
    * @return true: empty,false: not empty
    */
   public boolean isEmpty() {
-    return art.isEmpty();
+    return window != null ? window.size() == 0 : art.isEmpty();
+  }
+
+  private long getKeySize() {
+    return window != null ? window.size() : art.getKeySize();
   }
 
   private void assertNonEmpty() {
@@ -148,6 +308,10 @@ public class HighLowContainer {
    */
   public long first() {
     assertNonEmpty();
+    if (window != null) {
+      Container container = getContainer(window.containerIdx(0));
+      return LongUtils.toLong(window.key(0), (char) container.first());
+    }
 
     LeafNode firstNode = art.first();
     long containerIdx = firstNode.getContainerIdx();
@@ -164,6 +328,11 @@ public class HighLowContainer {
    */
   public long last() {
     assertNonEmpty();
+    if (window != null) {
+      int index = window.size() - 1;
+      Container container = getContainer(window.containerIdx(index));
+      return LongUtils.toLong(window.key(index), (char) container.last());
+    }
 
     LeafNode lastNode = art.last();
     long containerIdx = lastNode.getContainerIdx();
@@ -204,7 +373,7 @@ public class HighLowContainer {
   public void serialize(ByteBuffer buffer) throws IOException {
     ByteBuffer byteBuffer =
         buffer.order() == LITTLE_ENDIAN ? buffer : buffer.slice().order(LITTLE_ENDIAN);
-    if (art.isEmpty()) {
+    if (isEmpty()) {
       byteBuffer.put(EMPTY_TAG);
       if (byteBuffer != buffer) {
         buffer.position(buffer.position() + byteBuffer.position());
@@ -213,7 +382,7 @@ public class HighLowContainer {
     } else {
       byteBuffer.put(NOT_EMPTY_TAG);
     }
-    art.serializeArt(byteBuffer);
+    serializedArt().serializeArt(byteBuffer);
     containers.serialize(byteBuffer);
     if (byteBuffer != buffer) {
       buffer.position(buffer.position() + byteBuffer.position());
@@ -233,8 +402,11 @@ public class HighLowContainer {
     if (emptyTag == EMPTY_TAG) {
       return;
     }
+    window = null;
+    art = new Art();
     art.deserializeArt(byteBuffer);
     containers.deserialize(byteBuffer);
+    windowIfNarrow();
   }
 
   /**
@@ -243,10 +415,10 @@ public class HighLowContainer {
    */
   public long serializedSizeInBytes() {
     long totalSize = 1L;
-    if (art.isEmpty()) {
+    if (isEmpty()) {
       return totalSize;
     }
-    totalSize += art.serializeSizeInBytes();
+    totalSize += serializedArt().serializeSizeInBytes();
     totalSize += containers.serializedSizeInBytes();
     return totalSize;
   }
@@ -257,13 +429,13 @@ public class HighLowContainer {
    * @throws IOException indicate the io exception happened
    */
   public void serialize(DataOutput dataOutput) throws IOException {
-    if (art.isEmpty()) {
+    if (isEmpty()) {
       dataOutput.writeByte(EMPTY_TAG);
       return;
     } else {
       dataOutput.writeByte(NOT_EMPTY_TAG);
     }
-    art.serializeArt(dataOutput);
+    serializedArt().serializeArt(dataOutput);
     containers.serialize(dataOutput);
   }
 
@@ -278,16 +450,21 @@ public class HighLowContainer {
     if (emptyTag == EMPTY_TAG) {
       return;
     }
+    window = null;
+    art = new Art();
     art.deserializeArt(dataInput);
     containers.deserialize(dataInput);
+    windowIfNarrow();
   }
 
   /**
    * clear to be a empty fresh one
    */
   public void clear() {
-    art = new Art();
+    window = new KeyWindow();
+    art = null;
     containers = new Containers();
+    cursor = null;
   }
 
   @Override
@@ -311,7 +488,7 @@ public class HighLowContainer {
   public boolean equals(Object object) {
     if (object instanceof HighLowContainer) {
       HighLowContainer otherHighLowContainer = (HighLowContainer) object;
-      if (this.art.getKeySize() != otherHighLowContainer.art.getKeySize()) {
+      if (this.getKeySize() != otherHighLowContainer.getKeySize()) {
         return false;
       }
       KeyIterator thisKeyIte = this.highKeyIterator();
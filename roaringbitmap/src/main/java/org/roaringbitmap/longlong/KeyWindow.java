@@ -0,0 +1,267 @@
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.Util;
+import org.roaringbitmap.art.Art;
+import org.roaringbitmap.art.Containers;
+import org.roaringbitmap.art.LeafNode;
+import org.roaringbitmap.art.LeafNodeIterator;
+import org.roaringbitmap.art.Shuttle;
+
+import java.util.Arrays;
+
+/**
+ * The 48 bit keys of a {@link HighLowContainer} while they all share their high 32 bits: just like
+ * in a RoaringArray, their low 16 bits are kept sorted in a plain array, along with the index of
+ * their container. A window holds up to the 65536 keys of its 2^32 values, and lookups are a
+ * binary search of at most 16 steps in the array rather than a walk down an art.
+ */
+final class KeyWindow {
+
+  // every key of the window, as in a RoaringArray
+  static final int MAX_SIZE = 1 << 16;
+
+  private int high;
+  private char[] keys;
+  private long[] containerIdxs;
+  private int size;
+  // the last index found, so that runs of accesses to the same key skip the search
+  private int lastIndex;
+
+  KeyWindow() {
+    this(0, new char[0], new long[0], 0);
+  }
+
+  private KeyWindow(int high, char[] keys, long[] containerIdxs, int size) {
+    this.high = high;
+    this.keys = keys;
+    this.containerIdxs = containerIdxs;
+    this.size = size;
+  }
+
+  /**
+   * @param keys the 48 bit keys, strictly increasing and sharing their high 32 bits
+   * @param containerIdxs the container index corresponding to each key
+   * @param size the number of keys to use
+   * @return a window holding the keys
+   */
+  static KeyWindow ofSortedKeys(long[] keys, long[] containerIdxs, int size) {
+    char[] lows = new char[size];
+    for (int i = 0; i < size; i++) {
+      lows[i] = (char) keys[i];
+    }
+    int high = size == 0 ? 0 : (int) (keys[0] >>> 16);
+    return new KeyWindow(high, lows, Arrays.copyOf(containerIdxs, size), size);
+  }
+
+  /**
+   * @param first the smallest 48 bit key
+   * @param last the largest 48 bit key
+   * @return whether the keys fit in a window
+   */
+  static boolean fits(long first, long last) {
+    return (first >>> 16) == (last >>> 16);
+  }
+
+  @Override
+  public KeyWindow clone() {
+    return new KeyWindow(
+        high, Arrays.copyOf(keys, size), Arrays.copyOf(containerIdxs, size), size);
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @param key an absent 48 bit key
+   * @return whether the key can be put in this window, which takes any key while empty
+   */
+  boolean accepts(long key) {
+    return size == 0 || (int) (key >>> 16) == high;
+  }
+
+  /**
+   * @param key a 48 bit key
+   * @return the index of the key if present, or a negative value
+   */
+  int indexOf(long key) {
+    if ((int) (key >>> 16) != high) {
+      return -1;
+    }
+    return search((char) key);
+  }
+
+  // the index of the key if present, or -(i+1) where i is the insertion point
+  private int search(char key) {
+    if (lastIndex < size && keys[lastIndex] == key) {
+      return lastIndex;
+    }
+    int index = Util.unsignedBinarySearch(keys, 0, size, key);
+    if (index >= 0) {
+      lastIndex = index;
+    }
+    return index;
+  }
+
+  /**
+   * @param key a 48 bit key
+   * @return the container index of the key, or -1 if absent
+   */
+  long findContainerIdx(long key) {
+    int index = indexOf(key);
+    return index < 0 ? -1L : containerIdxs[index];
+  }
+
+  long key(int index) {
+    return Integer.toUnsignedLong(high) << 16 | keys[index];
+  }
+
+  long containerIdx(int index) {
+    return containerIdxs[index];
+  }
+
+  /**
+   * insert a key of this window, or replace its container index if present
+   * @param key a 48 bit key accepted by this window
+   * @param containerIdx the container index
+   */
+  void put(long key, long containerIdx) {
+    if (size == 0) {
+      high = (int) (key >>> 16);
+    }
+    int index = search((char) key);
+    if (index >= 0) {
+      containerIdxs[index] = containerIdx;
+      return;
+    }
+    index = -index - 1;
+    if (size == keys.length) {
+      int capacity = size == 0 ? 4 : Math.min(2 * size, MAX_SIZE);
+      keys = Arrays.copyOf(keys, capacity);
+      containerIdxs = Arrays.copyOf(containerIdxs, capacity);
+    }
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(containerIdxs, index, containerIdxs, index + 1, size - index);
+    keys[index] = (char) key;
+    containerIdxs[index] = containerIdx;
+    size++;
+  }
+
+  void removeAt(int index) {
+    System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+    System.arraycopy(containerIdxs, index + 1, containerIdxs, index, size - index - 1);
+    size--;
+  }
+
+  /**
+   * renumber the container indexes after a compaction of the containers
+   * @param containers the containers to compact
+   */
+  void compact(Containers containers) {
+    containers.compact(containerIdxs, size);
+  }
+
+  /**
+   * @return an art holding the same keys and container indexes
+   */
+  Art toArt() {
+    long[] art48BitKeys = new long[size];
+    for (int i = 0; i < size; i++) {
+      art48BitKeys[i] = key(i);
+    }
+    return Art.ofSortedKeys(art48BitKeys, containerIdxs, size);
+  }
+
+  /**
+   * @param reverse false: ascending order, true: descending order
+   * @param containers the containers, whose removed entries are released
+   * @return an iterator visiting the keys as leaves
+   */
+  LeafNodeIterator leafNodeIterator(boolean reverse, Containers containers) {
+    Shuttle shuttle = new WindowShuttle(reverse, containers);
+    shuttle.initShuttle();
+    return new LeafNodeIterator(shuttle);
+  }
+
+  /**
+   * @param bound the value whose leaf is visited first, or else the next one in iteration order
+   * @param reverse false: ascending order, true: descending order
+   * @param containers the containers, whose removed entries are released
+   * @return an iterator visiting the keys as leaves
+   */
+  LeafNodeIterator leafNodeIteratorFrom(long bound, boolean reverse, Containers containers) {
+    Shuttle shuttle = new WindowShuttle(reverse, containers);
+    shuttle.initShuttleFrom(bound);
+    return new LeafNodeIterator(shuttle);
+  }
+
+  private final class WindowShuttle implements Shuttle {
+
+    private final boolean reverse;
+    private final Containers containers;
+    private int position;
+    private LeafNode current;
+
+    private WindowShuttle(boolean reverse, Containers containers) {
+      this.reverse = reverse;
+      this.containers = containers;
+    }
+
+    @Override
+    public void initShuttle() {
+      position = reverse ? size : -1;
+      current = null;
+    }
+
+    @Override
+    public void initShuttleFrom(long key) {
+      long boundKey = key >>> 16;
+      int index;
+      if (size == 0 || boundKey >>> 16 != Integer.toUnsignedLong(high)) {
+        // the bound lies before or after the whole window
+        index = size == 0 || boundKey < key(0) ? 0 : size;
+      } else {
+        index = search((char) boundKey);
+        if (index < 0) {
+          index = -index - 1;
+        } else if (reverse) {
+          // the leaf holding the bound is visited first
+          index++;
+        }
+      }
+      // ascending, the first leaf visited is at the index: descending, it is the one before
+      position = reverse ? index : index - 1;
+      current = null;
+    }
+
+    @Override
+    public boolean moveToNextLeaf() {
+      current = null;
+      if (reverse) {
+        return --position >= 0;
+      }
+      return ++position < size;
+    }
+
+    @Override
+    public LeafNode getCurrentLeafNode() {
+      if (current == null) {
+        current = new LeafNode(key(position) << 16, containerIdxs[position]);
+      }
+      return current;
+    }
+
+    @Override
+    public void remove() {
+      if (containers != null) {
+        containers.remove(containerIdxs[position]);
+      }
+      removeAt(position);
+      current = null;
+      if (!reverse) {
+        // the next key slid into the current position
+        position--;
+      }
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+/**
+ * The 64 bit counterpart of {@link org.roaringbitmap.BatchIterator}: values are written by
+ * batches onto a buffer, which is much faster than getting them one at a time from a
+ * {@link LongIterator}.
+ */
+public interface LongBatchIterator extends Cloneable {
+
+  /**
+   * Writes the next batch of longs onto the buffer,
+   * and returns how many were written. Aims to fill
+   * the buffer.
+   * @param buffer - the target to write onto
+   * @return how many values were written during the call.
+   */
+  int nextBatch(long[] buffer);
+
+  /**
+   * Returns true is there are more values to get.
+   * @return whether the iterator is exhaused or not.
+   */
+  boolean hasNext();
+
+  /**
+   * Creates a copy of the iterator.
+   *
+   * @return a clone of the current iterator
+   */
+  LongBatchIterator clone();
+
+  /**
+   * Creates a wrapper around the iterator so it behaves like a LongIterator
+   * @param buffer - array to buffer bits into (size 128-256 should be best).
+   * @return the wrapper
+   */
+  default LongIterator asLongIterator(long[] buffer) {
+    return new BatchLongIterator(this, buffer);
+  }
+
+  /**
+   * If needed,
+   *
+   * for a forwards iterator
+   * advance as long as the next value is smaller than target
+   *
+   * For a reverse iterator
+   * advance as long as the next value is greater than target
+   *
+   *  The benefit of calling advanceIfNeeded is that each such call
+   *  can be much faster than repeated calls to "nextBatch". The underlying
+   *  implementation can "skip" over some data.
+   *
+   * @param target threshold
+   */
+  void advanceIfNeeded(long target);
+}
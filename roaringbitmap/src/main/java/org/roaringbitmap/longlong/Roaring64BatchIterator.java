@@ -0,0 +1,91 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.Container;
+import org.roaringbitmap.ContainerBatchIterator;
+import org.roaringbitmap.art.LeafNode;
+import org.roaringbitmap.art.LeafNodeIterator;
+
+/**
+ * Walks the leaves of a {@link HighLowContainer} in ascending order, draining each container
+ * through its {@link ContainerBatchIterator}.
+ */
+final class Roaring64BatchIterator implements LongBatchIterator {
+
+  private final HighLowContainer highLowContainer;
+  private LeafNodeIterator leafNodeIterator;
+  // the 48 bit key of the current container
+  private long key;
+  private ContainerBatchIterator iterator;
+
+  Roaring64BatchIterator(HighLowContainer highLowContainer) {
+    this.highLowContainer = highLowContainer;
+    this.leafNodeIterator = highLowContainer.highKeyLeafNodeIterator(false);
+    nextIterator();
+  }
+
+  @Override
+  public int nextBatch(long[] buffer) {
+    int consumed = 0;
+    while (iterator != null && consumed < buffer.length) {
+      consumed += iterator.next(key << 16, buffer, consumed);
+      if (consumed < buffer.length || !iterator.hasNext()) {
+        nextIterator();
+      }
+    }
+    return consumed;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return null != iterator;
+  }
+
+  @Override
+  public LongBatchIterator clone() {
+    try {
+      Roaring64BatchIterator it = (Roaring64BatchIterator) super.clone();
+      if (null != iterator) {
+        it.iterator = iterator.clone();
+        // a fresh walk, past the leaf of the current container
+        it.leafNodeIterator = highLowContainer.highKeyLeafNodeIteratorFrom(key << 16, false);
+        it.leafNodeIterator.next();
+      }
+      return it;
+    } catch (CloneNotSupportedException e) {
+      // won't happen
+      throw new IllegalStateException();
+    }
+  }
+
+  @Override
+  public void advanceIfNeeded(long target) {
+    long targetKey = LongUtils.rightShiftHighPart(target);
+    if (null != iterator && key < targetKey) {
+      leafNodeIterator.seek(target);
+      nextIterator();
+    }
+    if (null != iterator && key == targetKey) {
+      iterator.advanceIfNeeded(LongUtils.lowPart(target));
+      if (!iterator.hasNext()) {
+        nextIterator();
+      }
+    }
+  }
+
+  private void nextIterator() {
+    iterator = null;
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      Container container = highLowContainer.getContainer(leafNode.getContainerIdx());
+      // xor and flip may leave empty containers behind, whose iterators must not be drained
+      if (!container.isEmpty()) {
+        key = leafNode.getKey();
+        iterator = container.getBatchIterator();
+        return;
+      }
+    }
+  }
+}
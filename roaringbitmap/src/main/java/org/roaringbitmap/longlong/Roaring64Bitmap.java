@@ -3,8 +3,11 @@ package org.roaringbitmap.longlong;
 import org.roaringbitmap.ArrayContainer;
 import org.roaringbitmap.BitmapContainer;
 import org.roaringbitmap.Container;
+import org.roaringbitmap.ContainerPointer;
+import org.roaringbitmap.InvalidRoaringFormat;
 import org.roaringbitmap.PeekableCharIterator;
 import org.roaringbitmap.RelativeRangeConsumer;
+import org.roaringbitmap.RoaringBitmap;
 import org.roaringbitmap.RunContainer;
 import org.roaringbitmap.Util;
 import org.roaringbitmap.art.ContainerIterator;
@@ -20,10 +23,12 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.LongBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.PrimitiveIterator;
 
 /**
  * Roaring64Bitmap is a compressed 64 bit bitmap. It can contain all the numbers of long
@@ -33,7 +38,9 @@ import java.util.Objects;
  */
 public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
 
-  private HighLowContainer highLowContainer;
+  private static final int MAX_ARRAY_CONTAINER_SIZE = 4096;
+
+  HighLowContainer highLowContainer;
 
   public Roaring64Bitmap() {
     highLowContainer = new HighLowContainer();
@@ -54,17 +61,19 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
    */
   @Override
   public void addLong(long x) {
-    byte[] high = LongUtils.highPart(x);
     char low = LongUtils.lowPart(x);
-    ContainerWithIndex containerWithIndex = highLowContainer.searchContainer(high);
+    ContainerWithIndex containerWithIndex =
+        highLowContainer.searchContainer(LongUtils.highPartOnly(x));
     if (containerWithIndex != null) {
       Container container = containerWithIndex.getContainer();
       Container freshOne = container.add(low);
-      highLowContainer.replaceContainer(containerWithIndex.getContainerIdx(), freshOne);
+      if (freshOne != container) {
+        highLowContainer.replaceContainer(containerWithIndex.getContainerIdx(), freshOne);
+      }
     } else {
       ArrayContainer arrayContainer = new ArrayContainer();
       arrayContainer.add(low);
-      highLowContainer.put(high, arrayContainer);
+      highLowContainer.put(LongUtils.highPart(x), arrayContainer);
     }
   }
 
@@ -314,6 +323,191 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
     return result;
   }
 
+  /**
+   * Computes the number of values in the range [start,end), in unsigned order. Containers entirely
+   * within the range only contribute their cardinality.
+   *
+   * @param start inclusive beginning of range
+   * @param end exclusive ending of range
+   * @return the number of values in the range, 0 if end is not larger than start
+   */
+  public long rangeCardinality(long start, long end) {
+    if (Long.compareUnsigned(start, end) >= 0) {
+      return 0L;
+    }
+    long startHigh = LongUtils.rightShiftHighPart(start);
+    long lastHigh = LongUtils.rightShiftHighPart(end - 1);
+    long cardinality = 0L;
+    LeafNodeIterator leafNodeIterator = highLowContainer.highKeyLeafNodeIteratorFrom(start, false);
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      long high = leafNode.getKey();
+      if (high > lastHigh) {
+        break;
+      }
+      Container container = highLowContainer.getContainer(leafNode.getContainerIdx());
+      int min = high == startHigh ? LongUtils.lowPart(start) : 0;
+      int sup = high == lastHigh ? LongUtils.lowPart(end - 1) + 1 : 1 << 16;
+      if (min == 0 && sup == 1 << 16) {
+        cardinality += container.getCardinality();
+      } else {
+        cardinality += container.rank((char) (sup - 1));
+        if (min > 0) {
+          cardinality -= container.rank((char) (min - 1));
+        }
+      }
+    }
+    return cardinality;
+  }
+
+  /**
+   * Returns the first value equal to or larger than the provided value, in unsigned order.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the smallest value which is not smaller than fromValue
+   * @throws NoSuchElementException if there is no such value: unlike 32 bit bitmaps, there is no
+   *     spare value to signal the absence of a result
+   */
+  public long nextValue(long fromValue) {
+    long fromHigh = LongUtils.rightShiftHighPart(fromValue);
+    LeafNodeIterator leafNodeIterator =
+        highLowContainer.highKeyLeafNodeIteratorFrom(fromValue, false);
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      Container container = highLowContainer.getContainer(leafNode.getContainerIdx());
+      // xor and flip may leave empty containers behind
+      if (container.isEmpty()) {
+        continue;
+      }
+      int low =
+          container.nextValue(
+              leafNode.getKey() == fromHigh ? LongUtils.lowPart(fromValue) : (char) 0);
+      if (low >= 0) {
+        return LongUtils.toLong(leafNode.getKey(), (char) low);
+      }
+    }
+    throw new NoSuchElementException(
+        "No value at or after " + Long.toUnsignedString(fromValue));
+  }
+
+  /**
+   * Returns the last value equal to or smaller than the provided value, in unsigned order.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the largest value which is not larger than fromValue
+   * @throws NoSuchElementException if there is no such value
+   */
+  public long previousValue(long fromValue) {
+    long fromHigh = LongUtils.rightShiftHighPart(fromValue);
+    LeafNodeIterator leafNodeIterator =
+        highLowContainer.highKeyLeafNodeIteratorFrom(fromValue, true);
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      Container container = highLowContainer.getContainer(leafNode.getContainerIdx());
+      int low =
+          container.previousValue(
+              leafNode.getKey() == fromHigh ? LongUtils.lowPart(fromValue) : Character.MAX_VALUE);
+      if (low >= 0) {
+        return LongUtils.toLong(leafNode.getKey(), (char) low);
+      }
+    }
+    throw new NoSuchElementException(
+        "No value at or before " + Long.toUnsignedString(fromValue));
+  }
+
+  /**
+   * Returns the first absent value equal to or larger than the provided value, in unsigned order.
+   * Full containers are skipped without being inspected value by value.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the smallest absent value which is not smaller than fromValue
+   * @throws NoSuchElementException if all the values from fromValue onwards are present
+   */
+  public long nextAbsentValue(long fromValue) {
+    long value = fromValue;
+    LeafNodeIterator leafNodeIterator =
+        highLowContainer.highKeyLeafNodeIteratorFrom(fromValue, false);
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      long high = leafNode.getKey();
+      if (high != LongUtils.rightShiftHighPart(value)) {
+        // there is no container for value
+        break;
+      }
+      Container container = highLowContainer.getContainer(leafNode.getContainerIdx());
+      int low = container.nextAbsentValue(LongUtils.lowPart(value));
+      if (low < 1 << 16) {
+        return LongUtils.toLong(high, (char) low);
+      }
+      if (LongUtils.isMaxHigh(high)) {
+        throw new NoSuchElementException(
+            "No absent value at or after " + Long.toUnsignedString(fromValue));
+      }
+      value = LongUtils.toLong(high + 1, (char) 0);
+    }
+    return value;
+  }
+
+  /**
+   * Returns the last absent value equal to or smaller than the provided value, in unsigned order.
+   * Full containers are skipped without being inspected value by value.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the largest absent value which is not larger than fromValue
+   * @throws NoSuchElementException if all the values up to fromValue are present
+   */
+  public long previousAbsentValue(long fromValue) {
+    long value = fromValue;
+    LeafNodeIterator leafNodeIterator =
+        highLowContainer.highKeyLeafNodeIteratorFrom(fromValue, true);
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      long high = leafNode.getKey();
+      if (high != LongUtils.rightShiftHighPart(value)) {
+        // there is no container for value
+        break;
+      }
+      Container container = highLowContainer.getContainer(leafNode.getContainerIdx());
+      int low = container.previousAbsentValue(LongUtils.lowPart(value));
+      if (low >= 0) {
+        return LongUtils.toLong(high, (char) low);
+      }
+      if (high == 0) {
+        throw new NoSuchElementException(
+            "No absent value at or before " + Long.toUnsignedString(fromValue));
+      }
+      value = LongUtils.toLong(high - 1, Character.MAX_VALUE);
+    }
+    return value;
+  }
+
+  /**
+   * In-place bitwise OR (union) operation without maintaining cardinality: the containers are
+   * neither counted nor converted until repairAfterLazy() is called, which makes long chains of
+   * unions cheaper. Don't forget to call repairAfterLazy() afterward. The current bitmap is
+   * modified.
+   *
+   * @param x2 other bitmap, which should not have been computed lazily
+   */
+  public void naivelazyor(final Roaring64Bitmap x2) {
+    if (this == x2) {
+      return;
+    }
+    KeyIterator highIte2 = x2.highLowContainer.highKeyIterator();
+    while (highIte2.hasNext()) {
+      byte[] high = highIte2.next();
+      long containerIdx = highIte2.currentContainerIdx();
+      Container container2 = x2.highLowContainer.getContainer(containerIdx);
+      ContainerWithIndex containerWithIdx = this.highLowContainer.searchContainer(high);
+      if (containerWithIdx == null) {
+        this.highLowContainer.put(high, container2.clone());
+      } else {
+        Container freshContainer = containerWithIdx.getContainer().lazyIOR(container2);
+        this.highLowContainer.replaceContainer(containerWithIdx.getContainerIdx(), freshContainer);
+      }
+    }
+  }
+
   /**
    * In-place bitwise OR (union) operation. The current bitmap is modified.
    *
@@ -389,6 +583,53 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
     return result;
   }
 
+  /**
+   * In-place bitwise XOR (symmetric difference) operation without maintaining cardinality: the
+   * common containers are turned into bitsets which are neither counted nor dropped when empty
+   * until repairAfterLazy() is called. Don't forget to call repairAfterLazy() afterward. The
+   * current bitmap is modified.
+   *
+   * @param x2 other bitmap, which should not have been computed lazily
+   */
+  public void naivelazyxor(final Roaring64Bitmap x2) {
+    if (x2 == this) {
+      clear();
+      return;
+    }
+    KeyIterator keyIterator = x2.highLowContainer.highKeyIterator();
+    while (keyIterator.hasNext()) {
+      byte[] high = keyIterator.next();
+      long containerIdx = keyIterator.currentContainerIdx();
+      Container container = x2.highLowContainer.getContainer(containerIdx);
+      ContainerWithIndex containerWithIndex = this.highLowContainer.searchContainer(high);
+      if (containerWithIndex == null) {
+        this.highLowContainer.put(high, container.clone());
+      } else {
+        Container freshOne = containerWithIndex.getContainer().lazyIXOR(container);
+        this.highLowContainer.replaceContainer(containerWithIndex.getContainerIdx(), freshOne);
+      }
+    }
+  }
+
+  /**
+   * Count the containers and convert them to their best type after naivelazyor and naivelazyxor,
+   * dropping the emptied ones.
+   */
+  public void repairAfterLazy() {
+    KeyIterator keyIterator = highLowContainer.highKeyIterator();
+    while (keyIterator.hasNext()) {
+      keyIterator.next();
+      long containerIdx = keyIterator.currentContainerIdx();
+      Container repaired = highLowContainer.getContainer(containerIdx).repairAfterLazy();
+      if (repaired.isEmpty()) {
+        keyIterator.remove();
+      } else {
+        highLowContainer.replaceContainer(containerIdx, repaired);
+      }
+    }
+    compactIfSparse();
+  }
+
   /**
    * In-place bitwise XOR (symmetric difference) operation. The current bitmap is modified.
    *
@@ -491,6 +732,7 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
         }
       }
     }
+    compactIfSparse();
   }
 
   /**
@@ -624,6 +866,7 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
         }
       }
     }
+    compactIfSparse();
   }
 
   /**
@@ -706,6 +949,7 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
         highLowContainer.put(hbStart, newContainer);
       }
     }
+    compactIfSparse();
   }
 
   /**
@@ -791,6 +1035,72 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
     char low = LongUtils.lowPart(x);
     return containerWithIdx.getContainer().contains(low);
   }
+  /**
+   * Checks if the bitmap contains the range [minimum,supremum), in unsigned order.
+   *
+   * @param minimum the inclusive lower bound of the range
+   * @param supremum the exclusive upper bound of the range
+   * @return whether the bitmap contains the range, false if it is empty
+   */
+  public boolean contains(long minimum, long supremum) {
+    if (Long.compareUnsigned(minimum, supremum) >= 0) {
+      return false;
+    }
+    long startHigh = LongUtils.rightShiftHighPart(minimum);
+    long lastHigh = LongUtils.rightShiftHighPart(supremum - 1);
+    LeafNodeIterator leafNodeIterator =
+        highLowContainer.highKeyLeafNodeIteratorFrom(minimum, false);
+    for (long high = startHigh; ; high++) {
+      if (!leafNodeIterator.hasNext()) {
+        return false;
+      }
+      LeafNode leafNode = leafNodeIterator.next();
+      if (leafNode.getKey() != high) {
+        return false;
+      }
+      Container container = highLowContainer.getContainer(leafNode.getContainerIdx());
+      int min = high == startHigh ? LongUtils.lowPart(minimum) : 0;
+      int sup = high == lastHigh ? LongUtils.lowPart(supremum - 1) + 1 : 1 << 16;
+      if (min == 0 && sup == 1 << 16 ? !container.isFull() : !container.contains(min, sup)) {
+        return false;
+      }
+      if (high == lastHigh) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Checks if the range [minimum,supremum) intersects with the bitmap, in unsigned order.
+   *
+   * @param minimum the inclusive lower bound of the range
+   * @param supremum the exclusive upper bound of the range
+   * @return whether the bitmap intersects with the range
+   */
+  public boolean intersects(long minimum, long supremum) {
+    if (Long.compareUnsigned(minimum, supremum) >= 0) {
+      return false;
+    }
+    long startHigh = LongUtils.rightShiftHighPart(minimum);
+    long lastHigh = LongUtils.rightShiftHighPart(supremum - 1);
+    LeafNodeIterator leafNodeIterator =
+        highLowContainer.highKeyLeafNodeIteratorFrom(minimum, false);
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      long high = leafNode.getKey();
+      if (high > lastHigh) {
+        return false;
+      }
+      Container container = highLowContainer.getContainer(leafNode.getContainerIdx());
+      int min = high == startHigh ? LongUtils.lowPart(minimum) : 0;
+      int sup = high == lastHigh ? LongUtils.lowPart(supremum - 1) + 1 : 1 << 16;
+      if (min == 0 && sup == 1 << 16 ? !container.isEmpty() : container.intersects(min, sup)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
 
   @Override
   public int getSizeInBytes() {
@@ -836,7 +1146,8 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
   public long getLongSizeInBytes() {
     // 'serializedSizeInBytes' is a better than nothing estimation of the memory footprint
     // It would generally be an optimistic estimator (by underestimating the size in memory)
-    return serializedSizeInBytes();
+    // The slots left by removed containers still hold a reference each, until a compaction
+    return serializedSizeInBytes() + 8L * highLowContainer.getDeadSlotSize();
   }
 
   @Override
@@ -949,6 +1260,359 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
     }
   }
 
+  /**
+   * Serialize this bitmap.
+   *
+   * The format is specified at
+   * https://github.com/RoaringBitmap/RoaringFormatSpec#extention-for-64-bit-implementations.
+   * It is the compatible with CRoaring (and GoRoaring), and with
+   * {@link Roaring64NavigableMap#deserializePortable(DataInput)}. The buckets are written straight
+   * from the containers of this bitmap, which are neither copied nor converted.
+   *
+   * Consider calling {@link #runOptimize} before serialization to improve compression.
+   *
+   * The current bitmap is not modified.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serializePortable(DataOutput out) throws IOException {
+    out.writeLong(Long.reverseBytes(forEachPortableBucket((high, bucket) -> {})));
+    forEachPortableBucket(
+        (high, bucket) -> {
+          out.writeInt(Integer.reverseBytes(high));
+          bucket.serialize(out);
+        });
+  }
+
+  /**
+   * Serialize this bitmap in the portable format, see {@link #serializePortable(DataOutput)}.
+   * Please make sure the ByteBuffer can hold {@link #portableSerializedSizeInBytes()} bytes.
+   *
+   * @param byteBuffer the ByteBuffer
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serializePortable(ByteBuffer byteBuffer) throws IOException {
+    ByteBuffer buffer =
+        byteBuffer.order() == ByteOrder.LITTLE_ENDIAN
+            ? byteBuffer
+            : byteBuffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    int start = buffer.position();
+    buffer.putLong(forEachPortableBucket((high, bucket) -> {}));
+    forEachPortableBucket(
+        (high, bucket) -> {
+          buffer.putInt(high);
+          bucket.serialize(buffer);
+        });
+    if (buffer != byteBuffer) {
+      byteBuffer.position(byteBuffer.position() + buffer.position() - start);
+    }
+  }
+
+  /**
+   * Deserialize (retrieve) this bitmap.
+   *
+   * The format is specified at
+   * https://github.com/RoaringBitmap/RoaringFormatSpec#extention-for-64-bit-implementations.
+   * It is the compatible with CRoaring (and GoRoaring), and with
+   * {@link Roaring64NavigableMap#serializePortable(DataOutput)}. The containers are collected in
+   * key order and the index is built in a single pass, rather than one insertion at a time.
+   *
+   * The current bitmap is overwritten.
+   *
+   * @param in the DataInput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void deserializePortable(DataInput in) throws IOException {
+    this.clear();
+    long nbHighs = Long.reverseBytes(in.readLong());
+    SortedContainers sorted = new SortedContainers();
+    for (long i = 0; i < nbHighs; i++) {
+      int high = Integer.reverseBytes(in.readInt());
+      RoaringBitmap bucket = new RoaringBitmap();
+      bucket.deserialize(in);
+      sorted.add(high, bucket);
+    }
+    sorted.loadInto(highLowContainer);
+  }
+
+  /**
+   * Deserialize (retrieve) this bitmap in the portable format, see
+   * {@link #deserializePortable(DataInput)}. The ByteBuffer's position is advanced past the
+   * bitmap.
+   *
+   * The current bitmap is overwritten.
+   *
+   * @param byteBuffer the ByteBuffer
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void deserializePortable(ByteBuffer byteBuffer) throws IOException {
+    this.clear();
+    ByteBuffer buffer = byteBuffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    long nbHighs = buffer.getLong();
+    SortedContainers sorted = new SortedContainers();
+    for (long i = 0; i < nbHighs; i++) {
+      int high = buffer.getInt();
+      RoaringBitmap bucket = new RoaringBitmap();
+      bucket.deserialize(buffer);
+      buffer.position(buffer.position() + bucket.serializedSizeInBytes());
+      sorted.add(high, bucket);
+    }
+    sorted.loadInto(highLowContainer);
+    byteBuffer.position(byteBuffer.position() + buffer.position());
+  }
+
+  /**
+   * @return the number of bytes written by {@link #serializePortable(DataOutput)}
+   */
+  public long portableSerializedSizeInBytes() {
+    long[] nbBytes = {8L};
+    try {
+      forEachPortableBucket((high, bucket) -> nbBytes[0] += 4 + bucket.serializedSizeInBytes());
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return nbBytes[0];
+  }
+
+  /**
+   * Groups the containers by their high 32 bits, as 32 bit bitmaps sharing the containers.
+   *
+   * @return the number of buckets
+   */
+  private long forEachPortableBucket(PortableBucketConsumer consumer) throws IOException {
+    long nbBuckets = 0;
+    RoaringBitmap bucket = new RoaringBitmap();
+    int high = 0;
+    LeafNodeIterator leafNodeIterator = highLowContainer.highKeyLeafNodeIterator(false);
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      Container container = highLowContainer.getContainer(leafNode.getContainerIdx());
+      // the portable format cannot hold the empty containers xor and flip may leave behind
+      if (container.isEmpty()) {
+        continue;
+      }
+      long key = leafNode.getKey();
+      int leafHigh = (int) (key >>> 16);
+      if (!bucket.isEmpty() && leafHigh != high) {
+        consumer.accept(high, bucket);
+        nbBuckets++;
+        bucket = new RoaringBitmap();
+      }
+      high = leafHigh;
+      bucket.append((char) key, container);
+    }
+    if (!bucket.isEmpty()) {
+      consumer.accept(high, bucket);
+      nbBuckets++;
+    }
+    return nbBuckets;
+  }
+
+  private interface PortableBucketConsumer {
+    void accept(int high, RoaringBitmap bucket) throws IOException;
+  }
+
+  /**
+   * Collects containers with their 48 bit keys in ascending order, so that the art can be built in
+   * a single pass.
+   */
+  private static final class SortedContainers {
+    private long[] highKeys = new long[16];
+    private Container[] containers = new Container[16];
+    private int size;
+
+    void add(int high, RoaringBitmap bucket) {
+      if (size > 0 && Long.compareUnsigned(highKeys[size - 1] >>> 16, high & 0xFFFFFFFFL) >= 0) {
+        throw new InvalidRoaringFormat("The buckets are not in strictly increasing order");
+      }
+      ContainerPointer pointer = bucket.getContainerPointer();
+      Container container;
+      while ((container = pointer.getContainer()) != null) {
+        if (!container.isEmpty()) {
+          add((Integer.toUnsignedLong(high) << 16) | pointer.key(), container);
+        }
+        pointer.advance();
+      }
+    }
+
+    boolean canAdd(long highKey) {
+      return size == 0 || Long.compareUnsigned(highKeys[size - 1], highKey) < 0;
+    }
+
+    void add(long highKey, Container container) {
+      if (size == highKeys.length) {
+        highKeys = Arrays.copyOf(highKeys, 2 * size);
+        containers = Arrays.copyOf(containers, 2 * size);
+      }
+      highKeys[size] = highKey;
+      containers[size] = container;
+      size++;
+    }
+
+    void loadInto(HighLowContainer highLowContainer) {
+      highLowContainer.putAllSorted(highKeys, containers, size);
+    }
+  }
+
+  /**
+   * Groups values by their high 48 bits, building each container directly in its final form.
+   * While the groups come in ascending order into an empty bitmap, the containers are collected
+   * to build the art in a single pass; afterwards, they are merged into the bitmap one by one.
+   */
+  private static final class BulkLoader {
+    private static final int CHUNK_SIZE = 4096;
+
+    private final Roaring64Bitmap target;
+    private SortedContainers sorted;
+    private char[] lows = new char[64];
+    private int count;
+    private boolean lowsSorted = true;
+    private long currentHighPart;
+
+    BulkLoader(Roaring64Bitmap target) {
+      this.target = target;
+      this.sorted = target.isEmpty() ? new SortedContainers() : null;
+    }
+
+    void accept(long[] values, int from, int to) {
+      for (int i = from; i < to; i++) {
+        long value = values[i];
+        long highPart = LongUtils.highPartOnly(value);
+        if (highPart != currentHighPart && count > 0) {
+          flushContainer();
+        }
+        currentHighPart = highPart;
+        char low = LongUtils.lowPart(value);
+        if (count == lows.length && !lowsSorted && count >= 1 << 16) {
+          // duplicates: there are at most 2^16 distinct values
+          count = sortAndDeduplicate();
+          lowsSorted = true;
+        }
+        if (count == lows.length) {
+          lows = Arrays.copyOf(lows, 2 * count);
+        }
+        if (count > 0 && low <= lows[count - 1]) {
+          lowsSorted = false;
+        }
+        lows[count++] = low;
+      }
+    }
+
+    void accept(LongBuffer values) {
+      if (values.hasArray()) {
+        int offset = values.arrayOffset();
+        accept(values.array(), offset + values.position(), offset + values.limit());
+      } else {
+        LongBuffer remaining = values.duplicate();
+        long[] chunk = new long[Math.min(remaining.remaining(), CHUNK_SIZE)];
+        while (remaining.hasRemaining()) {
+          int length = Math.min(chunk.length, remaining.remaining());
+          remaining.get(chunk, 0, length);
+          accept(chunk, 0, length);
+        }
+      }
+    }
+
+    void accept(PrimitiveIterator.OfLong values) {
+      long[] chunk = new long[CHUNK_SIZE];
+      while (values.hasNext()) {
+        int length = 0;
+        while (length < chunk.length && values.hasNext()) {
+          chunk[length++] = values.nextLong();
+        }
+        accept(chunk, 0, length);
+      }
+    }
+
+    void finish() {
+      if (count > 0) {
+        flushContainer();
+      }
+      if (sorted != null) {
+        sorted.loadInto(target.highLowContainer);
+        sorted = null;
+      }
+    }
+
+    private void flushContainer() {
+      int cardinality = lowsSorted ? count : sortAndDeduplicate();
+      long highKey = currentHighPart >>> 16;
+      if (sorted != null && !sorted.canAdd(highKey)) {
+        sorted.loadInto(target.highLowContainer);
+        sorted = null;
+      }
+      if (sorted != null) {
+        sorted.add(highKey, containerOf(lows, cardinality));
+      } else if (cardinality == 1) {
+        // typical of unsorted values, cheaper to add than to merge
+        target.addLong(currentHighPart | lows[0]);
+      } else {
+        target.addContainer(currentHighPart, containerOf(lows, cardinality));
+      }
+      count = 0;
+      lowsSorted = true;
+    }
+
+    private int sortAndDeduplicate() {
+      Arrays.sort(lows, 0, count);
+      int cardinality = 1;
+      for (int i = 1; i < count; i++) {
+        if (lows[i] != lows[cardinality - 1]) {
+          lows[cardinality++] = lows[i];
+        }
+      }
+      return cardinality;
+    }
+  }
+
+  /**
+   * Builds the smallest container holding the values.
+   *
+   * @param lows distinct values in ascending order
+   * @param cardinality the number of values
+   * @return an array, bitmap or run container
+   */
+  private static Container containerOf(char[] lows, int cardinality) {
+    int nbrRuns = 1;
+    for (int i = 1; i < cardinality; i++) {
+      if (lows[i] != lows[i - 1] + 1) {
+        nbrRuns++;
+      }
+    }
+    // the serialized sizes, as compared by runOptimize
+    int sizeAsRuns = 2 + 4 * nbrRuns;
+    if (cardinality <= MAX_ARRAY_CONTAINER_SIZE) {
+      if (sizeAsRuns < 2 + 2 * cardinality) {
+        return runContainerOf(lows, cardinality, nbrRuns);
+      }
+      return new ArrayContainer(cardinality, lows);
+    }
+    if (sizeAsRuns < BitmapContainer.MAX_CAPACITY / 8) {
+      return runContainerOf(lows, cardinality, nbrRuns);
+    }
+    long[] words = new long[BitmapContainer.MAX_CAPACITY / 64];
+    for (int i = 0; i < cardinality; i++) {
+      words[lows[i] >>> 6] |= 1L << lows[i];
+    }
+    return new BitmapContainer(words, cardinality);
+  }
+
+  private static Container runContainerOf(char[] lows, int cardinality, int nbrRuns) {
+    char[] valueslength = new char[2 * nbrRuns];
+    int run = 0;
+    int start = 0;
+    for (int i = 1; i <= cardinality; i++) {
+      if (i == cardinality || lows[i] != lows[i - 1] + 1) {
+        valueslength[2 * run] = lows[start];
+        valueslength[2 * run + 1] = (char) (i - start - 1);
+        run++;
+        start = i;
+      }
+    }
+    return new RunContainer(valueslength, nbrRuns);
+  }
+
   @Override
   public long serializedSizeInBytes() {
     long nbBytes = highLowContainer.serializedSizeInBytes();
@@ -999,6 +1663,32 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
     return ans;
   }
 
+  /**
+   * Generate a bitmap with the remaining values of the buffer set to true, see
+   * {@link #add(LongBuffer)}.
+   *
+   * @param values set values, preferably sorted
+   * @return a new bitmap
+   */
+  public static Roaring64Bitmap bitmapOf(final LongBuffer values) {
+    final Roaring64Bitmap ans = new Roaring64Bitmap();
+    ans.add(values);
+    return ans;
+  }
+
+  /**
+   * Generate a bitmap with the values of the iterator set to true, see
+   * {@link #add(PrimitiveIterator.OfLong)}.
+   *
+   * @param values set values, preferably sorted
+   * @return a new bitmap
+   */
+  public static Roaring64Bitmap bitmapOf(final PrimitiveIterator.OfLong values) {
+    final Roaring64Bitmap ans = new Roaring64Bitmap();
+    ans.add(values);
+    return ans;
+  }
+
   /**
    * If present remove the specified integer (effectively, sets its bit value to false)
    *
@@ -1012,21 +1702,69 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
       containerWithIdx.getContainer().remove(low);
       if (containerWithIdx.getContainer().isEmpty()) {
         highLowContainer.remove(highKey);
+        compactIfSparse();
       }
     }
   }
 
   /**
-   * Set all the specified values to true. This can be expected to be slightly faster than calling
+   * Set all the specified values to true. This can be expected to be faster than calling
    * "add" repeatedly. The provided integers values don't have to be in sorted order, but it may be
    * preferable to sort them from a performance point of view.
    *
    * @param dat set values
    */
   public void add(long... dat) {
-    for (long oneLong : dat) {
-      addLong(oneLong);
+    addN(dat, 0, dat.length);
+  }
+
+  /**
+   * Set the specified values to true, within given boundaries. This can be expected to be faster
+   * than calling "add" repeatedly on the values dat[offset], dat[offset+1],..., dat[offset+n-1].
+   *
+   * The values are grouped by their high 48 bits, and each container is built directly in its
+   * final form (array, bitmap or run). When the values are sorted (in unsigned order) and this
+   * bitmap is empty, the index is also built in a single pass rather than by successive inserts.
+   * Unsorted values are supported, but are slower as they lead to more, smaller containers to
+   * merge.
+   *
+   * @param dat set values
+   * @param offset from which index the values should be set to true
+   * @param n how many values should be set to true
+   */
+  public void addN(final long[] dat, final int offset, final int n) {
+    if ((n < 0) || (offset < 0)) {
+      throw new IllegalArgumentException("Negative values do not make sense.");
+    }
+    if (offset + n > dat.length) {
+      throw new IllegalArgumentException("Data source is too small.");
     }
+    BulkLoader loader = new BulkLoader(this);
+    loader.accept(dat, offset, offset + n);
+    loader.finish();
+  }
+
+  /**
+   * Set the remaining values of the buffer to true, see {@link #addN(long[], int, int)}. The
+   * position of the buffer is left unchanged.
+   *
+   * @param values set values, preferably sorted
+   */
+  public void add(LongBuffer values) {
+    BulkLoader loader = new BulkLoader(this);
+    loader.accept(values);
+    loader.finish();
+  }
+
+  /**
+   * Set the values of the iterator to true, see {@link #addN(long[], int, int)}.
+   *
+   * @param values set values, preferably sorted
+   */
+  public void add(PrimitiveIterator.OfLong values) {
+    BulkLoader loader = new BulkLoader(this);
+    loader.accept(values);
+    loader.finish();
   }
 
   /**
@@ -1041,6 +1779,23 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
     addRange(rangeStart, rangeEnd);
   }
 
+  /**
+   * Add all the values of the container, under the given high 48 bits. The container is owned by
+   * the bitmap afterwards.
+   *
+   * @param highPart the high 48 bits, the low 16 bits being ignored
+   * @param container a non empty container
+   */
+  void addContainer(long highPart, Container container) {
+    ContainerWithIndex containerWithIndex = highLowContainer.searchContainer(highPart);
+    if (containerWithIndex != null) {
+      Container freshOne = containerWithIndex.getContainer().ior(container);
+      highLowContainer.replaceContainer(containerWithIndex.getContainerIdx(), freshOne);
+    } else {
+      highLowContainer.put(LongUtils.highPart(highPart), container);
+    }
+  }
+
   /**
    * Add to the current bitmap all longs in [rangeStart,rangeEnd).
    *
@@ -1085,12 +1840,116 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
     }
   }
 
+  /**
+   * Remove from the current bitmap all longs in [rangeStart,rangeEnd), in unsigned order.
+   * Containers entirely within the range are dropped without being inspected. Nothing is removed
+   * if rangeEnd is not larger than rangeStart.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   */
+  public void removeRange(final long rangeStart, final long rangeEnd) {
+    if (Long.compareUnsigned(rangeStart, rangeEnd) >= 0) {
+      return;
+    }
+    long startHigh = LongUtils.rightShiftHighPart(rangeStart);
+    long lastHigh = LongUtils.rightShiftHighPart(rangeEnd - 1);
+    // the art is not modified while iterating, emptied containers are removed afterwards
+    long[] emptiedHighs = new long[16];
+    int emptied = 0;
+    LeafNodeIterator leafNodeIterator =
+        highLowContainer.highKeyLeafNodeIteratorFrom(rangeStart, false);
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      long high = leafNode.getKey();
+      if (high > lastHigh) {
+        break;
+      }
+      long containerIdx = leafNode.getContainerIdx();
+      int min = high == startHigh ? LongUtils.lowPart(rangeStart) : 0;
+      int sup = high == lastHigh ? LongUtils.lowPart(rangeEnd - 1) + 1 : 1 << 16;
+      Container freshContainer = null;
+      if (min != 0 || sup != 1 << 16) {
+        freshContainer = highLowContainer.getContainer(containerIdx).iremove(min, sup);
+      }
+      if (freshContainer == null || freshContainer.isEmpty()) {
+        if (emptied == emptiedHighs.length) {
+          emptiedHighs = Arrays.copyOf(emptiedHighs, 2 * emptied);
+        }
+        emptiedHighs[emptied++] = high;
+      } else {
+        highLowContainer.replaceContainer(containerIdx, freshContainer);
+      }
+    }
+    for (int i = 0; i < emptied; i++) {
+      highLowContainer.remove(LongUtils.highPart(LongUtils.toLong(emptiedHighs[i], (char) 0)));
+    }
+    compactIfSparse();
+  }
+
+  /**
+   * Creates a copy of the bitmap, limited to the values in the specified range, rangeStart
+   * (inclusive) and rangeEnd (exclusive), in unsigned order. As the containers are visited in
+   * ascending order, the art of the copy is built in a single pass.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   * @return new bitmap
+   */
+  public Roaring64Bitmap selectRange(final long rangeStart, final long rangeEnd) {
+    Roaring64Bitmap answer = new Roaring64Bitmap();
+    if (Long.compareUnsigned(rangeStart, rangeEnd) >= 0) {
+      return answer;
+    }
+    long startHigh = LongUtils.rightShiftHighPart(rangeStart);
+    long lastHigh = LongUtils.rightShiftHighPart(rangeEnd - 1);
+    SortedContainers selected = new SortedContainers();
+    LeafNodeIterator leafNodeIterator =
+        highLowContainer.highKeyLeafNodeIteratorFrom(rangeStart, false);
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      long high = leafNode.getKey();
+      if (high > lastHigh) {
+        break;
+      }
+      Container container = highLowContainer.getContainer(leafNode.getContainerIdx()).clone();
+      if (high == startHigh && LongUtils.lowPart(rangeStart) > 0) {
+        container = container.iremove(0, LongUtils.lowPart(rangeStart));
+      }
+      if (high == lastHigh && LongUtils.lowPart(rangeEnd - 1) < Character.MAX_VALUE) {
+        container = container.iremove(LongUtils.lowPart(rangeEnd - 1) + 1, 1 << 16);
+      }
+      if (!container.isEmpty()) {
+        selected.add(high, container);
+      }
+    }
+    selected.loadInto(answer.highLowContainer);
+    return answer;
+  }
+
   @Override
   public PeekableLongIterator getReverseLongIterator() {
     LeafNodeIterator leafNodeIterator = highLowContainer.highKeyLeafNodeIterator(true);
     return new ReversePeekableIterator(leafNodeIterator);
   }
 
+  /**
+   * For better performance, consider using {@link #forEach} or batching values through this
+   * iterator rather than calling next() for each value.
+   *
+   * @return a batch iterator over the set bits, in ascending unsigned order
+   */
+  public LongBatchIterator getBatchIterator() {
+    return new Roaring64BatchIterator(highLowContainer);
+  }
+
+  /**
+   * @return a batch iterator over the set bits, in descending unsigned order
+   */
+  public LongBatchIterator getReverseBatchIterator() {
+    return new ReverseRoaring64BatchIterator(highLowContainer);
+  }
+
   /**
    * Produce an iterator over the values in this bitmap starting from `maxval`.
    *
@@ -1115,6 +1974,7 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
       if (freshContainer.isEmpty()) {
         // Attempt to remove empty container to save memory
         highLowContainer.remove(high);
+        compactIfSparse();
       } else {
         highLowContainer.replaceContainer(containerWithIdx.getContainerIdx(), freshContainer);
       }
@@ -1140,6 +2000,25 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
         container.trim();
       }
     }
+    compact();
+  }
+
+  /**
+   * Reclaim the slots left by the removed containers. Their containers are kept in slots addressed
+   * by the leaves of the art, and removals leave empty slots behind: compacting moves the holding
+   * containers into fresh arrays, in key order, and renumbers the leaves in a single pass.
+   *
+   * This is done automatically once the empty slots outnumber the holding containers, and by
+   * {@link #trim()}.
+   */
+  public void compact() {
+    highLowContainer.compact();
+  }
+
+  private void compactIfSparse() {
+    if (highLowContainer.isSparse()) {
+      compact();
+    }
   }
 
   @Override
@@ -1155,7 +2034,7 @@ public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
     if (obj == null) {
       return false;
     }
-    if (getClass() != obj.getClass()) {
+    if (!(obj instanceof Roaring64Bitmap)) {
       return false;
     }
     Roaring64Bitmap other = (Roaring64Bitmap) obj;
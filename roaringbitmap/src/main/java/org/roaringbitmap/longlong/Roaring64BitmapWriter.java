@@ -0,0 +1,121 @@
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.ArrayContainer;
+import org.roaringbitmap.Container;
+
+/**
+ * This class can be used to write quickly values to a Roaring64Bitmap. Values sharing their high
+ * 48 bits are buffered into a container, which is added to the bitmap when a value with other
+ * high bits comes, so that the index of the bitmap is searched once per container rather than
+ * once per value. It works best when values come in (mostly) increasing order, such as
+ * monotonically increasing ids, but values in any order are supported.
+ *
+ * <pre>
+ * {@code
+ *
+ *     Roaring64BitmapWriter writer = new Roaring64BitmapWriter();
+ *     for (long id :....) {
+ *       writer.add(id);
+ *     }
+ *     Roaring64Bitmap bitmap = writer.get(); // flushes
+ * }
+ * </pre>
+ */
+public class Roaring64BitmapWriter {
+
+  private final boolean runCompress;
+  private Roaring64Bitmap underlying;
+  private Container container;
+  private long currentHighPart;
+
+  /**
+   * Creates a writer which run-compresses containers as they are flushed.
+   */
+  public Roaring64BitmapWriter() {
+    this(true);
+  }
+
+  /**
+   * @param runCompress whether to apply run compression to containers as they are flushed
+   */
+  public Roaring64BitmapWriter(boolean runCompress) {
+    this.runCompress = runCompress;
+    this.underlying = new Roaring64Bitmap();
+    this.container = new ArrayContainer();
+  }
+
+  /**
+   * Grab a reference to the underlying bitmap, which lacks the buffered values until
+   * {@link #flush()} is called.
+   *
+   * @return the underlying bitmap
+   */
+  public Roaring64Bitmap getUnderlying() {
+    return underlying;
+  }
+
+  /**
+   * Adds the value to the underlying bitmap. The data might be added to a temporary buffer.
+   *
+   * @param value the value to add, considered as unsigned
+   */
+  public void add(long value) {
+    long highPart = LongUtils.highPartOnly(value);
+    if (highPart != currentHighPart) {
+      flush();
+      currentHighPart = highPart;
+    }
+    container = container.add(LongUtils.lowPart(value));
+  }
+
+  /**
+   * Adds the values to the underlying bitmap.
+   *
+   * @param values the values to add, considered as unsigned
+   */
+  public void addMany(long... values) {
+    for (long value : values) {
+      add(value);
+    }
+  }
+
+  /**
+   * Adds all longs in [min,max) to the underlying bitmap.
+   *
+   * @param min inclusive beginning of range
+   * @param max exclusive ending of range
+   */
+  public void addRange(long min, long max) {
+    flush();
+    underlying.addRange(min, max);
+  }
+
+  /**
+   * Ensures that any buffered additions are flushed to the underlying bitmap.
+   */
+  public void flush() {
+    if (!container.isEmpty()) {
+      underlying.addContainer(currentHighPart, runCompress ? container.runOptimize() : container);
+      container = new ArrayContainer();
+    }
+  }
+
+  /**
+   * Flushes the buffered additions and returns the underlying bitmap.
+   *
+   * @return the bitmap
+   */
+  public Roaring64Bitmap get() {
+    flush();
+    return underlying;
+  }
+
+  /**
+   * Resets the writer so it can be reused, the previously written bitmap is left untouched.
+   */
+  public void reset() {
+    underlying = new Roaring64Bitmap();
+    container = new ArrayContainer();
+    currentHighPart = 0;
+  }
+}
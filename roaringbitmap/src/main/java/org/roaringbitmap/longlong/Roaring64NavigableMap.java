@@ -3,14 +3,18 @@
  */
 package org.roaringbitmap.longlong;
 
+import org.roaringbitmap.BatchIterator;
 import org.roaringbitmap.BitmapDataProvider;
 import org.roaringbitmap.BitmapDataProviderSupplier;
+import org.roaringbitmap.FastAggregation;
 import org.roaringbitmap.IntConsumer;
 import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.PeekableIntIterator;
 import org.roaringbitmap.RoaringBitmap;
 import org.roaringbitmap.RoaringBitmapPrivate;
 import org.roaringbitmap.RoaringBitmapSupplier;
 import org.roaringbitmap.Util;
+import org.roaringbitmap.buffer.BufferFastAggregation;
 import org.roaringbitmap.buffer.MutableRoaringBitmap;
 import org.roaringbitmap.buffer.MutableRoaringBitmapPrivate;
 
@@ -25,10 +29,15 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NavigableMap;
@@ -36,6 +45,10 @@ import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Roaring64NavigableMap extends RoaringBitmap to the whole range of longs (or unsigned longs). It
@@ -90,6 +103,9 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
   // By default, we cache cardinalities
   private transient boolean doCacheCardinalities = true;
 
+  // If true, highToBitmap is a SortedArrayBucketMap instead of a TreeMap
+  private transient boolean sortedArrayBuckets = false;
+
   // Prevent recomputing all cardinalities when requesting consecutive ranks
   private transient int firstHighNotValid = highestHigh() + 1;
 
@@ -173,19 +189,47 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
    */
   public Roaring64NavigableMap(
       boolean signedLongs, boolean cacheCardinalities, BitmapDataProviderSupplier supplier) {
+    this(signedLongs, cacheCardinalities, supplier, false);
+  }
+
+  /**
+   *
+   * @param signedLongs true if longs has to be ordered as plain java longs. False to handle them as
+   *        unsigned 64bits long (as RoaringBitmap with unsigned integers)
+   * @param cacheCardinalities true if cardinalities have to be cached. It will prevent many
+   *        iteration along the NavigableMap
+   * @param supplier provide the logic to instantiate new {@link BitmapDataProvider}, typically
+   *        instantiated once per high.
+   * @param sortedArrayBuckets true if the buckets have to be held in sorted arrays of primitive
+   *        highs rather than in a {@link TreeMap}. Lookups and iterations are faster and allocate
+   *        less, while creating a bucket before existing ones shifts them: it suits bitmaps whose
+   *        highs are mostly added in order, or which are mostly read.
+   */
+  public Roaring64NavigableMap(
+      boolean signedLongs,
+      boolean cacheCardinalities,
+      BitmapDataProviderSupplier supplier,
+      boolean sortedArrayBuckets) {
     this.signedLongs = signedLongs;
     this.supplier = supplier;
+    this.sortedArrayBuckets = sortedArrayBuckets;
 
-    if (signedLongs) {
-      highToBitmap = new TreeMap<>();
-    } else {
-      highToBitmap = new TreeMap<>(RoaringIntPacking.unsignedComparator());
-    }
+    highToBitmap = newHighToBitmap();
 
     this.doCacheCardinalities = cacheCardinalities;
     resetPerfHelpers();
   }
 
+  private NavigableMap<Integer, BitmapDataProvider> newHighToBitmap() {
+    if (sortedArrayBuckets) {
+      return new SortedArrayBucketMap(signedLongs);
+    } else if (signedLongs) {
+      return new TreeMap<>();
+    } else {
+      return new TreeMap<>(RoaringIntPacking.unsignedComparator());
+    }
+  }
+
   private void resetPerfHelpers() {
     firstHighNotValid = RoaringIntPacking.highestHigh(signedLongs) + 1;
     allValid = false;
@@ -214,6 +258,16 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     return sortedCumulatedCardinality;
   }
 
+  // Package-friendly: for the sake of Roaring64RangeBitmap
+  BitmapDataProvider getBitmap(int high) {
+    if (highToBitmap instanceof SortedArrayBucketMap) {
+      // Skip boxing the high
+      return ((SortedArrayBucketMap) highToBitmap).getBitmap(high);
+    } else {
+      return highToBitmap.get(high);
+    }
+  }
+
   private static String getClassName(BitmapDataProvider bitmap) {
     if (bitmap == null) {
       return "null";
@@ -243,7 +297,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     if (local != null && local.getKey().intValue() == high) {
       bitmap = local.getValue();
     } else {
-      bitmap = highToBitmap.get(high);
+      bitmap = getBitmap(high);
       if (bitmap == null) {
         bitmap = newRoaringBitmap();
         pushBitmapForHigh(high, bitmap);
@@ -321,6 +375,26 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     assert previous == null : "Should push only not-existing high";
   }
 
+  /**
+   * In-place OR of the low parts into the bucket of the high part. The bitmap is not cloned: it is
+   * owned by this map afterwards.
+   *
+   * @param high the high part shared by the longs
+   * @param lows the low parts of the longs
+   */
+  void orLows(int high, RoaringBitmap lows) {
+    BitmapDataProvider bitmap = getBitmap(high);
+    if (bitmap == null) {
+      pushBitmapForHigh(high, lows);
+    } else if (bitmap instanceof RoaringBitmap) {
+      ((RoaringBitmap) bitmap).or(lows);
+    } else {
+      throw new UnsupportedOperationException(
+          ".or(...) over " + getClassName(bitmap) + " and " + getClassName(lows));
+    }
+    invalidateAboveHigh(high);
+  }
+
   private int low(long id) {
     return RoaringIntPacking.low(id);
   }
@@ -358,6 +432,65 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     }
   }
 
+  /**
+   * Returns the number of distinct integers added to the bitmap, where the cardinality of each
+   * bucket is computed concurrently over the given pool. When cardinalities are cached, the
+   * cumulated cardinalities are all computed at once, so that following ranks and selects are
+   * served from the cache.
+   *
+   * @param pool the pool computing the cardinality of the buckets
+   * @return the cardinality
+   */
+  public long getLongCardinality(final ForkJoinPool pool) {
+    BitmapDataProvider[] lowBitmaps = highToBitmap.values().toArray(new BitmapDataProvider[0]);
+    long[] cardinalities = new long[lowBitmaps.length];
+    forEachBucket(
+        pool, lowBitmaps.length, i -> cardinalities[i] = lowBitmaps[i].getLongCardinality());
+    if (doCacheCardinalities) {
+      return cacheCardinalities(cardinalities);
+    } else {
+      long cardinality = 0L;
+      for (long bucketCardinality : cardinalities) {
+        cardinality += bucketCardinality;
+      }
+      return cardinality;
+    }
+  }
+
+  /**
+   * BEWARE This method is synchronized as it is a mutating operation called by read operations
+   * (as it mutates some cached data-structure used to faster read operation).
+   */
+  private synchronized long cacheCardinalities(long[] cardinalities) {
+    int[] highs = new int[cardinalities.length];
+    long[] cumulatedCardinalities = new long[cardinalities.length];
+    int nbHighs = 0;
+    long cardinality = 0L;
+
+    Iterator<Entry<Integer, BitmapDataProvider>> it = highToBitmap.entrySet().iterator();
+    for (int i = 0; i < cardinalities.length; i++) {
+      Entry<Integer, BitmapDataProvider> e = it.next();
+      if (cardinalities[i] == 0L) {
+        // Empty bitmaps are removed, just like when computing cumulatives one by one
+        if (latestAddedHigh != null && latestAddedHigh.getKey().equals(e.getKey())) {
+          latestAddedHigh = null;
+        }
+        it.remove();
+      } else {
+        cardinality += cardinalities[i];
+        highs[nbHighs] = e.getKey();
+        cumulatedCardinalities[nbHighs] = cardinality;
+        nbHighs++;
+      }
+    }
+
+    sortedHighs = Arrays.copyOf(highs, nbHighs);
+    sortedCumulatedCardinality = Arrays.copyOf(cumulatedCardinalities, nbHighs);
+    firstHighNotValid = highestHigh();
+    allValid = true;
+    return cardinality;
+  }
+
   /**
    * Returns the number of distinct integers added to the bitmap (e.g., number of bits set).
    * In general, it is a a mutator method due to caching: this function modifies
@@ -415,7 +548,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
       // There is a bucket leading to this cardinality: the j-th element is the first element of
       // next bucket
       int high = sortedHighs[position + 1];
-      BitmapDataProvider nextBitmap = highToBitmap.get(high);
+      BitmapDataProvider nextBitmap = getBitmap(high);
       return RoaringIntPacking.pack(high, nextBitmap.select(0));
     } else {
       // There is no bucket with this cardinality
@@ -434,7 +567,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
       final int givenBitmapSelect = (int) (j - previousBucketCardinality);
 
       int high = sortedHighs[insertionPoint];
-      BitmapDataProvider lowBitmap = highToBitmap.get(high);
+      BitmapDataProvider lowBitmap = getBitmap(high);
       int low = lowBitmap.select(givenBitmapSelect);
 
       return RoaringIntPacking.pack(high, low);
@@ -534,7 +667,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
         previousBucketCardinality = sortedCumulatedCardinality[highPosition - 1];
       }
 
-      BitmapDataProvider lowBitmap = highToBitmap.get(sortedHighs[highPosition]);
+      BitmapDataProvider lowBitmap = getBitmap(sortedHighs[highPosition]);
 
       // Rank is previous cardinality plus rank in current bitmap
       return previousBucketCardinality + lowBitmap.rankLong(low);
@@ -556,7 +689,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
   private long rankLongNoCache(int high, int low) {
     long result = 0L;
 
-    BitmapDataProvider lastBitmap = highToBitmap.get(high);
+    BitmapDataProvider lastBitmap = getBitmap(high);
     if (lastBitmap == null) {
       // There is no value with same high: the rank is a sum of cardinalities
       for (Entry<Integer, BitmapDataProvider> bitmap : highToBitmap.entrySet()) {
@@ -781,11 +914,13 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     if (this == x2) {
       return;
     }
+    boolean firstBucket = true;
+
     for (Entry<Integer, BitmapDataProvider> e2 : x2.highToBitmap.entrySet()) {
       // Keep object to prevent auto-boxing
       Integer high = e2.getKey();
 
-      BitmapDataProvider lowBitmap1 = this.highToBitmap.get(high);
+      BitmapDataProvider lowBitmap1 = getBitmap(high);
 
       BitmapDataProvider lowBitmap2 = e2.getValue();
 
@@ -815,6 +950,73 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
                 + " and "
                 + getClassName(lowBitmap2));
       }
+
+      if (firstBucket) {
+        firstBucket = false;
+
+        // Invalidate the lowest high as lowest not valid
+        firstHighNotValid = minHigh(firstHighNotValid, high);
+        allValid = false;
+      }
+    }
+  }
+
+  /**
+   * In-place bitwise XOR (symmetric difference) operation without maintaining cardinality: the
+   * common containers are turned into bitsets which are neither counted nor dropped when empty.
+   * Buffer buckets have no lazy XOR, and are computed eagerly. Don't forget to call
+   * repairAfterLazy() afterward. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void naivelazyxor(final Roaring64NavigableMap x2) {
+    if (x2 == this) {
+      clear();
+      return;
+    }
+    boolean firstBucket = true;
+
+    for (Entry<Integer, BitmapDataProvider> e2 : x2.highToBitmap.entrySet()) {
+      // Keep object to prevent auto-boxing
+      Integer high = e2.getKey();
+
+      BitmapDataProvider lowBitmap1 = getBitmap(high);
+
+      BitmapDataProvider lowBitmap2 = e2.getValue();
+
+      if (lowBitmap1 == null) {
+        // Clone to prevent future modification of this modifying the input Bitmap
+        BitmapDataProvider lowBitmap2Clone;
+        if (lowBitmap2 instanceof RoaringBitmap) {
+          lowBitmap2Clone = ((RoaringBitmap) lowBitmap2).clone();
+        } else if (lowBitmap2 instanceof MutableRoaringBitmap) {
+          lowBitmap2Clone = ((MutableRoaringBitmap) lowBitmap2).clone();
+        } else {
+          throw new UnsupportedOperationException(
+              ".naivelazyxor(...) over " + getClassName(lowBitmap2));
+        }
+
+        pushBitmapForHigh(high, lowBitmap2Clone);
+      } else if (lowBitmap1 instanceof RoaringBitmap && lowBitmap2 instanceof RoaringBitmap) {
+        RoaringBitmapPrivate.naivelazyxor((RoaringBitmap) lowBitmap1, (RoaringBitmap) lowBitmap2);
+      } else if (lowBitmap1 instanceof MutableRoaringBitmap
+          && lowBitmap2 instanceof MutableRoaringBitmap) {
+        ((MutableRoaringBitmap) lowBitmap1).xor((MutableRoaringBitmap) lowBitmap2);
+      } else {
+        throw new UnsupportedOperationException(
+            ".naivelazyxor(...) over "
+                + getClassName(lowBitmap1)
+                + " and "
+                + getClassName(lowBitmap2));
+      }
+
+      if (firstBucket) {
+        firstBucket = false;
+
+        // Invalidate the lowest high as lowest not valid
+        firstHighNotValid = minHigh(firstHighNotValid, high);
+        allValid = false;
+      }
     }
   }
 
@@ -833,7 +1035,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
       // Keep object to prevent auto-boxing
       Integer high = e2.getKey();
 
-      BitmapDataProvider lowBitmap1 = this.highToBitmap.get(high);
+      BitmapDataProvider lowBitmap1 = getBitmap(high);
 
       BitmapDataProvider lowBitmap2 = e2.getValue();
 
@@ -985,7 +1187,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
       // Keep object to prevent auto-boxing
       Integer high = e2.getKey();
 
-      BitmapDataProvider lowBitmap1 = this.highToBitmap.get(high);
+      BitmapDataProvider lowBitmap1 = getBitmap(high);
 
       BitmapDataProvider lowBitmap2 = e2.getValue();
 
@@ -1095,7 +1297,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
       // Keep object to prevent auto-boxing
       Integer high = e1.getKey();
 
-      BitmapDataProvider lowBitmap2 = x2.highToBitmap.get(high);
+      BitmapDataProvider lowBitmap2 = x2.getBitmap(high);
 
       if (lowBitmap2 == null) {
         // None of given high values are present in x2
@@ -1253,7 +1455,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
       // Keep object to prevent auto-boxing
       Integer high = e1.getKey();
 
-      BitmapDataProvider lowBitmap2 = x2.highToBitmap.get(high);
+      BitmapDataProvider lowBitmap2 = x2.getBitmap(high);
 
       if (lowBitmap2 != null) {
         BitmapDataProvider lowBitmap1 = e1.getValue();
@@ -1329,6 +1531,326 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     return result;
   }
 
+  /**
+   * In-place bitwise OR (union) operation, where the buckets are merged concurrently over the
+   * given pool. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   * @param pool the pool merging the buckets
+   */
+  public void or(final Roaring64NavigableMap x2, final ForkJoinPool pool) {
+    if (this == x2) {
+      return;
+    }
+    mergeBuckets(x2, BucketOperation.OR, pool);
+  }
+
+  /**
+   * In-place bitwise XOR (symmetric difference) operation, where the buckets are merged
+   * concurrently over the given pool. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   * @param pool the pool merging the buckets
+   */
+  public void xor(final Roaring64NavigableMap x2, final ForkJoinPool pool) {
+    if (x2 == this) {
+      clear();
+      return;
+    }
+    mergeBuckets(x2, BucketOperation.XOR, pool);
+  }
+
+  /**
+   * In-place bitwise AND (intersection) operation, where the buckets are intersected concurrently
+   * over the given pool. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   * @param pool the pool intersecting the buckets
+   */
+  public void and(final Roaring64NavigableMap x2, final ForkJoinPool pool) {
+    if (x2 == this) {
+      return;
+    }
+    mergeBuckets(x2, BucketOperation.AND, pool);
+  }
+
+  /**
+   * In-place bitwise ANDNOT (difference) operation, where the buckets are subtracted concurrently
+   * over the given pool. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   * @param pool the pool subtracting the buckets
+   */
+  public void andNot(final Roaring64NavigableMap x2, final ForkJoinPool pool) {
+    if (x2 == this) {
+      clear();
+      return;
+    }
+    mergeBuckets(x2, BucketOperation.ANDNOT, pool);
+  }
+
+  private void mergeBuckets(
+      Roaring64NavigableMap x2, BucketOperation operation, ForkJoinPool pool) {
+    // The map itself is only modified from this thread: the concurrent tasks each modify a
+    // distinct bucket, or make a bucket to be pushed once they are all done
+    boolean fromX2 = operation == BucketOperation.OR || operation == BucketOperation.XOR;
+    NavigableMap<Integer, BitmapDataProvider> driving = fromX2 ? x2.highToBitmap : highToBitmap;
+    if (driving.isEmpty()) {
+      return;
+    }
+    int lowestHigh = driving.firstKey();
+
+    int nbBuckets = driving.size();
+    int[] highs = new int[nbBuckets];
+    BitmapDataProvider[] lowBitmaps1 = new BitmapDataProvider[nbBuckets];
+    BitmapDataProvider[] lowBitmaps2 = new BitmapDataProvider[nbBuckets];
+    int nbPairs = 0;
+    Iterator<Entry<Integer, BitmapDataProvider>> it = driving.entrySet().iterator();
+    while (it.hasNext()) {
+      Entry<Integer, BitmapDataProvider> e = it.next();
+      int high = e.getKey();
+      BitmapDataProvider lowBitmap1 = fromX2 ? getBitmap(high) : e.getValue();
+      BitmapDataProvider lowBitmap2 = fromX2 ? e.getValue() : x2.getBitmap(high);
+      if (lowBitmap2 == null) {
+        if (operation == BucketOperation.AND) {
+          // None of given high values are present in x2
+          it.remove();
+        }
+      } else {
+        highs[nbPairs] = high;
+        lowBitmaps1[nbPairs] = lowBitmap1;
+        lowBitmaps2[nbPairs] = lowBitmap2;
+        nbPairs++;
+      }
+    }
+
+    // Buckets missing from the current bitmap are cloned from x2, then pushed sequentially
+    BitmapDataProvider[] pushed = new BitmapDataProvider[nbPairs];
+    forEachBucket(
+        pool,
+        nbPairs,
+        i -> {
+          if (lowBitmaps1[i] == null) {
+            pushed[i] = cloneBucket(lowBitmaps2[i], operation);
+          } else {
+            operation.apply(lowBitmaps1[i], lowBitmaps2[i]);
+          }
+        });
+    for (int i = 0; i < nbPairs; i++) {
+      if (pushed[i] != null) {
+        pushBitmapForHigh(highs[i], pushed[i]);
+      }
+    }
+
+    // Buckets may have been removed: dismiss the cached bitmap
+    latestAddedHigh = null;
+
+    // Invalidate the lowest high as lowest not valid
+    firstHighNotValid = minHigh(firstHighNotValid, lowestHigh);
+    allValid = false;
+  }
+
+  private static BitmapDataProvider cloneBucket(
+      BitmapDataProvider lowBitmap, BucketOperation operation) {
+    // Clone to prevent future modification of this modifying the input Bitmap
+    if (lowBitmap instanceof RoaringBitmap) {
+      return ((RoaringBitmap) lowBitmap).clone();
+    } else if (lowBitmap instanceof MutableRoaringBitmap) {
+      return ((MutableRoaringBitmap) lowBitmap).clone();
+    } else {
+      throw new UnsupportedOperationException(
+          operation.name + "(...) over null and " + getClassName(lowBitmap));
+    }
+  }
+
+  /**
+   * Bitwise OR (union) operation over many bitmaps, where each bucket is aggregated concurrently
+   * over the given pool. The provided bitmaps are *not* modified. The result follows the
+   * signedness, the cardinality cache and the supplier of the first bitmap.
+   *
+   * @param pool the pool aggregating the buckets
+   * @param bitmaps input bitmaps
+   * @return result of the operation
+   */
+  public static Roaring64NavigableMap or(
+      final ForkJoinPool pool, final Roaring64NavigableMap... bitmaps) {
+    return aggregate(BucketOperation.OR, pool, bitmaps);
+  }
+
+  /**
+   * Bitwise XOR (symmetric difference) operation over many bitmaps, where each bucket is
+   * aggregated concurrently over the given pool. The provided bitmaps are *not* modified. The
+   * result follows the signedness, the cardinality cache and the supplier of the first bitmap.
+   *
+   * @param pool the pool aggregating the buckets
+   * @param bitmaps input bitmaps
+   * @return result of the operation
+   */
+  public static Roaring64NavigableMap xor(
+      final ForkJoinPool pool, final Roaring64NavigableMap... bitmaps) {
+    return aggregate(BucketOperation.XOR, pool, bitmaps);
+  }
+
+  /**
+   * Bitwise AND (intersection) operation over many bitmaps, where each bucket is aggregated
+   * concurrently over the given pool. The provided bitmaps are *not* modified. The result follows
+   * the signedness, the cardinality cache and the supplier of the first bitmap.
+   *
+   * @param pool the pool aggregating the buckets
+   * @param bitmaps input bitmaps
+   * @return result of the operation
+   */
+  public static Roaring64NavigableMap and(
+      final ForkJoinPool pool, final Roaring64NavigableMap... bitmaps) {
+    return aggregate(BucketOperation.AND, pool, bitmaps);
+  }
+
+  private static Roaring64NavigableMap aggregate(
+      BucketOperation operation, ForkJoinPool pool, Roaring64NavigableMap... bitmaps) {
+    if (bitmaps.length == 0) {
+      return new Roaring64NavigableMap();
+    }
+    Roaring64NavigableMap first = bitmaps[0];
+    Roaring64NavigableMap result =
+        new Roaring64NavigableMap(
+            first.signedLongs, first.doCacheCardinalities, first.supplier,
+            first.sortedArrayBuckets);
+
+    // Group the buckets by high, in the order of the result
+    NavigableMap<Integer, List<BitmapDataProvider>> highToGroup =
+        first.signedLongs
+            ? new TreeMap<>()
+            : new TreeMap<>(RoaringIntPacking.unsignedComparator());
+    for (Roaring64NavigableMap bitmap : bitmaps) {
+      for (Entry<Integer, BitmapDataProvider> e : bitmap.highToBitmap.entrySet()) {
+        highToGroup.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e.getValue());
+      }
+    }
+    if (operation == BucketOperation.AND) {
+      // A high absent from any bitmap has no value in the intersection
+      highToGroup.values().removeIf(group -> group.size() < bitmaps.length);
+    }
+
+    int nbBuckets = highToGroup.size();
+    int[] highs = new int[nbBuckets];
+    List<List<BitmapDataProvider>> groups = new ArrayList<>(nbBuckets);
+    for (Entry<Integer, List<BitmapDataProvider>> e : highToGroup.entrySet()) {
+      highs[groups.size()] = e.getKey();
+      groups.add(e.getValue());
+    }
+    BitmapDataProvider[] lowBitmaps = new BitmapDataProvider[nbBuckets];
+    forEachBucket(pool, nbBuckets, i -> lowBitmaps[i] = operation.aggregate(groups.get(i)));
+
+    for (int i = 0; i < nbBuckets; i++) {
+      if (!lowBitmaps[i].isEmpty()) {
+        result.pushBitmapForHigh(highs[i], lowBitmaps[i]);
+      }
+    }
+    result.resetPerfHelpers();
+    return result;
+  }
+
+  /**
+   * Runs a task for each bucket index, the tasks being spread over the given pool.
+   */
+  private static void forEachBucket(
+      ForkJoinPool pool, int nbBuckets, java.util.function.IntConsumer task) {
+    if (nbBuckets <= 1) {
+      // Not worth a hop to the pool
+      for (int i = 0; i < nbBuckets; i++) {
+        task.accept(i);
+      }
+    } else {
+      // A parallel stream started from within a pool runs its tasks in this same pool
+      pool.invoke(ForkJoinTask.adapt(() -> IntStream.range(0, nbBuckets).parallel().forEach(task)));
+    }
+  }
+
+  /**
+   * The operations applied bucket by bucket by the parallel operations.
+   */
+  private enum BucketOperation {
+    OR(".or"),
+    XOR(".xor"),
+    AND(".and"),
+    ANDNOT(".andNot");
+
+    private final String name;
+
+    BucketOperation(String name) {
+      this.name = name;
+    }
+
+    void apply(BitmapDataProvider lowBitmap1, BitmapDataProvider lowBitmap2) {
+      if (lowBitmap1 instanceof RoaringBitmap && lowBitmap2 instanceof RoaringBitmap) {
+        RoaringBitmap bitmap1 = (RoaringBitmap) lowBitmap1;
+        RoaringBitmap bitmap2 = (RoaringBitmap) lowBitmap2;
+        switch (this) {
+          case OR:
+            bitmap1.or(bitmap2);
+            break;
+          case XOR:
+            bitmap1.xor(bitmap2);
+            break;
+          case AND:
+            bitmap1.and(bitmap2);
+            break;
+          default:
+            bitmap1.andNot(bitmap2);
+        }
+      } else if (lowBitmap1 instanceof MutableRoaringBitmap
+          && lowBitmap2 instanceof MutableRoaringBitmap) {
+        MutableRoaringBitmap bitmap1 = (MutableRoaringBitmap) lowBitmap1;
+        MutableRoaringBitmap bitmap2 = (MutableRoaringBitmap) lowBitmap2;
+        switch (this) {
+          case OR:
+            bitmap1.or(bitmap2);
+            break;
+          case XOR:
+            bitmap1.xor(bitmap2);
+            break;
+          case AND:
+            bitmap1.and(bitmap2);
+            break;
+          default:
+            bitmap1.andNot(bitmap2);
+        }
+      } else {
+        throw new UnsupportedOperationException(
+            name + "(...) over " + getClassName(lowBitmap1) + " and " + getClassName(lowBitmap2));
+      }
+    }
+
+    BitmapDataProvider aggregate(List<BitmapDataProvider> lowBitmaps) {
+      if (lowBitmaps.stream().allMatch(RoaringBitmap.class::isInstance)) {
+        RoaringBitmap[] bitmaps = lowBitmaps.toArray(new RoaringBitmap[0]);
+        switch (this) {
+          case OR:
+            return FastAggregation.or(bitmaps);
+          case XOR:
+            return FastAggregation.xor(bitmaps);
+          default:
+            return FastAggregation.and(bitmaps);
+        }
+      } else if (lowBitmaps.stream().allMatch(MutableRoaringBitmap.class::isInstance)) {
+        MutableRoaringBitmap[] bitmaps = lowBitmaps.toArray(new MutableRoaringBitmap[0]);
+        switch (this) {
+          case OR:
+            return BufferFastAggregation.or(bitmaps);
+          case XOR:
+            return BufferFastAggregation.xor(bitmaps);
+          default:
+            return BufferFastAggregation.and(bitmaps);
+        }
+      } else {
+        throw new UnsupportedOperationException(
+            name + "(...) over " + lowBitmaps.stream()
+                .map(Roaring64NavigableMap::getClassName)
+                .collect(Collectors.joining(" and ")));
+      }
+    }
+  }
+
   /**
    * {@link Roaring64NavigableMap} are serializable. However, contrary to RoaringBitmap, the
    * serialization format is not well-defined: for now, it is strongly coupled with Java standard
@@ -1463,7 +1985,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
   @Override
   public boolean contains(long x) {
     int high = RoaringIntPacking.high(x);
-    BitmapDataProvider lowBitmap = highToBitmap.get(high);
+    BitmapDataProvider lowBitmap = getBitmap(high);
     if (lowBitmap == null) {
       return false;
     }
@@ -1484,12 +2006,17 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     // Size of containers
     size += highToBitmap.values().stream().mapToLong(p -> p.getLongSizeInBytes()).sum();
 
-    // Size of Map data-structure: we consider each TreeMap entry costs 40 bytes
-    // http://java-performance.info/memory-consumption-of-java-data-types-2/
-    size += 8L + 40L * highToBitmap.size();
+    if (highToBitmap instanceof SortedArrayBucketMap) {
+      // Size of the arrays of highs and bitmaps
+      size += ((SortedArrayBucketMap) highToBitmap).getLongSizeInBytes();
+    } else {
+      // Size of Map data-structure: we consider each TreeMap entry costs 40 bytes
+      // http://java-performance.info/memory-consumption-of-java-data-types-2/
+      size += 8L + 40L * highToBitmap.size();
 
-    // Size of (boxed) Integers used as keys
-    size += 16L * highToBitmap.size();
+      // Size of (boxed) Integers used as keys
+      size += 16L * highToBitmap.size();
+    }
 
     // The cache impacts the size in heap
     size += 8L * sortedCumulatedCardinality.length;
@@ -1517,7 +2044,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
   }
 
   /**
-   * to be used with naivelazyor
+   * to be used with naivelazyor and naivelazyxor
    */
   public void repairAfterLazy() {
     for (BitmapDataProvider lowBitmap : highToBitmap.values()) {
@@ -1549,6 +2076,34 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     return hasChanged;
   }
 
+  /**
+   * Use a run-length encoding where it is estimated as more space efficient, the buckets being
+   * optimized concurrently over the given pool
+   *
+   * @param pool the pool optimizing the buckets
+   * @return whether a change was applied
+   */
+  public boolean runOptimize(final ForkJoinPool pool) {
+    BitmapDataProvider[] lowBitmaps = highToBitmap.values().toArray(new BitmapDataProvider[0]);
+    boolean[] hasChanged = new boolean[lowBitmaps.length];
+    forEachBucket(
+        pool,
+        lowBitmaps.length,
+        i -> {
+          if (lowBitmaps[i] instanceof RoaringBitmap) {
+            hasChanged[i] = ((RoaringBitmap) lowBitmaps[i]).runOptimize();
+          } else if (lowBitmaps[i] instanceof MutableRoaringBitmap) {
+            hasChanged[i] = ((MutableRoaringBitmap) lowBitmaps[i]).runOptimize();
+          }
+        });
+    for (boolean bucketHasChanged : hasChanged) {
+      if (bucketHasChanged) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Serialize this bitmap.
    *
@@ -1621,6 +2176,64 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     }
   }
 
+  /**
+   * Serialize this bitmap to a ByteBuffer, in the format selected by SERIALIZATION_MODE. The size
+   * of each bucket is computed up front, so that the buckets are serialized concurrently over the
+   * given pool, each at its own offset. The bytes are the same as with
+   * {@link #serialize(DataOutput)}, whatever the byte order of the buffer.
+   *
+   * The current bitmap is not modified. The position of the buffer is moved after the bitmap.
+   *
+   * @param buffer the ByteBuffer, with at least {@link #serializedSizeInBytes()} remaining bytes
+   * @param pool the pool serializing the buckets
+   * @throws BufferOverflowException if the buffer is too small
+   */
+  public void serialize(final ByteBuffer buffer, final ForkJoinPool pool) {
+    int nbHighs = highToBitmap.size();
+    int[] highs = new int[nbHighs];
+    BitmapDataProvider[] lowBitmaps = new BitmapDataProvider[nbHighs];
+    int index = 0;
+    for (Entry<Integer, BitmapDataProvider> entry : highToBitmap.entrySet()) {
+      highs[index] = entry.getKey();
+      lowBitmaps[index] = entry.getValue();
+      index++;
+    }
+    int[] sizes = new int[nbHighs];
+    forEachBucket(pool, nbHighs, i -> sizes[i] = lowBitmaps[i].serializedSizeInBytes());
+
+    // The DataOutput flavors write big-endian
+    ByteBuffer out = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+    boolean portable = SERIALIZATION_MODE == SERIALIZATION_MODE_PORTABLE;
+    if (portable) {
+      out.putLong(Long.reverseBytes(nbHighs));
+    } else {
+      out.put((byte) (signedLongs ? 1 : 0));
+      out.putInt(nbHighs);
+    }
+
+    // Each bucket is its high followed by its bitmap
+    int[] offsets = new int[nbHighs];
+    long offset = out.position();
+    for (int i = 0; i < nbHighs; i++) {
+      offsets[i] = (int) offset;
+      offset += 4 + sizes[i];
+    }
+    if (offset > out.limit()) {
+      throw new BufferOverflowException();
+    }
+
+    forEachBucket(
+        pool,
+        nbHighs,
+        i -> {
+          ByteBuffer bucket = out.duplicate().order(ByteOrder.BIG_ENDIAN);
+          bucket.position(offsets[i]);
+          bucket.putInt(portable ? Integer.reverseBytes(highs[i]) : highs[i]);
+          lowBitmaps[i].serialize(bucket);
+        });
+    buffer.position(buffer.position() + (int) offset);
+  }
+
   /**
    * Deserialize (retrieve) this bitmap.
    *
@@ -1661,11 +2274,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     int nbHighs = in.readInt();
 
     // Other NavigableMap may accept a target capacity
-    if (signedLongs) {
-      highToBitmap = new TreeMap<>();
-    } else {
-      highToBitmap = new TreeMap<>(RoaringIntPacking.unsignedComparator());
-    }
+    highToBitmap = newHighToBitmap();
 
     for (int i = 0; i < nbHighs; i++) {
       int high = in.readInt();
@@ -1706,7 +2315,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     long nbHighs = Long.reverseBytes(in.readLong());
 
     // Other NavigableMap may accept a target capacity
-    highToBitmap = new TreeMap<>(RoaringIntPacking.unsignedComparator());
+    highToBitmap = newHighToBitmap();
 
     for (int i = 0; i < nbHighs; i++) {
       int high = Integer.reverseBytes(in.readInt());
@@ -1864,7 +2473,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
 
       if (endLowAsLong > startLowAsLong) {
         // Initialize the bitmap only if there is access data to write
-        BitmapDataProvider bitmap = highToBitmap.get(high);
+        BitmapDataProvider bitmap = getBitmap(high);
         if (bitmap == null) {
           bitmap = newRoaringBitmap();
           pushBitmapForHigh(high, bitmap);
@@ -1881,16 +2490,368 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     invalidateAboveHigh(startHigh);
   }
 
+  private int compareLongs(long x, long y) {
+    if (signedLongs) {
+      return Long.compare(x, y);
+    } else {
+      return Long.compareUnsigned(x, y);
+    }
+  }
+
+  /**
+   * @param start inclusive beginning of a non empty range
+   * @param last inclusive end of the range
+   * @return a view of the buckets overlapping the range
+   */
+  private NavigableMap<Integer, BitmapDataProvider> bucketsInRange(long start, long last) {
+    return highToBitmap.subMap(high(start), true, high(last), true);
+  }
+
+  /**
+   * Computes the number of values in the range [start,end), in the order of this bitmap. Buckets
+   * entirely within the range only contribute their cardinality.
+   *
+   * @param start inclusive beginning of range
+   * @param end exclusive ending of range
+   * @return the number of values in the range, 0 if end is not larger than start
+   */
+  public long rangeCardinality(long start, long end) {
+    if (compareLongs(start, end) >= 0) {
+      return 0L;
+    }
+    long last = end - 1;
+    long cardinality = 0L;
+    for (Entry<Integer, BitmapDataProvider> entry : bucketsInRange(start, last).entrySet()) {
+      long min = entry.getKey() == high(start) ? Util.toUnsignedLong(low(start)) : 0L;
+      long sup = entry.getKey() == high(last) ? Util.toUnsignedLong(low(last)) + 1 : 1L << 32;
+      if (min == 0L && sup == 1L << 32) {
+        cardinality += entry.getValue().getLongCardinality();
+      } else {
+        cardinality += entry.getValue().rangeCardinality(min, sup);
+      }
+    }
+    return cardinality;
+  }
+
+  /**
+   * Checks if the bitmap contains the range [minimum,supremum), in the order of this bitmap.
+   *
+   * @param minimum the inclusive lower bound of the range
+   * @param supremum the exclusive upper bound of the range
+   * @return whether the bitmap contains the range, false if it is empty
+   */
+  public boolean contains(long minimum, long supremum) {
+    if (compareLongs(minimum, supremum) >= 0) {
+      return false;
+    }
+    long last = supremum - 1;
+    int expectedHigh = high(minimum);
+    for (Entry<Integer, BitmapDataProvider> entry : bucketsInRange(minimum, last).entrySet()) {
+      if (entry.getKey() != expectedHigh) {
+        // a bucket is missing
+        return false;
+      }
+      long min = entry.getKey() == high(minimum) ? Util.toUnsignedLong(low(minimum)) : 0L;
+      long sup = entry.getKey() == high(last) ? Util.toUnsignedLong(low(last)) + 1 : 1L << 32;
+      if (!containsLows(entry.getValue(), min, sup)) {
+        return false;
+      }
+      if (entry.getKey() == high(last)) {
+        return true;
+      }
+      expectedHigh++;
+    }
+    return false;
+  }
+
+  /**
+   * Checks if the range [minimum,supremum) intersects with the bitmap, in the order of this
+   * bitmap.
+   *
+   * @param minimum the inclusive lower bound of the range
+   * @param supremum the exclusive upper bound of the range
+   * @return whether the bitmap intersects with the range
+   */
+  public boolean intersects(long minimum, long supremum) {
+    if (compareLongs(minimum, supremum) >= 0) {
+      return false;
+    }
+    long last = supremum - 1;
+    for (Entry<Integer, BitmapDataProvider> entry : bucketsInRange(minimum, last).entrySet()) {
+      long min = entry.getKey() == high(minimum) ? Util.toUnsignedLong(low(minimum)) : 0L;
+      long sup = entry.getKey() == high(last) ? Util.toUnsignedLong(low(last)) + 1 : 1L << 32;
+      if (intersectsLows(entry.getValue(), min, sup)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Remove from the current bitmap all longs in [rangeStart,rangeEnd), in the order of this
+   * bitmap. Buckets entirely within the range are dropped without being inspected. Nothing is
+   * removed if rangeEnd is not larger than rangeStart.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   */
+  public void removeRange(final long rangeStart, final long rangeEnd) {
+    if (compareLongs(rangeStart, rangeEnd) >= 0) {
+      return;
+    }
+    long last = rangeEnd - 1;
+    Iterator<Entry<Integer, BitmapDataProvider>> it =
+        bucketsInRange(rangeStart, last).entrySet().iterator();
+    while (it.hasNext()) {
+      Entry<Integer, BitmapDataProvider> entry = it.next();
+      long min = entry.getKey() == high(rangeStart) ? Util.toUnsignedLong(low(rangeStart)) : 0L;
+      long sup = entry.getKey() == high(last) ? Util.toUnsignedLong(low(last)) + 1 : 1L << 32;
+      if (min != 0L || sup != 1L << 32) {
+        removeLows(entry.getValue(), min, sup);
+      }
+      if (min == 0L && sup == 1L << 32 || entry.getValue().isEmpty()) {
+        it.remove();
+      }
+    }
+    latestAddedHigh = null;
+    invalidateAboveHigh(high(rangeStart));
+  }
+
+  /**
+   * Creates a copy of the bitmap, limited to the values in the specified range, rangeStart
+   * (inclusive) and rangeEnd (exclusive), in the order of this bitmap.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   * @return new bitmap
+   */
+  public Roaring64NavigableMap selectRange(final long rangeStart, final long rangeEnd) {
+    Roaring64NavigableMap answer =
+        new Roaring64NavigableMap(signedLongs, doCacheCardinalities, supplier, sortedArrayBuckets);
+    if (compareLongs(rangeStart, rangeEnd) >= 0) {
+      return answer;
+    }
+    long last = rangeEnd - 1;
+    for (Entry<Integer, BitmapDataProvider> entry : bucketsInRange(rangeStart, last).entrySet()) {
+      long min = entry.getKey() == high(rangeStart) ? Util.toUnsignedLong(low(rangeStart)) : 0L;
+      long sup = entry.getKey() == high(last) ? Util.toUnsignedLong(low(last)) + 1 : 1L << 32;
+      BitmapDataProvider selected = selectLows(entry.getValue(), min, sup);
+      if (!selected.isEmpty()) {
+        answer.pushBitmapForHigh(entry.getKey(), selected);
+      }
+    }
+    answer.resetPerfHelpers();
+    return answer;
+  }
+
+  // the range operations are not in BitmapDataProvider contract: cast when possible, else fallback
+  // on what the contract provides
+  private static boolean containsLows(BitmapDataProvider bitmap, long min, long sup) {
+    if (min == 0L && sup == 1L << 32) {
+      return bitmap.getLongCardinality() == 1L << 32;
+    } else if (bitmap instanceof RoaringBitmap) {
+      return ((RoaringBitmap) bitmap).contains(min, sup);
+    } else if (bitmap instanceof MutableRoaringBitmap) {
+      return ((MutableRoaringBitmap) bitmap).contains(min, sup);
+    } else {
+      return bitmap.rangeCardinality(min, sup) == sup - min;
+    }
+  }
+
+  private static boolean intersectsLows(BitmapDataProvider bitmap, long min, long sup) {
+    if (min == 0L && sup == 1L << 32) {
+      return !bitmap.isEmpty();
+    } else if (bitmap instanceof RoaringBitmap) {
+      return ((RoaringBitmap) bitmap).intersects(min, sup);
+    } else if (bitmap instanceof MutableRoaringBitmap) {
+      return ((MutableRoaringBitmap) bitmap).intersects(min, sup);
+    } else {
+      return bitmap.rangeCardinality(min, sup) > 0;
+    }
+  }
+
+  private static void removeLows(BitmapDataProvider bitmap, long min, long sup) {
+    if (bitmap instanceof RoaringBitmap) {
+      ((RoaringBitmap) bitmap).remove(min, sup);
+    } else if (bitmap instanceof MutableRoaringBitmap) {
+      ((MutableRoaringBitmap) bitmap).remove(min, sup);
+    } else {
+      for (long low = bitmap.nextValue((int) min);
+          low >= 0 && low < sup;
+          low = low + 1 < sup ? bitmap.nextValue((int) (low + 1)) : -1L) {
+        bitmap.remove((int) low);
+      }
+    }
+  }
+
+  private BitmapDataProvider selectLows(BitmapDataProvider bitmap, long min, long sup) {
+    if (bitmap instanceof RoaringBitmap) {
+      return ((RoaringBitmap) bitmap).selectRange(min, sup);
+    } else if (bitmap instanceof MutableRoaringBitmap) {
+      return ((MutableRoaringBitmap) bitmap).selectRange(min, sup);
+    } else {
+      BitmapDataProvider selected = newRoaringBitmap();
+      for (long low = bitmap.nextValue((int) min);
+          low >= 0 && low < sup;
+          low = low + 1 < sup ? bitmap.nextValue((int) (low + 1)) : -1L) {
+        selected.add((int) low);
+      }
+      return selected;
+    }
+  }
+
   @Override
   public LongIterator getReverseLongIterator() {
     return toIterator(highToBitmap.descendingMap().entrySet().iterator(), true);
   }
 
+  /**
+   * For better performance, consider using {@link #forEach} or batching values through this
+   * iterator rather than calling next() for each value. A batch never spans two buckets.
+   *
+   * @return a batch iterator over the set bits, in ascending order
+   */
+  public LongBatchIterator getBatchIterator() {
+    return new BucketBatchIterator(false);
+  }
+
+  /**
+   * @return a batch iterator over the set bits, in descending order
+   */
+  public LongBatchIterator getReverseBatchIterator() {
+    return new BucketBatchIterator(true);
+  }
+
+  /**
+   * Walks the buckets, draining each of them through its own batch iterator: descending, through
+   * its reverse int iterator.
+   */
+  private final class BucketBatchIterator implements LongBatchIterator {
+
+    private final boolean reversed;
+    private Iterator<Map.Entry<Integer, BitmapDataProvider>> buckets;
+    private int currentHigh;
+    private BatchIterator currentBatchIt;
+    private PeekableIntIterator currentIt;
+    private int[] lows = new int[0];
+
+    private BucketBatchIterator(boolean reversed) {
+      this.reversed = reversed;
+      this.buckets =
+          (reversed ? highToBitmap.descendingMap() : highToBitmap).entrySet().iterator();
+      nextBucket();
+    }
+
+    @Override
+    public int nextBatch(long[] buffer) {
+      if (reversed) {
+        int consumed = 0;
+        while (currentIt != null && consumed < buffer.length) {
+          while (consumed < buffer.length && currentIt.hasNext()) {
+            buffer[consumed++] = RoaringIntPacking.pack(currentHigh, currentIt.next());
+          }
+          if (!currentIt.hasNext()) {
+            nextBucket();
+          }
+        }
+        return consumed;
+      }
+      if (currentBatchIt == null) {
+        return 0;
+      }
+      if (lows.length != buffer.length) {
+        lows = new int[buffer.length];
+      }
+      int consumed = currentBatchIt.nextBatch(lows);
+      for (int i = 0; i < consumed; i++) {
+        buffer[i] = RoaringIntPacking.pack(currentHigh, lows[i]);
+      }
+      if (!currentBatchIt.hasNext()) {
+        nextBucket();
+      }
+      return consumed;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return (reversed ? currentIt : currentBatchIt) != null;
+    }
+
+    @Override
+    public LongBatchIterator clone() {
+      try {
+        BucketBatchIterator it = (BucketBatchIterator) super.clone();
+        if (hasNext()) {
+          it.buckets = bucketsAfter(currentHigh, false);
+          it.currentBatchIt = currentBatchIt == null ? null : currentBatchIt.clone();
+          it.currentIt = currentIt == null ? null : currentIt.clone();
+        }
+        it.lows = new int[0];
+        return it;
+      } catch (CloneNotSupportedException e) {
+        // won't happen
+        throw new IllegalStateException();
+      }
+    }
+
+    @Override
+    public void advanceIfNeeded(long target) {
+      int targetHigh = RoaringIntPacking.high(target);
+      if (hasNext()) {
+        int cmp = compare(currentHigh, targetHigh);
+        if (reversed ? cmp > 0 : cmp < 0) {
+          buckets = bucketsAfter(targetHigh, true);
+          nextBucket();
+        }
+      }
+      if (hasNext() && currentHigh == targetHigh) {
+        int low = RoaringIntPacking.low(target);
+        if (reversed) {
+          currentIt.advanceIfNeeded(low);
+        } else {
+          currentBatchIt.advanceIfNeeded(low);
+        }
+        if (!(reversed ? currentIt.hasNext() : currentBatchIt.hasNext())) {
+          nextBucket();
+        }
+      }
+    }
+
+    // the buckets from the given high onwards, in iteration order
+    private Iterator<Map.Entry<Integer, BitmapDataProvider>> bucketsAfter(
+        int high, boolean inclusive) {
+      NavigableMap<Integer, BitmapDataProvider> remaining =
+          reversed
+              ? highToBitmap.headMap(high, inclusive).descendingMap()
+              : highToBitmap.tailMap(high, inclusive);
+      return remaining.entrySet().iterator();
+    }
+
+    private void nextBucket() {
+      currentBatchIt = null;
+      currentIt = null;
+      while (buckets.hasNext()) {
+        Map.Entry<Integer, BitmapDataProvider> bucket = buckets.next();
+        BitmapDataProvider lowBitmap = bucket.getValue();
+        // xor may leave empty buckets behind
+        if (!lowBitmap.isEmpty()) {
+          currentHigh = bucket.getKey();
+          if (reversed) {
+            currentIt = lowBitmap.getReverseIntIterator();
+          } else {
+            currentBatchIt = lowBitmap.getBatchIterator();
+          }
+          return;
+        }
+      }
+    }
+  }
+
   @Override
   public void removeLong(long x) {
     int high = high(x);
 
-    BitmapDataProvider bitmap = highToBitmap.get(high);
+    BitmapDataProvider bitmap = getBitmap(high);
 
     if (bitmap != null) {
       int low = low(x);
@@ -1949,11 +2910,17 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     }
     try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
         DataOutputStream dataOutput = new DataOutputStream(baos)) {
-      serialize(dataOutput);
-      Roaring64NavigableMap freshOne = new Roaring64NavigableMap();
+      // The legacy format keeps the order of signed longs, whatever the SERIALIZATION_MODE
+      serializeLegacy(dataOutput);
+      Roaring64NavigableMap freshOne =
+          new Roaring64NavigableMap(
+              DEFAULT_ORDER_IS_SIGNED,
+              DEFAULT_CARDINALITIES_ARE_CACHED,
+              new RoaringBitmapSupplier(),
+              sortedArrayBuckets);
       try (ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
           DataInputStream dataInput = new DataInputStream(bais)) {
-        freshOne.deserialize(dataInput);
+        freshOne.deserializeLegacy(dataInput);
         return freshOne;
       } catch (Exception e) {
         throw new RuntimeException("fail to deserialize", e);
@@ -1970,7 +2937,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
    */
   public void flip(final long x) {
     int high = RoaringIntPacking.high(x);
-    BitmapDataProvider lowBitmap = highToBitmap.get(high);
+    BitmapDataProvider lowBitmap = getBitmap(high);
     if (lowBitmap == null) {
       // The value is not added: add it without any flip specific code
       addLong(x);
@@ -2015,4 +2982,102 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     Map.Entry<Integer, BitmapDataProvider> lastEntry = highToBitmap.lastEntry();
     return RoaringIntPacking.pack(lastEntry.getKey(), lastEntry.getValue().last());
   }
+
+  /**
+   * Returns the first value equal to or larger than the provided value, in the order of this
+   * bitmap.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the smallest value which is not smaller than fromValue
+   * @throws NoSuchElementException if there is no such value: unlike 32 bit bitmaps, there is no
+   *     spare value to signal the absence of a result
+   */
+  public long nextValue(long fromValue) {
+    int fromHigh = high(fromValue);
+    for (Entry<Integer, BitmapDataProvider> entry :
+        highToBitmap.tailMap(fromHigh, true).entrySet()) {
+      long low = entry.getValue().nextValue(entry.getKey() == fromHigh ? low(fromValue) : 0);
+      if (low >= 0) {
+        return RoaringIntPacking.pack(entry.getKey(), (int) low);
+      }
+    }
+    throw new NoSuchElementException("No value at or after " + fromValue);
+  }
+
+  /**
+   * Returns the last value equal to or smaller than the provided value, in the order of this
+   * bitmap.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the largest value which is not larger than fromValue
+   * @throws NoSuchElementException if there is no such value
+   */
+  public long previousValue(long fromValue) {
+    int fromHigh = high(fromValue);
+    for (Entry<Integer, BitmapDataProvider> entry :
+        highToBitmap.headMap(fromHigh, true).descendingMap().entrySet()) {
+      long low = entry.getValue().previousValue(entry.getKey() == fromHigh ? low(fromValue) : -1);
+      if (low >= 0) {
+        return RoaringIntPacking.pack(entry.getKey(), (int) low);
+      }
+    }
+    throw new NoSuchElementException("No value at or before " + fromValue);
+  }
+
+  /**
+   * Returns the first absent value equal to or larger than the provided value, in the order of
+   * this bitmap.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the smallest absent value which is not smaller than fromValue
+   * @throws NoSuchElementException if all the values from fromValue onwards are present
+   */
+  public long nextAbsentValue(long fromValue) {
+    long value = fromValue;
+    for (Entry<Integer, BitmapDataProvider> entry :
+        highToBitmap.tailMap(high(fromValue), true).entrySet()) {
+      if (entry.getKey() != high(value)) {
+        // there is no bucket for value
+        break;
+      }
+      long low = entry.getValue().nextAbsentValue(low(value));
+      if (low >= 0) {
+        return RoaringIntPacking.pack(entry.getKey(), (int) low);
+      }
+      if (entry.getKey() == highestHigh()) {
+        throw new NoSuchElementException("No absent value at or after " + fromValue);
+      }
+      value = RoaringIntPacking.pack(entry.getKey() + 1, 0);
+    }
+    return value;
+  }
+
+  /**
+   * Returns the last absent value equal to or smaller than the provided value, in the order of
+   * this bitmap.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the largest absent value which is not larger than fromValue
+   * @throws NoSuchElementException if all the values up to fromValue are present
+   */
+  public long previousAbsentValue(long fromValue) {
+    long value = fromValue;
+    for (Entry<Integer, BitmapDataProvider> entry :
+        highToBitmap.headMap(high(fromValue), true).descendingMap().entrySet()) {
+      if (entry.getKey() != high(value)) {
+        // there is no bucket for value
+        break;
+      }
+      long low = entry.getValue().previousAbsentValue(low(value));
+      if (low >= 0) {
+        return RoaringIntPacking.pack(entry.getKey(), (int) low);
+      }
+      // the lowest high follows the highest one
+      if (entry.getKey() == highestHigh() + 1) {
+        throw new NoSuchElementException("No absent value at or before " + fromValue);
+      }
+      value = RoaringIntPacking.pack(entry.getKey() - 1, -1);
+    }
+    return value;
+  }
 }
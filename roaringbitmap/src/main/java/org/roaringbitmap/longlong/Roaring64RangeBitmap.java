@@ -0,0 +1,552 @@
+package org.roaringbitmap.longlong;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+import org.roaringbitmap.BitmapDataProvider;
+import org.roaringbitmap.RangeBitmap;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link RangeBitmap} over 64 bit row indexes. The rows are split into chunks of a fixed power
+ * of two number of rows, each chunk being a RangeBitmap with its own image: a column of billions
+ * of rows is thus held in many buffers, none of which needs to hold more than the image of a
+ * chunk. Queries evaluate each chunk, and return the matching rows as a
+ * {@link Roaring64NavigableMap}.
+ */
+public final class Roaring64RangeBitmap {
+
+  private static final long MAX_ROWS_PER_CHUNK = 1L << 31;
+
+  /**
+   * Append values to the Roaring64RangeBitmap before sealing it.
+   *
+   * @param maxValue the maximum value to be appended, values larger than this value will be
+   *                 rejected.
+   * @param rowsPerChunk the number of rows of each chunk, a power of two up to 2^31.
+   * @param imageSupplier provides the ByteBuffer holding the image of each chunk.
+   * @return an appender.
+   */
+  public static Appender appender(
+      long maxValue, long rowsPerChunk, IntFunction<ByteBuffer> imageSupplier) {
+    return new Appender(maxValue, checkRowsPerChunk(rowsPerChunk), imageSupplier);
+  }
+
+  /**
+   * Append values to the Roaring64RangeBitmap before sealing it, defaults to on heap ByteBuffers.
+   *
+   * @param maxValue the maximum value to be appended, values larger than this value will be
+   *                 rejected.
+   * @param rowsPerChunk the number of rows of each chunk, a power of two up to 2^31.
+   * @return an appender.
+   */
+  public static Appender appender(long maxValue, long rowsPerChunk) {
+    return appender(
+        maxValue, rowsPerChunk, capacity -> ByteBuffer.allocate(capacity).order(LITTLE_ENDIAN));
+  }
+
+  /**
+   * Maps the Roaring64RangeBitmap from the images of its chunks with minimal allocation. The
+   * buffers must not be reused while the mapped bitmap is live.
+   *
+   * @param images the serialized RangeBitmap of each chunk, in row order. Every chunk but the
+   *               last one holds rowsPerChunk rows.
+   * @param rowsPerChunk the number of rows of each chunk the images were appended with.
+   * @return a Roaring64RangeBitmap backed by the buffers.
+   */
+  public static Roaring64RangeBitmap map(List<ByteBuffer> images, long rowsPerChunk) {
+    checkRowsPerChunk(rowsPerChunk);
+    List<RangeBitmap> chunks = new ArrayList<>(images.size());
+    for (ByteBuffer image : images) {
+      RangeBitmap chunk = RangeBitmap.map(image);
+      long rows = chunk.getRowCount();
+      boolean last = chunks.size() == images.size() - 1;
+      if (last ? rows == 0 || rows > rowsPerChunk : rows != rowsPerChunk) {
+        throw new IllegalArgumentException(
+            "chunk " + chunks.size() + " holds " + rows + " rows, expected "
+                + (last ? "at most " : "") + rowsPerChunk);
+      }
+      chunks.add(chunk);
+    }
+    return new Roaring64RangeBitmap(chunks, rowsPerChunk);
+  }
+
+  private static long checkRowsPerChunk(long rowsPerChunk) {
+    if (rowsPerChunk <= 0
+        || rowsPerChunk > MAX_ROWS_PER_CHUNK
+        || Long.bitCount(rowsPerChunk) != 1) {
+      throw new IllegalArgumentException(
+          "rowsPerChunk must be a power of two up to 2^31: " + rowsPerChunk);
+    }
+    return rowsPerChunk;
+  }
+
+  private final List<RangeBitmap> chunks;
+  private final long rowsPerChunk;
+
+  private Roaring64RangeBitmap(List<RangeBitmap> chunks, long rowsPerChunk) {
+    this.chunks = chunks;
+    this.rowsPerChunk = rowsPerChunk;
+  }
+
+  /**
+   * @return the number of chunks, each with its own image.
+   */
+  public int getChunkCount() {
+    return chunks.size();
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value in between the thresholds.
+   *
+   * @param min the inclusive minimum value.
+   * @param max the inclusive maximum value.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap between(long min, long max) {
+    return compute(chunk -> chunk.between(min, max));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value in between the thresholds intersected with the
+   * context.
+   *
+   * @param min the inclusive minimum value.
+   * @param max the inclusive maximum value.
+   * @param context to be intersected with.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap between(long min, long max, Roaring64NavigableMap context) {
+    return compute(context, (chunk, rows) -> chunk.between(min, max, rows));
+  }
+
+  /**
+   * Returns the number of rows which have a value in between the thresholds.
+   *
+   * @param min the inclusive minimum value.
+   * @param max the inclusive maximum value.
+   * @return the number of matching rows.
+   */
+  public long betweenCardinality(long min, long max) {
+    return count(chunk -> chunk.betweenCardinality(min, max));
+  }
+
+  /**
+   * Returns the number of rows which have a value in between the thresholds intersected with the
+   * context.
+   *
+   * @param min the inclusive minimum value.
+   * @param max the inclusive maximum value.
+   * @param context to be intersected with.
+   * @return the number of matching rows.
+   */
+  public long betweenCardinality(long min, long max, Roaring64NavigableMap context) {
+    return count(context, (chunk, rows) -> chunk.betweenCardinality(min, max, rows));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value less than or equal to the threshold.
+   *
+   * @param threshold the inclusive maximum value.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap lte(long threshold) {
+    return compute(chunk -> chunk.lte(threshold));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value less than or equal to the threshold,
+   * and intersect with the context bitmap, which will not be modified.
+   *
+   * @param threshold the inclusive maximum value.
+   * @param context   to be intersected with.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap lte(long threshold, Roaring64NavigableMap context) {
+    return compute(context, (chunk, rows) -> chunk.lte(threshold, rows));
+  }
+
+  /**
+   * Returns the number of rows which have a value less than or equal to the threshold.
+   *
+   * @param threshold the inclusive maximum value.
+   * @return the number of matching rows.
+   */
+  public long lteCardinality(long threshold) {
+    return count(chunk -> chunk.lteCardinality(threshold));
+  }
+
+  /**
+   * Returns the number of rows which have a value less than or equal to the threshold,
+   * and intersect with the context bitmap, which will not be modified.
+   *
+   * @param threshold the inclusive maximum value.
+   * @param context   to be intersected with.
+   * @return the number of matching rows.
+   */
+  public long lteCardinality(long threshold, Roaring64NavigableMap context) {
+    return count(context, (chunk, rows) -> chunk.lteCardinality(threshold, rows));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value less than the threshold.
+   *
+   * @param threshold the exclusive maximum value.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap lt(long threshold) {
+    return compute(chunk -> chunk.lt(threshold));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value less than the threshold,
+   * and intersect with the context bitmap, which will not be modified.
+   *
+   * @param threshold the exclusive maximum value.
+   * @param context   to be intersected with.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap lt(long threshold, Roaring64NavigableMap context) {
+    return compute(context, (chunk, rows) -> chunk.lt(threshold, rows));
+  }
+
+  /**
+   * Returns the number of rows which have a value less than the threshold.
+   *
+   * @param threshold the exclusive maximum value.
+   * @return the number of matching rows.
+   */
+  public long ltCardinality(long threshold) {
+    return count(chunk -> chunk.ltCardinality(threshold));
+  }
+
+  /**
+   * Returns the number of rows which have a value less than the threshold,
+   * and intersect with the context bitmap, which will not be modified.
+   *
+   * @param threshold the exclusive maximum value.
+   * @param context   to be intersected with.
+   * @return the number of matching rows.
+   */
+  public long ltCardinality(long threshold, Roaring64NavigableMap context) {
+    return count(context, (chunk, rows) -> chunk.ltCardinality(threshold, rows));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value greater than the threshold.
+   *
+   * @param threshold the exclusive minimum value.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap gt(long threshold) {
+    return compute(chunk -> chunk.gt(threshold));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value greater than the threshold,
+   * and intersect with the context bitmap, which will not be modified.
+   *
+   * @param threshold the exclusive minimum value.
+   * @param context   to be intersected with.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap gt(long threshold, Roaring64NavigableMap context) {
+    return compute(context, (chunk, rows) -> chunk.gt(threshold, rows));
+  }
+
+  /**
+   * Returns the number of rows which have a value greater than the threshold.
+   *
+   * @param threshold the exclusive minimum value.
+   * @return the number of matching rows.
+   */
+  public long gtCardinality(long threshold) {
+    return count(chunk -> chunk.gtCardinality(threshold));
+  }
+
+  /**
+   * Returns the number of rows which have a value greater than the threshold,
+   * and intersect with the context bitmap, which will not be modified.
+   *
+   * @param threshold the exclusive minimum value.
+   * @param context   to be intersected with.
+   * @return the number of matching rows.
+   */
+  public long gtCardinality(long threshold, Roaring64NavigableMap context) {
+    return count(context, (chunk, rows) -> chunk.gtCardinality(threshold, rows));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value greater than or equal to the threshold.
+   *
+   * @param threshold the inclusive minimum value.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap gte(long threshold) {
+    return compute(chunk -> chunk.gte(threshold));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value greater than or equal to the threshold,
+   * and intersect with the context bitmap, which will not be modified.
+   *
+   * @param threshold the inclusive minimum value.
+   * @param context   to be intersected with.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap gte(long threshold, Roaring64NavigableMap context) {
+    return compute(context, (chunk, rows) -> chunk.gte(threshold, rows));
+  }
+
+  /**
+   * Returns the number of rows which have a value greater than or equal to the threshold.
+   *
+   * @param threshold the inclusive minimum value.
+   * @return the number of matching rows.
+   */
+  public long gteCardinality(long threshold) {
+    return count(chunk -> chunk.gteCardinality(threshold));
+  }
+
+  /**
+   * Returns the number of rows which have a value greater than or equal to the threshold,
+   * and intersect with the context bitmap, which will not be modified.
+   *
+   * @param threshold the inclusive minimum value.
+   * @param context   to be intersected with.
+   * @return the number of matching rows.
+   */
+  public long gteCardinality(long threshold, Roaring64NavigableMap context) {
+    return count(context, (chunk, rows) -> chunk.gteCardinality(threshold, rows));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value equal to the value.
+   *
+   * @param value the value to filter by.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap eq(long value) {
+    return compute(chunk -> chunk.eq(value));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value equal to the value.
+   *
+   * @param value the value to filter by.
+   * @param context to be intersected with.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap eq(long value, Roaring64NavigableMap context) {
+    return compute(context, (chunk, rows) -> chunk.eq(value, rows));
+  }
+
+  /**
+   * Returns the number of rows which have a value equal to the value.
+   *
+   * @param value the value to filter by.
+   * @return the number of matching rows.
+   */
+  public long eqCardinality(long value) {
+    return count(chunk -> chunk.eqCardinality(value));
+  }
+
+  /**
+   * Returns the number of rows which have a value equal to the value,
+   * and intersect with the context bitmap, which will not be modified.
+   *
+   * @param value the value to filter by.
+   * @param context   to be intersected with.
+   * @return the number of matching rows.
+   */
+  public long eqCardinality(long value, Roaring64NavigableMap context) {
+    return count(context, (chunk, rows) -> chunk.eqCardinality(value, rows));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value not equal to the value.
+   *
+   * @param value the value to filter by.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap neq(long value) {
+    return compute(chunk -> chunk.neq(value));
+  }
+
+  /**
+   * Returns a bitmap of rows which have a value not equal to the value.
+   *
+   * @param value the value to filter by.
+   * @param context to be intersected with.
+   * @return a bitmap of matching rows.
+   */
+  public Roaring64NavigableMap neq(long value, Roaring64NavigableMap context) {
+    return compute(context, (chunk, rows) -> chunk.neq(value, rows));
+  }
+
+  /**
+   * Returns the number of rows which have a value not equal to the value.
+   *
+   * @param value the value to filter by.
+   * @return the number of matching rows.
+   */
+  public long neqCardinality(long value) {
+    return count(chunk -> chunk.neqCardinality(value));
+  }
+
+  /**
+   * Returns the number of rows which have a value not equal to the value,
+   * and intersect with the context bitmap, which will not be modified.
+   *
+   * @param value the value to filter by.
+   * @param context   to be intersected with.
+   * @return the number of matching rows.
+   */
+  public long neqCardinality(long value, Roaring64NavigableMap context) {
+    return count(context, (chunk, rows) -> chunk.neqCardinality(value, rows));
+  }
+
+  private Roaring64NavigableMap compute(Function<RangeBitmap, RoaringBitmap> query) {
+    Roaring64NavigableMap result = new Roaring64NavigableMap();
+    for (int i = 0; i < chunks.size(); i++) {
+      addChunkRows(result, i, query.apply(chunks.get(i)));
+    }
+    return result;
+  }
+
+  private Roaring64NavigableMap compute(
+      Roaring64NavigableMap context, BiFunction<RangeBitmap, RoaringBitmap, RoaringBitmap> query) {
+    Roaring64NavigableMap result = new Roaring64NavigableMap();
+    for (int i = 0; i < chunks.size(); i++) {
+      RoaringBitmap rows = chunkRows(context, i);
+      if (!rows.isEmpty()) {
+        addChunkRows(result, i, query.apply(chunks.get(i), rows));
+      }
+    }
+    return result;
+  }
+
+  private long count(ToLongFunction<RangeBitmap> query) {
+    long count = 0;
+    for (RangeBitmap chunk : chunks) {
+      count += query.applyAsLong(chunk);
+    }
+    return count;
+  }
+
+  private long count(
+      Roaring64NavigableMap context, BiFunction<RangeBitmap, RoaringBitmap, Long> query) {
+    long count = 0;
+    for (int i = 0; i < chunks.size(); i++) {
+      RoaringBitmap rows = chunkRows(context, i);
+      if (!rows.isEmpty()) {
+        count += query.apply(chunks.get(i), rows);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Adds the rows matched in a chunk, numbered from the first row of the chunk, to the result.
+   */
+  private void addChunkRows(Roaring64NavigableMap result, int chunk, RoaringBitmap matches) {
+    if (matches.isEmpty()) {
+      return;
+    }
+    long firstRow = chunk * rowsPerChunk;
+    int high = RoaringIntPacking.high(firstRow);
+    long offset = firstRow & 0xFFFFFFFFL;
+    RoaringBitmap lows = offset == 0 ? matches : RoaringBitmap.addOffset(matches, offset);
+    result.orLows(high, lows);
+  }
+
+  /**
+   * Returns the rows of the context within a chunk, numbered from the first row of the chunk.
+   */
+  private RoaringBitmap chunkRows(Roaring64NavigableMap context, int chunk) {
+    long firstRow = chunk * rowsPerChunk;
+    BitmapDataProvider bucket = context.getBitmap(RoaringIntPacking.high(firstRow));
+    if (bucket == null) {
+      return new RoaringBitmap();
+    }
+    RoaringBitmap lows =
+        bucket instanceof MutableRoaringBitmap
+            ? ((MutableRoaringBitmap) bucket).toRoaringBitmap()
+            : (RoaringBitmap) bucket;
+    long offset = firstRow & 0xFFFFFFFFL;
+    return RoaringBitmap.addOffset(lows.selectRange(offset, offset + rowsPerChunk), -offset);
+  }
+
+  /**
+   * Builder for constructing immutable Roaring64RangeBitmaps
+   */
+  public static final class Appender {
+
+    private final long maxValue;
+    private final long rowsPerChunk;
+    private final IntFunction<ByteBuffer> imageSupplier;
+    private final List<RangeBitmap> chunks = new ArrayList<>();
+    private final RangeBitmap.Appender appender;
+    private long rows;
+
+    private Appender(long maxValue, long rowsPerChunk, IntFunction<ByteBuffer> imageSupplier) {
+      this.maxValue = maxValue;
+      this.rowsPerChunk = rowsPerChunk;
+      this.imageSupplier = imageSupplier;
+      this.appender = RangeBitmap.appender(maxValue);
+    }
+
+    /**
+     * Adds the value and associates it with the current row index.
+     *
+     * @param value the value, will be rejected if greater than max value.
+     */
+    public void add(long value) {
+      appender.add(value);
+      rows++;
+      if (rows % rowsPerChunk == 0) {
+        sealChunk();
+      }
+    }
+
+    private void sealChunk() {
+      chunks.add(appender.build(imageSupplier));
+      // the image of the chunk holds its rows, the appender can be reused
+      appender.clear();
+    }
+
+    /**
+     * Converts the appender into an immutable range index. The image of each chunk, in row
+     * order, is held in a buffer obtained from the image supplier.
+     *
+     * @return a queriable Roaring64RangeBitmap
+     */
+    public Roaring64RangeBitmap build() {
+      if (rows % rowsPerChunk != 0) {
+        sealChunk();
+      }
+      Roaring64RangeBitmap bitmap =
+          new Roaring64RangeBitmap(Collections.unmodifiableList(new ArrayList<>(chunks)),
+              rowsPerChunk);
+      chunks.clear();
+      rows = 0;
+      return bitmap;
+    }
+
+    /**
+     * @return the maximum value to be appended.
+     */
+    public long getMaxValue() {
+      return maxValue;
+    }
+  }
+}
@@ -0,0 +1,736 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.BitmapDataProvider;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * Maps the high parts of longs to their buckets with a sorted array of primitive highs and a
+ * parallel array of bitmaps, as {@link org.roaringbitmap.RoaringArray} does for 16 bit keys.
+ * Compared to a {@link java.util.TreeMap}, there is neither boxed key nor tree node: lookups are
+ * binary searches and iterations are array scans. Adding highs in ascending order is amortized
+ * constant time, while inserting or removing a high before others shifts them.
+ *
+ * Views (head, tail, sub and descending maps) are bounded by highs, as the views of a TreeMap, so
+ * that they remain consistent as buckets are inserted or removed. As with a TreeMap, the entries
+ * of the iterators write their value through, while those returned by the navigation methods are
+ * snapshots.
+ */
+final class SortedArrayBucketMap extends AbstractMap<Integer, BitmapDataProvider>
+    implements NavigableMap<Integer, BitmapDataProvider> {
+
+  private static final int[] EMPTY_HIGHS = new int[0];
+  private static final BitmapDataProvider[] EMPTY_BITMAPS = new BitmapDataProvider[0];
+
+  /**
+   * The buckets, shared by a map and its views.
+   */
+  private static final class Buckets {
+    final boolean signedLongs;
+    int[] highs = EMPTY_HIGHS;
+    BitmapDataProvider[] bitmaps = EMPTY_BITMAPS;
+    int size = 0;
+    // Counts the structural modifications, to fail fast when iterating
+    int modCount = 0;
+
+    Buckets(boolean signedLongs) {
+      this.signedLongs = signedLongs;
+    }
+
+    int compare(int x, int y) {
+      if (signedLongs) {
+        return Integer.compare(x, y);
+      } else {
+        return RoaringIntPacking.compareUnsigned(x, y);
+      }
+    }
+
+    // Same contract as Arrays.binarySearch
+    int indexOf(int high) {
+      int low = 0;
+      int up = size - 1;
+      while (low <= up) {
+        int middle = (low + up) >>> 1;
+        int cmp = compare(highs[middle], high);
+        if (cmp < 0) {
+          low = middle + 1;
+        } else if (cmp > 0) {
+          up = middle - 1;
+        } else {
+          return middle;
+        }
+      }
+      return -(low + 1);
+    }
+
+    // The index of the first high greater than (or equal to, if inclusive) the given high
+    int ceilingIndex(int high, boolean inclusive) {
+      int index = indexOf(high);
+      if (index >= 0) {
+        return inclusive ? index : index + 1;
+      }
+      return -index - 1;
+    }
+
+    BitmapDataProvider put(int high, BitmapDataProvider bitmap) {
+      int index = indexOf(high);
+      if (index >= 0) {
+        BitmapDataProvider previous = bitmaps[index];
+        bitmaps[index] = bitmap;
+        return previous;
+      }
+      insertAt(-index - 1, high, bitmap);
+      return null;
+    }
+
+    void insertAt(int index, int high, BitmapDataProvider bitmap) {
+      if (size == highs.length) {
+        int newCapacity;
+        if (highs.length < 1024) {
+          newCapacity = 2 * (size + 1);
+        } else {
+          newCapacity = 5 * (size + 1) / 4;
+        }
+        highs = Arrays.copyOf(highs, newCapacity);
+        bitmaps = Arrays.copyOf(bitmaps, newCapacity);
+      }
+      System.arraycopy(highs, index, highs, index + 1, size - index);
+      System.arraycopy(bitmaps, index, bitmaps, index + 1, size - index);
+      highs[index] = high;
+      bitmaps[index] = bitmap;
+      size++;
+      modCount++;
+    }
+
+    BitmapDataProvider removeAt(int index) {
+      BitmapDataProvider previous = bitmaps[index];
+      removeRange(index, index + 1);
+      return previous;
+    }
+
+    void removeRange(int from, int to) {
+      if (from < to) {
+        System.arraycopy(highs, to, highs, from, size - to);
+        System.arraycopy(bitmaps, to, bitmaps, from, size - to);
+        // Let the removed bitmaps be garbage collected
+        Arrays.fill(bitmaps, size - (to - from), size, null);
+        size -= to - from;
+        modCount++;
+      }
+    }
+  }
+
+  private final Buckets buckets;
+
+  // The bounds of a view, in the ascending order of the highs
+  private final boolean fromStart;
+  private final int lo;
+  private final boolean loInclusive;
+  private final boolean toEnd;
+  private final int hi;
+  private final boolean hiInclusive;
+  private final boolean descending;
+
+  /**
+   * @param signedLongs true if the highs are ordered as signed integers, false for unsigned
+   */
+  SortedArrayBucketMap(boolean signedLongs) {
+    this(new Buckets(signedLongs), true, 0, false, true, 0, false, false);
+  }
+
+  private SortedArrayBucketMap(
+      Buckets buckets,
+      boolean fromStart,
+      int lo,
+      boolean loInclusive,
+      boolean toEnd,
+      int hi,
+      boolean hiInclusive,
+      boolean descending) {
+    this.buckets = buckets;
+    this.fromStart = fromStart;
+    this.lo = lo;
+    this.loInclusive = loInclusive;
+    this.toEnd = toEnd;
+    this.hi = hi;
+    this.hiInclusive = hiInclusive;
+    this.descending = descending;
+  }
+
+  /**
+   * Like {@link #get(Object)}, without boxing the high.
+   *
+   * @param high the high part of some longs
+   * @return the bitmap of the high, or null if there is none
+   */
+  BitmapDataProvider getBitmap(int high) {
+    if (!inRange(high)) {
+      return null;
+    }
+    int index = buckets.indexOf(high);
+    return index >= 0 ? buckets.bitmaps[index] : null;
+  }
+
+  /**
+   * @return an estimation of the memory held by the arrays, excluding the bitmaps themselves
+   */
+  long getLongSizeInBytes() {
+    return 8L + 4L * buckets.highs.length + 8L * buckets.bitmaps.length;
+  }
+
+  // Like inRange, but accepting the excluded bounds of this view, as the bounds of a nested view
+  private boolean inClosedRange(int high) {
+    return (fromStart || buckets.compare(high, lo) >= 0)
+        && (toEnd || buckets.compare(high, hi) <= 0);
+  }
+
+  private boolean inRange(int high) {
+    if (!fromStart) {
+      int cmp = buckets.compare(high, lo);
+      if (cmp < 0 || cmp == 0 && !loInclusive) {
+        return false;
+      }
+    }
+    if (!toEnd) {
+      int cmp = buckets.compare(high, hi);
+      if (cmp > 0 || cmp == 0 && !hiInclusive) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // The first index in this view
+  private int fromIndex() {
+    return fromStart ? 0 : buckets.ceilingIndex(lo, loInclusive);
+  }
+
+  // The index following the last one in this view
+  private int toIndex() {
+    return toEnd ? buckets.size : buckets.ceilingIndex(hi, !hiInclusive);
+  }
+
+  private int indexOfKey(Object key) {
+    if (!(key instanceof Integer)) {
+      return -1;
+    }
+    int high = (Integer) key;
+    return inRange(high) ? buckets.indexOf(high) : -1;
+  }
+
+  private Entry<Integer, BitmapDataProvider> entryAt(int index) {
+    if (index < fromIndex() || index >= toIndex()) {
+      return null;
+    }
+    return new SimpleImmutableEntry<>(buckets.highs[index], buckets.bitmaps[index]);
+  }
+
+  private static Integer keyOrNull(Entry<Integer, BitmapDataProvider> entry) {
+    return entry == null ? null : entry.getKey();
+  }
+
+  private static Integer keyOrThrow(Entry<Integer, BitmapDataProvider> entry) {
+    if (entry == null) {
+      throw new NoSuchElementException();
+    }
+    return entry.getKey();
+  }
+
+  @Override
+  public int size() {
+    return Math.max(0, toIndex() - fromIndex());
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOfKey(key) >= 0;
+  }
+
+  @Override
+  public BitmapDataProvider get(Object key) {
+    int index = indexOfKey(key);
+    return index >= 0 ? buckets.bitmaps[index] : null;
+  }
+
+  @Override
+  public BitmapDataProvider put(Integer key, BitmapDataProvider value) {
+    if (!inRange(key)) {
+      throw new IllegalArgumentException("key out of range");
+    }
+    return buckets.put(key, value);
+  }
+
+  @Override
+  public BitmapDataProvider remove(Object key) {
+    int index = indexOfKey(key);
+    return index >= 0 ? buckets.removeAt(index) : null;
+  }
+
+  @Override
+  public void clear() {
+    buckets.removeRange(fromIndex(), Math.max(fromIndex(), toIndex()));
+  }
+
+  // Navigation in the ascending order of the highs
+
+  private Entry<Integer, BitmapDataProvider> absCeiling(int high) {
+    return entryAt(Math.max(buckets.ceilingIndex(high, true), fromIndex()));
+  }
+
+  private Entry<Integer, BitmapDataProvider> absHigher(int high) {
+    return entryAt(Math.max(buckets.ceilingIndex(high, false), fromIndex()));
+  }
+
+  private Entry<Integer, BitmapDataProvider> absFloor(int high) {
+    return entryAt(Math.min(buckets.ceilingIndex(high, false), toIndex()) - 1);
+  }
+
+  private Entry<Integer, BitmapDataProvider> absLower(int high) {
+    return entryAt(Math.min(buckets.ceilingIndex(high, true), toIndex()) - 1);
+  }
+
+  @Override
+  public Entry<Integer, BitmapDataProvider> lowerEntry(Integer key) {
+    return descending ? absHigher(key) : absLower(key);
+  }
+
+  @Override
+  public Integer lowerKey(Integer key) {
+    return keyOrNull(lowerEntry(key));
+  }
+
+  @Override
+  public Entry<Integer, BitmapDataProvider> floorEntry(Integer key) {
+    return descending ? absCeiling(key) : absFloor(key);
+  }
+
+  @Override
+  public Integer floorKey(Integer key) {
+    return keyOrNull(floorEntry(key));
+  }
+
+  @Override
+  public Entry<Integer, BitmapDataProvider> ceilingEntry(Integer key) {
+    return descending ? absFloor(key) : absCeiling(key);
+  }
+
+  @Override
+  public Integer ceilingKey(Integer key) {
+    return keyOrNull(ceilingEntry(key));
+  }
+
+  @Override
+  public Entry<Integer, BitmapDataProvider> higherEntry(Integer key) {
+    return descending ? absLower(key) : absHigher(key);
+  }
+
+  @Override
+  public Integer higherKey(Integer key) {
+    return keyOrNull(higherEntry(key));
+  }
+
+  @Override
+  public Entry<Integer, BitmapDataProvider> firstEntry() {
+    return entryAt(descending ? toIndex() - 1 : fromIndex());
+  }
+
+  @Override
+  public Entry<Integer, BitmapDataProvider> lastEntry() {
+    return entryAt(descending ? fromIndex() : toIndex() - 1);
+  }
+
+  @Override
+  public Entry<Integer, BitmapDataProvider> pollFirstEntry() {
+    Entry<Integer, BitmapDataProvider> first = firstEntry();
+    if (first != null) {
+      remove(first.getKey());
+    }
+    return first;
+  }
+
+  @Override
+  public Entry<Integer, BitmapDataProvider> pollLastEntry() {
+    Entry<Integer, BitmapDataProvider> last = lastEntry();
+    if (last != null) {
+      remove(last.getKey());
+    }
+    return last;
+  }
+
+  @Override
+  public Integer firstKey() {
+    return keyOrThrow(firstEntry());
+  }
+
+  @Override
+  public Integer lastKey() {
+    return keyOrThrow(lastEntry());
+  }
+
+  @Override
+  public Comparator<? super Integer> comparator() {
+    Comparator<Integer> ascending =
+        buckets.signedLongs ? null : RoaringIntPacking.unsignedComparator();
+    if (descending) {
+      return Collections.reverseOrder(ascending);
+    } else {
+      return ascending;
+    }
+  }
+
+  // Views
+
+  // A nested view, whose bounds must lie within those of this view
+  private SortedArrayBucketMap bounded(
+      boolean hasLo, int lo, boolean loInclusive, boolean hasHi, int hi, boolean hiInclusive) {
+    if (hasLo && !(loInclusive ? inRange(lo) : inClosedRange(lo))) {
+      throw new IllegalArgumentException("key out of range");
+    }
+    if (hasHi && !(hiInclusive ? inRange(hi) : inClosedRange(hi))) {
+      throw new IllegalArgumentException("key out of range");
+    }
+    return new SortedArrayBucketMap(
+        buckets,
+        hasLo ? false : fromStart,
+        hasLo ? lo : this.lo,
+        hasLo ? loInclusive : this.loInclusive,
+        hasHi ? false : toEnd,
+        hasHi ? hi : this.hi,
+        hasHi ? hiInclusive : this.hiInclusive,
+        descending);
+  }
+
+  @Override
+  public NavigableMap<Integer, BitmapDataProvider> subMap(
+      Integer fromKey, boolean fromInclusive, Integer toKey, boolean toInclusive) {
+    int cmp = buckets.compare(fromKey, toKey);
+    if (descending ? cmp < 0 : cmp > 0) {
+      throw new IllegalArgumentException("fromKey > toKey");
+    }
+    if (descending) {
+      return bounded(true, toKey, toInclusive, true, fromKey, fromInclusive);
+    } else {
+      return bounded(true, fromKey, fromInclusive, true, toKey, toInclusive);
+    }
+  }
+
+  @Override
+  public NavigableMap<Integer, BitmapDataProvider> headMap(Integer toKey, boolean inclusive) {
+    if (descending) {
+      return bounded(true, toKey, inclusive, false, 0, false);
+    } else {
+      return bounded(false, 0, false, true, toKey, inclusive);
+    }
+  }
+
+  @Override
+  public NavigableMap<Integer, BitmapDataProvider> tailMap(Integer fromKey, boolean inclusive) {
+    if (descending) {
+      return bounded(false, 0, false, true, fromKey, inclusive);
+    } else {
+      return bounded(true, fromKey, inclusive, false, 0, false);
+    }
+  }
+
+  @Override
+  public SortedMap<Integer, BitmapDataProvider> subMap(Integer fromKey, Integer toKey) {
+    return subMap(fromKey, true, toKey, false);
+  }
+
+  @Override
+  public SortedMap<Integer, BitmapDataProvider> headMap(Integer toKey) {
+    return headMap(toKey, false);
+  }
+
+  @Override
+  public SortedMap<Integer, BitmapDataProvider> tailMap(Integer fromKey) {
+    return tailMap(fromKey, true);
+  }
+
+  @Override
+  public NavigableMap<Integer, BitmapDataProvider> descendingMap() {
+    return new SortedArrayBucketMap(
+        buckets, fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+  }
+
+  @Override
+  public Set<Entry<Integer, BitmapDataProvider>> entrySet() {
+    return new AbstractSet<Entry<Integer, BitmapDataProvider>>() {
+      @Override
+      public Iterator<Entry<Integer, BitmapDataProvider>> iterator() {
+        return new BucketIterator<Entry<Integer, BitmapDataProvider>>() {
+          @Override
+          Entry<Integer, BitmapDataProvider> element(int index) {
+            return new BucketEntry(buckets.highs[index], buckets.bitmaps[index]);
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return SortedArrayBucketMap.this.size();
+      }
+    };
+  }
+
+  @Override
+  public Collection<BitmapDataProvider> values() {
+    return new AbstractCollection<BitmapDataProvider>() {
+      @Override
+      public Iterator<BitmapDataProvider> iterator() {
+        return new BucketIterator<BitmapDataProvider>() {
+          @Override
+          BitmapDataProvider element(int index) {
+            return buckets.bitmaps[index];
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return SortedArrayBucketMap.this.size();
+      }
+    };
+  }
+
+  @Override
+  public Set<Integer> keySet() {
+    return navigableKeySet();
+  }
+
+  @Override
+  public NavigableSet<Integer> navigableKeySet() {
+    return new KeySet();
+  }
+
+  @Override
+  public NavigableSet<Integer> descendingKeySet() {
+    return descendingMap().navigableKeySet();
+  }
+
+  /**
+   * An entry of the iterators, whose value is written through to the bucket of its high.
+   */
+  private final class BucketEntry extends SimpleEntry<Integer, BitmapDataProvider> {
+    private static final long serialVersionUID = 1L;
+
+    BucketEntry(int high, BitmapDataProvider bitmap) {
+      super(high, bitmap);
+    }
+
+    @Override
+    public BitmapDataProvider setValue(BitmapDataProvider value) {
+      int index = buckets.indexOf(getKey());
+      if (index < 0) {
+        throw new IllegalStateException("the bucket has been removed");
+      }
+      buckets.bitmaps[index] = value;
+      return super.setValue(value);
+    }
+  }
+
+  /**
+   * Iterates over the buckets of this view, in its order.
+   */
+  private abstract class BucketIterator<T> implements Iterator<T> {
+    private int next;
+    // The first index not to iterate over
+    private int bound;
+    private int lastReturned = -1;
+    private int expectedModCount = buckets.modCount;
+
+    BucketIterator() {
+      if (descending) {
+        next = toIndex() - 1;
+        bound = fromIndex() - 1;
+      } else {
+        next = fromIndex();
+        bound = toIndex();
+      }
+    }
+
+    abstract T element(int index);
+
+    @Override
+    public boolean hasNext() {
+      return descending ? next > bound : next < bound;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      if (expectedModCount != buckets.modCount) {
+        throw new ConcurrentModificationException();
+      }
+      lastReturned = next;
+      next += descending ? -1 : 1;
+      return element(lastReturned);
+    }
+
+    @Override
+    public void remove() {
+      if (lastReturned < 0) {
+        throw new IllegalStateException();
+      }
+      if (expectedModCount != buckets.modCount) {
+        throw new ConcurrentModificationException();
+      }
+      buckets.removeAt(lastReturned);
+      if (!descending) {
+        // The following buckets have been shifted to the left
+        next--;
+        bound--;
+      }
+      lastReturned = -1;
+      expectedModCount = buckets.modCount;
+    }
+  }
+
+  private final class KeySet extends AbstractSet<Integer> implements NavigableSet<Integer> {
+
+    @Override
+    public Iterator<Integer> iterator() {
+      return new BucketIterator<Integer>() {
+        @Override
+        Integer element(int index) {
+          return buckets.highs[index];
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return SortedArrayBucketMap.this.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return containsKey(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      int index = indexOfKey(o);
+      if (index < 0) {
+        return false;
+      }
+      buckets.removeAt(index);
+      return true;
+    }
+
+    @Override
+    public void clear() {
+      SortedArrayBucketMap.this.clear();
+    }
+
+    @Override
+    public Comparator<? super Integer> comparator() {
+      return SortedArrayBucketMap.this.comparator();
+    }
+
+    @Override
+    public Integer first() {
+      return firstKey();
+    }
+
+    @Override
+    public Integer last() {
+      return lastKey();
+    }
+
+    @Override
+    public Integer lower(Integer e) {
+      return lowerKey(e);
+    }
+
+    @Override
+    public Integer floor(Integer e) {
+      return floorKey(e);
+    }
+
+    @Override
+    public Integer ceiling(Integer e) {
+      return ceilingKey(e);
+    }
+
+    @Override
+    public Integer higher(Integer e) {
+      return higherKey(e);
+    }
+
+    @Override
+    public Integer pollFirst() {
+      return keyOrNull(pollFirstEntry());
+    }
+
+    @Override
+    public Integer pollLast() {
+      return keyOrNull(pollLastEntry());
+    }
+
+    @Override
+    public NavigableSet<Integer> descendingSet() {
+      return descendingKeySet();
+    }
+
+    @Override
+    public Iterator<Integer> descendingIterator() {
+      return descendingKeySet().iterator();
+    }
+
+    @Override
+    public NavigableSet<Integer> subSet(
+        Integer fromElement, boolean fromInclusive, Integer toElement, boolean toInclusive) {
+      return subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<Integer> headSet(Integer toElement, boolean inclusive) {
+      return headMap(toElement, inclusive).navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<Integer> tailSet(Integer fromElement, boolean inclusive) {
+      return tailMap(fromElement, inclusive).navigableKeySet();
+    }
+
+    @Override
+    public SortedSet<Integer> subSet(Integer fromElement, Integer toElement) {
+      return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<Integer> headSet(Integer toElement) {
+      return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<Integer> tailSet(Integer fromElement) {
+      return tailSet(fromElement, true);
+    }
+  }
+}
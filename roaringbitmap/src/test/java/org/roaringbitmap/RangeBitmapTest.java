@@ -4,6 +4,7 @@ import static java.nio.ByteOrder.LITTLE_ENDIAN;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.roaringbitmap.RangeBitmapTest.Distribution.EXP;
 import static org.roaringbitmap.RangeBitmapTest.Distribution.NORMAL;
@@ -26,8 +27,11 @@ import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.OptionalLong;
 import java.util.Random;
 import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.DoubleToLongFunction;
@@ -1540,4 +1544,186 @@ public class RangeBitmapTest {
           "sliceCount=" + sliceCount);
     }
   }
+
+  @ParameterizedTest
+  @ValueSource(longs = {1000L, 0xFFFFFL, 0xFFFFFFFFFFL})
+  public void lteCardinalitiesMatchSingleThresholds(long maxValue) {
+    SplittableRandom random = new SplittableRandom(maxValue);
+    RangeBitmap.Appender appender = RangeBitmap.appender(maxValue);
+    // a partial last container, clusters of values and spread values
+    for (int row = 0; row < 200_000; row++) {
+      appender.add(row % 3 == 0 ? random.nextLong(maxValue + 1) : random.nextLong(100));
+    }
+    RangeBitmap bitmap = appender.build();
+    long[] thresholds = new long[50];
+    for (int i = 0; i < thresholds.length; i++) {
+      thresholds[i] = random.nextInt(4) == 0 ? random.nextLong(100) : random.nextLong(maxValue + 1);
+    }
+    thresholds[0] = 0;
+    thresholds[1] = maxValue;
+    thresholds[2] = maxValue + 1;
+    thresholds[3] = -1L;
+    RoaringBitmap context = new RoaringBitmap();
+    context.add(10L, 70_000L);
+    context.add(150_000L, 300_000L);
+    long[] cardinalities = bitmap.lteCardinalities(thresholds);
+    long[] contextCardinalities = bitmap.lteCardinalities(thresholds, context);
+    for (int i = 0; i < thresholds.length; i++) {
+      assertEquals(bitmap.lteCardinality(thresholds[i]), cardinalities[i], "" + thresholds[i]);
+      assertEquals(
+          bitmap.lteCardinality(thresholds[i], context),
+          contextCardinalities[i],
+          "" + thresholds[i]);
+    }
+    assertEquals(0L, bitmap.lteCardinalities(thresholds, new RoaringBitmap())[1]);
+    assertEquals(0, bitmap.lteCardinalities(new long[0]).length);
+  }
+
+  @Test
+  public void histogramMatchesBetweenCardinalities() {
+    SplittableRandom random = new SplittableRandom(42);
+    long maxValue = 10_000;
+    RangeBitmap.Appender appender = RangeBitmap.appender(maxValue);
+    for (int row = 0; row < 100_000; row++) {
+      appender.add(random.nextLong(maxValue + 1));
+    }
+    RangeBitmap bitmap = appender.build();
+    long[] boundaries = {0, 1, 17, 500, 501, 4096, 9999, 10_001, 20_000};
+    RoaringBitmap context = RoaringBitmap.bitmapOfRange(5000, 80_000);
+    long[] histogram = bitmap.histogram(boundaries);
+    long[] contextHistogram = bitmap.histogram(boundaries, context);
+    assertEquals(boundaries.length - 1, histogram.length);
+    long total = 0;
+    for (int i = 0; i < histogram.length; i++) {
+      long min = boundaries[i];
+      long max = boundaries[i + 1] - 1;
+      assertEquals(bitmap.betweenCardinality(min, max), histogram[i], "bucket " + i);
+      assertEquals(bitmap.betweenCardinality(min, max, context), contextHistogram[i], "" + i);
+      total += histogram[i];
+    }
+    assertEquals(100_000, total);
+    assertEquals(0, bitmap.histogram(new long[] {5}).length);
+    assertThrows(IllegalArgumentException.class, () -> bitmap.histogram(new long[] {5, 3}));
+  }
+
+  @Test
+  public void queriesOverExecutorMatchSequentialQueries() {
+    SplittableRandom random = new SplittableRandom(7);
+    long maxValue = 1 << 20;
+    RangeBitmap.Appender appender = RangeBitmap.appender(maxValue);
+    // more than one part of container keys, the last one partial
+    for (int row = 0; row < 2_500_000; row++) {
+      appender.add(random.nextLong(maxValue + 1));
+    }
+    RangeBitmap bitmap = appender.build();
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      for (long threshold : new long[] {0, 1000, 1 << 19, maxValue, maxValue + 1, -1L}) {
+        long other = random.nextLong(maxValue + 1);
+        long min = Math.min(threshold, other);
+        long max = Math.max(threshold, other);
+        assertEquals(bitmap.between(min, max), bitmap.between(min, max, executor));
+        assertEquals(
+            bitmap.betweenCardinality(min, max), bitmap.betweenCardinality(min, max, executor));
+        assertEquals(bitmap.lte(threshold), bitmap.lte(threshold, executor));
+        assertEquals(bitmap.lteCardinality(threshold), bitmap.lteCardinality(threshold, executor));
+        assertEquals(bitmap.lt(threshold), bitmap.lt(threshold, executor));
+        assertEquals(bitmap.ltCardinality(threshold), bitmap.ltCardinality(threshold, executor));
+        assertEquals(bitmap.gt(threshold), bitmap.gt(threshold, executor));
+        assertEquals(bitmap.gtCardinality(threshold), bitmap.gtCardinality(threshold, executor));
+        assertEquals(bitmap.gte(threshold), bitmap.gte(threshold, executor));
+        assertEquals(bitmap.gteCardinality(threshold), bitmap.gteCardinality(threshold, executor));
+        assertEquals(bitmap.eq(threshold), bitmap.eq(threshold, executor));
+        assertEquals(bitmap.eqCardinality(threshold), bitmap.eqCardinality(threshold, executor));
+        assertEquals(bitmap.neq(threshold), bitmap.neq(threshold, executor));
+        assertEquals(bitmap.neqCardinality(threshold), bitmap.neqCardinality(threshold, executor));
+      }
+      RangeBitmap empty = RangeBitmap.appender(10).build();
+      assertTrue(empty.gte(0, executor).isEmpty());
+      assertEquals(0L, empty.lteCardinality(10, executor));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(longs = {100L, 0xFFFFL, -1L})
+  public void inMatchesUnionOfEq(long maxValue) {
+    SplittableRandom random = new SplittableRandom(maxValue);
+    long bound = maxValue == -1L ? 1000 : maxValue + 1;
+    RangeBitmap.Appender appender = RangeBitmap.appender(maxValue);
+    for (int row = 0; row < 150_000; row++) {
+      appender.add(row % 100 == 0 ? random.nextLong() & maxValue : random.nextLong(bound));
+    }
+    RangeBitmap bitmap = appender.build();
+    RoaringBitmap context = RoaringBitmap.bitmapOfRange(30_000, 100_000);
+    for (int size : new int[] {0, 1, 5, 40, 200}) {
+      long[] values = new long[size];
+      for (int i = 0; i < size; i++) {
+        // runs of consecutive values, duplicates, 0 and values absent from the bitmap
+        values[i] = random.nextInt(3) == 0 ? random.nextLong() : random.nextLong(bound);
+        if (i > 0 && random.nextBoolean()) {
+          values[i] = values[i - 1] + 1;
+        }
+      }
+      if (size > 1) {
+        values[0] = 0;
+      }
+      RoaringBitmap expected = new RoaringBitmap();
+      for (long value : values) {
+        expected.or(bitmap.eq(value));
+      }
+      RoaringBitmap expectedInContext = RoaringBitmap.and(expected, context);
+      assertEquals(expected, bitmap.in(values), "size " + size);
+      assertEquals(expected.getLongCardinality(), bitmap.inCardinality(values));
+      assertEquals(expectedInContext, bitmap.in(values, context));
+      assertEquals(expectedInContext.getLongCardinality(), bitmap.inCardinality(values, context));
+    }
+    assertTrue(bitmap.in(new long[] {1}, new RoaringBitmap()).isEmpty());
+  }
+
+  @ParameterizedTest
+  @ValueSource(longs = {1L, 1000L, 0xFFFFFFFFL, -1L})
+  public void aggregatesMatchValues(long maxValue) {
+    SplittableRandom random = new SplittableRandom(maxValue);
+    long[] values = new long[150_000];
+    RangeBitmap.Appender appender = RangeBitmap.appender(maxValue);
+    for (int row = 0; row < values.length; row++) {
+      values[row] = random.nextLong() & maxValue;
+      if (maxValue != 1L && row % 7 == 0) {
+        // clusters of small values
+        values[row] &= 0xFF;
+      }
+      appender.add(values[row]);
+    }
+    RangeBitmap bitmap = appender.build();
+    RoaringBitmap[] contexts = {
+      RoaringBitmap.bitmapOfRange(0, values.length),
+      RoaringBitmap.bitmapOfRange(70_000, 70_001),
+      RoaringBitmap.bitmapOfRange(100_000, 300_000),
+      RoaringBitmap.bitmapOf(3, 65_536, 131_071, 149_999, 200_000),
+      new RoaringBitmap()
+    };
+    for (RoaringBitmap context : contexts) {
+      long sum = 0;
+      long min = -1L;
+      long max = 0;
+      boolean any = false;
+      for (int row : context) {
+        if (row < values.length) {
+          sum += values[row];
+          min = Long.compareUnsigned(values[row], min) < 0 ? values[row] : min;
+          max = Long.compareUnsigned(values[row], max) > 0 ? values[row] : max;
+          any = true;
+        }
+      }
+      assertEquals(sum, bitmap.sum(context));
+      assertEquals(any ? OptionalLong.of(min) : OptionalLong.empty(), bitmap.min(context));
+      assertEquals(any ? OptionalLong.of(max) : OptionalLong.empty(), bitmap.max(context));
+    }
+    assertEquals(bitmap.sum(contexts[0]), bitmap.sum());
+    assertEquals(bitmap.min(contexts[0]), bitmap.min());
+    assertEquals(bitmap.max(contexts[0]), bitmap.max());
+    assertFalse(RangeBitmap.appender(10).build().max().isPresent());
+  }
 }
@@ -0,0 +1,112 @@
+package org.roaringbitmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+public class SegmentedRangeBitmapTest {
+
+  private static void assertSameAnswers(
+      RangeBitmap expected, SegmentedRangeBitmap actual, long maxValue, SplittableRandom random) {
+    for (int i = 0; i < 20; i++) {
+      long threshold = random.nextLong(maxValue + 1);
+      long other = random.nextLong(maxValue + 1);
+      long min = Math.min(threshold, other);
+      long max = Math.max(threshold, other);
+      assertEquals(expected.lte(threshold), actual.lte(threshold));
+      assertEquals(expected.lteCardinality(threshold), actual.lteCardinality(threshold));
+      assertEquals(expected.lt(threshold), actual.lt(threshold));
+      assertEquals(expected.ltCardinality(threshold), actual.ltCardinality(threshold));
+      assertEquals(expected.gt(threshold), actual.gt(threshold));
+      assertEquals(expected.gtCardinality(threshold), actual.gtCardinality(threshold));
+      assertEquals(expected.gte(threshold), actual.gte(threshold));
+      assertEquals(expected.gteCardinality(threshold), actual.gteCardinality(threshold));
+      assertEquals(expected.eq(threshold), actual.eq(threshold));
+      assertEquals(expected.eqCardinality(threshold), actual.eqCardinality(threshold));
+      assertEquals(expected.neq(threshold), actual.neq(threshold));
+      assertEquals(expected.neqCardinality(threshold), actual.neqCardinality(threshold));
+      assertEquals(expected.between(min, max), actual.between(min, max));
+      assertEquals(expected.betweenCardinality(min, max), actual.betweenCardinality(min, max));
+    }
+  }
+
+  @Test
+  public void segmentsMatchSingleRangeBitmap() {
+    SplittableRandom random = new SplittableRandom(0);
+    long maxValue = 1000;
+    // segments which do and do not end on a container boundary
+    for (long rowsPerSegment : new long[] {1000, 1 << 16, 100_000}) {
+      RangeBitmap.Appender appender = RangeBitmap.appender(maxValue);
+      SegmentedRangeBitmap segmented = new SegmentedRangeBitmap(maxValue, rowsPerSegment);
+      for (int row = 0; row < 250_000; row++) {
+        long value = random.nextLong(maxValue + 1);
+        appender.add(value);
+        segmented.add(value);
+      }
+      segmented.seal();
+      assertEquals((250_000 + rowsPerSegment - 1) / rowsPerSegment, segmented.getSegmentCount());
+      assertEquals(250_000, segmented.getSealedRowCount());
+      assertSameAnswers(appender.build(), segmented, maxValue, random);
+    }
+  }
+
+  @Test
+  public void rowsAreVisibleOnceSealed() {
+    SegmentedRangeBitmap segmented = new SegmentedRangeBitmap(10, 100);
+    for (int row = 0; row < 150; row++) {
+      segmented.add(row % 10);
+    }
+    assertEquals(1, segmented.getSegmentCount());
+    assertEquals(100, segmented.getSealedRowCount());
+    assertEquals(150, segmented.getRowCount());
+    assertEquals(10, segmented.eqCardinality(3));
+    segmented.seal();
+    assertEquals(15, segmented.eqCardinality(3));
+    assertTrue(segmented.eq(3).contains(3));
+    assertTrue(segmented.eq(3).contains(143));
+    assertEquals(150, segmented.getSealedRowCount());
+  }
+
+  @Test
+  public void mergeKeepsAnswers() throws Exception {
+    SplittableRandom random = new SplittableRandom(1);
+    long maxValue = (1L << 40) - 1;
+    RangeBitmap.Appender appender = RangeBitmap.appender(maxValue);
+    SegmentedRangeBitmap segmented = new SegmentedRangeBitmap(maxValue, 10_000);
+    for (int row = 0; row < 100_000; row++) {
+      long value = random.nextInt(4) == 0 ? random.nextLong(maxValue + 1) : random.nextInt(100);
+      appender.add(value);
+      segmented.add(value);
+    }
+    assertEquals(10, segmented.getSegmentCount());
+    RangeBitmap expected = appender.build();
+
+    // merges in the background while queries run
+    CompletableFuture<Boolean> merged =
+        CompletableFuture.supplyAsync(() -> segmented.merge(70_000));
+    assertSameAnswers(expected, segmented, maxValue, random);
+    assertTrue(merged.get());
+    assertEquals(2, segmented.getSegmentCount());
+    assertSameAnswers(expected, segmented, maxValue, random);
+    assertFalse(segmented.merge(70_000));
+    assertTrue(segmented.merge(Long.MAX_VALUE));
+    assertEquals(1, segmented.getSegmentCount());
+    assertEquals(100_000, segmented.getSealedRowCount());
+    assertSameAnswers(expected, segmented, maxValue, random);
+  }
+
+  @Test
+  public void rejectsValuesAboveMax() {
+    SegmentedRangeBitmap segmented = new SegmentedRangeBitmap(255, 10);
+    assertThrows(IllegalArgumentException.class, () -> segmented.add(256));
+    assertThrows(IllegalArgumentException.class, () -> new SegmentedRangeBitmap(255, 0));
+    assertTrue(segmented.lte(255).isEmpty());
+    assertEquals(0, segmented.gteCardinality(0));
+  }
+}
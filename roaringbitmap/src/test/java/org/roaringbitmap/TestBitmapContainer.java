@@ -163,6 +163,23 @@ public class TestBitmapContainer {
     assertTrue(irepaired instanceof RunContainer);
   }
 
+  @Test
+  public void testLazyIXOR() {
+    Container[] others = {
+      new ArrayContainer(1000, 3000),
+      new BitmapContainer(2000, 40000),
+      Container.rangeOfOnes(20, 50000)
+    };
+    for (Container other : others) {
+      Container expected = new BitmapContainer(0, 1 << 15).xor(other);
+      Container lazy = new BitmapContainer(0, 1 << 15).lazyIXOR(other);
+      assertEquals(-1, lazy.getCardinality());
+      assertEquals(expected, lazy.repairAfterLazy());
+      Container cancelled = other.clone().lazyIXOR(other);
+      assertTrue(cancelled.repairAfterLazy().isEmpty());
+    }
+  }
+
   @Test
   public void testLazyORFull3() {
     BitmapContainer bc = new BitmapContainer(0, 1 << 15);
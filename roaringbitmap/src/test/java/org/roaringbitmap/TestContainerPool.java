@@ -0,0 +1,119 @@
+package org.roaringbitmap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.roaringbitmap.SeededTestData.randomBitmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class TestContainerPool {
+
+  @Test
+  public void testDisabledByDefault() {
+    assertFalse(ContainerPool.isEnabled());
+    long[] words = new BitmapContainer().bitmap;
+    ContainerPool.recycle(new BitmapContainer(words, 0));
+    assertNotSame(words, new BitmapContainer().bitmap);
+  }
+
+  @Test
+  public void testReusesBitmapWords() {
+    ContainerPool.enable();
+    try {
+      assertTrue(ContainerPool.isEnabled());
+      BitmapContainer container = new BitmapContainer(0, 10000);
+      long[] words = container.bitmap;
+      ContainerPool.recycle(container);
+      BitmapContainer reused = new BitmapContainer();
+      assertSame(words, reused.bitmap);
+      assertEquals(0, reused.getCardinality());
+      for (long word : reused.bitmap) {
+        assertEquals(0L, word);
+      }
+    } finally {
+      ContainerPool.disable();
+    }
+    assertFalse(ContainerPool.isEnabled());
+  }
+
+  @Test
+  public void testReusesCharsBySizeClass() {
+    ContainerPool.enable(2);
+    try {
+      char[] chars = new char[100];
+      ContainerPool.recycle(new ArrayContainer(chars));
+      // 100 chars can serve requests for up to 64 chars
+      assertNotSame(chars, ContainerPool.chars(65));
+      assertSame(chars, ContainerPool.chars(33));
+      assertEquals(128, ContainerPool.chars(100).length);
+    } finally {
+      ContainerPool.disable();
+    }
+  }
+
+  @Test
+  public void testRetainsBoundedNumberOfArrays() {
+    ContainerPool.enable(1);
+    try {
+      BitmapContainer first = new BitmapContainer();
+      BitmapContainer second = new BitmapContainer();
+      ContainerPool.recycle(first);
+      ContainerPool.recycle(second);
+      assertSame(first.bitmap, ContainerPool.words(false));
+      assertNotSame(second.bitmap, ContainerPool.words(false));
+    } finally {
+      ContainerPool.disable();
+    }
+  }
+
+  @Test
+  public void testDeserializeAndOperateWithRecycling() throws IOException {
+    RoaringBitmap[] inputs = new RoaringBitmap[10];
+    ByteBuffer[] serialized = new ByteBuffer[inputs.length];
+    for (int i = 0; i < inputs.length; ++i) {
+      inputs[i] = randomBitmap(20);
+      if (i % 2 == 0) {
+        inputs[i].runOptimize();
+      }
+      serialized[i] = ByteBuffer.allocate(inputs[i].serializedSizeInBytes());
+      inputs[i].serialize(serialized[i]);
+    }
+    ContainerPool.enable(4);
+    try {
+      for (int round = 0; round < 3; ++round) {
+        for (int i = 1; i < inputs.length; ++i) {
+          RoaringBitmap left = new RoaringBitmap();
+          serialized[i - 1].rewind();
+          left.deserialize(serialized[i - 1]);
+          RoaringBitmap right = new RoaringBitmap();
+          serialized[i].rewind();
+          right.deserialize(serialized[i]);
+          assertEquals(inputs[i - 1], left);
+          assertEquals(inputs[i], right);
+          RoaringBitmap and = RoaringBitmap.and(left, right);
+          RoaringBitmap or = RoaringBitmap.or(left, right);
+          RoaringBitmap xor = RoaringBitmap.xor(left, right);
+          assertEquals(RoaringBitmap.and(inputs[i - 1], inputs[i]), and);
+          assertEquals(RoaringBitmap.or(inputs[i - 1], inputs[i]), or);
+          assertEquals(RoaringBitmap.xor(inputs[i - 1], inputs[i]), xor);
+          assertArrayEquals(inputs[i].toArray(), right.toArray());
+          left.recycle();
+          right.recycle();
+          and.recycle();
+          or.recycle();
+          xor.recycle();
+          assertTrue(left.isEmpty());
+        }
+      }
+    } finally {
+      ContainerPool.disable();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package org.roaringbitmap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.roaringbitmap.SeededTestData.randomBitmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+public class TestSerializationViaChannel {
+
+  /**
+   * Accepts at most a few bytes per call, to exercise partial writes.
+   */
+  private static class TrickleChannel implements GatheringByteChannel {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+      long written = 0;
+      for (int i = offset; i < offset + length && written < 1000; ++i) {
+        while (srcs[i].hasRemaining() && written < 1000) {
+          out.write(srcs[i].get());
+          ++written;
+        }
+      }
+      return written;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) {
+      return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+      return (int) write(new ByteBuffer[] {src});
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {}
+
+    byte[] toByteArray() {
+      return out.toByteArray();
+    }
+  }
+
+  private static void assertSameBytes(RoaringBitmap bitmap) throws IOException {
+    ByteBuffer expected = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+    bitmap.serialize(expected);
+    TrickleChannel channel = new TrickleChannel();
+    bitmap.serialize(channel);
+    byte[] actual = channel.toByteArray();
+    assertArrayEquals(expected.array(), actual);
+    RoaringBitmap deserialized = new RoaringBitmap();
+    deserialized.deserialize(ByteBuffer.wrap(actual));
+    assertEquals(bitmap, deserialized);
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    assertSameBytes(new RoaringBitmap());
+  }
+
+  @Test
+  public void testRandomBitmaps() throws IOException {
+    for (int keys : new int[] {2, 3, 4, 5, 32, 200}) {
+      RoaringBitmap bitmap = randomBitmap(keys);
+      assertSameBytes(bitmap);
+      bitmap.runOptimize();
+      assertSameBytes(bitmap);
+    }
+  }
+
+  @Test
+  public void testManyBitmapContainers() throws IOException {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    for (int i = 0; i < 100 << 16; i += 3) {
+      bitmap.add(i);
+    }
+    assertSameBytes(bitmap);
+  }
+
+  @Test
+  public void testRunContainerLargerThanStagingBuffer() throws IOException {
+    char[] runs = new char[2 * 30000];
+    for (int i = 0; i < 30000; ++i) {
+      runs[2 * i] = (char) (2 * i);
+    }
+    RoaringBitmap bitmap = RoaringBitmap.bitmapOf(1, 2, 3);
+    bitmap.highLowContainer.append((char) 1, new RunContainer(runs, 30000));
+    bitmap.add(5 << 16);
+    assertSameBytes(bitmap);
+  }
+}
@@ -0,0 +1,131 @@
+package org.roaringbitmap.buffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.roaringbitmap.InvalidRoaringFormat;
+import org.roaringbitmap.RoaringBitmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class TestChecksummedSerialization {
+
+  private static RoaringBitmap bitmap() {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    // an array, a bitmap and a run container
+    for (int i = 0; i < 100; ++i) {
+      bitmap.add(i * 7);
+    }
+    for (int i = 0; i < 20000; ++i) {
+      bitmap.add((1 << 16) + i * 3);
+    }
+    bitmap.add((2L << 16) + 10, (2L << 16) + 50000);
+    bitmap.runOptimize();
+    return bitmap;
+  }
+
+  private static ByteBuffer serialize(RoaringBitmap bitmap) {
+    ByteBuffer buffer = ByteBuffer.allocate(ChecksummedSerialization.serializedSizeInBytes(bitmap));
+    ChecksummedSerialization.serialize(bitmap, buffer);
+    assertFalse(buffer.hasRemaining());
+    buffer.flip();
+    return buffer;
+  }
+
+  // the offset of some byte of the last container, which holds runs
+  private static int lastContainerByte(RoaringBitmap bitmap) {
+    return bitmap.serializedSizeInBytes() - 2;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    RoaringBitmap bitmap = bitmap();
+    ByteBuffer buffer = serialize(bitmap);
+    assertEquals(buffer.limit(), ChecksummedSerialization.serializedSizeInBytes(buffer));
+    assertEquals(bitmap, ChecksummedSerialization.map(buffer).toRoaringBitmap());
+    assertEquals(bitmap, ChecksummedSerialization.map(buffer, true).toRoaringBitmap());
+    RoaringBitmap deserialized = new RoaringBitmap();
+    ChecksummedSerialization.deserialize(deserialized, buffer);
+    assertEquals(bitmap, deserialized);
+    assertFalse(buffer.hasRemaining());
+  }
+
+  @Test
+  public void testRoundTripImmutable() {
+    MutableRoaringBitmap bitmap = bitmap().toMutableRoaringBitmap();
+    ByteBuffer buffer =
+        ByteBuffer.allocate(ChecksummedSerialization.serializedSizeInBytes(bitmap) + 5);
+    buffer.position(5);
+    ChecksummedSerialization.serialize(bitmap, buffer);
+    buffer.position(5);
+    assertEquals(bitmap, ChecksummedSerialization.map(buffer));
+    assertEquals(5, buffer.position());
+  }
+
+  @Test
+  public void testEmpty() {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    assertEquals(bitmap, ChecksummedSerialization.map(serialize(bitmap)).toRoaringBitmap());
+  }
+
+  @Test
+  public void testReadableAsUsualFormat() {
+    RoaringBitmap bitmap = bitmap();
+    assertEquals(bitmap, new ImmutableRoaringBitmap(serialize(bitmap)).toRoaringBitmap());
+  }
+
+  @Test
+  public void testCorruptedHeader() {
+    RoaringBitmap bitmap = bitmap();
+    ByteBuffer buffer = serialize(bitmap);
+    // the cardinality of the first container
+    buffer.put(6, (byte) (buffer.get(6) + 1));
+    assertThrows(InvalidRoaringFormat.class, () -> ChecksummedSerialization.map(buffer, true));
+    assertThrows(
+        InvalidRoaringFormat.class,
+        () -> ChecksummedSerialization.deserialize(new RoaringBitmap(), buffer));
+  }
+
+  @Test
+  public void testCorruptedContainer() {
+    RoaringBitmap bitmap = bitmap();
+    ByteBuffer buffer = serialize(bitmap);
+    int offset = lastContainerByte(bitmap);
+    buffer.put(offset, (byte) (buffer.get(offset) ^ 1));
+    assertThrows(InvalidRoaringFormat.class, () -> ChecksummedSerialization.map(buffer));
+    assertThrows(
+        InvalidRoaringFormat.class,
+        () -> ChecksummedSerialization.deserialize(new RoaringBitmap(), buffer));
+    assertEquals(0, buffer.position());
+  }
+
+  @Test
+  public void testLazyVerification() {
+    RoaringBitmap bitmap = bitmap();
+    ByteBuffer buffer = serialize(bitmap);
+    int offset = lastContainerByte(bitmap);
+    buffer.put(offset, (byte) (buffer.get(offset) ^ 1));
+    ImmutableRoaringBitmap mapped = ChecksummedSerialization.map(buffer, true);
+    assertTrue(mapped.contains(7));
+    assertTrue(mapped.contains((1 << 16) + 3));
+    assertEquals(bitmap.getCardinality(), mapped.getCardinality());
+    assertThrows(InvalidRoaringFormat.class, () -> mapped.contains((2 << 16) + 10));
+    assertThrows(InvalidRoaringFormat.class, mapped::toMutableRoaringBitmap);
+  }
+
+  @Test
+  public void testMissingChecksums() {
+    RoaringBitmap bitmap = bitmap();
+    ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes() + 64);
+    bitmap.serialize(buffer);
+    buffer.flip();
+    assertThrows(InvalidRoaringFormat.class, () -> ChecksummedSerialization.map(buffer));
+    buffer.limit(buffer.capacity());
+    assertThrows(InvalidRoaringFormat.class, () -> ChecksummedSerialization.map(buffer));
+  }
+}
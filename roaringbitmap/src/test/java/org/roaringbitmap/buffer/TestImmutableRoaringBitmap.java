@@ -1764,6 +1764,28 @@ public class TestImmutableRoaringBitmap {
     assertFalse(bitmap.contains(1L << 31, 1L << 32));
   }
 
+  @Test
+  public void testContainsRange_UpperHalf() {
+    MutableRoaringBitmap bitmap = MutableRoaringBitmap.bitmapOf(-2, -1);
+    assertTrue(bitmap.contains(0xFFFFFFFFL, 1L << 32));
+    assertTrue(bitmap.contains(0xFFFFFFFEL, 1L << 32));
+    assertFalse(bitmap.contains(0xFFFFFFFDL, 1L << 32));
+    bitmap.add(0x80000000L, 0x80020000L);
+    assertTrue(bitmap.contains(0x80000000L, 0x80020000L));
+    assertFalse(bitmap.contains(0x7FFFFFFFL, 0x80020000L));
+  }
+
+  @Test
+  public void testAbsentValuesInUpperHalf() {
+    MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
+    bitmap.add(0xFFFE8000L, 1L << 32);
+    assertEquals(0L, bitmap.nextAbsentValue(0));
+    assertEquals(0x80000000L, bitmap.nextAbsentValue(0x80000000));
+    assertEquals(0xFFFE7FFFL, bitmap.nextAbsentValue(0xFFFE7FFF));
+    assertEquals(0x80000000L, bitmap.previousAbsentValue(0x80000000));
+    assertEquals(0xFFFE7FFFL, bitmap.previousAbsentValue(-1));
+  }
+
   @Test
   public void testNextValue() {
     ImmutableRoaringBitmap bitmap =
@@ -0,0 +1,198 @@
+package org.roaringbitmap.buffer;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.roaringbitmap.InvalidRoaringFormat;
+import org.roaringbitmap.RoaringBitmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+public class TestImmutableRoaringBitmapStore {
+
+  private static List<MutableRoaringBitmap> randomBitmaps(int count) {
+    Random random = new Random(42);
+    List<MutableRoaringBitmap> bitmaps = new ArrayList<>();
+    for (int i = 0; i < count; ++i) {
+      MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
+      int values = random.nextInt(5000);
+      for (int j = 0; j < values; ++j) {
+        bitmap.add(random.nextInt(1 << 20));
+      }
+      if (i % 3 == 0) {
+        bitmap.add(i * 100L, i * 100L + 70000);
+        bitmap.runOptimize();
+      }
+      bitmaps.add(bitmap);
+    }
+    return bitmaps;
+  }
+
+  private static Path write(List<MutableRoaringBitmap> bitmaps) throws IOException {
+    Path path = Files.createTempFile("bitmap-store", ".bin");
+    path.toFile().deleteOnExit();
+    try (FileChannel channel = FileChannel.open(path, CREATE, WRITE, TRUNCATE_EXISTING)) {
+      ImmutableRoaringBitmapStore.Writer writer = ImmutableRoaringBitmapStore.writer(channel);
+      for (int i = 0; i < bitmaps.size(); ++i) {
+        if (i % 2 == 0) {
+          writer.add(10L * i - 100, bitmaps.get(i));
+        } else {
+          writer.add(10L * i - 100, bitmaps.get(i).toRoaringBitmap());
+        }
+      }
+      assertEquals(bitmaps.size(), writer.size());
+      long written = writer.finish();
+      assertEquals(channel.size(), written);
+    }
+    return path;
+  }
+
+  private static void verify(
+      ImmutableRoaringBitmapStore store, List<MutableRoaringBitmap> bitmaps) {
+    assertEquals(bitmaps.size(), store.size());
+    for (int i = 0; i < bitmaps.size(); ++i) {
+      long key = 10L * i - 100;
+      assertEquals(key, store.keyAt(i));
+      assertEquals(i, store.indexOf(key));
+      assertTrue(store.containsKey(key));
+      assertFalse(store.containsKey(key + 1));
+      assertEquals(bitmaps.get(i), store.get(key));
+    }
+    assertNull(store.get(Long.MIN_VALUE));
+    assertNull(store.get(Long.MAX_VALUE));
+    Iterator<ImmutableRoaringBitmap> it = store.iterator();
+    for (MutableRoaringBitmap bitmap : bitmaps) {
+      assertTrue(it.hasNext());
+      assertEquals(bitmap, it.next());
+    }
+    assertFalse(it.hasNext());
+  }
+
+  @Test
+  public void testMapFile() throws IOException {
+    List<MutableRoaringBitmap> bitmaps = randomBitmaps(100);
+    Path path = write(bitmaps);
+    try (FileChannel channel = FileChannel.open(path, READ)) {
+      verify(ImmutableRoaringBitmapStore.map(channel), bitmaps);
+    }
+  }
+
+  @Test
+  public void testMapFileInSeveralChunks() throws IOException {
+    List<MutableRoaringBitmap> bitmaps = randomBitmaps(100);
+    Path path = write(bitmaps);
+    try (FileChannel channel = FileChannel.open(path, READ)) {
+      verify(ImmutableRoaringBitmapStore.map(channel, 20000), bitmaps);
+      assertThrows(InvalidRoaringFormat.class, () -> ImmutableRoaringBitmapStore.map(channel, 10));
+    }
+  }
+
+  @Test
+  public void testMapBuffer() throws IOException {
+    List<MutableRoaringBitmap> bitmaps = randomBitmaps(20);
+    byte[] bytes = Files.readAllBytes(write(bitmaps));
+    ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 3);
+    buffer.position(3);
+    buffer.put(bytes);
+    buffer.position(3);
+    verify(ImmutableRoaringBitmapStore.map(buffer), bitmaps);
+  }
+
+  @Test
+  public void testEmptyStore() throws IOException {
+    Path path = write(new ArrayList<>());
+    try (FileChannel channel = FileChannel.open(path, READ)) {
+      ImmutableRoaringBitmapStore store = ImmutableRoaringBitmapStore.map(channel);
+      assertEquals(0, store.size());
+      assertNull(store.get(0));
+      assertFalse(store.iterator().hasNext());
+    }
+  }
+
+  @Test
+  public void testBatchLookups() throws IOException {
+    List<MutableRoaringBitmap> bitmaps = randomBitmaps(50);
+    Path path = write(bitmaps);
+    try (FileChannel channel = FileChannel.open(path, READ)) {
+      ImmutableRoaringBitmapStore store = ImmutableRoaringBitmapStore.map(channel);
+      long[] keys = {-100, -95, 0, 30, 31, 250, 1000, -90};
+      ImmutableRoaringBitmap[] found = store.get(keys);
+      assertEquals(bitmaps.get(0), found[0]);
+      assertNull(found[1]);
+      assertEquals(bitmaps.get(10), found[2]);
+      assertEquals(bitmaps.get(13), found[3]);
+      assertNull(found[4]);
+      assertEquals(bitmaps.get(35), found[5]);
+      assertNull(found[6]);
+      assertEquals(bitmaps.get(1), found[7]);
+
+      MutableRoaringBitmap expected =
+          ImmutableRoaringBitmap.or(
+              ImmutableRoaringBitmap.or(bitmaps.get(0), bitmaps.get(10)),
+              ImmutableRoaringBitmap.or(
+                  bitmaps.get(13), ImmutableRoaringBitmap.or(bitmaps.get(35), bitmaps.get(1))));
+      assertEquals(expected, BufferFastAggregation.or(store.iterator(keys)));
+    }
+  }
+
+  @Test
+  public void testBatchLookupsWithRepeatedKeys() throws IOException {
+    List<MutableRoaringBitmap> bitmaps = randomBitmaps(20);
+    Path path = write(bitmaps);
+    try (FileChannel channel = FileChannel.open(path, READ)) {
+      ImmutableRoaringBitmapStore store = ImmutableRoaringBitmapStore.map(channel);
+      long[] keys = {-50, -50, -40, -40, -40, -35, -30};
+      ImmutableRoaringBitmap[] found = store.get(keys);
+      assertEquals(bitmaps.get(5), found[0]);
+      assertEquals(bitmaps.get(5), found[1]);
+      assertEquals(bitmaps.get(6), found[2]);
+      assertEquals(bitmaps.get(6), found[3]);
+      assertEquals(bitmaps.get(6), found[4]);
+      assertNull(found[5]);
+      assertEquals(bitmaps.get(7), found[6]);
+
+      Iterator<ImmutableRoaringBitmap> it = store.iterator(keys);
+      for (int index : new int[] {5, 5, 6, 6, 6, 7}) {
+        assertTrue(it.hasNext());
+        assertEquals(bitmaps.get(index), it.next());
+      }
+      assertFalse(it.hasNext());
+    }
+  }
+
+  @Test
+  public void testKeysMustIncrease() throws IOException {
+    Path path = Files.createTempFile("bitmap-store", ".bin");
+    path.toFile().deleteOnExit();
+    try (FileChannel channel = FileChannel.open(path, WRITE)) {
+      ImmutableRoaringBitmapStore.Writer writer = ImmutableRoaringBitmapStore.writer(channel);
+      writer.add(1, new RoaringBitmap());
+      assertThrows(IllegalArgumentException.class, () -> writer.add(1, new RoaringBitmap()));
+      writer.finish();
+      assertThrows(IllegalStateException.class, () -> writer.add(2, new RoaringBitmap()));
+    }
+  }
+
+  @Test
+  public void testInvalidCookie() {
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    assertThrows(InvalidRoaringFormat.class, () -> ImmutableRoaringBitmapStore.map(buffer));
+  }
+}
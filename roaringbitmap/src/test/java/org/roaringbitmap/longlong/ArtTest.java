@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.Random;
 
 public class ArtTest {
 
@@ -421,6 +422,38 @@ public class ArtTest {
     Assertions.assertTrue(BytesUtil.same(lnIt.peekNext().getKeyBytes(), key0));
   }
 
+  @Test
+  public void testOfSortedKeys() {
+    Random random = new Random(7);
+    long[] keys = new long[5000];
+    for (int i = 0; i < keys.length; i++) {
+      // dense and sparse regions, so that all the node types are built
+      keys[i] = i < 2000 ? 0xABCD0000L + random.nextInt(1 << 12) : random.nextLong() >>> 16;
+    }
+    keys = Arrays.stream(keys).distinct().toArray();
+    Long[] boxed = Arrays.stream(keys).boxed().toArray(Long[]::new);
+    Arrays.sort(boxed, Long::compareUnsigned);
+    long[] sorted = Arrays.stream(boxed).mapToLong(Long::longValue).toArray();
+    long[] containerIdxs = new long[sorted.length];
+    for (int i = 0; i < containerIdxs.length; i++) {
+      containerIdxs[i] = 3 * i;
+    }
+    Art art = Art.ofSortedKeys(sorted, containerIdxs, sorted.length);
+    Assertions.assertEquals(sorted.length, art.getKeySize());
+    for (int i = 0; i < sorted.length; i++) {
+      Assertions.assertEquals(3 * i, art.findByKey(sorted[i] << 16));
+    }
+    LeafNodeIterator leafNodeIterator = art.leafNodeIterator(false, null);
+    for (long key : sorted) {
+      Assertions.assertEquals(key, leafNodeIterator.next().getKey());
+    }
+    Assertions.assertFalse(leafNodeIterator.hasNext());
+    Assertions.assertTrue(Art.ofSortedKeys(sorted, containerIdxs, 0).isEmpty());
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> Art.ofSortedKeys(new long[] {2, 1}, new long[] {0, 1}, 2));
+  }
+
   private void insert5PrefixCommonBytesIntoArt(Art art, int keyNum) {
     byte b = 0;
     long containerIdx = 0;
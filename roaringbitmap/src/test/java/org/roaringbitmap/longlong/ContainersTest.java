@@ -4,8 +4,11 @@ import org.roaringbitmap.ArrayContainer;
 import org.roaringbitmap.BitmapContainer;
 import org.roaringbitmap.Container;
 import org.roaringbitmap.RunContainer;
+import org.roaringbitmap.art.Art;
 import org.roaringbitmap.art.ContainerIterator;
 import org.roaringbitmap.art.Containers;
+import org.roaringbitmap.art.LeafNode;
+import org.roaringbitmap.art.LeafNodeIterator;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -101,4 +104,38 @@ public class ContainersTest {
     Assertions.assertTrue(container instanceof ArrayContainer);
     Assertions.assertEquals(20, container.getCardinality());
   }
+
+  @Test
+  public void testCompact() {
+    Containers containers = new Containers();
+    Art art = new Art();
+    for (long key = 0; key < 200; key++) {
+      ArrayContainer container = new ArrayContainer(new char[] {(char) key});
+      art.insert(LongUtils.highPart(key << 16), containers.addContainer(container));
+    }
+    Assertions.assertEquals(0, containers.getDeadSlotSize());
+    for (long key = 0; key < 200; key += 3) {
+      containers.remove(art.remove(LongUtils.highPart(key << 16)));
+    }
+    Assertions.assertEquals(133, containers.getContainerSize());
+    Assertions.assertEquals(67, containers.getDeadSlotSize());
+    Assertions.assertFalse(containers.isSparse());
+
+    containers.compact(art);
+    Assertions.assertEquals(133, containers.getContainerSize());
+    Assertions.assertEquals(0, containers.getDeadSlotSize());
+    LeafNodeIterator leafNodeIterator = art.leafNodeIterator(false, containers);
+    long containerIdx = 0;
+    while (leafNodeIterator.hasNext()) {
+      LeafNode leafNode = leafNodeIterator.next();
+      // the containers are renumbered in key order
+      Assertions.assertEquals(containerIdx++, leafNode.getContainerIdx());
+      Container container = containers.getContainer(leafNode.getContainerIdx());
+      Assertions.assertEquals(leafNode.getKey(), container.first());
+    }
+    Assertions.assertEquals(133, containerIdx);
+    long freshIdx = containers.addContainer(new ArrayContainer());
+    Assertions.assertEquals(133, freshIdx);
+    Assertions.assertEquals(0, containers.getDeadSlotSize());
+  }
 }
@@ -0,0 +1,200 @@
+package org.roaringbitmap.longlong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import org.roaringbitmap.RoaringBitmapSupplier;
+
+import com.google.common.primitives.Longs;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class Roaring64BatchIteratorTest {
+
+  private static final int[] SIZES = {1, 5, 127, 1024, 8192};
+
+  private static long[] drain(LongBatchIterator it, int size) {
+    List<Long> values = new ArrayList<>();
+    long[] buffer = new long[size];
+    while (it.hasNext()) {
+      int count = it.nextBatch(buffer);
+      for (int i = 0; i < count; i++) {
+        values.add(buffer[i]);
+      }
+    }
+    return Longs.toArray(values);
+  }
+
+  private static long[] drain(LongIterator it) {
+    List<Long> values = new ArrayList<>();
+    while (it.hasNext()) {
+      values.add(it.next());
+    }
+    return Longs.toArray(values);
+  }
+
+  private static long[] reverse(long[] values) {
+    long[] reversed = values.clone();
+    for (int i = 0; i < reversed.length / 2; i++) {
+      long tmp = reversed[i];
+      reversed[i] = reversed[reversed.length - 1 - i];
+      reversed[reversed.length - 1 - i] = tmp;
+    }
+    return reversed;
+  }
+
+  // the values from the target onwards, in iteration order
+  private static long[] from(long[] values, long target, Comparator<Long> order) {
+    return Longs.toArray(
+        Longs.asList(values).stream()
+            .filter(v -> order.compare(v, target) >= 0)
+            .collect(Collectors.toList()));
+  }
+
+  private static List<long[]> testCases() {
+    Random random = new Random(39);
+    List<long[]> cases = new ArrayList<>();
+    cases.add(new long[0]);
+    cases.add(new long[] {0, 1, 1L << 16, 5L << 16 | 7});
+    // array, bitmap and run containers spread over a few windows, including negative values
+    Roaring64Bitmap mixed = new Roaring64Bitmap();
+    for (long window : new long[] {0, 1L << 32, 0x7FFFFFFFL << 32, -1L << 32}) {
+      for (int i = 0; i < 50; i++) {
+        mixed.addLong(window | random.nextInt(1 << 20));
+      }
+      long bitmapStart = window | 20L << 16;
+      for (int i = 0; i < 8000; i++) {
+        mixed.addLong(bitmapStart | random.nextInt(1 << 16));
+      }
+      mixed.addRange(window | 30L << 16 | 5, window | 32L << 16 | 17);
+    }
+    mixed.runOptimize();
+    cases.add(mixed.toArray());
+    return cases;
+  }
+
+  @Test
+  public void testRoaring64BitmapMatchesIterators() {
+    for (long[] values : testCases()) {
+      Roaring64Bitmap bitmap = Roaring64Bitmap.bitmapOf(values);
+      long[] ascending = bitmap.toArray();
+      for (int size : SIZES) {
+        assertArrayEquals(ascending, drain(bitmap.getBatchIterator(), size));
+        assertArrayEquals(reverse(ascending), drain(bitmap.getReverseBatchIterator(), size));
+      }
+      assertArrayEquals(ascending, drain(bitmap.getBatchIterator().asLongIterator(new long[7])));
+    }
+  }
+
+  @Test
+  public void testRoaring64NavigableMapMatchesIterators() {
+    for (boolean signedLongs : new boolean[] {false, true}) {
+      for (long[] values : testCases()) {
+        Roaring64NavigableMap bitmap =
+            new Roaring64NavigableMap(signedLongs, true, new RoaringBitmapSupplier());
+        bitmap.add(values);
+        long[] ascending = drain(bitmap.getLongIterator());
+        for (int size : SIZES) {
+          assertArrayEquals(ascending, drain(bitmap.getBatchIterator(), size));
+          assertArrayEquals(reverse(ascending), drain(bitmap.getReverseBatchIterator(), size));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSkipsContainersEmptiedByXor() {
+    Roaring64Bitmap bitmap = new Roaring64Bitmap();
+    bitmap.addRange(0, 1000);
+    bitmap.addRange(5L << 32, (5L << 32) + 1000);
+    bitmap.addLong(7L << 40);
+    bitmap.runOptimize();
+    Roaring64Bitmap emptying = new Roaring64Bitmap();
+    emptying.addRange(0, 1000);
+    emptying.addRange(5L << 32, (5L << 32) + 1000);
+    emptying.runOptimize();
+    bitmap.xor(emptying);
+    for (int size : SIZES) {
+      assertArrayEquals(new long[] {7L << 40}, drain(bitmap.getBatchIterator(), size));
+      assertArrayEquals(new long[] {7L << 40}, drain(bitmap.getReverseBatchIterator(), size));
+    }
+    bitmap.removeLong(7L << 40);
+    assertFalse(bitmap.getBatchIterator().hasNext());
+    assertFalse(bitmap.getReverseBatchIterator().hasNext());
+  }
+
+  @Test
+  public void testAdvanceIfNeeded() {
+    Random random = new Random(40);
+    long[] values = testCases().get(2);
+    Roaring64Bitmap bitmap = Roaring64Bitmap.bitmapOf(values);
+    Roaring64NavigableMap unsigned = new Roaring64NavigableMap(false);
+    unsigned.add(values);
+    Roaring64NavigableMap signed = new Roaring64NavigableMap(true);
+    signed.add(values);
+    long[] signedValues = drain(signed.getLongIterator());
+    Comparator<Long> unsignedOrder = Long::compareUnsigned;
+    Comparator<Long> signedOrder = Long::compare;
+    for (int round = 0; round < 200; round++) {
+      long target = values[random.nextInt(values.length)] + random.nextInt(3) - 1;
+      long[] ascending = from(values, target, unsignedOrder);
+      long[] descending = from(reverse(values), target, unsignedOrder.reversed());
+      int size = SIZES[round % SIZES.length];
+      LongBatchIterator[] forwards = {bitmap.getBatchIterator(), unsigned.getBatchIterator()};
+      for (LongBatchIterator it : forwards) {
+        it.advanceIfNeeded(target);
+        assertArrayEquals(ascending, drain(it, size));
+      }
+      LongBatchIterator[] backwards = {
+        bitmap.getReverseBatchIterator(), unsigned.getReverseBatchIterator()
+      };
+      for (LongBatchIterator it : backwards) {
+        it.advanceIfNeeded(target);
+        assertArrayEquals(descending, drain(it, size));
+      }
+      LongBatchIterator signedForward = signed.getBatchIterator();
+      signedForward.advanceIfNeeded(target);
+      assertArrayEquals(from(signedValues, target, signedOrder), drain(signedForward, size));
+      LongBatchIterator signedBackward = signed.getReverseBatchIterator();
+      signedBackward.advanceIfNeeded(target);
+      assertArrayEquals(
+          from(reverse(signedValues), target, signedOrder.reversed()),
+          drain(signedBackward, size));
+    }
+    // past the last value
+    LongBatchIterator exhausted = bitmap.getBatchIterator();
+    exhausted.advanceIfNeeded(-1L);
+    assertEquals(values[values.length - 1] == -1L, exhausted.hasNext());
+    LongBatchIterator reverseExhausted = bitmap.getReverseBatchIterator();
+    reverseExhausted.advanceIfNeeded(0L);
+    assertEquals(values[0] == 0L, reverseExhausted.hasNext());
+  }
+
+  @Test
+  public void testClone() {
+    long[] values = testCases().get(2);
+    Roaring64Bitmap bitmap = Roaring64Bitmap.bitmapOf(values);
+    Roaring64NavigableMap navigable = new Roaring64NavigableMap();
+    navigable.add(values);
+    LongBatchIterator[] iterators = {
+      bitmap.getBatchIterator(),
+      bitmap.getReverseBatchIterator(),
+      navigable.getBatchIterator(),
+      navigable.getReverseBatchIterator()
+    };
+    for (LongBatchIterator it : iterators) {
+      long[] buffer = new long[1000];
+      it.nextBatch(buffer);
+      LongBatchIterator cloned = it.clone();
+      long[] remaining = drain(it, 100);
+      assertArrayEquals(remaining, drain(cloned, 100));
+      assertFalse(it.hasNext());
+    }
+  }
+}
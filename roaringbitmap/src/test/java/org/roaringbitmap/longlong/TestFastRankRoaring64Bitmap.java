@@ -0,0 +1,208 @@
+package org.roaringbitmap.longlong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Check FastRankRoaring64Bitmap maintains its index of cardinalities when necessary
+ */
+public class TestFastRankRoaring64Bitmap {
+
+  private static void assertSameRanks(Roaring64Bitmap expected, FastRankRoaring64Bitmap actual) {
+    assertEquals(expected.getLongCardinality(), actual.getLongCardinality());
+    long cardinality = expected.getLongCardinality();
+    for (long j = 0; j < cardinality; j += 1 + cardinality / 500) {
+      long value = expected.select(j);
+      assertEquals(value, actual.select(j));
+      assertEquals(j + 1, actual.rankLong(value));
+      assertEquals(expected.rankLong(value - 1), actual.rankLong(value - 1));
+      assertEquals(expected.rankLong(value + 1000000), actual.rankLong(value + 1000000));
+    }
+    assertEquals(cardinality, actual.rankLong(-1L));
+    assertThrows(IllegalArgumentException.class, () -> actual.select(cardinality));
+    assertThrows(IllegalArgumentException.class, () -> actual.select(-1));
+  }
+
+  @Test
+  public void testEmpty() {
+    FastRankRoaring64Bitmap bitmap = new FastRankRoaring64Bitmap();
+    assertEquals(0, bitmap.rankLong(123));
+    assertEquals(0, bitmap.getLongCardinality());
+    assertThrows(IllegalArgumentException.class, () -> bitmap.select(0));
+  }
+
+  @Test
+  public void testAddSmallAddBigRemoveSmall() {
+    FastRankRoaring64Bitmap bitmap = new FastRankRoaring64Bitmap();
+    bitmap.addLong(123);
+    assertEquals(1, bitmap.rankLong(123));
+    assertEquals(123, bitmap.select(0));
+
+    // unsigned order: -1 is the largest value
+    bitmap.addLong(-1L);
+    assertEquals(123, bitmap.select(0));
+    assertEquals(-1L, bitmap.select(1));
+    assertEquals(0, bitmap.rankLong(122));
+    assertEquals(1, bitmap.rankLong(Long.MAX_VALUE));
+    assertEquals(2, bitmap.rankLong(-1L));
+
+    bitmap.removeLong(123);
+    assertEquals(-1L, bitmap.select(0));
+    assertEquals(0, bitmap.rankLong(Long.MAX_VALUE));
+    assertEquals(1, bitmap.rankLong(-1L));
+  }
+
+  @Test
+  public void testIncrementalInvalidation() {
+    FastRankRoaring64Bitmap bitmap = new FastRankRoaring64Bitmap();
+    for (long i = 0; i < 100; i++) {
+      bitmap.addLong(i << 16);
+      bitmap.addLong((i << 16) + 1);
+    }
+    assertTrue(bitmap.isCacheDismissed());
+    assertEquals(200, bitmap.rankLong(-1L));
+    assertEquals(100, bitmap.validCardinalities());
+
+    // only the cardinalities from the mutated container onwards are dismissed
+    bitmap.addLong((60L << 16) + 2);
+    assertFalse(bitmap.isCacheDismissed());
+    assertEquals(60, bitmap.validCardinalities());
+    assertEquals(22, bitmap.rankLong(10L << 16 | 0xFFFF));
+    assertEquals(60, bitmap.validCardinalities());
+    assertEquals(60L << 16 | 2, bitmap.select(122));
+    assertEquals(61, bitmap.validCardinalities());
+
+    bitmap.removeLong(5L << 16);
+    assertFalse(bitmap.isCacheDismissed());
+    assertEquals(5, bitmap.validCardinalities());
+    assertEquals(200, bitmap.rankLong(-1L));
+
+    // removing an absent value changes nothing
+    bitmap.removeLong(1000L << 16);
+    assertEquals(100, bitmap.validCardinalities());
+
+    // creating or removing containers dismisses the whole index
+    bitmap.addLong(1000L << 16);
+    assertTrue(bitmap.isCacheDismissed());
+    assertEquals(201, bitmap.getLongCardinality());
+    bitmap.removeLong(5L << 16 | 1);
+    assertTrue(bitmap.isCacheDismissed());
+    assertEquals(200, bitmap.getLongCardinality());
+    assertEquals(6L << 16, bitmap.select(10));
+  }
+
+  @Test
+  public void testCompactionDismissesTheIndex() {
+    FastRankRoaring64Bitmap bitmap = new FastRankRoaring64Bitmap();
+    for (long i = 0; i < 1000; i++) {
+      bitmap.addLong(i << 16);
+    }
+    for (long i = 0; i < 1000; i += 2) {
+      bitmap.removeLong(i << 16);
+      // the index refers to the renumbered containers whenever a removal compacts them
+      assertEquals(i / 2, bitmap.rankLong(i << 16 | 0xFFFF));
+      assertEquals((i + 1) << 16, bitmap.select(i / 2));
+    }
+    bitmap.compact();
+    assertTrue(bitmap.isCacheDismissed());
+    assertEquals(500, bitmap.getLongCardinality());
+    assertEquals(999L << 16, bitmap.select(499));
+  }
+
+  @Test
+  public void testLazyOpsDismissTheIndex() {
+    FastRankRoaring64Bitmap bitmap = new FastRankRoaring64Bitmap();
+    bitmap.addRange(0, 1 << 20);
+    assertEquals(1 << 20, bitmap.rankLong(1 << 20));
+    bitmap.naivelazyor(Roaring64Bitmap.bitmapOf(1L << 40));
+    bitmap.naivelazyxor(Roaring64Bitmap.bitmapOf(5, 6));
+    assertTrue(bitmap.isCacheDismissed());
+    bitmap.repairAfterLazy();
+    assertEquals((1 << 20) - 2, bitmap.rankLong(1 << 20));
+    assertEquals(1L << 40, bitmap.select((1 << 20) - 2));
+  }
+
+  @Test
+  public void testMatchesRoaring64BitmapUnderMutations() throws IOException {
+    Random random = new Random(42);
+    Roaring64Bitmap expected = new Roaring64Bitmap();
+    FastRankRoaring64Bitmap actual = new FastRankRoaring64Bitmap();
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 500; i++) {
+        long value = (random.nextInt(300) * 65536L) + random.nextInt(1000);
+        if (random.nextBoolean()) {
+          value = -value;
+        }
+        switch (random.nextInt(4)) {
+          case 0:
+            expected.removeLong(value);
+            actual.removeLong(value);
+            break;
+          case 1:
+            expected.flip(value);
+            actual.flip(value);
+            break;
+          default:
+            expected.addLong(value);
+            actual.addLong(value);
+        }
+        if (i % 50 == 0 && !expected.isEmpty()) {
+          long j = random.nextInt((int) expected.getLongCardinality());
+          assertEquals(expected.select(j), actual.select(j));
+          assertEquals(expected.rankLong(value), actual.rankLong(value));
+        }
+      }
+      Roaring64Bitmap other = new Roaring64Bitmap();
+      for (int i = 0; i < 1000; i++) {
+        other.addLong(random.nextInt(1 << 24));
+      }
+      switch (round % 5) {
+        case 0:
+          expected.or(other);
+          actual.or(other);
+          break;
+        case 1:
+          expected.andNot(other);
+          actual.andNot(other);
+          break;
+        case 2:
+          expected.xor(other);
+          actual.xor(other);
+          break;
+        case 3:
+          long start = random.nextInt(1 << 24);
+          expected.addRange(start, start + 100000);
+          actual.addRange(start, start + 100000);
+          break;
+        default:
+          long[] values = other.toArray();
+          expected.add(values);
+          actual.add(values);
+      }
+      assertSameRanks(expected, actual);
+    }
+    assertEquals(expected, actual);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    expected.removeLong(expected.first());
+    expected.serialize(new DataOutputStream(bytes));
+    actual.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertSameRanks(expected, actual);
+
+    FastRankRoaring64Bitmap clone = actual.clone();
+    actual.clear();
+    assertEquals(0, actual.rankLong(-1L));
+    assertSameRanks(expected, clone);
+  }
+}
@@ -5,6 +5,7 @@ import static org.roaringbitmap.Util.toUnsignedLong;
 import static org.roaringbitmap.ValidationRangeConsumer.Value.ABSENT;
 import static org.roaringbitmap.ValidationRangeConsumer.Value.PRESENT;
 
+import org.roaringbitmap.InvalidRoaringFormat;
 import org.roaringbitmap.RoaringBitmap;
 import org.roaringbitmap.ValidationRangeConsumer;
 import org.roaringbitmap.art.LeafNode;
@@ -19,6 +20,7 @@ import org.junit.jupiter.api.Test;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.LongBuffer;
 import java.util.*;
 
 public class TestRoaring64Bitmap {
@@ -663,6 +665,356 @@ public class TestRoaring64Bitmap {
     assertEquals(-123, anotherDeserMap.select(2));
   }
 
+  private static Roaring64Bitmap portableSample() {
+    Roaring64Bitmap map = new Roaring64Bitmap();
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      map.addLong(random.nextLong());
+    }
+    // several containers in the same 32 bit bucket, including a run container
+    map.addRange(1L << 40, (1L << 40) + 200000);
+    map.addLong(-1L);
+    map.addLong(0L);
+    map.runOptimize();
+    return map;
+  }
+
+  @Test
+  public void testPortableSerialization() throws IOException {
+    for (Roaring64Bitmap map : Arrays.asList(newDefaultCtor(), portableSample())) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      map.serializePortable(new DataOutputStream(bytes));
+      assertEquals(map.portableSerializedSizeInBytes(), bytes.size());
+
+      Roaring64Bitmap fromStream = newDefaultCtor();
+      fromStream.addLong(7);
+      fromStream.deserializePortable(
+          new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      assertEquals(map, fromStream);
+
+      ByteBuffer buffer = ByteBuffer.allocate(bytes.size() + 3);
+      buffer.position(3);
+      map.serializePortable(buffer);
+      assertFalse(buffer.hasRemaining());
+      buffer.position(3);
+      Roaring64Bitmap fromBuffer = newDefaultCtor();
+      fromBuffer.deserializePortable(buffer);
+      assertFalse(buffer.hasRemaining());
+      assertEquals(map, fromBuffer);
+      assertArrayEquals(map.toArray(), fromBuffer.toArray());
+    }
+  }
+
+  @Test
+  public void testPortableSerializationMatchesNavigableMap() throws IOException {
+    Roaring64Bitmap map = portableSample();
+    Roaring64NavigableMap navigableMap = new Roaring64NavigableMap(false);
+    map.forEach(navigableMap::addLong);
+    navigableMap.runOptimize();
+
+    ByteArrayOutputStream fromMap = new ByteArrayOutputStream();
+    map.serializePortable(new DataOutputStream(fromMap));
+    ByteArrayOutputStream fromNavigableMap = new ByteArrayOutputStream();
+    navigableMap.serializePortable(new DataOutputStream(fromNavigableMap));
+    assertArrayEquals(fromNavigableMap.toByteArray(), fromMap.toByteArray());
+
+    Roaring64NavigableMap deserialized = new Roaring64NavigableMap(false);
+    deserialized.deserializePortable(
+        new DataInputStream(new ByteArrayInputStream(fromMap.toByteArray())));
+    assertArrayEquals(map.toArray(), deserialized.toArray());
+  }
+
+  @Test
+  public void testPortableDeserializationRejectsUnsortedBuckets() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putLong(2);
+    buffer.putInt(5);
+    RoaringBitmap.bitmapOf(1).serialize(buffer);
+    buffer.putInt(4);
+    RoaringBitmap.bitmapOf(1).serialize(buffer);
+    buffer.flip();
+    assertThrows(
+        InvalidRoaringFormat.class, () -> newDefaultCtor().deserializePortable(buffer));
+  }
+
+  @Test
+  public void testRepeatedAccessesToSameContainer() {
+    Roaring64Bitmap map = newDefaultCtor();
+    long base = 0xCAFEL << 32;
+    for (long i = 0; i < 5000; i++) {
+      map.addLong(base + i);
+      assertTrue(map.contains(base + i));
+    }
+    map.removeLong(base + 1);
+    assertFalse(map.contains(base + 1));
+    assertTrue(map.contains(base + 2));
+    // removes the container, then adds a fresh one under the same key
+    for (long i = 0; i < 5000; i++) {
+      map.removeLong(base + i);
+    }
+    assertFalse(map.contains(base + 2));
+    assertTrue(map.isEmpty());
+    map.addLong(base + 3);
+    assertTrue(map.contains(base + 3));
+    assertFalse(map.contains(base + 2));
+    assertEquals(1, map.getLongCardinality());
+    map.clear();
+    assertFalse(map.contains(base + 3));
+    Roaring64Bitmap clone = Roaring64Bitmap.bitmapOf(base + 7);
+    assertTrue(clone.contains(base + 7));
+    clone.clone().removeLong(base + 7);
+    assertTrue(clone.contains(base + 7));
+  }
+
+  private static Roaring64Bitmap addOneByOne(long... values) {
+    Roaring64Bitmap expected = new Roaring64Bitmap();
+    for (long value : values) {
+      expected.addLong(value);
+    }
+    return expected;
+  }
+
+  private static long[] bulkSample() {
+    Random random = new Random(42);
+    long[] values = new long[20000];
+    int i = 0;
+    // runs
+    for (long start = -(1L << 20); i < 5000; start += 3000) {
+      for (int j = 0; j < 1000; j++) {
+        values[i++] = start + j;
+      }
+    }
+    // dense containers
+    for (; i < 15000; i++) {
+      values[i] = (1L << 40) + random.nextInt(20000);
+    }
+    // sparse values
+    for (; i < values.length; i++) {
+      values[i] = random.nextLong();
+    }
+    return values;
+  }
+
+  @Test
+  public void testBulkAddSorted() {
+    long[] values = bulkSample();
+    Arrays.sort(values);
+    Roaring64Bitmap expected = addOneByOne(values);
+    Roaring64Bitmap bitmap = Roaring64Bitmap.bitmapOf(values);
+    assertEquals(expected, bitmap);
+    assertEquals(expected.getLongCardinality(), bitmap.getLongCardinality());
+    assertArrayEquals(expected.toArray(), bitmap.toArray());
+    for (long value : values) {
+      assertTrue(bitmap.contains(value));
+    }
+    assertEquals(expected.getLongCardinality(), bitmap.rankLong(-1L));
+  }
+
+  @Test
+  public void testBulkAddUnsortedWithDuplicates() {
+    long[] values = bulkSample();
+    long[] shuffled = Arrays.copyOf(values, 2 * values.length);
+    System.arraycopy(values, 0, shuffled, values.length, values.length);
+    Collections.shuffle(Longs.asList(shuffled), new Random(0));
+    Roaring64Bitmap expected = addOneByOne(values);
+    assertEquals(expected, Roaring64Bitmap.bitmapOf(shuffled));
+    // many duplicates of the same container
+    long[] repeated = new long[200000];
+    for (int i = 0; i < repeated.length; i++) {
+      repeated[i] = 5L << 16 | (i % 70000) * 7 % 65536;
+    }
+    assertEquals(addOneByOne(repeated), Roaring64Bitmap.bitmapOf(repeated));
+  }
+
+  @Test
+  public void testBulkAddIntoNonEmptyBitmap() {
+    long[] values = bulkSample();
+    Roaring64Bitmap bitmap = Roaring64Bitmap.bitmapOf(Arrays.copyOf(values, 100));
+    bitmap.addLong(3L << 40);
+    Arrays.sort(values);
+    bitmap.add(values);
+    Roaring64Bitmap expected = addOneByOne(values);
+    expected.addLong(3L << 40);
+    assertEquals(expected, bitmap);
+  }
+
+  @Test
+  public void testAddNBoundaries() {
+    long[] values = {7, 1, 1L << 50, -3, 8, 9};
+    Roaring64Bitmap bitmap = newDefaultCtor();
+    bitmap.addN(values, 1, 3);
+    assertEquals(addOneByOne(1, 1L << 50, -3), bitmap);
+    bitmap.addN(values, 6, 0);
+    assertEquals(3, bitmap.getLongCardinality());
+    assertThrows(IllegalArgumentException.class, () -> bitmap.addN(values, -1, 2));
+    assertThrows(IllegalArgumentException.class, () -> bitmap.addN(values, 0, -1));
+    assertThrows(IllegalArgumentException.class, () -> bitmap.addN(values, 4, 3));
+    assertEquals(3, bitmap.getLongCardinality());
+    assertTrue(Roaring64Bitmap.bitmapOf().isEmpty());
+  }
+
+  @Test
+  public void testBulkAddBuildsCompactContainers() {
+    long[] values = new long[200000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (9L << 32) + i;
+    }
+    Roaring64Bitmap bitmap = Roaring64Bitmap.bitmapOf(values);
+    Roaring64Bitmap expected = addOneByOne(values);
+    expected.runOptimize();
+    assertEquals(expected, bitmap);
+    assertEquals(expected.getLongSizeInBytes(), bitmap.getLongSizeInBytes());
+  }
+
+  @Test
+  public void testBulkAddFromBufferAndIterator() {
+    long[] values = bulkSample();
+    Roaring64Bitmap expected = addOneByOne(values);
+    LongBuffer heap = LongBuffer.allocate(values.length + 2);
+    heap.put(-1L).put(values).put(-2L);
+    heap.position(1).limit(values.length + 1);
+    assertEquals(expected, Roaring64Bitmap.bitmapOf(heap.slice()));
+    assertEquals(expected, Roaring64Bitmap.bitmapOf(heap));
+    assertEquals(1, heap.position());
+    LongBuffer direct =
+        ByteBuffer.allocateDirect(8 * values.length).order(ByteOrder.nativeOrder()).asLongBuffer();
+    direct.put(values).flip();
+    assertEquals(expected, Roaring64Bitmap.bitmapOf(direct));
+    assertEquals(0, direct.position());
+    assertEquals(expected, Roaring64Bitmap.bitmapOf(Arrays.stream(values).iterator()));
+    assertTrue(Roaring64Bitmap.bitmapOf(LongBuffer.allocate(0)).isEmpty());
+  }
+
+  private static int unsignedLowerBound(long[] sorted, long value) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (Long.compareUnsigned(sorted[middle], value) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private static Roaring64Bitmap rangeSample() {
+    Random random = new Random(7);
+    Roaring64Bitmap bitmap = new Roaring64Bitmap();
+    // full and partial containers around 0, the signed boundaries and -1
+    for (long base : new long[] {0L, 1L << 40, Long.MAX_VALUE - (1 << 17), -(1L << 18)}) {
+      bitmap.addRange(base + 100, base + 2 * 65536 + 100);
+      for (int i = 0; i < 1000; i++) {
+        bitmap.addLong(base + (1 << 18) + random.nextInt(1 << 19));
+      }
+    }
+    bitmap.addLong(-1L);
+    return bitmap;
+  }
+
+  private static long randomBound(Random random, long[] values) {
+    long value = values[random.nextInt(values.length)];
+    switch (random.nextInt(5)) {
+      case 0:
+        return value + random.nextInt(3) - 1;
+      case 1:
+        return value & ~0xFFFFL;
+      case 2:
+        return (value & ~0xFFFFL) + 0x10000;
+      case 3:
+        return random.nextLong();
+      default:
+        return new long[] {0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE}[random.nextInt(4)];
+    }
+  }
+
+  @Test
+  public void testRangeOperationsMatchIteration() {
+    Roaring64Bitmap bitmap = rangeSample();
+    long[] values = bitmap.toArray();
+    Random random = new Random(11);
+    for (int i = 0; i < 300; i++) {
+      long start = randomBound(random, values);
+      long end = randomBound(random, values);
+      boolean empty = Long.compareUnsigned(start, end) >= 0;
+      int from = unsignedLowerBound(values, start);
+      int to = empty ? from : unsignedLowerBound(values, end);
+      long[] inRange = Arrays.copyOfRange(values, from, to);
+
+      assertEquals(inRange.length, bitmap.rangeCardinality(start, end));
+      assertEquals(inRange.length > 0, bitmap.intersects(start, end));
+      assertEquals(!empty && inRange.length == end - start, bitmap.contains(start, end));
+      assertArrayEquals(inRange, bitmap.selectRange(start, end).toArray());
+
+      Roaring64Bitmap removed = bitmap.clone();
+      removed.removeRange(start, end);
+      long[] expected = new long[values.length - inRange.length];
+      System.arraycopy(values, 0, expected, 0, from);
+      System.arraycopy(values, to, expected, from, values.length - to);
+      assertArrayEquals(expected, removed.toArray());
+    }
+    // whole containers
+    long base = 1L << 40;
+    assertTrue(bitmap.contains(base + 100, base + 2 * 65536 + 100));
+    assertFalse(bitmap.contains(base + 99, base + 2 * 65536 + 100));
+    assertFalse(bitmap.contains(base + 100, base + 2 * 65536 + 101));
+    assertTrue(bitmap.contains(base + 65536, base + 2 * 65536));
+    assertEquals(2 * 65536, bitmap.rangeCardinality(base, base + 2 * 65536 + 100));
+    assertFalse(bitmap.intersects(base + 2 * 65536 + 100, base + (1 << 18)));
+    Roaring64Bitmap removed = bitmap.clone();
+    removed.removeRange(base, base + (1L << 20));
+    assertEquals(bitmap.getLongCardinality() - bitmap.rangeCardinality(base, base + (1L << 20)),
+        removed.getLongCardinality());
+    assertFalse(removed.intersects(base, base + (1L << 20)));
+  }
+
+  @Test
+  public void testNavigationMatchesIteration() {
+    Roaring64Bitmap bitmap = rangeSample();
+    long[] values = bitmap.toArray();
+    Random random = new Random(13);
+    for (int i = 0; i < 1000; i++) {
+      long from = randomBound(random, values);
+      int index = unsignedLowerBound(values, from);
+      boolean present = index < values.length && values[index] == from;
+      if (index < values.length) {
+        assertEquals(values[index], bitmap.nextValue(from));
+      } else {
+        assertThrows(NoSuchElementException.class, () -> bitmap.nextValue(from));
+      }
+      if (present) {
+        assertEquals(from, bitmap.previousValue(from));
+      } else if (index > 0) {
+        assertEquals(values[index - 1], bitmap.previousValue(from));
+      } else {
+        assertThrows(NoSuchElementException.class, () -> bitmap.previousValue(from));
+      }
+      long nextAbsent = from;
+      while (bitmap.contains(nextAbsent)) {
+        nextAbsent++;
+      }
+      long previousAbsent = from;
+      while (bitmap.contains(previousAbsent)) {
+        previousAbsent--;
+      }
+      if (from != -1L) {
+        assertEquals(nextAbsent, bitmap.nextAbsentValue(from));
+      }
+      assertEquals(previousAbsent, bitmap.previousAbsentValue(from));
+    }
+    assertThrows(NoSuchElementException.class, () -> bitmap.nextAbsentValue(-1L));
+
+    Roaring64Bitmap empty = newDefaultCtor();
+    assertThrows(NoSuchElementException.class, () -> empty.nextValue(0L));
+    assertThrows(NoSuchElementException.class, () -> empty.previousValue(-1L));
+    assertEquals(5L, empty.nextAbsentValue(5L));
+    assertEquals(5L, empty.previousAbsentValue(5L));
+    assertEquals(0L, empty.rangeCardinality(0L, -1L));
+    assertFalse(empty.intersects(0L, -1L));
+    assertFalse(empty.contains(0L, 1L));
+  }
+
   @Test
   public void testOrSameBucket() {
     Roaring64Bitmap left = newDefaultCtor();
@@ -861,6 +1213,51 @@ public class TestRoaring64Bitmap {
     assertEquals(123, xorNotInPlace.select(0));
   }
 
+  @Test
+  public void testLazyOrXorMatchEagerOps() {
+    Random random = new Random(38);
+    Roaring64Bitmap eagerOr = new Roaring64Bitmap();
+    Roaring64Bitmap lazyOr = new Roaring64Bitmap();
+    Roaring64Bitmap eagerXor = new Roaring64Bitmap();
+    Roaring64Bitmap lazyXor = new Roaring64Bitmap();
+    for (int i = 0; i < 50; i++) {
+      Roaring64Bitmap operand = new Roaring64Bitmap();
+      for (int j = 0; j < 20; j++) {
+        long start = (long) random.nextInt(4) << 32 | (long) random.nextInt(8) << 16;
+        // array, bitmap and run containers
+        switch (random.nextInt(3)) {
+          case 0:
+            operand.addLong(start | random.nextInt(1 << 16));
+            break;
+          case 1:
+            for (int k = 0; k < 5000; k++) {
+              operand.addLong(start | random.nextInt(1 << 16));
+            }
+            break;
+          default:
+            operand.addRange(start, start + random.nextInt(1 << 16) + 1);
+            operand.runOptimize();
+        }
+      }
+      eagerOr.or(operand);
+      lazyOr.naivelazyor(operand);
+      eagerXor.xor(operand);
+      lazyXor.naivelazyxor(operand);
+    }
+    lazyOr.repairAfterLazy();
+    lazyXor.repairAfterLazy();
+    assertEquals(eagerOr, lazyOr);
+    assertEquals(eagerOr.getLongCardinality(), lazyOr.getLongCardinality());
+    assertEquals(eagerXor, lazyXor);
+    assertEquals(eagerXor.getLongCardinality(), lazyXor.getLongCardinality());
+
+    // the containers cancelled out are dropped by the repair
+    lazyXor.naivelazyxor(eagerXor.clone());
+    lazyXor.repairAfterLazy();
+    assertTrue(lazyXor.isEmpty());
+    assertFalse(lazyXor.getLongIterator().hasNext());
+  }
+
   @Test
   public void testAndSingleBucket() {
     Roaring64Bitmap left = newDefaultCtor();
@@ -2641,6 +3038,241 @@ public class TestRoaring64Bitmap {
     assertEquals(2, addressSpace.getIntCardinality());
   }
 
+  @Test
+  public void testCompactAfterRemovals() throws IOException {
+    Roaring64Bitmap bitmap = new Roaring64Bitmap();
+    for (long high = 0; high < 1000; high++) {
+      bitmap.addLong(high << 16);
+      bitmap.addLong(high << 16 | 1);
+    }
+    // emptying most of the containers one by one compacts the slots along the way
+    for (long high = 0; high < 900; high++) {
+      bitmap.removeLong(high << 16);
+      bitmap.removeLong(high << 16 | 1);
+      assertTrue(bitmap.highLowContainer.getDeadSlotSize() <= Math.max(64, 1000 - high));
+    }
+    assertEquals(100, bitmap.highLowContainer.getContainerSize());
+    Roaring64Bitmap twoPerContainer = new Roaring64Bitmap();
+    for (long high = 900; high < 1000; high++) {
+      twoPerContainer.addLong(high << 16);
+      twoPerContainer.addLong(high << 16 | 1);
+    }
+    assertEquals(twoPerContainer, bitmap);
+    assertEquals(200, bitmap.getLongCardinality());
+    assertEquals(900L << 16 | 1, bitmap.select(1));
+    assertTrue(bitmap.contains(999L << 16 | 1));
+
+    // the bitmap keeps working with the renumbered containers
+    bitmap.addLong(5L << 16);
+    bitmap.removeLong(950L << 16);
+    bitmap.removeLong(950L << 16 | 1);
+    long deadSlots = bitmap.highLowContainer.getDeadSlotSize();
+    assertTrue(deadSlots > 0);
+    long sizeInBytes = bitmap.getLongSizeInBytes();
+    bitmap.compact();
+    assertEquals(0, bitmap.highLowContainer.getDeadSlotSize());
+    // each dead slot was counted as a reference along with its serialized null mark
+    assertTrue(bitmap.getLongSizeInBytes() <= sizeInBytes - 9 * deadSlots);
+    assertEquals(199, bitmap.getLongCardinality());
+    assertTrue(bitmap.contains(5L << 16));
+    assertFalse(bitmap.contains(950L << 16));
+
+    Roaring64Bitmap deserialized = new Roaring64Bitmap();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bitmap.serialize(new DataOutputStream(bytes));
+    deserialized.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(bitmap, deserialized);
+  }
+
+  @Test
+  public void testCompactAfterBulkRemovals() {
+    Roaring64Bitmap bitmap = new Roaring64Bitmap();
+    bitmap.addRange(0, 1000L << 16);
+    Roaring64Bitmap kept = new Roaring64Bitmap();
+    kept.addRange(10L << 16, 20L << 16);
+    bitmap.and(kept);
+    assertEquals(0, bitmap.highLowContainer.getDeadSlotSize());
+    assertEquals(kept, bitmap);
+
+    bitmap.addRange(0, 1000L << 16);
+    bitmap.andNot(kept);
+    bitmap.removeRange(100L << 16, 1000L << 16);
+    assertEquals(0, bitmap.highLowContainer.getDeadSlotSize());
+    assertEquals(90L << 16, bitmap.getLongCardinality());
+    assertEquals(10L << 16, bitmap.rankLong((20L << 16) - 1));
+
+    bitmap.flip(0, 100L << 16);
+    assertEquals(kept, bitmap);
+    bitmap.trim();
+    assertEquals(0, bitmap.highLowContainer.getDeadSlotSize());
+    assertEquals(kept, bitmap);
+  }
+
+  @Test
+  public void testSingleWindowSwitchesToArt() throws IOException {
+    Roaring64Bitmap bitmap = new Roaring64Bitmap();
+    long window = 0x80000000L << 32;
+    for (long high = 0; high < KeyWindow.MAX_SIZE; high++) {
+      bitmap.addLong(window | high << 16 | high);
+    }
+    assertTrue(bitmap.highLowContainer.isSingleWindow());
+    Roaring64Bitmap cloned = bitmap.clone();
+    assertTrue(cloned.highLowContainer.isSingleWindow());
+
+    // the window is full: the first key of the next window brings the art in
+    Roaring64Bitmap crowded = bitmap.clone();
+    crowded.addLong(window | 1L << 32);
+    assertFalse(crowded.highLowContainer.isSingleWindow());
+    assertEquals(KeyWindow.MAX_SIZE + 1, crowded.getLongCardinality());
+    crowded.removeLong(window | 1L << 32);
+    assertEquals(cloned, crowded);
+
+    // a second window brings the art in
+    bitmap.addLong(5);
+    assertFalse(bitmap.highLowContainer.isSingleWindow());
+    assertEquals(KeyWindow.MAX_SIZE + 1, bitmap.getLongCardinality());
+    assertEquals(5, bitmap.first());
+    long lastHigh = KeyWindow.MAX_SIZE - 1;
+    assertEquals(window | lastHigh << 16 | lastHigh, bitmap.last());
+    assertEquals(window | 3L << 16 | 3, bitmap.select(4));
+    bitmap.removeLong(5);
+    assertEquals(cloned, bitmap);
+    assertEquals(cloned.hashCode(), bitmap.hashCode());
+    // the keys fit in a window again after a compaction
+    bitmap.compact();
+    assertTrue(bitmap.highLowContainer.isSingleWindow());
+    assertEquals(cloned, bitmap);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    cloned.serialize(new DataOutputStream(bytes));
+    assertEquals(bytes.size(), cloned.serializedSizeInBytes());
+    Roaring64Bitmap multiWindows = Roaring64Bitmap.bitmapOf(1, 1L << 32);
+    multiWindows.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertTrue(multiWindows.highLowContainer.isSingleWindow());
+    assertEquals(cloned, multiWindows);
+    Roaring64Bitmap viaArt = new Roaring64Bitmap();
+    viaArt.addLong(1);
+    viaArt.or(cloned);
+    viaArt.removeLong(1);
+    assertFalse(viaArt.highLowContainer.isSingleWindow());
+    bytes.reset();
+    viaArt.serialize(new DataOutputStream(bytes));
+    assertEquals(bytes.size(), viaArt.serializedSizeInBytes());
+    Roaring64Bitmap deserialized = new Roaring64Bitmap();
+    deserialized.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(cloned, deserialized);
+  }
+
+  @Test
+  public void testNextValueSkipsContainersEmptiedByXor() {
+    Roaring64Bitmap bitmap = new Roaring64Bitmap();
+    bitmap.addRange(0, 1000);
+    bitmap.addLong(3L << 32);
+    bitmap.runOptimize();
+    Roaring64Bitmap emptying = new Roaring64Bitmap();
+    emptying.addRange(0, 1000);
+    emptying.runOptimize();
+    bitmap.xor(emptying);
+    assertEquals(3L << 32, bitmap.nextValue(0));
+    assertEquals(3L << 32, bitmap.nextValue(500));
+    assertThrows(NoSuchElementException.class, () -> bitmap.nextValue((3L << 32) + 1));
+    assertThrows(NoSuchElementException.class, () -> bitmap.previousValue(999));
+  }
+
+  @Test
+  public void testPortableSerializationSkipsContainersEmptiedByXorAndFlip() throws IOException {
+    Roaring64Bitmap bitmap = new Roaring64Bitmap();
+    bitmap.addRange(0, 1000);
+    bitmap.addLong(3L << 32);
+    bitmap.addLong((3L << 32) + 70000);
+    bitmap.runOptimize();
+    Roaring64Bitmap emptying = new Roaring64Bitmap();
+    emptying.addRange(0, 1000);
+    emptying.runOptimize();
+    bitmap.xor(emptying);
+    bitmap.flip((3L << 32) + 70000);
+    assertArrayEquals(new long[] {3L << 32}, bitmap.toArray());
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bitmap.serializePortable(new DataOutputStream(bytes));
+    assertEquals(bytes.size(), bitmap.portableSerializedSizeInBytes());
+    Roaring64Bitmap deserialized = new Roaring64Bitmap();
+    deserialized.deserializePortable(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(Roaring64Bitmap.bitmapOf(3L << 32), deserialized);
+  }
+
+  @Test
+  public void testSingleWindowSpansAllOfItsValues() {
+    Roaring64Bitmap bitmap = Roaring64Bitmap.bitmapOf(0, 0xFFFFFFFFL);
+    for (long high = 1; high < KeyWindow.MAX_SIZE - 1; high += 1000) {
+      bitmap.addLong(high << 16);
+    }
+    assertTrue(bitmap.highLowContainer.isSingleWindow());
+    bitmap.addLong(1L << 32);
+    assertFalse(bitmap.highLowContainer.isSingleWindow());
+    bitmap.removeLong(1L << 32);
+    bitmap.compact();
+    assertTrue(bitmap.highLowContainer.isSingleWindow());
+    assertEquals(0xFFFFFFFFL, bitmap.last());
+  }
+
+  @Test
+  public void testSingleWindowMatchesTreeSet() {
+    Random random = new Random(1234);
+    for (long window : new long[] {0, 0x7FFFFFFFL << 32, 0xFFFFFFFFL << 32}) {
+      Roaring64Bitmap bitmap = new Roaring64Bitmap();
+      TreeSet<Long> expected = new TreeSet<>(Long::compareUnsigned);
+      for (int round = 0; round < 3000; round++) {
+        long value = window | (long) random.nextInt(KeyWindow.MAX_SIZE) << 16 | random.nextInt(4);
+        if (random.nextInt(3) == 0) {
+          bitmap.removeLong(value);
+          expected.remove(value);
+        } else {
+          bitmap.addLong(value);
+          expected.add(value);
+        }
+        assertTrue(bitmap.highLowContainer.isSingleWindow());
+        if (round % 100 == 0) {
+          assertArrayEquals(Longs.toArray(expected), bitmap.toArray());
+          List<Long> reversed = new ArrayList<>();
+          PeekableLongIterator reverse = bitmap.getReverseLongIterator();
+          while (reverse.hasNext()) {
+            reversed.add(reverse.next());
+          }
+          assertEquals(new ArrayList<>(expected.descendingSet()), reversed);
+          long bound = window | (long) random.nextInt(KeyWindow.MAX_SIZE + 2) << 16 | random.nextInt(4);
+          PeekableLongIterator from = bitmap.getLongIteratorFrom(bound);
+          Long ceiling = expected.ceiling(bound);
+          assertEquals(ceiling != null, from.hasNext());
+          if (ceiling != null) {
+            assertEquals((long) ceiling, from.next());
+            assertEquals((long) ceiling, bitmap.nextValue(bound));
+          }
+          PeekableLongIterator reverseFrom = bitmap.getReverseLongIteratorFrom(bound);
+          Long floor = expected.floor(bound);
+          assertEquals(floor != null, reverseFrom.hasNext());
+          if (floor != null) {
+            assertEquals((long) floor, reverseFrom.next());
+            assertEquals((long) floor, bitmap.previousValue(bound));
+          }
+          assertEquals(expected.headSet(bound, true).size(), bitmap.rankLong(bound));
+        }
+      }
+      // removals through the key iterators of and/andNot
+      Roaring64Bitmap other = new Roaring64Bitmap();
+      other.addRange(window | 4L << 16, window | 12L << 16);
+      bitmap.and(other);
+      expected.removeIf(v -> v < (window | 4L << 16) || v >= (window | 12L << 16));
+      assertArrayEquals(Longs.toArray(expected), bitmap.toArray());
+      other.removeRange(window | 6L << 16, window | 10L << 16);
+      bitmap.andNot(other);
+      expected.removeIf(v -> v < (window | 6L << 16) || v >= (window | 10L << 16));
+      assertArrayEquals(Longs.toArray(expected), bitmap.toArray());
+      assertTrue(bitmap.highLowContainer.isSingleWindow());
+    }
+  }
+
   @Test
   public void testEmptyRoaring64BitmapClonesWithoutException() {
     assertEquals(new Roaring64Bitmap(), new Roaring64Bitmap().clone());
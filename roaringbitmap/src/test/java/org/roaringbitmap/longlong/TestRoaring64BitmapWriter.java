@@ -0,0 +1,61 @@
+package org.roaringbitmap.longlong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class TestRoaring64BitmapWriter {
+
+  @Test
+  public void testIncreasingValues() {
+    Roaring64BitmapWriter writer = new Roaring64BitmapWriter();
+    Roaring64Bitmap expected = new Roaring64Bitmap();
+    long value = Long.MAX_VALUE - (1L << 20);
+    Random random = new Random(0);
+    for (int i = 0; i < 100000; i++) {
+      value += 1 + random.nextInt(40);
+      writer.add(value);
+      expected.addLong(value);
+    }
+    assertEquals(expected, writer.get());
+  }
+
+  @Test
+  public void testUnorderedValuesAndRanges() {
+    Roaring64BitmapWriter writer = new Roaring64BitmapWriter(false);
+    Roaring64Bitmap expected = new Roaring64Bitmap();
+    Random random = new Random(1);
+    for (int i = 0; i < 50000; i++) {
+      long value = random.nextInt(1 << 22) * (i % 3 == 0 ? -1L : 1L);
+      writer.add(value);
+      expected.addLong(value);
+    }
+    writer.addMany(-1L, 0L, 5L, 1L << 40);
+    expected.add(-1L, 0L, 5L, 1L << 40);
+    writer.addRange(1L << 33, (1L << 33) + 100000);
+    expected.addRange(1L << 33, (1L << 33) + 100000);
+    writer.add((1L << 33) + 200000);
+    expected.addLong((1L << 33) + 200000);
+    Roaring64Bitmap written = writer.get();
+    assertEquals(expected, written);
+    assertArrayEquals(expected.toArray(), written.toArray());
+  }
+
+  @Test
+  public void testFlushAndReset() {
+    Roaring64BitmapWriter writer = new Roaring64BitmapWriter();
+    writer.add(10);
+    assertTrue(writer.getUnderlying().isEmpty());
+    writer.flush();
+    assertEquals(Roaring64Bitmap.bitmapOf(10), writer.getUnderlying());
+    Roaring64Bitmap first = writer.get();
+    writer.reset();
+    writer.add(20);
+    assertEquals(Roaring64Bitmap.bitmapOf(20), writer.get());
+    assertEquals(Roaring64Bitmap.bitmapOf(10), first);
+  }
+}
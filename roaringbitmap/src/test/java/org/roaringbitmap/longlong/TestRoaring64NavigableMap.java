@@ -32,8 +32,12 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
@@ -41,6 +45,8 @@ import java.util.NavigableMap;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 public class TestRoaring64NavigableMap {
 
@@ -61,6 +67,10 @@ public class TestRoaring64NavigableMap {
     return new Roaring64NavigableMap(false, new RoaringBitmapSupplier());
   }
 
+  private Roaring64NavigableMap newSortedArrayBuckets(boolean signedLongs) {
+    return new Roaring64NavigableMap(signedLongs, true, new RoaringBitmapSupplier(), true);
+  }
+
   protected void checkCardinalities(Roaring64NavigableMap bitmap) {
     NavigableMap<Integer, BitmapDataProvider> highToBitmap = bitmap.getHighToBitmap();
     int lowestHighNotValid = bitmap.getLowestInvalidHigh();
@@ -1880,6 +1890,25 @@ public class TestRoaring64NavigableMap {
     assertEquals(map2, map1);
   }
 
+  @Test
+  public void testLazyXor() {
+    Roaring64NavigableMap map1 =
+        Roaring64NavigableMap.bitmapOf(1 << 16, 1 << 18, 1 << 19, 1L << 33);
+    // the ranks cached so far are dismissed by the lazy operations
+    assertEquals(4, map1.rankLong(1L << 33));
+    map1.naivelazyxor(Roaring64NavigableMap.bitmapOf(4, 7, 8, 9));
+    map1.naivelazyxor(Roaring64NavigableMap.bitmapOf(1, 4, 1 << 16, 1 << 17));
+    map1.repairAfterLazy();
+    Roaring64NavigableMap map2 =
+        Roaring64NavigableMap.bitmapOf(1, 7, 8, 9, 1 << 17, 1 << 18, 1 << 19, 1L << 33);
+    assertEquals(map2, map1);
+    assertEquals(8, map1.rankLong(1L << 33));
+
+    map1.naivelazyor(Roaring64NavigableMap.bitmapOf(2, 1L << 34));
+    map1.repairAfterLazy();
+    assertEquals(10, map1.rankLong(1L << 34));
+  }
+
   // https://github.com/RoaringBitmap/RoaringBitmap/issues/528
   @Test
   public void testAnd_ImplicitRoaringBitmap() {
@@ -2345,5 +2374,390 @@ public class TestRoaring64NavigableMap {
       Assertions.assertEquals(dst.getLongCardinality(), 3);
   }
 
+  private static Roaring64NavigableMap rangeSample(Roaring64NavigableMap bitmap) {
+    Random random = new Random(7);
+    // partial buckets around 0, the signed and unsigned boundaries
+    for (long base : new long[] {0L, 1L << 32, 3L << 32, Long.MIN_VALUE, -(1L << 32)}) {
+      // may wrap around in the order of the bitmap
+      for (long value = base - 70000; value != base + 70000; value++) {
+        bitmap.addLong(value);
+      }
+      for (int i = 0; i < 1000; i++) {
+        bitmap.addLong(base + 100000 + random.nextInt(1 << 20));
+      }
+    }
+    return bitmap;
+  }
+
+  private static long randomBound(Random random, long[] values) {
+    long value = values[random.nextInt(values.length)];
+    switch (random.nextInt(4)) {
+      case 0:
+        return value + random.nextInt(3) - 1;
+      case 1:
+        return value & ~0xFFFFFFFFL;
+      case 2:
+        return random.nextLong();
+      default:
+        return new long[] {0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE}[random.nextInt(4)];
+    }
+  }
 
+  private static void checkRangeOperations(Roaring64NavigableMap bitmap, boolean signed) {
+    Comparator<Long> order = signed ? Long::compare : Long::compareUnsigned;
+    long[] values = bitmap.toArray();
+    List<Long> sorted = Longs.asList(values);
+    Random random = new Random(11);
+    for (int i = 0; i < 300; i++) {
+      long start = randomBound(random, values);
+      long end = randomBound(random, values);
+      boolean empty = order.compare(start, end) >= 0;
+      int from = Collections.binarySearch(sorted, start, order);
+      from = from < 0 ? -from - 1 : from;
+      int to = Collections.binarySearch(sorted, end, order);
+      to = empty ? from : to < 0 ? -to - 1 : to;
+      long[] inRange = Arrays.copyOfRange(values, from, to);
+
+      assertEquals(inRange.length, bitmap.rangeCardinality(start, end));
+      assertEquals(inRange.length > 0, bitmap.intersects(start, end));
+      assertEquals(!empty && inRange.length == end - start, bitmap.contains(start, end));
+      Roaring64NavigableMap selected = bitmap.selectRange(start, end);
+      assertArrayEquals(inRange, selected.toArray());
+      // the result keeps the bucket backend of the bitmap
+      assertEquals(
+          bitmap.getHighToBitmap().getClass(), selected.getHighToBitmap().getClass());
+
+      Roaring64NavigableMap removed = bitmap.clone();
+      removed.removeRange(start, end);
+      long[] expected = new long[values.length - inRange.length];
+      System.arraycopy(values, 0, expected, 0, from);
+      System.arraycopy(values, to, expected, from, values.length - to);
+      assertArrayEquals(expected, removed.toArray());
+      assertEquals(expected.length, removed.getLongCardinality());
+
+      long value = randomBound(random, values);
+      int index = Collections.binarySearch(sorted, value, order);
+      if (index >= 0) {
+        assertEquals(value, bitmap.nextValue(value));
+        assertEquals(value, bitmap.previousValue(value));
+      } else {
+        index = -index - 1;
+        if (index < values.length) {
+          assertEquals(values[index], bitmap.nextValue(value));
+        } else {
+          assertThrows(NoSuchElementException.class, () -> bitmap.nextValue(value));
+        }
+        if (index > 0) {
+          assertEquals(values[index - 1], bitmap.previousValue(value));
+        } else {
+          assertThrows(NoSuchElementException.class, () -> bitmap.previousValue(value));
+        }
+      }
+      long min = signed ? Long.MIN_VALUE : 0L;
+      long max = signed ? Long.MAX_VALUE : -1L;
+      long nextAbsent = value;
+      while (nextAbsent != max && bitmap.contains(nextAbsent)) {
+        nextAbsent++;
+      }
+      if (bitmap.contains(nextAbsent)) {
+        assertThrows(NoSuchElementException.class, () -> bitmap.nextAbsentValue(value));
+      } else {
+        assertEquals(nextAbsent, bitmap.nextAbsentValue(value));
+      }
+      long previousAbsent = value;
+      while (previousAbsent != min && bitmap.contains(previousAbsent)) {
+        previousAbsent--;
+      }
+      if (bitmap.contains(previousAbsent)) {
+        assertThrows(NoSuchElementException.class, () -> bitmap.previousAbsentValue(value));
+      } else {
+        assertEquals(previousAbsent, bitmap.previousAbsentValue(value));
+      }
+    }
+  }
+
+  @Test
+  public void testRangeOperationsUnsigned() {
+    checkRangeOperations(rangeSample(newUnsignedHeap()), false);
+  }
+
+  @Test
+  public void testRangeOperationsSignedBuffered() {
+    checkRangeOperations(rangeSample(newSignedBuffered()), true);
+  }
+
+  @Test
+  public void testRangeOperationsWholeBuckets() {
+    Roaring64NavigableMap bitmap = newDefaultCtor();
+    bitmap.addRange(5L << 32, 7L << 32);
+    bitmap.addLong(9L << 32);
+    assertTrue(bitmap.contains(5L << 32, 7L << 32));
+    assertFalse(bitmap.contains(5L << 32, (7L << 32) + 1));
+    assertFalse(bitmap.contains(5L << 32, 10L << 32));
+    assertEquals(2L << 32, bitmap.rangeCardinality(0, 9L << 32));
+    assertEquals((2L << 32) + 1, bitmap.rangeCardinality(0, -1L));
+    assertEquals(7L << 32, bitmap.nextAbsentValue(5L << 32));
+    assertEquals((5L << 32) - 1, bitmap.previousAbsentValue((7L << 32) - 1));
+    assertFalse(bitmap.intersects(7L << 32, 9L << 32));
+    assertTrue(bitmap.intersects(7L << 32, (9L << 32) + 1));
+
+    bitmap.removeRange((5L << 32) + 10, 9L << 32);
+    assertEquals(11, bitmap.getLongCardinality());
+    assertEquals(9L << 32, bitmap.select(10));
+    assertEquals(9L << 32, bitmap.nextValue((5L << 32) + 10));
+  }
+
+  @Test
+  public void testRangeOperationsSortedArrayBuckets() {
+    checkRangeOperations(rangeSample(newSortedArrayBuckets(false)), false);
+    checkRangeOperations(rangeSample(newSortedArrayBuckets(true)), true);
+  }
+
+  @Test
+  public void testSortedArrayBucketsMatchTreeMap() throws IOException {
+    Random random = new Random(3);
+    for (boolean signedLongs : new boolean[] {false, true}) {
+      Roaring64NavigableMap expected = new Roaring64NavigableMap(signedLongs);
+      Roaring64NavigableMap actual = newSortedArrayBuckets(signedLongs);
+      assertTrue(actual.getHighToBitmap() instanceof SortedArrayBucketMap);
+      for (int round = 0; round < 5000; round++) {
+        // a few values in many buckets, added out of order
+        long value = ((long) (random.nextInt(400) - 200) << 32) + random.nextInt(100);
+        if (random.nextInt(4) == 0) {
+          expected.removeLong(value);
+          actual.removeLong(value);
+        } else {
+          expected.addLong(value);
+          actual.addLong(value);
+        }
+        if (round % 100 == 0) {
+          // may remove the buckets emptied by removeLong
+          assertEquals(expected.rankLong(value), actual.rankLong(value));
+          checkCardinalities(actual);
+          long cardinality = expected.getLongCardinality();
+          assertEquals(cardinality, actual.getLongCardinality());
+          if (cardinality > 0) {
+            long j = random.nextInt((int) cardinality);
+            assertEquals(expected.select(j), actual.select(j));
+          }
+          assertEquals(expected.contains(value), actual.contains(value));
+        }
+      }
+      assertEquals(expected, actual);
+      assertArrayEquals(expected.toArray(), actual.toArray());
+      assertEquals(expected.getReverseLongIterator().next(), actual.getReverseLongIterator().next());
+
+      Roaring64NavigableMap other = newSortedArrayBuckets(signedLongs);
+      other.addRange(5L << 32, 50L << 32);
+      expected.andNot(other);
+      actual.andNot(other);
+      assertEquals(expected, actual);
+      expected.or(other);
+      actual.or(other);
+      assertEquals(expected, actual);
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      actual.serialize(new DataOutputStream(bytes));
+      Roaring64NavigableMap deserialized = newSortedArrayBuckets(signedLongs);
+      deserialized.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      assertTrue(deserialized.getHighToBitmap() instanceof SortedArrayBucketMap);
+      assertEquals(expected, deserialized);
+      assertTrue(actual.clone().getHighToBitmap() instanceof SortedArrayBucketMap);
+    }
+  }
+
+  private static Roaring64NavigableMap parallelSample(
+      Roaring64NavigableMap bitmap, Random random, int nbHighs) {
+    for (int i = 0; i < 2000; i++) {
+      // highs on both sides of the signed and unsigned boundaries
+      long high = random.nextInt(nbHighs) - nbHighs / 2;
+      bitmap.addLong(high << 32 | random.nextInt(1 << 18));
+    }
+    bitmap.addRange(7L << 32, (7L << 32) + 100000);
+    return bitmap;
+  }
+
+  private static Roaring64NavigableMap copyOf(
+      Supplier<Roaring64NavigableMap> factory, Roaring64NavigableMap bitmap) {
+    // unlike clone, keeps the kind of buckets
+    Roaring64NavigableMap copy = factory.get();
+    copy.or(bitmap);
+    return copy;
+  }
+
+  @Test
+  public void testParallelOperationsMatchSequential() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Random random = new Random(11);
+      List<Supplier<Roaring64NavigableMap>> factories =
+          Arrays.asList(
+              this::newUnsignedHeap, this::newSignedBuffered, () -> newSortedArrayBuckets(true));
+      for (Supplier<Roaring64NavigableMap> factory : factories) {
+        Roaring64NavigableMap x1 = parallelSample(factory.get(), random, 40);
+        Roaring64NavigableMap x2 = parallelSample(factory.get(), random, 60);
+        // rank caches are filled, then invalidated by the operations
+        x1.rankLong(-1L);
+
+        Roaring64NavigableMap expected = copyOf(factory, x1);
+        Roaring64NavigableMap actual = copyOf(factory, x1);
+        expected.or(x2);
+        actual.or(x2, pool);
+        assertEquals(expected, actual);
+        assertEquals(expected.getLongCardinality(), actual.getLongCardinality());
+        checkCardinalities(actual);
+
+        expected.xor(x1);
+        actual.xor(x1, pool);
+        assertEquals(expected, actual);
+        assertEquals(expected.rankLong(5L << 32), actual.rankLong(5L << 32));
+
+        expected = copyOf(factory, x1);
+        actual = copyOf(factory, x1);
+        expected.and(x2);
+        actual.and(x2, pool);
+        assertEquals(expected, actual);
+        assertEquals(expected.getLongCardinality(), actual.getLongCardinality());
+
+        expected = copyOf(factory, x1);
+        actual = copyOf(factory, x1);
+        expected.andNot(x2);
+        actual.andNot(x2, pool);
+        assertEquals(expected, actual);
+        assertEquals(expected.select(100), actual.select(100));
+
+        // the buckets pushed into actual are clones
+        x2.addLong(3L << 32);
+        actual.or(x2, pool);
+        x2.removeLong(3L << 32);
+        assertTrue(actual.contains(3L << 32));
+        assertFalse(x2.contains(3L << 32));
+
+        actual.xor(actual, pool);
+        assertTrue(actual.isEmpty());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelAggregations() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Random random = new Random(13);
+      for (boolean signedLongs : new boolean[] {false, true}) {
+        Roaring64NavigableMap[] bitmaps = new Roaring64NavigableMap[5];
+        for (int i = 0; i < bitmaps.length; i++) {
+          bitmaps[i] = parallelSample(new Roaring64NavigableMap(signedLongs), random, 8);
+        }
+        Roaring64NavigableMap or = bitmaps[0].clone();
+        Roaring64NavigableMap xor = bitmaps[0].clone();
+        Roaring64NavigableMap and = bitmaps[0].clone();
+        for (int i = 1; i < bitmaps.length; i++) {
+          or.or(bitmaps[i]);
+          xor.xor(bitmaps[i]);
+          and.and(bitmaps[i]);
+        }
+        assertEquals(or, Roaring64NavigableMap.or(pool, bitmaps));
+        assertEquals(xor, Roaring64NavigableMap.xor(pool, bitmaps));
+        Roaring64NavigableMap actualAnd = Roaring64NavigableMap.and(pool, bitmaps);
+        assertEquals(and.getLongCardinality(), actualAnd.getLongCardinality());
+        assertArrayEquals(and.toArray(), actualAnd.toArray());
+        assertArrayEquals(or.toArray(), Roaring64NavigableMap.or(pool, bitmaps).toArray());
+
+        // the inputs are not modified, and the results do not share their buckets
+        Roaring64NavigableMap single = Roaring64NavigableMap.or(pool, bitmaps[0]);
+        single.addLong(5L << 32);
+        assertFalse(bitmaps[0].contains(5L << 32));
+      }
+
+      Roaring64NavigableMap buffered = newSignedBuffered();
+      buffered.addLong(1L);
+      assertThrows(
+          UnsupportedOperationException.class,
+          () -> Roaring64NavigableMap.or(pool, buffered, Roaring64NavigableMap.bitmapOf(1L)));
+      assertTrue(Roaring64NavigableMap.and(pool).isEmpty());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelCardinalityFillsCache() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Random random = new Random(17);
+      for (Roaring64NavigableMap bitmap :
+          Arrays.asList(newDefaultCtor(), newNoCache(), newSortedArrayBuckets(false))) {
+        parallelSample(bitmap, random, 30);
+        // an emptied bucket is dropped, as when cumulating cardinalities one by one
+        bitmap.addLong(100L << 32);
+        bitmap.removeLong(100L << 32);
+        Roaring64NavigableMap expected = bitmap.clone();
+
+        assertEquals(expected.getLongCardinality(), bitmap.getLongCardinality(pool));
+        checkCardinalities(bitmap);
+        long[] values = expected.toArray();
+        for (int i = 0; i < values.length; i += 97) {
+          assertEquals(i + 1, bitmap.rankLong(values[i]));
+          assertEquals(values[i], bitmap.select(i));
+        }
+
+        // later additions invalidate the cache filled at once
+        bitmap.addLong(-1L);
+        expected.addLong(-1L);
+        assertEquals(expected.getLongCardinality(), bitmap.getLongCardinality());
+        bitmap.addLong(0L);
+        expected.addLong(0L);
+        assertEquals(expected.getLongCardinality(), bitmap.getLongCardinality(pool));
+        assertEquals(expected.rankLong(1L << 40), bitmap.rankLong(1L << 40));
+      }
+      assertEquals(0L, newDefaultCtor().getLongCardinality(pool));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelSerializeMatchesDataOutput() throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    int previousMode = Roaring64NavigableMap.SERIALIZATION_MODE;
+    try {
+      Random random = new Random(19);
+      for (int mode :
+          new int[] {
+            Roaring64NavigableMap.SERIALIZATION_MODE_LEGACY,
+            Roaring64NavigableMap.SERIALIZATION_MODE_PORTABLE
+          }) {
+        Roaring64NavigableMap.SERIALIZATION_MODE = mode;
+        for (Roaring64NavigableMap bitmap :
+            Arrays.asList(newDefaultCtor(), newSignedBuffered(), newUnsignedHeap())) {
+          parallelSample(bitmap, random, 30);
+          assertTrue(bitmap.runOptimize(pool));
+
+          ByteArrayOutputStream expected = new ByteArrayOutputStream();
+          bitmap.serialize(new DataOutputStream(expected));
+          assertEquals(expected.size(), bitmap.serializedSizeInBytes());
+
+          for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            // the bitmap is written after some leading bytes
+            ByteBuffer buffer = ByteBuffer.allocate(expected.size() + 3).order(order);
+            buffer.position(3);
+            bitmap.serialize(buffer, pool);
+            assertEquals(buffer.limit(), buffer.position());
+            assertArrayEquals(
+                expected.toByteArray(), Arrays.copyOfRange(buffer.array(), 3, buffer.limit()));
+          }
+
+          assertThrows(
+              BufferOverflowException.class,
+              () -> bitmap.serialize(ByteBuffer.allocate(expected.size() - 1), pool));
+        }
+      }
+    } finally {
+      Roaring64NavigableMap.SERIALIZATION_MODE = previousMode;
+      pool.shutdown();
+    }
+  }
 }
@@ -0,0 +1,172 @@
+package org.roaringbitmap.longlong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.roaringbitmap.RangeBitmap;
+import org.roaringbitmap.RoaringBitmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public class TestRoaring64RangeBitmap {
+
+  private static Roaring64NavigableMap toLongs(RoaringBitmap bitmap) {
+    Roaring64NavigableMap longs = new Roaring64NavigableMap();
+    bitmap.forEach((int row) -> longs.addLong(Integer.toUnsignedLong(row)));
+    return longs;
+  }
+
+  private static Roaring64NavigableMap toLongs(Roaring64NavigableMap bitmap) {
+    // compare by content, whatever the layout of the buckets
+    Roaring64NavigableMap longs = new Roaring64NavigableMap();
+    bitmap.forEach(longs::addLong);
+    return longs;
+  }
+
+  @Test
+  public void chunksMatchSingleRangeBitmap() {
+    SplittableRandom random = new SplittableRandom(0);
+    long maxValue = 1000;
+    for (long rowsPerChunk : new long[] {1 << 10, 1 << 16, 1 << 20}) {
+      RangeBitmap.Appender appender = RangeBitmap.appender(maxValue);
+      Roaring64RangeBitmap.Appender chunked = Roaring64RangeBitmap.appender(maxValue, rowsPerChunk);
+      for (int row = 0; row < 200_000; row++) {
+        long value = random.nextLong(maxValue + 1);
+        appender.add(value);
+        chunked.add(value);
+      }
+      RangeBitmap expected = appender.build();
+      Roaring64RangeBitmap actual = chunked.build();
+      assertEquals((200_000 + rowsPerChunk - 1) / rowsPerChunk, actual.getChunkCount());
+      RoaringBitmap context = new RoaringBitmap();
+      for (int i = 0; i < 20_000; i++) {
+        context.add(random.nextInt(200_000));
+      }
+      Roaring64NavigableMap longContext = toLongs(context);
+      for (int i = 0; i < 10; i++) {
+        long threshold = random.nextLong(maxValue + 1);
+        long other = random.nextLong(maxValue + 1);
+        long min = Math.min(threshold, other);
+        long max = Math.max(threshold, other);
+        assertEquals(toLongs(expected.lte(threshold)), toLongs(actual.lte(threshold)));
+        assertEquals(expected.lteCardinality(threshold), actual.lteCardinality(threshold));
+        assertEquals(toLongs(expected.lt(threshold)), toLongs(actual.lt(threshold)));
+        assertEquals(expected.ltCardinality(threshold), actual.ltCardinality(threshold));
+        assertEquals(toLongs(expected.gt(threshold)), toLongs(actual.gt(threshold)));
+        assertEquals(expected.gtCardinality(threshold), actual.gtCardinality(threshold));
+        assertEquals(toLongs(expected.gte(threshold)), toLongs(actual.gte(threshold)));
+        assertEquals(expected.gteCardinality(threshold), actual.gteCardinality(threshold));
+        assertEquals(toLongs(expected.eq(threshold)), toLongs(actual.eq(threshold)));
+        assertEquals(expected.eqCardinality(threshold), actual.eqCardinality(threshold));
+        assertEquals(toLongs(expected.neq(threshold)), toLongs(actual.neq(threshold)));
+        assertEquals(expected.neqCardinality(threshold), actual.neqCardinality(threshold));
+        assertEquals(toLongs(expected.between(min, max)), toLongs(actual.between(min, max)));
+        assertEquals(
+            expected.betweenCardinality(min, max), actual.betweenCardinality(min, max));
+        assertEquals(
+            toLongs(expected.lte(threshold, context)),
+            toLongs(actual.lte(threshold, longContext)));
+        assertEquals(
+            expected.lteCardinality(threshold, context),
+            actual.lteCardinality(threshold, longContext));
+        assertEquals(
+            toLongs(expected.gt(threshold, context)),
+            toLongs(actual.gt(threshold, longContext)));
+        assertEquals(
+            expected.gtCardinality(threshold, context),
+            actual.gtCardinality(threshold, longContext));
+        assertEquals(
+            toLongs(expected.neq(threshold, context)),
+            toLongs(actual.neq(threshold, longContext)));
+        assertEquals(
+            expected.eqCardinality(threshold, context),
+            actual.eqCardinality(threshold, longContext));
+        assertEquals(
+            toLongs(expected.between(min, max, context)),
+            toLongs(actual.between(min, max, longContext)));
+        assertEquals(
+            expected.betweenCardinality(min, max, context),
+            actual.betweenCardinality(min, max, longContext));
+      }
+    }
+  }
+
+  @Test
+  public void rowsBeyond32Bits() {
+    long rowsPerChunk = 1 << 16;
+    RangeBitmap.Appender appender = RangeBitmap.appender(1);
+    for (int row = 0; row < rowsPerChunk; row++) {
+      appender.add(row == 42 ? 1 : 0);
+    }
+    ByteBuffer image = serialize(appender);
+    // the same image for each chunk, past the first 2^32 rows
+    int chunkCount = (1 << 16) + 3;
+    List<ByteBuffer> images = new ArrayList<>(Collections.nCopies(chunkCount, image));
+    images.replaceAll(ByteBuffer::duplicate);
+    Roaring64RangeBitmap bitmap = Roaring64RangeBitmap.map(images, rowsPerChunk);
+    Roaring64NavigableMap expected = new Roaring64NavigableMap();
+    for (long chunk = 0; chunk < chunkCount; chunk++) {
+      expected.addLong(chunk * rowsPerChunk + 42);
+    }
+    assertEquals(expected, toLongs(bitmap.eq(1)));
+    assertEquals(chunkCount, bitmap.gtCardinality(0));
+    Roaring64NavigableMap context = new Roaring64NavigableMap();
+    long lastChunk = (chunkCount - 1) * rowsPerChunk;
+    context.addRange(lastChunk - rowsPerChunk, lastChunk + 100);
+    Roaring64NavigableMap expectedInContext = new Roaring64NavigableMap();
+    expectedInContext.addLong(lastChunk - rowsPerChunk + 42);
+    expectedInContext.addLong(lastChunk + 42);
+    assertEquals(expectedInContext, toLongs(bitmap.eq(1, context)));
+    assertEquals(rowsPerChunk + 98, bitmap.eqCardinality(0, context));
+  }
+
+  private static ByteBuffer serialize(RangeBitmap.Appender appender) {
+    ByteBuffer buffer = ByteBuffer.allocate(appender.serializedSizeInBytes())
+        .order(ByteOrder.LITTLE_ENDIAN);
+    appender.serialize(buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  @Test
+  public void rejectInvalidRowsPerChunk() {
+    assertThrows(IllegalArgumentException.class, () -> Roaring64RangeBitmap.appender(10, 0));
+    assertThrows(
+        IllegalArgumentException.class, () -> Roaring64RangeBitmap.appender(10, 100_000));
+    assertThrows(
+        IllegalArgumentException.class, () -> Roaring64RangeBitmap.appender(10, 1L << 33));
+    // the rows of a chunk are counted by an int
+    assertThrows(
+        IllegalArgumentException.class, () -> Roaring64RangeBitmap.appender(10, 1L << 32));
+    Roaring64RangeBitmap.appender(10, 1L << 31);
+  }
+
+  @Test
+  public void rejectImagesNotMatchingRowsPerChunk() {
+    RangeBitmap.Appender appender = RangeBitmap.appender(1);
+    for (int row = 0; row < 1000; row++) {
+      appender.add(row & 1);
+    }
+    ByteBuffer image = serialize(appender);
+    assertEquals(1000, RangeBitmap.map(image.duplicate()).getRowCount());
+    // only the last chunk may hold fewer rows
+    assertEquals(
+        1,
+        Roaring64RangeBitmap.map(Collections.singletonList(image.duplicate()), 1024)
+            .getChunkCount());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> Roaring64RangeBitmap.map(Arrays.asList(image.duplicate(), image.duplicate()), 1024));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> Roaring64RangeBitmap.map(Collections.singletonList(image.duplicate()), 512));
+  }
+}
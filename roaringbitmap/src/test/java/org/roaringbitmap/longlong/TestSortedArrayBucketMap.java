@@ -0,0 +1,218 @@
+package org.roaringbitmap.longlong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.BitmapDataProvider;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Check SortedArrayBucketMap behaves as a TreeMap, including through its views
+ */
+public class TestSortedArrayBucketMap {
+
+  private static int randomHigh(Random random) {
+    switch (random.nextInt(3)) {
+      case 0:
+        return random.nextInt(50);
+      case 1:
+        return Integer.MIN_VALUE + random.nextInt(50);
+      default:
+        return -random.nextInt(50);
+    }
+  }
+
+  private static void assertSameNavigation(
+      NavigableMap<Integer, BitmapDataProvider> expected,
+      NavigableMap<Integer, BitmapDataProvider> actual,
+      Random random) {
+    assertEquals(expected, actual);
+    assertEquals(expected.hashCode(), actual.hashCode());
+    assertEquals(expected.size(), actual.size());
+    assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+    assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(actual.values()));
+    assertEquals(
+        new ArrayList<>(expected.descendingKeySet()), new ArrayList<>(actual.descendingKeySet()));
+    assertEquals(expected.firstEntry(), actual.firstEntry());
+    assertEquals(expected.lastEntry(), actual.lastEntry());
+    for (int i = 0; i < 10; i++) {
+      int high = randomHigh(random);
+      assertSame(expected.get(high), actual.get(high));
+      assertEquals(expected.containsKey(high), actual.containsKey(high));
+      assertEquals(expected.lowerEntry(high), actual.lowerEntry(high));
+      assertEquals(expected.floorEntry(high), actual.floorEntry(high));
+      assertEquals(expected.ceilingEntry(high), actual.ceilingEntry(high));
+      assertEquals(expected.higherEntry(high), actual.higherEntry(high));
+      assertEquals(expected.navigableKeySet().floor(high), actual.navigableKeySet().floor(high));
+    }
+  }
+
+  private static void checkAgainstTreeMap(boolean signedLongs) {
+    Random random = new Random(signedLongs ? 1 : 2);
+    NavigableMap<Integer, BitmapDataProvider> expected =
+        signedLongs ? new TreeMap<>() : new TreeMap<>(RoaringIntPacking.unsignedComparator());
+    SortedArrayBucketMap actual = new SortedArrayBucketMap(signedLongs);
+    for (int round = 0; round < 2000; round++) {
+      int high = randomHigh(random);
+      if (random.nextInt(3) == 0) {
+        assertSame(expected.remove(high), actual.remove(high));
+      } else {
+        BitmapDataProvider bitmap = RoaringBitmap.bitmapOf(round);
+        assertSame(expected.put(high, bitmap), actual.put(high, bitmap));
+      }
+      assertSame(expected.get(high), actual.getBitmap(high));
+
+      if (round % 20 == 0) {
+        assertSameNavigation(expected, actual, random);
+        assertSameNavigation(expected.descendingMap(), actual.descendingMap(), random);
+
+        int from = randomHigh(random);
+        int to = randomHigh(random);
+        if (expected.comparator() == null
+            ? from > to
+            : expected.comparator().compare(from, to) > 0) {
+          int swap = from;
+          from = to;
+          to = swap;
+        }
+        // TreeMap rejects narrowing an empty range any further
+        boolean fromInclusive = from == to || random.nextBoolean();
+        boolean toInclusive = from == to || random.nextBoolean();
+        NavigableMap<Integer, BitmapDataProvider> expectedView =
+            expected.subMap(from, fromInclusive, to, toInclusive);
+        NavigableMap<Integer, BitmapDataProvider> actualView =
+            actual.subMap(from, fromInclusive, to, toInclusive);
+        assertSameNavigation(expectedView, actualView, random);
+        assertSameNavigation(expected.headMap(to, true), actual.headMap(to, true), random);
+        assertSameNavigation(expected.tailMap(from, false), actual.tailMap(from, false), random);
+        assertSameNavigation(
+            expectedView.descendingMap().headMap(from, fromInclusive),
+            actualView.descendingMap().headMap(from, fromInclusive),
+            random);
+        assertSameNavigation(
+            expected.descendingMap().tailMap(to, true),
+            actual.descendingMap().tailMap(to, true),
+            random);
+
+        // views are bounded by highs: they see the buckets added after their creation
+        if (!actualView.isEmpty() && random.nextBoolean()) {
+          int first = actualView.firstKey();
+          expectedView.remove(first);
+          actualView.remove(first);
+          BitmapDataProvider bitmap = RoaringBitmap.bitmapOf(-round);
+          expectedView.put(first, bitmap);
+          actualView.put(first, bitmap);
+          assertSameNavigation(expected, actual, random);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSignedMatchesTreeMap() {
+    checkAgainstTreeMap(true);
+  }
+
+  @Test
+  public void testUnsignedMatchesTreeMap() {
+    checkAgainstTreeMap(false);
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    SortedArrayBucketMap map = new SortedArrayBucketMap(false);
+    for (int high = 0; high < 100; high++) {
+      map.put(high, RoaringBitmap.bitmapOf(high));
+    }
+    Iterator<Map.Entry<Integer, BitmapDataProvider>> it =
+        map.tailMap(10, true).entrySet().iterator();
+    while (it.hasNext()) {
+      if (it.next().getKey() % 3 != 0) {
+        it.remove();
+      }
+    }
+    Iterator<Integer> descending = map.headMap(10, false).descendingKeySet().iterator();
+    while (descending.hasNext()) {
+      if (descending.next() % 3 != 0) {
+        descending.remove();
+      }
+    }
+    List<Integer> expected = new ArrayList<>();
+    for (int high = 0; high < 100; high++) {
+      if (high % 3 == 0) {
+        expected.add(high);
+      }
+    }
+    assertEquals(expected, new ArrayList<>(map.keySet()));
+
+    Iterator<BitmapDataProvider> values = map.values().iterator();
+    values.next();
+    map.remove(99);
+    assertThrows(ConcurrentModificationException.class, values::next);
+
+    map.headMap(50).clear();
+    assertEquals(51, (int) map.firstKey());
+    assertNull(map.getBitmap(1));
+    assertFalse(map.tailMap(98, false).containsKey(97));
+    assertThrows(IllegalArgumentException.class, () -> map.headMap(60).put(70, null));
+  }
+
+  private static List<NavigableMap<Integer, BitmapDataProvider>> treeMapAndSortedArrays() {
+    List<NavigableMap<Integer, BitmapDataProvider>> maps = new ArrayList<>();
+    maps.add(new TreeMap<>());
+    maps.add(new SortedArrayBucketMap(true));
+    return maps;
+  }
+
+  @Test
+  public void testEntrySetValueWritesThrough() {
+    for (NavigableMap<Integer, BitmapDataProvider> map : treeMapAndSortedArrays()) {
+      for (int high = 0; high < 10; high++) {
+        map.put(high, RoaringBitmap.bitmapOf(high));
+      }
+      BitmapDataProvider replaced = RoaringBitmap.bitmapOf(42);
+      for (Map.Entry<Integer, BitmapDataProvider> entry :
+          map.subMap(3, true, 6, false).descendingMap().entrySet()) {
+        BitmapDataProvider previous = entry.getValue();
+        assertSame(previous, entry.setValue(replaced));
+        assertSame(replaced, entry.getValue());
+      }
+      for (int high = 0; high < 10; high++) {
+        assertEquals(high >= 3 && high < 6, map.get(high) == replaced);
+      }
+      // the entries of the navigation methods are snapshots
+      assertThrows(
+          UnsupportedOperationException.class, () -> map.firstEntry().setValue(replaced));
+    }
+  }
+
+  @Test
+  public void testNestedViewsRejectKeysOutOfRange() {
+    for (NavigableMap<Integer, BitmapDataProvider> map : treeMapAndSortedArrays()) {
+      NavigableMap<Integer, BitmapDataProvider> view = map.subMap(10, true, 20, false);
+      assertThrows(IllegalArgumentException.class, () -> view.subMap(5, true, 15, true));
+      assertThrows(IllegalArgumentException.class, () -> view.headMap(20, true));
+      assertThrows(IllegalArgumentException.class, () -> view.tailMap(9, false));
+      assertThrows(
+          IllegalArgumentException.class, () -> view.descendingMap().headMap(25, true));
+      // the excluded bound of a view may still bound a nested view, exclusively
+      assertEquals(0, view.headMap(20, false).size());
+      assertEquals(0, view.tailMap(10, true).headMap(12, false).tailMap(10, false).size());
+      map.put(15, RoaringBitmap.bitmapOf(15));
+      assertEquals(1, view.subMap(10, false, 20, false).size());
+    }
+  }
+}